@@ -0,0 +1,58 @@
+package com.minio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 按前缀打包下载的配置：边列举边读取边压缩，直接写到响应中，不落盘也不在内存中暂存整个对象
+ *
+ * @author lyf
+ * @since 2023-04-30
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "minio.archive")
+public class ArchiveProperties {
+    /**
+     * 是否开启打包下载
+     */
+    private boolean enabled = false;
+
+    /**
+     * 允许打包下载的桶，为空时只允许默认桶
+     */
+    private List<String> allowedBuckets = new ArrayList<>();
+
+    /**
+     * 输出当前对象时提前打开的后续对象数
+     */
+    private int prefetch = 2;
+
+    /**
+     * 提前打开对象的线程数，所有下载共用
+     */
+    private int threads = 8;
+
+    /**
+     * 写响应时的缓冲区大小
+     */
+    private DataSize bufferSize = DataSize.ofKilobytes(64);
+
+    /**
+     * 压缩级别，0-9
+     */
+    private int level = 6;
+
+    /**
+     * 已经压缩过的类型，不再压缩，支持 image/* 这样的通配
+     */
+    private List<String> storedTypes = new ArrayList<>(Arrays.asList("image/*", "video/*", "audio/*",
+            "application/zip", "application/gzip", "application/x-gzip", "application/x-7z-compressed",
+            "application/x-rar-compressed", "application/pdf"));
+}
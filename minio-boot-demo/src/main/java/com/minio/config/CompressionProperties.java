@@ -0,0 +1,52 @@
+package com.minio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 文本类对象的压缩配置：合并之后生成 gzip 压缩的副本，下载时根据 Accept-Encoding 返回压缩的内容
+ *
+ * @author lyf
+ * @since 2023-04-29
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "minio.compression")
+public class CompressionProperties {
+    /**
+     * 是否开启压缩
+     */
+    private boolean enabled = true;
+
+    /**
+     * 需要压缩的 Content-Type，text/* 表示所有 text 类型
+     */
+    private List<String> types = new ArrayList<>(Arrays.asList("text/*", "application/json", "application/xml",
+            "application/javascript", "application/x-ndjson", "image/svg+xml"));
+
+    /**
+     * 小于这个大小的对象不压缩
+     */
+    private DataSize minSize = DataSize.ofKilobytes(1);
+
+    /**
+     * 压缩后的大小超过原大小的这个比例时认为不值得，不保留压缩的副本
+     */
+    private double maxRatio = 0.9;
+
+    /**
+     * 没有压缩副本时（还没有生成、不值得压缩以外的原因），是否在下载时边读边压缩
+     */
+    private boolean onTheFly = true;
+
+    /**
+     * gzip 的压缩级别，1-9
+     */
+    private int level = 6;
+}
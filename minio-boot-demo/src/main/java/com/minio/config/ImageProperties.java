@@ -0,0 +1,62 @@
+package com.minio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+/**
+ * 图片缩放/裁剪的配置，变换结果保存在原图旁边的 {objectName}.variants/ 目录中，并在本地内存中缓存
+ *
+ * @author lyf
+ * @since 2023-04-30
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "minio.image")
+public class ImageProperties {
+    /**
+     * 是否开启图片变换
+     */
+    private boolean enabled = true;
+
+    /**
+     * 同时进行的变换数，变换是 CPU 密集型的，默认为 CPU 核数
+     */
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 等待变换的请求数上限，超过时返回 503
+     */
+    private int queueCapacity = 100;
+
+    /**
+     * 输出的最大宽度和高度
+     */
+    private int maxDimension = 4096;
+
+    /**
+     * 原图的最大像素数，防止解码超大图片占用过多内存
+     */
+    private long maxSourcePixels = 50_000_000L;
+
+    /**
+     * JPEG 的默认质量，1-100
+     */
+    private int defaultQuality = 85;
+
+    /**
+     * 本地内存中缓存的变换结果的总大小，按最近最少使用淘汰
+     */
+    private DataSize memoryCacheSize = DataSize.ofMegabytes(64);
+
+    /**
+     * MinIO 中保存的变换结果的最大数量，超过时删除最久没有被访问的
+     */
+    private int maxStoredVariants = 100_000;
+
+    /**
+     * 变换结果的 Cache-Control
+     */
+    private String cacheControl = "public, max-age=86400";
+}
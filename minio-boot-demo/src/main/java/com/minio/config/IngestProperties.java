@@ -0,0 +1,55 @@
+package com.minio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 批量导入的配置：上传一个 zip/tar 包，流式读取其中的文件并行上传
+ *
+ * @author lyf
+ * @since 2023-04-30
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "minio.ingest")
+public class IngestProperties {
+    /**
+     * 是否开启批量导入
+     */
+    private boolean enabled = false;
+
+    /**
+     * 允许导入的桶，为空时只允许默认桶
+     */
+    private List<String> allowedBuckets = new ArrayList<>();
+
+    /**
+     * 并行上传的线程数，所有导入请求共用
+     */
+    private int threads = 16;
+
+    /**
+     * 不超过这个大小的文件读入内存后交给线程池并行上传，更大的文件在读取线程中边读边上传
+     */
+    private DataSize maxInMemoryEntrySize = DataSize.ofMegabytes(8);
+
+    /**
+     * 所有导入请求读入内存、等待上传的文件的总大小，超过时读取线程等待
+     */
+    private DataSize maxInFlightMemory = DataSize.ofMegabytes(128);
+
+    /**
+     * 一个包中的最大文件数
+     */
+    private int maxEntries = 100_000;
+
+    /**
+     * 一个包解压后的最大总大小，读取文件内容时检查，超过时正在上传的文件失败并停止导入
+     */
+    private DataSize maxTotalSize = DataSize.ofGigabytes(10);
+}
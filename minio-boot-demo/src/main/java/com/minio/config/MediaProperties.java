@@ -0,0 +1,87 @@
+package com.minio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 视频合并之后的处理配置，处理在后台线程中执行，不影响合并接口的响应时间
+ *
+ * @author lyf
+ * @since 2023-04-27
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "minio.media")
+public class MediaProperties {
+    /**
+     * 是否开启合并之后的处理
+     */
+    private boolean enabled = true;
+
+    /**
+     * 同时处理的视频数
+     */
+    private int threads = 2;
+
+    /**
+     * 是否在合并时把 moov 在文件末尾的 mp4 改写为 faststart（moov 在 mdat 之前），改写结果作为合并结果发布。
+     * 改写需要把整个文件再读写一遍，合并接口的耗时相应增加
+     */
+    private boolean faststart = false;
+
+    /**
+     * 封面和预览图的配置
+     */
+    private Preview preview = new Preview();
+
+    /**
+     * HLS 切片的配置
+     */
+    private Hls hls = new Hls();
+
+    @Data
+    public static class Preview {
+        /**
+         * 封面的最大宽度
+         */
+        private int posterWidth = 1280;
+
+        /**
+         * 预览图中每个缩略图的宽度
+         */
+        private int thumbWidth = 160;
+
+        /**
+         * 缩略图之间的最小时间间隔
+         */
+        private Duration minInterval = Duration.ofSeconds(2);
+
+        /**
+         * 一个视频最多生成的缩略图数量，视频较长时增大时间间隔
+         */
+        private int maxThumbs = 300;
+
+        /**
+         * 每张预览图中缩略图的列数和行数，与 ckplayer 的 preview.thumbnail 保持一致
+         */
+        private int columns = 10;
+
+        private int rows = 10;
+    }
+
+    @Data
+    public static class Hls {
+        /**
+         * 是否把 mp4 切分为 HLS 的 fMP4 分片
+         */
+        private boolean enabled = true;
+
+        /**
+         * 分片的目标时长，实际在目标时长之后的第一个关键帧处切分
+         */
+        private Duration segmentDuration = Duration.ofSeconds(6);
+    }
+}
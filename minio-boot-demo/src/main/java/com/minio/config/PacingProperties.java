@@ -0,0 +1,45 @@
+package com.minio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 视频播放的码率限速配置：每个连接开始时全速发送一段数据，之后按视频码率的倍数发送，
+ * 观看者中途离开时不会把整个文件都下载完
+ *
+ * @author lyf
+ * @since 2023-04-29
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "minio.pacing")
+public class PacingProperties {
+    /**
+     * 是否开启码率限速
+     */
+    private boolean enabled = false;
+
+    /**
+     * 每个连接开始时全速发送的数据量，按视频时长计算
+     */
+    private Duration initialBurst = Duration.ofSeconds(10);
+
+    /**
+     * 全速发送的最小数据量
+     */
+    private DataSize minBurst = DataSize.ofMegabytes(2);
+
+    /**
+     * 限速为视频平均码率的倍数
+     */
+    private double multiplier = 2.0;
+
+    /**
+     * 每个连接的最低速率，码率很低的视频也不会低于它
+     */
+    private DataSize minRate = DataSize.ofKilobytes(128);
+}
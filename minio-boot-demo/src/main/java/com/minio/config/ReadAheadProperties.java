@@ -0,0 +1,54 @@
+package com.minio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+
+/**
+ * 视频播放的预读配置：同一个观看者顺序读取视频时，提前从 MinIO 读取后面的数据块
+ *
+ * @author lyf
+ * @since 2023-04-28
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "minio.read-ahead")
+public class ReadAheadProperties {
+    /**
+     * 是否开启预读
+     */
+    private boolean enabled = true;
+
+    /**
+     * 数据块大小，按数据块对齐读取和缓存
+     */
+    private DataSize blockSize = DataSize.ofMegabytes(1);
+
+    /**
+     * 顺序读取时，在当前位置之后预读的数据块数
+     */
+    private int blocks = 4;
+
+    /**
+     * 所有观看者预读数据占用的内存上限，超过之后不再预读，只按需读取
+     */
+    private DataSize maxMemory = DataSize.ofMegabytes(256);
+
+    /**
+     * 预读线程数
+     */
+    private int threads = 8;
+
+    /**
+     * 观看者超过这个时间没有读取，丢弃预读的数据
+     */
+    private Duration idleTimeout = Duration.ofSeconds(30);
+
+    /**
+     * 等待一个数据块读取完成的最长时间
+     */
+    private Duration fetchTimeout = Duration.ofSeconds(30);
+}
@@ -0,0 +1,44 @@
+package com.minio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * 清理废弃上传的配置，执行间隔通过 minio.reaper.interval 配置在 @Scheduled 上
+ *
+ * @author lyf
+ * @since 2023-04-25
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "minio.reaper")
+public class ReaperProperties {
+    /**
+     * 是否开启定时清理
+     */
+    private boolean enabled = true;
+
+    /**
+     * 上传会话最后一个分片之后超过这个时间没有活动，视为废弃，与分片索引的过期时间保持一致
+     */
+    private Duration sessionTtl = Duration.ofDays(7);
+
+    /**
+     * 临时桶上生命周期规则的过期天数，由 MinIO 自己回收，0 表示不设置。
+     * 规则按对象的创建时间计算，必须比 sessionTtl 长，否则续传中的分片可能被提前删除
+     */
+    private int lifecycleDays = 14;
+
+    /**
+     * 每次清理最多处理的临时桶数量，剩下的留到下一次
+     */
+    private int batchSize = 200;
+
+    /**
+     * 同时删除的临时桶数量
+     */
+    private int parallelism = 4;
+}
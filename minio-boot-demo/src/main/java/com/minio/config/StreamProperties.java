@@ -0,0 +1,112 @@
+package com.minio.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * 对象流式下载（/object、/video/play）按 Content-Type 区分的策略
+ *
+ * @author lyf
+ * @since 2023-04-29
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "minio.stream")
+public class StreamProperties {
+    /**
+     * key 为 Content-Type，可以是 video/mp4 这样的具体类型，也可以是 video/* 这样的主类型，
+     * yaml 中需要写成 "[video/*]"
+     */
+    private Map<String, Policy> policies = defaultPolicies();
+
+    /**
+     * 没有匹配的策略时使用
+     */
+    private Policy defaultPolicy = new Policy(DataSize.ofKilobytes(32), "private, no-cache", false, false);
+
+    /**
+     * /object 允许访问的桶，为空时只允许默认桶。上传用的临时桶不应该出现在这里
+     */
+    private List<String> allowedBuckets = new ArrayList<>();
+
+    /**
+     * 浏览器会执行的类型，以附件的形式下载，不在应用的域名下直接打开，避免上传的 html、svg 成为存储型 XSS
+     */
+    private List<String> attachmentTypes = new ArrayList<>(Arrays.asList("text/html", "application/xhtml+xml",
+            "image/svg+xml", "text/xml", "application/xml", "text/javascript", "application/javascript",
+            "application/x-javascript", "text/ecmascript", "application/ecmascript", "application/x-shockwave-flash"));
+
+    /**
+     * 是否需要以附件的形式下载
+     *
+     * @param contentType Content-Type
+     * @return 是否为浏览器会执行的类型
+     */
+    public boolean isAttachment(String contentType) {
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim()
+                .toLowerCase(Locale.ENGLISH);
+        return attachmentTypes.contains(type);
+    }
+
+    /**
+     * 查找 Content-Type 对应的策略：先匹配具体类型，再匹配主类型，都没有时使用默认策略
+     *
+     * @param contentType Content-Type
+     * @return 策略
+     */
+    public Policy policyFor(String contentType) {
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim();
+        Policy policy = policies.get(type);
+        if (policy == null) {
+            int slash = type.indexOf('/');
+            policy = policies.get((slash < 0 ? type : type.substring(0, slash)) + "/*");
+        }
+        return policy == null ? defaultPolicy : policy;
+    }
+
+    private static Map<String, Policy> defaultPolicies() {
+        Map<String, Policy> policies = new LinkedHashMap<>();
+        policies.put("video/*", new Policy(DataSize.ofKilobytes(64), "private, max-age=3600", true, true));
+        policies.put("audio/*", new Policy(DataSize.ofKilobytes(16), "private, max-age=3600", true, false));
+        policies.put("image/*", new Policy(DataSize.ofKilobytes(8), "public, max-age=86400", false, false));
+        return policies;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Policy {
+        /**
+         * 从 MinIO 读取和写出响应时的缓冲区大小
+         */
+        private DataSize bufferSize = DataSize.ofKilobytes(32);
+
+        /**
+         * Cache-Control 响应头，为空时不设置
+         */
+        private String cacheControl;
+
+        /**
+         * 是否使用预读（minio.read-ahead）
+         */
+        private boolean readAhead;
+
+        /**
+         * 是否按码率限速（minio.pacing），只对 mp4 有效
+         */
+        private boolean pacing;
+    }
+}
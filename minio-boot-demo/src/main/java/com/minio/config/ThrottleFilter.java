@@ -0,0 +1,224 @@
+package com.minio.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.minio.core.MinioTemplate;
+import com.minio.entity.Result;
+import com.minio.entity.StatusCode;
+import com.minio.service.ThrottleService;
+import com.minio.service.ThrottleService.Permit;
+import com.minio.service.ThrottleService.ThrottleScope;
+import com.minio.util.ByteThrottle;
+import com.minio.util.ThrottledInputStream;
+import com.minio.util.ThrottledOutputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * 对上传、合并、视频播放和下载做并发数和带宽的限制，超过并发上限时直接返回429
+ * <p>
+ * 带宽限制作用在流式上传的请求体和视频播放的响应体上；multipart 上传由容器直接解析请求体，只做并发限制
+ *
+ * @author lyf
+ * @since 2023-04-23
+ */
+@Component
+public class ThrottleFilter extends OncePerRequestFilter {
+
+    private static final String VIDEO_PLAY_PREFIX = "/video/play/";
+
+    private static final String OBJECT_PREFIX = "/object/";
+
+    private static final String ARCHIVE_PREFIX = "/archive/";
+
+    /**
+     * 返回429时建议客户端等待的秒数，客户端在此基础上指数退避
+     */
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    @Autowired
+    private ThrottleProperties throttleProperties;
+
+    @Autowired
+    private ThrottleService throttleService;
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !throttleProperties.isEnabled() || resolveScope(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        ThrottleScope scope = resolveScope(request);
+        List<String> keys = throttleService.resolveKeys(request, resolveBucketName(request));
+        try (Permit permit = throttleService.tryAcquire(scope, keys)) {
+            if (permit == null) {
+                response.setCharacterEncoding(StandardCharsets.UTF_8.toString());
+                response.setContentType("application/json;charset=utf-8");
+                response.setStatus(429);
+                response.setHeader("Retry-After", RETRY_AFTER_SECONDS);
+                response.getWriter().write(objectMapper.writeValueAsString(Result.error(StatusCode.TOO_MANY_REQUESTS)));
+                return;
+            }
+            List<ByteThrottle> throttles = throttleService.bandwidth(scope, keys);
+            if (throttles.isEmpty()) {
+                filterChain.doFilter(request, response);
+            } else if (scope == ThrottleScope.UPLOAD) {
+                filterChain.doFilter(new ThrottledRequest(request, throttles), response);
+            } else {
+                filterChain.doFilter(request, new ThrottledResponse(response, throttles));
+            }
+        }
+    }
+
+    private ThrottleScope resolveScope(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (path.startsWith("/file/upload") || path.startsWith("/file/ingest")) {
+            return ThrottleScope.UPLOAD;
+        }
+        if (path.startsWith("/file/merge")) {
+            return ThrottleScope.MERGE;
+        }
+        if (path.startsWith(VIDEO_PLAY_PREFIX) || path.startsWith(OBJECT_PREFIX)
+                || path.startsWith(ARCHIVE_PREFIX)) {
+            return ThrottleScope.STREAM;
+        }
+        return null;
+    }
+
+    /**
+     * 视频播放和下载时为路径中的桶，上传和合并时为默认桶
+     */
+    private String resolveBucketName(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        String prefix = path.startsWith(VIDEO_PLAY_PREFIX) ? VIDEO_PLAY_PREFIX
+                : path.startsWith(OBJECT_PREFIX) ? OBJECT_PREFIX
+                : path.startsWith(ARCHIVE_PREFIX) ? ARCHIVE_PREFIX : null;
+        if (prefix != null) {
+            String rest = path.substring(prefix.length());
+            int index = rest.indexOf('/');
+            return index > 0 ? rest.substring(0, index) : rest;
+        }
+        return minioTemplate.getDefaultBucketName();
+    }
+
+    private static class ThrottledRequest extends HttpServletRequestWrapper {
+        private final List<ByteThrottle> throttles;
+
+        private ServletInputStream inputStream;
+
+        ThrottledRequest(HttpServletRequest request, List<ByteThrottle> throttles) {
+            super(request);
+            this.throttles = throttles;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (inputStream == null) {
+                ServletInputStream delegate = super.getInputStream();
+                InputStream throttled = new ThrottledInputStream(delegate, throttles);
+                inputStream = new ServletInputStream() {
+                    @Override
+                    public boolean isFinished() {
+                        return delegate.isFinished();
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setReadListener(ReadListener readListener) {
+                        delegate.setReadListener(readListener);
+                    }
+
+                    @Override
+                    public int read() throws IOException {
+                        return throttled.read();
+                    }
+
+                    @Override
+                    public int read(byte[] b, int off, int len) throws IOException {
+                        return throttled.read(b, off, len);
+                    }
+                };
+            }
+            return inputStream;
+        }
+    }
+
+    private static class ThrottledResponse extends HttpServletResponseWrapper {
+        private final List<ByteThrottle> throttles;
+
+        private ServletOutputStream outputStream;
+
+        ThrottledResponse(HttpServletResponse response, List<ByteThrottle> throttles) {
+            super(response);
+            this.throttles = throttles;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                ServletOutputStream delegate = super.getOutputStream();
+                OutputStream throttled = new ThrottledOutputStream(delegate, throttles);
+                outputStream = new ServletOutputStream() {
+                    @Override
+                    public boolean isReady() {
+                        return delegate.isReady();
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        delegate.setWriteListener(writeListener);
+                    }
+
+                    @Override
+                    public void write(int b) throws IOException {
+                        throttled.write(b);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        throttled.write(b, off, len);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        delegate.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        delegate.close();
+                    }
+                };
+            }
+            return outputStream;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.minio.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 上传、合并、视频播放的限流配置，所有限制都是针对单个 用户/桶/IP 的，在集群内通过 Redisson 共享
+ *
+ * @author lyf
+ * @since 2023-04-23
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "minio.throttle")
+public class ThrottleProperties {
+    /**
+     * 是否开启限流
+     */
+    private boolean enabled = false;
+
+    /**
+     * 限流的维度，可选 ip、user、bucket，每个维度单独计算配额
+     */
+    private List<String> dimensions = new ArrayList<>(Arrays.asList("ip", "user"));
+
+    /**
+     * 受信任的反向代理，IP 或者 CIDR。只有直接来自这些地址的请求才使用 X-Forwarded-For、X-Real-IP 中的客户端IP，
+     * 为空时总是使用连接的对端地址
+     */
+    private List<String> trustedProxies = new ArrayList<>();
+
+    /**
+     * 用户标识所在的请求头
+     */
+    private String userHeader = "X-User-Id";
+
+    /**
+     * 每个维度每秒可以上传的字节数
+     */
+    private DataSize uploadBandwidth = DataSize.ofMegabytes(20);
+
+    /**
+     * 每个维度每秒可以下载（视频播放）的字节数
+     */
+    private DataSize streamBandwidth = DataSize.ofMegabytes(50);
+
+    /**
+     * 每个维度同时上传的分片数
+     */
+    private int maxConcurrentUploads = 8;
+
+    /**
+     * 每个维度同时进行的合并数
+     */
+    private int maxConcurrentMerges = 2;
+
+    /**
+     * 每个维度同时播放的视频流数
+     */
+    private int maxConcurrentStreams = 16;
+
+    /**
+     * 并发许可的租期，请求持续期间每隔三分之一租期续期一次，节点宕机时许可在租期之后自动释放
+     */
+    private Duration leaseTime = Duration.ofMinutes(10);
+
+    /**
+     * 每次从 Redis 中批量领取的带宽配额，领到的配额在本地消费，减少访问 Redis 的次数
+     */
+    private DataSize localBatch = DataSize.ofKilobytes(256);
+
+    /**
+     * Redis 中限流 key 的过期时间，维度（IP、用户、桶）空闲超过这个时间后 key 自动删除；
+     * 并发许可的 key 不会短于两倍租期
+     */
+    private Duration keyIdleTime = Duration.ofHours(1);
+}
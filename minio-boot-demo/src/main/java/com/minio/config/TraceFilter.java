@@ -0,0 +1,47 @@
+package com.minio.config;
+
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * 为每个请求开启一个根 span，controller -> service -> MinioTemplate -> Redis 的 span 都挂在它下面
+ *
+ * @author lyf
+ * @since 2023-04-20
+ */
+@Component
+public class TraceFilter extends OncePerRequestFilter {
+
+    @Autowired
+    private OssTracer ossTracer;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        try (OssSpan span = ossTracer.startSpan("HTTP " + request.getMethod())) {
+            span.setAttribute("http.method", request.getMethod())
+                    .setAttribute("http.target", request.getRequestURI())
+                    .setAttribute("http.range", request.getHeader("Range"));
+            try {
+                filterChain.doFilter(request, response);
+            } catch (IOException | ServletException | RuntimeException e) {
+                span.recordException(e);
+                throw e;
+            } finally {
+                Object route = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+                span.setAttribute("http.route", route == null ? null : route.toString())
+                        .setAttribute("http.status_code", response.getStatus());
+            }
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.minio.controller;
+
+import com.minio.config.ArchiveProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.service.ArchiveService;
+import com.minio.util.BucketAccessUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * @author lyf
+ * @description: 按前缀打包下载，例如 /archive/{bucketName}?prefix=2023/04/，只允许 minio.archive.allowed-buckets 中的桶
+ * @version: v1.0
+ * @since 2023-04-30 14:30
+ */
+@RestController
+@Slf4j
+@RequestMapping(value = "/archive")
+@CrossOrigin
+public class ArchiveController {
+
+    @Autowired
+    private ArchiveService archiveService;
+
+    @Autowired
+    private ArchiveProperties archiveProperties;
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    /**
+     * 把前缀下的所有对象打包成 zip 输出
+     *
+     * @param response   响应对象
+     * @param bucketName 桶名
+     * @param prefix     对象名的前缀，为空时打包整个桶
+     */
+    @GetMapping(value = "/{bucketName}")
+    public void export(HttpServletResponse response,
+                       @PathVariable(value = "bucketName") String bucketName,
+                       @RequestParam(value = "prefix", required = false) String prefix) throws IOException {
+        if (!BucketAccessUtil.isAllowed(bucketName, archiveProperties.getAllowedBuckets(),
+                minioTemplate.getDefaultBucketName())) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        archiveService.export(response, bucketName, prefix);
+    }
+}
@@ -0,0 +1,47 @@
+package com.minio.controller;
+
+import com.minio.service.MediaService;
+import com.minio.util.PathUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * @author lyf
+ * @description: HLS 播放列表和分片，合并之后在后台生成，内容不会改变，响应可以被 CDN 和浏览器长期缓存
+ * @version: v1.0
+ * @since 2023-04-28 16:10
+ */
+@RestController
+@Slf4j
+@RequestMapping(value = "/hls")
+@CrossOrigin
+public class HlsController {
+
+    @Autowired
+    private MediaService mediaService;
+
+    /**
+     * 输出 HLS 文件，播放地址为 /hls/{bucketName}/{objectName}/index.m3u8，objectName 可以有多级，
+     * 最后一级为 index.m3u8、init.mp4 或者 seg-{n}.m4s，播放列表中使用相对路径引用 init.mp4 和 seg-{n}.m4s
+     *
+     * @param request    请求对象
+     * @param response   响应对象
+     * @param bucketName 视频所在桶的位置
+     */
+    @GetMapping(value = "/{bucketName}/**")
+    public void hls(HttpServletRequest request, HttpServletResponse response,
+                    @PathVariable(value = "bucketName") String bucketName) throws IOException {
+        String path = PathUtil.extractWildcardPath(request);
+        int index = path.lastIndexOf('/');
+        if (index <= 0) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        mediaService.writeHls(request, response, bucketName, path.substring(0, index), path.substring(index + 1));
+    }
+}
@@ -0,0 +1,49 @@
+package com.minio.controller;
+
+import com.minio.service.ImageService;
+import com.minio.util.PathUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * @author lyf
+ * @description: 图片的缩放和裁剪，例如 /image/{bucketName}/{objectName}?w=320&h=240&fit=cover&format=jpg
+ * @version: v1.0
+ * @since 2023-04-30 10:50
+ */
+@RestController
+@Slf4j
+@RequestMapping(value = "/image")
+@CrossOrigin
+public class ImageController {
+
+    @Autowired
+    private ImageService imageService;
+
+    /**
+     * 输出变换之后的图片
+     *
+     * @param request    请求对象
+     * @param response   响应对象
+     * @param bucketName 图片所在桶的位置，之后的路径都是图片的对象名，可以有多级
+     * @param width      目标宽度
+     * @param height     目标高度
+     * @param fit        缩放方式：contain（默认）、cover、fill
+     * @param format     输出格式：jpg 或 png
+     * @param quality    JPEG 质量，1-100
+     */
+    @GetMapping(value = "/{bucketName}/**")
+    public void image(HttpServletRequest request, HttpServletResponse response,
+                      @PathVariable(value = "bucketName") String bucketName,
+                      @RequestParam(value = "w", required = false) Integer width,
+                      @RequestParam(value = "h", required = false) Integer height,
+                      @RequestParam(value = "fit", required = false) String fit,
+                      @RequestParam(value = "format", required = false) String format,
+                      @RequestParam(value = "q", required = false) Integer quality) {
+        imageService.writeImage(request, response, bucketName, PathUtil.extractWildcardPath(request), width, height, fit, format, quality);
+    }
+}
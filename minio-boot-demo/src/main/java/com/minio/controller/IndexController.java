@@ -0,0 +1,58 @@
+package com.minio.controller;
+
+import com.minio.service.ObjectIndexService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @description: 基于本地对象索引的列举和查询，例如 /index/{bucketName}?prefix=files/&contentType=video/
+ * @version: v1.0
+ * @since 2023-05-02 11:20
+ */
+@RestController
+@Slf4j
+@RequestMapping(value = "/index")
+@CrossOrigin
+public class IndexController {
+
+    @Autowired
+    private ObjectIndexService objectIndexService;
+
+    /**
+     * 按前缀和属性查询对象，按对象名分页
+     *
+     * @param bucketName  桶名
+     * @param prefix      对象名的前缀
+     * @param startAfter  上一页返回的 nextStartAfter
+     * @param contentType 对象类型的前缀
+     * @param minSize     最小大小
+     * @param maxSize     最大大小
+     * @param limit       每页数量
+     * @return 对象列表
+     */
+    @GetMapping(value = "/{bucketName}")
+    public Map<String, Object> search(@PathVariable(value = "bucketName") String bucketName,
+                                      @RequestParam(value = "prefix", required = false) String prefix,
+                                      @RequestParam(value = "startAfter", required = false) String startAfter,
+                                      @RequestParam(value = "contentType", required = false) String contentType,
+                                      @RequestParam(value = "minSize", required = false) Long minSize,
+                                      @RequestParam(value = "maxSize", required = false) Long maxSize,
+                                      @RequestParam(value = "limit", defaultValue = "1000") int limit) {
+        return objectIndexService.search(bucketName, prefix, startAfter, contentType, minSize, maxSize, limit);
+    }
+
+    /**
+     * 重建一个桶的索引，有其他客户端写入这个桶之后使用
+     *
+     * @param bucketName 桶名
+     * @return 重建后的对象数
+     */
+    @PostMapping(value = "/{bucketName}/rebuild")
+    public Map<String, Object> rebuild(@PathVariable(value = "bucketName") String bucketName) {
+        return objectIndexService.rebuild(bucketName);
+    }
+}
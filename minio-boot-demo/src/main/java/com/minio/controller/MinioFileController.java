@@ -1,8 +1,10 @@
 package com.minio.controller;
 
+import com.minio.service.IngestService;
 import com.minio.service.MinioService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.ModelAndView;
 
@@ -23,6 +25,9 @@ public class MinioFileController {
    @Autowired
    private MinioService minioService;
 
+   @Autowired
+   private IngestService ingestService;
+
     @RequestMapping(value = "/home")
     public ModelAndView homeUpload() {
         ModelAndView modelAndView = new ModelAndView();
@@ -33,7 +38,7 @@ public class MinioFileController {
     /**
      * 根据文件大小和文件的md5校验文件是否存在
      * 暂时使用Redis实现，后续需要存入数据库
-     * 实现秒传接口
+     * 实现秒传接口，文件不存在时返回已上传的分片序号（chunks），用于断点续传
      *
      * @param md5 文件的md5
      * @return 操作是否成功
@@ -44,6 +49,19 @@ public class MinioFileController {
     }
 
 
+    /**
+     * 初始化上传会话，返回服务端建议的分片大小
+     *
+     * @param md5      文件的md5
+     * @param fileName 文件名
+     * @param fileSize 文件大小
+     * @return 分片大小、分片数以及已上传的分片序号
+     */
+    @GetMapping(value = "/init")
+    public Map<String, Object> init(String md5, String fileName, Long fileSize, HttpServletRequest req) {
+        return minioService.uploadInit(md5, fileName, fileSize, req);
+    }
+
     /**
      * 文件上传，适合大文件，集成了分片上传
      */
@@ -53,6 +71,23 @@ public class MinioFileController {
 
     }
 
+    /**
+     * 流式分片上传，请求体为分片的原始字节，不经过 multipart 解析
+     */
+    @PostMapping(value = "/upload/stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public Map<String, Object> uploadStream(HttpServletRequest req) {
+        return minioService.uploadStream(req);
+    }
+
+    /**
+     * 批量导入，请求体为 zip、tar 或 tar.gz 包，返回每个文件的导入结果
+     */
+    @PostMapping(value = "/ingest", consumes = {MediaType.APPLICATION_OCTET_STREAM_VALUE, "application/zip",
+            "application/x-tar", "application/gzip"})
+    public Map<String, Object> ingest(HttpServletRequest req) {
+        return ingestService.ingest(req);
+    }
+
     /**
      * 文件合并
      *
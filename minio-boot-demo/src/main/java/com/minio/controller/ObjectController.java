@@ -0,0 +1,54 @@
+package com.minio.controller;
+
+import com.minio.config.StreamProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.service.ObjectStreamService;
+import com.minio.util.BucketAccessUtil;
+import com.minio.util.PathUtil;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.*;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * @author lyf
+ * @description: 任意类型对象的流式下载，支持 Range 断点续传和 HEAD，只允许访问 minio.stream.allowed-buckets 中的桶
+ * @version: v1.0
+ * @since 2023-04-29 14:30
+ */
+@RestController
+@Slf4j
+@RequestMapping(value = "/object")
+@CrossOrigin
+public class ObjectController {
+
+    @Autowired
+    private ObjectStreamService objectStreamService;
+
+    @Autowired
+    private StreamProperties streamProperties;
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    /**
+     * 下载对象，HEAD 请求只返回 Content-Length、Content-Type 等响应头
+     *
+     * @param request    请求对象
+     * @param response   响应对象
+     * @param bucketName 对象所在的桶，之后的路径都是对象名，可以有多级，例如 files/2023-04-30/uuid_name.zip
+     */
+    @RequestMapping(value = "/{bucketName}/**", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void object(HttpServletRequest request, HttpServletResponse response,
+                       @PathVariable(value = "bucketName") String bucketName) throws IOException {
+        if (!BucketAccessUtil.isAllowed(bucketName, streamProperties.getAllowedBuckets(),
+                minioTemplate.getDefaultBucketName())) {
+            response.sendError(HttpServletResponse.SC_FORBIDDEN);
+            return;
+        }
+        objectStreamService.stream(request, response, bucketName, PathUtil.extractWildcardPath(request));
+    }
+}
@@ -1,6 +1,8 @@
 package com.minio.controller;
 
+import com.minio.service.MediaService;
 import com.minio.service.MinioService;
+import com.minio.util.PathUtil;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.*;
@@ -8,6 +10,7 @@ import org.springframework.web.servlet.ModelAndView;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 
 /**
  * @author lyf
@@ -24,28 +27,51 @@ public class VideoController {
     @Autowired
     private MinioService minioService;
 
+    @Autowired
+    private MediaService mediaService;
+
     /**
      * 支持分段读取视频流
      *
      * @param request    请求对象
      * @param response   响应对象
-     * @param bucketName 视频所在桶的位置
-     * @param objectName 视频的文件名
+     * @param bucketName 视频所在桶的位置，之后的路径都是视频的对象名，可以有多级
      */
-    @GetMapping(value = "/play/{bucketName}/{objectName}")
+    @GetMapping(value = "/play/{bucketName}/**")
     public void videoPlay(HttpServletRequest request, HttpServletResponse response,
-                                  @PathVariable(value = "bucketName") String bucketName,
-                                  @PathVariable(value = "objectName") String objectName) {
-        minioService.videoPlay(request, response, bucketName, objectName);
+                                  @PathVariable(value = "bucketName") String bucketName) {
+        minioService.videoPlay(request, response, bucketName, PathUtil.extractWildcardPath(request));
+    }
+
+    /**
+     * 视频的封面和预览图
+     *
+     * @param request    请求对象
+     * @param response   响应对象
+     * @param bucketName 视频所在桶的位置，之后是视频的对象名（可以有多级），最后一级为 poster.jpg 或者 sprite-{n}.jpg
+     */
+    @GetMapping(value = "/preview/{bucketName}/**")
+    public void videoPreview(HttpServletRequest request, HttpServletResponse response,
+                             @PathVariable(value = "bucketName") String bucketName) throws IOException {
+        String path = PathUtil.extractWildcardPath(request);
+        int index = path.lastIndexOf('/');
+        if (index <= 0) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        mediaService.writePreview(request, response, bucketName, path.substring(0, index), path.substring(index + 1));
     }
 
-    @RequestMapping(value = "/home/{bucketName}/{objectName}")
-    public ModelAndView videoHome( @PathVariable(value = "bucketName") String bucketName,
-                                   @PathVariable(value = "objectName") String objectName) {
+    @RequestMapping(value = "/home/{bucketName}/**")
+    public ModelAndView videoHome(HttpServletRequest request,
+                                  @PathVariable(value = "bucketName") String bucketName) {
+        String objectName = PathUtil.extractWildcardPath(request);
         ModelAndView modelAndView = new ModelAndView();
 
         modelAndView.addObject("bucketName", bucketName);
         modelAndView.addObject("objectName", objectName);
+        modelAndView.addObject("preview", mediaService.getPreview(bucketName, objectName));
+        modelAndView.addObject("hls", mediaService.getHls(bucketName, objectName));
         modelAndView.setViewName("video");
         return modelAndView;
     }
@@ -23,4 +23,5 @@ public class MinioObject {
     private long size;
     private boolean deleteMarker;
     private Map<String, String> userMetadata;
+    private String contentType;
 }
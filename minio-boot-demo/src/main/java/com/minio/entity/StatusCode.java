@@ -11,11 +11,16 @@ import lombok.Getter;
 public enum StatusCode {
     SUCCESS(20000, "操作成功"),
     PARAM_ERROR(40000, "参数异常"),
+    FORBIDDEN(40003, "没有访问权限"),
     NOT_FOUND(40004, "资源不存在"),
+    CHECKSUM_ERROR(40009, "分片校验失败"),
+    PAYLOAD_TOO_LARGE(40013, "上传内容超过限制"),
+    TOO_MANY_REQUESTS(40029, "请求过于频繁，请稍后再试"),
     FAILURE(50000, "系统异常"),
     CUSTOM_FAILURE(50001, "自定义异常错误"),
     ALONE_CHUNK_UPLOAD_SUCCESS(20001, "分片上传成功的标识"),
-    ALL_CHUNK_UPLOAD_SUCCESS(20002, "所有的分片均上传成功");
+    ALL_CHUNK_UPLOAD_SUCCESS(20002, "所有的分片均上传成功"),
+    MERGING(20003, "文件正在合并中，请稍后查询");
 
     @Getter
     private final Integer code;
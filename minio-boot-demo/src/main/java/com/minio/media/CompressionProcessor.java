@@ -0,0 +1,143 @@
+package com.minio.media;
+
+import com.minio.config.CompressionProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.util.FileTypeUtil;
+import com.minio.util.GzipCompressingInputStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ObjectUtils;
+
+import javax.annotation.Resource;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname CompressionProcessor
+ * @description 为文本类的对象（JSON、CSV、日志、SVG 等）生成 gzip 压缩的副本 {objectName}.gz，
+ * 边读边压缩边上传，不在内存或磁盘中暂存整个对象。类型通过 FileTypeUtil 从文件开头的内容检测
+ * @since 2023/4/29 15:40
+ */
+@Slf4j
+@Component
+@Order(400)
+public class CompressionProcessor implements MediaProcessor {
+
+    /**
+     * 压缩副本的元数据，field 为 桶名:对象名
+     */
+    public static final String COMPRESSED_KEY = "com:minio:media:compressed";
+
+    /**
+     * 派生结果的元数据中记录的原对象 ETag
+     */
+    public static final String SOURCE_ETAG = "sourceEtag";
+
+    public static final String GZIP_SUFFIX = ".gz";
+
+    public static final String GZIP_ENCODING = "gzip";
+
+    public static final String GZIP_CONTENT_TYPE = "application/gzip";
+
+    /**
+     * 检测类型时读取的字节数
+     */
+    private static final int DETECT_SIZE = 8 * 1024;
+
+    /**
+     * 上传压缩副本时的分片大小
+     */
+    private static final long PART_SIZE = 5L * 1024 * 1024;
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Resource(name = "jsonRedisTemplate")
+    private RedisTemplate<String, Serializable> redisTemplate;
+
+    @Autowired
+    private CompressionProperties compressionProperties;
+
+    @Override
+    public boolean supports(MediaContext context) {
+        return compressionProperties.isEnabled() && !context.isMp4();
+    }
+
+    @Override
+    public void process(MediaContext context) throws Exception {
+        String bucketName = context.getBucketName();
+        String objectName = context.getObjectName();
+        long size = context.getSize();
+        if (size < compressionProperties.getMinSize().toBytes()) {
+            return;
+        }
+        String contentType;
+        try (InputStream inputStream = minioTemplate.getObject(bucketName, objectName, 0L, Math.min(size, DETECT_SIZE))) {
+            contentType = FileTypeUtil.getFileMimeType(inputStream, objectName, size);
+        }
+        if (!isCompressible(contentType)) {
+            return;
+        }
+
+        String gzipObjectName = objectName + GZIP_SUFFIX;
+        try (InputStream inputStream = new GzipCompressingInputStream(minioTemplate.getObject(bucketName, objectName),
+                compressionProperties.getLevel())) {
+            minioTemplate.putObjectUnknownSize(inputStream, bucketName, gzipObjectName, GZIP_CONTENT_TYPE, PART_SIZE);
+        }
+        long compressedSize = minioTemplate.getObjectInfo(bucketName, gzipObjectName).size();
+        if (compressedSize > size * compressionProperties.getMaxRatio()) {
+            log.info("{}/{} 压缩后 {} -> {} 字节，不保留压缩副本", bucketName, objectName, size, compressedSize);
+            minioTemplate.deleteObject(bucketName, gzipObjectName);
+            return;
+        }
+
+        HashMap<String, Object> meta = new HashMap<>();
+        meta.put("object", gzipObjectName);
+        meta.put("encoding", GZIP_ENCODING);
+        meta.put("size", compressedSize);
+        meta.put("contentType", contentType);
+        meta.put(SOURCE_ETAG, context.getEtag());
+        redisTemplate.boundHashOps(COMPRESSED_KEY).put(bucketName + ":" + objectName, meta);
+        log.info("{}/{} 压缩后 {} -> {} 字节", bucketName, objectName, size, compressedSize);
+    }
+
+    /**
+     * 是否为需要压缩的类型
+     *
+     * @param contentType Content-Type，可以带参数
+     * @return 是否压缩
+     */
+    public boolean isCompressible(String contentType) {
+        if (!compressionProperties.isEnabled() || ObjectUtils.isEmpty(contentType)) {
+            return false;
+        }
+        int semicolon = contentType.indexOf(';');
+        String type = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase(Locale.ENGLISH);
+        for (String pattern : compressionProperties.getTypes()) {
+            if (pattern.endsWith("/*") ? type.startsWith(pattern.substring(0, pattern.length() - 1)) : type.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 查询压缩副本
+     *
+     * @param bucketName 桶名
+     * @param objectName 原对象名
+     * @return 压缩副本的元数据，没有时为 null
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getVariant(String bucketName, String objectName) {
+        return (Map<String, Object>) redisTemplate.boundHashOps(COMPRESSED_KEY).get(bucketName + ":" + objectName);
+    }
+}
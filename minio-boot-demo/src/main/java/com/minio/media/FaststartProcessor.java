@@ -0,0 +1,145 @@
+package com.minio.media;
+
+import com.minio.config.MediaProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.media.mp4.Mp4Faststart;
+import com.minio.service.ObjectCacheService;
+import io.minio.ComposeSource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.input.BoundedInputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname FaststartProcessor
+ * @description 合并时把 moov 在文件末尾的 mp4 改写为 moov 在前，在写入md5列表、返回url之前执行。
+ * 改写结果流式写入一个新的对象，原对象不变，改写失败时合并结果仍然是原对象；已经发布的对象不会再被改写。
+ * 超过 {@link #PART_SIZE} 的视频按分段上传后再合并，不受单次 PUT 5GiB 的限制。
+ * md5列表中仍然是客户端上传的原始文件的md5，相同的文件可以秒传；
+ * 写入之前标记为应用自己的写入，桶通知的监听器不会因为内容的md5不同而移除这条记录
+ * @since 2023/4/28 10:00
+ */
+@Slf4j
+@Component
+public class FaststartProcessor {
+
+    /**
+     * 改写结果超过这个大小时分段上传，再合并为一个对象
+     */
+    static final long PART_SIZE = 1024L * 1024 * 1024;
+
+    private static final String PART_FOLDER_SUFFIX = ".faststart/";
+
+    private static final String VIDEO_MP4 = "video/mp4";
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Autowired
+    private ObjectCacheService objectCacheService;
+
+    @Autowired
+    private MediaProperties mediaProperties;
+
+    /**
+     * 是否需要在合并时尝试改写
+     *
+     * @param fileType 文件类型
+     * @return 开启了 faststart 并且是 mp4
+     */
+    public boolean supports(String fileType) {
+        return mediaProperties.isFaststart() && MediaContext.isMp4(fileType);
+    }
+
+    /**
+     * 把对象改写为 faststart，写入新的对象
+     *
+     * @param bucketName       桶名
+     * @param objectName       原对象名，不会被修改
+     * @param fileType         文件类型
+     * @param targetObjectName 改写结果的对象名
+     * @return 是否写入了改写结果，已经是 faststart 时返回 false
+     * @throws Exception 解析或者写入失败，已经写入的部分会被删除
+     */
+    public boolean rewrite(String bucketName, String objectName, String fileType, String targetObjectName)
+            throws Exception {
+        MediaContext context = new MediaContext(minioTemplate, bucketName, objectName, fileType);
+        Mp4Faststart.Layout layout = Mp4Faststart.plan(context.getMovie());
+        if (layout == null) {
+            return false;
+        }
+        objectCacheService.markSelfWrite(bucketName, targetObjectName);
+        try (InputStream inputStream = new SequenceInputStream(segments(bucketName, objectName, layout))) {
+            if (layout.getSize() <= PART_SIZE) {
+                minioTemplate.putObjectStreaming(inputStream, layout.getSize(), bucketName, targetObjectName, VIDEO_MP4);
+            } else {
+                putInParts(inputStream, layout.getSize(), bucketName, targetObjectName);
+            }
+        }
+        log.info("{}/{} 已改写为 faststart：{}", bucketName, objectName, targetObjectName);
+        return true;
+    }
+
+    /**
+     * 每 {@link #PART_SIZE} 字节上传为一个临时对象，全部上传之后在服务端合并，最后删除临时对象
+     */
+    private void putInParts(InputStream inputStream, long size, String bucketName, String objectName) {
+        String partFolder = objectName + PART_FOLDER_SUFFIX;
+        List<ComposeSource> sources = new ArrayList<>();
+        try {
+            for (long offset = 0; offset < size; offset += PART_SIZE) {
+                long partSize = Math.min(PART_SIZE, size - offset);
+                String partName = partFolder + sources.size();
+                BoundedInputStream part = new BoundedInputStream(inputStream, partSize);
+                part.setPropagateClose(false);
+                minioTemplate.putObjectStreaming(part, partSize, bucketName, partName, VIDEO_MP4);
+                sources.add(ComposeSource.builder().bucket(bucketName).object(partName).build());
+            }
+            minioTemplate.composeObject(sources, bucketName, objectName);
+        } finally {
+            for (ComposeSource source : sources) {
+                try {
+                    minioTemplate.deleteObject(bucketName, source.object());
+                } catch (Exception e) {
+                    log.warn("删除 faststart 的临时分段 {}/{} 失败", bucketName, source.object(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 用到时才打开下一段的范围读取
+     */
+    private Enumeration<InputStream> segments(String bucketName, String objectName, Mp4Faststart.Layout layout) {
+        Iterator<Mp4Faststart.Segment> segments = layout.getSegments().iterator();
+        return new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return segments.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                Mp4Faststart.Segment segment = segments.next();
+                ByteBuffer data = segment.getData();
+                if (data != null) {
+                    byte[] bytes = new byte[data.remaining()];
+                    data.get(bytes);
+                    return new ByteArrayInputStream(bytes);
+                }
+                return minioTemplate.getObject(bucketName, objectName, segment.getOffset(), segment.getLength());
+            }
+        };
+    }
+}
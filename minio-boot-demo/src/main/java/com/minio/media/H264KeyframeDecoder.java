@@ -0,0 +1,94 @@
+package com.minio.media;
+
+import com.minio.media.mp4.AvcConfig;
+import com.minio.media.mp4.Mp4Track;
+import com.minio.media.mp4.RangeReader;
+import org.jcodec.codecs.h264.H264Decoder;
+import org.jcodec.codecs.h264.io.model.SeqParameterSet;
+import org.jcodec.common.model.ColorSpace;
+import org.jcodec.common.model.Picture;
+import org.jcodec.scale.AWTUtil;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname H264KeyframeDecoder
+ * @description 只解码 H.264 的关键帧：按 stco/stsz 算出的位置读取一个样本，交给 jcodec 解码，不需要下载整个视频
+ * @since 2023/4/27 10:30
+ */
+public class H264KeyframeDecoder {
+
+    private final Mp4Track track;
+
+    private final RangeReader reader;
+
+    private final int width;
+
+    private final int height;
+
+    public H264KeyframeDecoder(Mp4Track track, RangeReader reader) throws IOException {
+        AvcConfig avcConfig = track.getAvcConfig();
+        if (avcConfig == null || avcConfig.getSps().isEmpty()) {
+            throw new IOException("不支持的视频编码: " + track.getSampleEntryType());
+        }
+        SeqParameterSet sps = SeqParameterSet.read(withoutNalHeader(avcConfig.getSps()).get(0));
+        if (sps.bitDepthLumaMinus8 != 0) {
+            throw new IOException("不支持高位深的视频");
+        }
+        this.track = track;
+        this.reader = reader;
+        this.width = (sps.picWidthInMbsMinus1 + 1) * 16;
+        this.height = SeqParameterSet.getPicHeightInMbs(sps) * 16;
+    }
+
+    /**
+     * 解码一个关键帧
+     *
+     * @param sample 关键帧的样本序号，从0开始
+     * @return 图像
+     * @throws IOException 读取或者解码失败
+     */
+    public BufferedImage decode(int sample) throws IOException {
+        if (!track.isSyncSample(sample)) {
+            throw new IOException("样本 " + sample + " 不是关键帧");
+        }
+        AvcConfig avcConfig = track.getAvcConfig();
+        ByteBuffer data = ByteBuffer.wrap(reader.read(track.getSampleOffset(sample), track.getSampleSize(sample)));
+        List<ByteBuffer> nals = avcConfig.splitNals(data);
+
+        // 每次使用新的解码器，关键帧之间没有依赖
+        H264Decoder decoder = new H264Decoder();
+        decoder.addSps(withoutNalHeader(avcConfig.getSps()));
+        decoder.addPps(withoutNalHeader(avcConfig.getPps()));
+        byte[][] buffer = Picture.create(width, height, ColorSpace.YUV420J).getData();
+        Picture picture;
+        try {
+            picture = decoder.decodeFrameFromNals(nals, buffer);
+        } catch (RuntimeException e) {
+            throw new IOException("解码样本 " + sample + " 失败", e);
+        }
+        if (picture == null) {
+            throw new IOException("解码样本 " + sample + " 失败");
+        }
+        return AWTUtil.toBufferedImage(picture);
+    }
+
+    /**
+     * avcC 中的 SPS/PPS 包含一个字节的 NAL 头，jcodec 需要去掉它
+     */
+    private static List<ByteBuffer> withoutNalHeader(List<ByteBuffer> parameterSets) {
+        List<ByteBuffer> result = new ArrayList<>(parameterSets.size());
+        for (ByteBuffer parameterSet : parameterSets) {
+            ByteBuffer duplicate = parameterSet.duplicate();
+            duplicate.get();
+            result.add(duplicate.slice());
+        }
+        return result;
+    }
+}
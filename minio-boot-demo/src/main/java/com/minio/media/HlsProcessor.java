@@ -0,0 +1,144 @@
+package com.minio.media;
+
+import com.minio.config.MediaProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.media.mp4.Fmp4Segmenter;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.ByteArrayInputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname HlsProcessor
+ * @description 把 mp4 在关键帧处切分为 HLS 的 fMP4 分片，和视频放在同一个桶中：
+ * {objectName}.hls/index.m3u8、{objectName}.hls/init.mp4、{objectName}.hls/seg-0.m4s。
+ * 每次只在内存中生成一个分片，分片的内容不会改变，播放时可以被 CDN 和浏览器一直缓存
+ * @since 2023/4/28 15:30
+ */
+@Slf4j
+@Component
+@Order(300)
+public class HlsProcessor implements MediaProcessor {
+
+    /**
+     * HLS 的元数据，field 为 桶名:对象名
+     */
+    public static final String HLS_KEY = "com:minio:media:hls";
+
+    /**
+     * 分片所在目录的后缀
+     */
+    public static final String HLS_FOLDER_SUFFIX = ".hls/";
+
+    public static final String PLAYLIST_FILE = "index.m3u8";
+
+    public static final String INIT_FILE = "init.mp4";
+
+    public static final String SEGMENT_FILE_PREFIX = "seg-";
+
+    public static final String SEGMENT_FILE_SUFFIX = ".m4s";
+
+    public static final String PLAYLIST_CONTENT_TYPE = "application/vnd.apple.mpegurl";
+
+    public static final String INIT_CONTENT_TYPE = "video/mp4";
+
+    public static final String SEGMENT_CONTENT_TYPE = "video/iso.segment";
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Resource(name = "jsonRedisTemplate")
+    private RedisTemplate<String, Serializable> redisTemplate;
+
+    @Autowired
+    private MediaProperties mediaProperties;
+
+    @Autowired
+    private OssTracer ossTracer;
+
+    @Override
+    public boolean supports(MediaContext context) {
+        return mediaProperties.getHls().isEnabled() && context.isMp4();
+    }
+
+    @Override
+    public void process(MediaContext context) throws Exception {
+        MediaProperties.Hls hls = mediaProperties.getHls();
+        Fmp4Segmenter segmenter = Fmp4Segmenter.create(context.getMovie(),
+                hls.getSegmentDuration().toMillis() / 1000.0);
+        if (segmenter == null) {
+            log.info("{}/{} 没有可以切分的音视频轨道，跳过生成 HLS", context.getBucketName(), context.getObjectName());
+            return;
+        }
+        String bucketName = context.getBucketName();
+        String folder = context.getObjectName() + HLS_FOLDER_SUFFIX;
+
+        upload(bucketName, folder + INIT_FILE, segmenter.initSegment(), INIT_CONTENT_TYPE);
+        try (OssSpan span = ossTracer.startSpan("media.hls.segments")) {
+            span.setAttribute("media.segments", segmenter.getSegments().size());
+            for (Fmp4Segmenter.Segment segment : segmenter.getSegments()) {
+                upload(bucketName, folder + SEGMENT_FILE_PREFIX + segment.getIndex() + SEGMENT_FILE_SUFFIX,
+                        segmenter.mediaSegment(segment, context.getReader()), SEGMENT_CONTENT_TYPE);
+            }
+        }
+        // 分片都上传之后再上传播放列表，播放列表存在时引用的分片一定存在
+        upload(bucketName, folder + PLAYLIST_FILE, playlist(segmenter).getBytes(StandardCharsets.UTF_8),
+                PLAYLIST_CONTENT_TYPE);
+
+        HashMap<String, Object> meta = new HashMap<>();
+        meta.put("playlist", PLAYLIST_FILE);
+        meta.put("segments", segmenter.getSegments().size());
+        meta.put("targetDuration", targetDuration(segmenter));
+        meta.put(CompressionProcessor.SOURCE_ETAG, context.getEtag());
+        redisTemplate.boundHashOps(HLS_KEY).put(bucketName + ":" + context.getObjectName(), meta);
+        log.info("{}/{} 切分为 {} 个 HLS 分片", bucketName, context.getObjectName(), segmenter.getSegments().size());
+    }
+
+    /**
+     * 生成点播的媒体播放列表
+     */
+    static String playlist(Fmp4Segmenter segmenter) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("#EXTM3U\n");
+        builder.append("#EXT-X-VERSION:7\n");
+        builder.append("#EXT-X-TARGETDURATION:").append(targetDuration(segmenter)).append('\n');
+        builder.append("#EXT-X-MEDIA-SEQUENCE:0\n");
+        builder.append("#EXT-X-PLAYLIST-TYPE:VOD\n");
+        builder.append("#EXT-X-INDEPENDENT-SEGMENTS\n");
+        builder.append("#EXT-X-MAP:URI=\"").append(INIT_FILE).append("\"\n");
+        for (Fmp4Segmenter.Segment segment : segmenter.getSegments()) {
+            builder.append(String.format(Locale.ROOT, "#EXTINF:%.3f,\n", segment.getDurationSeconds()));
+            builder.append(SEGMENT_FILE_PREFIX).append(segment.getIndex()).append(SEGMENT_FILE_SUFFIX).append('\n');
+        }
+        builder.append("#EXT-X-ENDLIST\n");
+        return builder.toString();
+    }
+
+    /**
+     * EXT-X-TARGETDURATION：最长分片的时长向上取整
+     */
+    private static long targetDuration(Fmp4Segmenter segmenter) {
+        double max = 0;
+        for (Fmp4Segmenter.Segment segment : segmenter.getSegments()) {
+            max = Math.max(max, segment.getDurationSeconds());
+        }
+        return (long) Math.ceil(max);
+    }
+
+    private void upload(String bucketName, String objectName, byte[] bytes, String contentType) {
+        minioTemplate.putObjectStreaming(new ByteArrayInputStream(bytes), bytes.length, bucketName, objectName,
+                contentType);
+    }
+}
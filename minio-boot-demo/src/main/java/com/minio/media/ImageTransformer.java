@@ -0,0 +1,167 @@
+package com.minio.media;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Locale;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ImageTransformer
+ * @description 纯 Java 的图片缩放、裁剪和重新编码，只使用 JDK 自带的 ImageIO 编解码器（JPEG、PNG、GIF、BMP）。
+ * 缩小时每次最多缩小一半，多次双线性插值，效果接近高质量的缩放而速度快得多
+ * @since 2023/4/30 10:00
+ */
+public final class ImageTransformer {
+
+    /**
+     * 缩放方式
+     */
+    public enum Fit {
+        /**
+         * 等比例缩放到宽高之内
+         */
+        CONTAIN,
+        /**
+         * 等比例缩放到覆盖宽高，再居中裁剪
+         */
+        COVER,
+        /**
+         * 拉伸到指定宽高
+         */
+        FILL
+    }
+
+    private ImageTransformer() {
+    }
+
+    /**
+     * 变换图片
+     *
+     * @param inputStream     原图
+     * @param width           目标宽度，0 表示按高度等比例计算
+     * @param height          目标高度，0 表示按宽度等比例计算
+     * @param fit             缩放方式
+     * @param format          输出格式，jpg 或 png
+     * @param quality         JPEG 质量，1-100
+     * @param maxSourcePixels 原图的最大像素数
+     * @return 编码后的图片
+     * @throws IOException 不是支持的图片格式或者原图太大
+     */
+    public static byte[] transform(InputStream inputStream, int width, int height, Fit fit, String format,
+                                   int quality, long maxSourcePixels) throws IOException {
+        BufferedImage source = read(inputStream, maxSourcePixels);
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        if (width <= 0) {
+            width = Math.max(1, Math.round((float) height * sourceWidth / sourceHeight));
+        }
+        if (height <= 0) {
+            height = Math.max(1, Math.round((float) width * sourceHeight / sourceWidth));
+        }
+
+        BufferedImage result;
+        if (fit == Fit.FILL) {
+            result = scale(source, width, height);
+        } else if (fit == Fit.COVER) {
+            double ratio = Math.max((double) width / sourceWidth, (double) height / sourceHeight);
+            BufferedImage scaled = scale(source, Math.max(width, (int) Math.round(sourceWidth * ratio)),
+                    Math.max(height, (int) Math.round(sourceHeight * ratio)));
+            result = scaled.getSubimage((scaled.getWidth() - width) / 2, (scaled.getHeight() - height) / 2,
+                    width, height);
+        } else {
+            double ratio = Math.min((double) width / sourceWidth, (double) height / sourceHeight);
+            result = scale(source, Math.max(1, (int) Math.round(sourceWidth * ratio)),
+                    Math.max(1, (int) Math.round(sourceHeight * ratio)));
+        }
+        return write(result, format, quality);
+    }
+
+    /**
+     * 解码图片，解码前先读取宽高，超过像素数上限时不解码
+     */
+    private static BufferedImage read(InputStream inputStream, long maxSourcePixels) throws IOException {
+        try (ImageInputStream imageInputStream = ImageIO.createImageInputStream(inputStream)) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageInputStream);
+            if (imageInputStream == null || !readers.hasNext()) {
+                throw new IOException("不支持的图片格式");
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageInputStream, true, true);
+                long pixels = (long) reader.getWidth(0) * reader.getHeight(0);
+                if (pixels > maxSourcePixels) {
+                    throw new IOException("图片太大: " + reader.getWidth(0) + "x" + reader.getHeight(0));
+                }
+                return reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage current = image;
+        int currentWidth = image.getWidth();
+        int currentHeight = image.getHeight();
+        do {
+            // 每次最多缩小一半，放大时一步完成
+            currentWidth = currentWidth / 2 >= width ? currentWidth / 2 : width;
+            currentHeight = currentHeight / 2 >= height ? currentHeight / 2 : height;
+            BufferedImage next = new BufferedImage(currentWidth, currentHeight, type);
+            Graphics2D graphics = next.createGraphics();
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+            graphics.dispose();
+            current = next;
+        } while (currentWidth != width || currentHeight != height);
+        return current;
+    }
+
+    private static byte[] write(BufferedImage image, String format, int quality) throws IOException {
+        boolean jpeg = "jpg".equals(format) || "jpeg".equals(format);
+        if (jpeg && image.getColorModel().hasAlpha()) {
+            // JPEG 没有透明通道，透明部分填充白色
+            BufferedImage opaque = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = opaque.createGraphics();
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.drawImage(image, 0, 0, null);
+            graphics.dispose();
+            image = opaque;
+        }
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName(format.toLowerCase(Locale.ENGLISH));
+        if (!writers.hasNext()) {
+            throw new IOException("不支持的输出格式: " + format);
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutputStream = ImageIO.createImageOutputStream(outputStream)) {
+            writer.setOutput(imageOutputStream);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (jpeg) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                param.setCompressionQuality(Math.max(1, Math.min(100, quality)) / 100f);
+            }
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -0,0 +1,132 @@
+package com.minio.media;
+
+import com.minio.core.MinioTemplate;
+import com.minio.media.mp4.Mp4Movie;
+import com.minio.media.mp4.Mp4Parser;
+import com.minio.media.mp4.RangeReader;
+import io.minio.StatObjectResponse;
+import org.apache.commons.io.IOUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname MediaContext
+ * @description 一次合并之后处理的上下文，mp4 的解析结果在多个步骤之间共享
+ * @since 2023/4/27 11:05
+ */
+public class MediaContext {
+
+    private final MinioTemplate minioTemplate;
+
+    private final String bucketName;
+
+    private final String objectName;
+
+    private final String fileType;
+
+    private long size;
+
+    private String etag;
+
+    private Mp4Movie movie;
+
+    public MediaContext(MinioTemplate minioTemplate, String bucketName, String objectName, String fileType) {
+        this.minioTemplate = minioTemplate;
+        this.bucketName = bucketName;
+        this.objectName = objectName;
+        this.fileType = fileType == null ? "" : fileType.toLowerCase(Locale.ENGLISH);
+        this.size = -1;
+    }
+
+    public String getBucketName() {
+        return bucketName;
+    }
+
+    public String getObjectName() {
+        return objectName;
+    }
+
+    public String getFileType() {
+        return fileType;
+    }
+
+    /**
+     * 是否为 mp4 容器格式的视频
+     *
+     * @return 是否为 mp4
+     */
+    public boolean isMp4() {
+        return isMp4(fileType);
+    }
+
+    /**
+     * 文件类型是否为 mp4 容器格式
+     *
+     * @param fileType 文件类型，不区分大小写
+     * @return 是否为 mp4
+     */
+    public static boolean isMp4(String fileType) {
+        String type = fileType == null ? "" : fileType.toLowerCase(Locale.ENGLISH);
+        return "mp4".equals(type) || "m4v".equals(type) || "mov".equals(type);
+    }
+
+    /**
+     * 对象的大小
+     *
+     * @return 字节数
+     */
+    public long getSize() {
+        if (size < 0) {
+            stat();
+        }
+        return size;
+    }
+
+    /**
+     * 对象的 ETag，记录在派生结果的元数据中，对象被改写之后可以判断派生结果是否过期
+     *
+     * @return ETag，不带引号
+     */
+    public String getEtag() {
+        if (etag == null) {
+            stat();
+        }
+        return etag;
+    }
+
+    private void stat() {
+        StatObjectResponse stat = minioTemplate.getObjectInfo(bucketName, objectName);
+        size = stat.size();
+        etag = stat.etag() == null ? "" : stat.etag().replace("\"", "");
+    }
+
+    /**
+     * 按范围读取对象
+     *
+     * @return RangeReader
+     */
+    public RangeReader getReader() {
+        return (offset, length) -> {
+            try (InputStream inputStream = minioTemplate.getObject(bucketName, objectName, offset, (long) length)) {
+                return IOUtils.toByteArray(inputStream, length);
+            }
+        };
+    }
+
+    /**
+     * 解析后的 mp4，第一次调用时解析
+     *
+     * @return Mp4Movie
+     * @throws IOException 不是合法的 mp4
+     */
+    public Mp4Movie getMovie() throws IOException {
+        if (movie == null) {
+            movie = Mp4Parser.parse(getReader(), getSize());
+        }
+        return movie;
+    }
+}
@@ -0,0 +1,27 @@
+package com.minio.media;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname MediaProcessor
+ * @description 合并之后对媒体文件的一个处理步骤，多个步骤按 @Order 顺序执行
+ * @since 2023/4/27 11:00
+ */
+public interface MediaProcessor {
+
+    /**
+     * 是否处理这个文件
+     *
+     * @param context 处理上下文
+     * @return 是否处理
+     */
+    boolean supports(MediaContext context);
+
+    /**
+     * 处理文件，结果通过 MinioTemplate 存放在文件旁边
+     *
+     * @param context 处理上下文
+     * @throws Exception 处理失败，不影响后面的步骤
+     */
+    void process(MediaContext context) throws Exception;
+}
@@ -0,0 +1,52 @@
+package com.minio.media;
+
+import com.minio.core.MinioTemplate;
+import com.minio.replica.ReplicatedObjectStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname PlaybackReader
+ * @description 播放时读取对象的一个范围。开启多部署复制时由最快的健康副本提供，慢的副本会被对冲，
+ * 一个部署故障时播放不中断；所有副本都读取失败时（例如对象不是通过复制写入的）回退到 MinioTemplate
+ * @since 2023/5/3 16:30
+ */
+@Slf4j
+@Component
+public class PlaybackReader {
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    /**
+     * 开启 oss.minio.replication.enabled 时才有
+     */
+    @Autowired(required = false)
+    private ReplicatedObjectStore replicatedObjectStore;
+
+    /**
+     * 读取对象的一个范围
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @param offset     起始位置
+     * @param length     长度
+     * @return 输入流
+     */
+    public InputStream getObject(String bucketName, String objectName, long offset, long length) {
+        if (replicatedObjectStore != null) {
+            try {
+                return replicatedObjectStore.getObject(bucketName, objectName, offset, length);
+            } catch (IOException e) {
+                log.warn("从副本读取 {}/{} 失败，改为从 MinIO 读取: {}", bucketName, objectName, e.getMessage());
+            }
+        }
+        return minioTemplate.getObject(bucketName, objectName, offset, length);
+    }
+}
@@ -0,0 +1,367 @@
+package com.minio.media;
+
+import com.minio.config.ReadAheadProperties;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ReadAheadManager
+ * @description 视频播放的预读。每个 (视频, 观看者) 一个会话，数据按块对齐读取；连续读取两个相邻的数据块，
+ * 或者新的 Range 请求从上一次读取结束的位置继续时，视为顺序播放，在后台提前读取后面的数据块。
+ * 预读不受当前请求范围的限制，播放器按固定大小的 Range 顺序请求时，下一个请求的数据已经在内存中；
+ * 跳到其他位置（拖动进度条）时丢弃预读的数据。预读数据占用的总内存有上限，超过之后退化为按需读取
+ * @since 2023/4/28 17:00
+ */
+@Slf4j
+@Component
+public class ReadAheadManager {
+
+    @Autowired
+    private PlaybackReader playbackReader;
+
+    @Autowired
+    private ReadAheadProperties readAheadProperties;
+
+    @Autowired
+    private OssTracer ossTracer;
+
+    private final ConcurrentMap<String, Session> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * 所有会话中预读数据块占用的字节数
+     */
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    private ExecutorService executor;
+
+    private long blockSize;
+
+    @PostConstruct
+    public void init() {
+        blockSize = readAheadProperties.getBlockSize().toBytes();
+        int threads = readAheadProperties.getThreads();
+        // 队列长度与内存上限对应的数据块数一致，超过时说明 MinIO 跟不上，放弃预读
+        int queueCapacity = (int) Math.max(1, readAheadProperties.getMaxMemory().toBytes() / blockSize);
+        executor = ossTracer.wrap(new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(queueCapacity)));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 读取视频的一段数据
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @param viewer     观看者标识，例如客户端 IP 和 User-Agent
+     * @param fileSize   文件大小
+     * @param offset     起始位置
+     * @param length     长度
+     * @return 输入流
+     */
+    public InputStream open(String bucketName, String objectName, String viewer, long fileSize, long offset,
+                            long length) {
+        if (!readAheadProperties.isEnabled()) {
+            return playbackReader.getObject(bucketName, objectName, offset, length);
+        }
+        String key = bucketName + ":" + objectName + ":" + viewer;
+        Session session = sessions.computeIfAbsent(key, k -> new Session(bucketName, objectName, fileSize));
+        session.seek(offset);
+        return new ReadAheadInputStream(session, offset, offset + length);
+    }
+
+    /**
+     * 对象被改写或者删除之后，丢弃所有观看者预读的数据
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     */
+    public void evict(String bucketName, String objectName) {
+        sessions.values().removeIf(session -> {
+            if (session.bucketName.equals(bucketName) && session.objectName.equals(objectName)) {
+                session.dropAll();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 丢弃一个桶中所有对象预读的数据
+     *
+     * @param bucketName 桶名
+     */
+    public void evictBucket(String bucketName) {
+        sessions.values().removeIf(session -> {
+            if (session.bucketName.equals(bucketName)) {
+                session.dropAll();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * 丢弃空闲会话中预读的数据
+     */
+    @Scheduled(fixedDelayString = "${minio.read-ahead.sweep-interval:PT10S}")
+    public void evictIdleSessions() {
+        long deadline = System.currentTimeMillis() - readAheadProperties.getIdleTimeout().toMillis();
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            Session session = iterator.next();
+            if (session.lastAccess < deadline) {
+                iterator.remove();
+                session.dropAll();
+            }
+        }
+    }
+
+    private boolean tryReserve(long size) {
+        long max = readAheadProperties.getMaxMemory().toBytes();
+        while (true) {
+            long current = reservedBytes.get();
+            if (current + size > max) {
+                return false;
+            }
+            if (reservedBytes.compareAndSet(current, current + size)) {
+                return true;
+            }
+        }
+    }
+
+    private byte[] fetch(Session session, long index) throws IOException {
+        long offset = index * blockSize;
+        long length = Math.min(blockSize, session.fileSize - offset);
+        try (InputStream inputStream = playbackReader.getObject(session.bucketName, session.objectName, offset, length)) {
+            return IOUtils.toByteArray(inputStream, (int) length);
+        }
+    }
+
+    /**
+     * 一个预读的数据块
+     */
+    private class Block {
+
+        private final CompletableFuture<byte[]> future = new CompletableFuture<>();
+
+        private final long size;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Block(long size) {
+            this.size = size;
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                reservedBytes.addAndGet(-size);
+            }
+        }
+    }
+
+    /**
+     * 一个观看者对一个视频的读取状态
+     */
+    private class Session {
+
+        private final String bucketName;
+
+        private final String objectName;
+
+        private final long fileSize;
+
+        /**
+         * 当前位置之后预读的数据块，key 为数据块序号
+         */
+        private final TreeMap<Long, Block> blocks = new TreeMap<>();
+
+        /**
+         * 上一次读取结束的位置
+         */
+        private volatile long position = -1;
+
+        /**
+         * 上一次取出的数据块序号
+         */
+        private long lastTaken = -2;
+
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        Session(String bucketName, String objectName, long fileSize) {
+            this.bucketName = bucketName;
+            this.objectName = objectName;
+            this.fileSize = fileSize;
+        }
+
+        synchronized void seek(long offset) {
+            lastAccess = System.currentTimeMillis();
+            // 新请求从上一次读取结束的位置附近继续时保留预读的数据，否则是拖动了进度条
+            if (position < 0 || Math.abs(offset - position) > blockSize) {
+                dropAll();
+                lastTaken = -2;
+            }
+            position = offset;
+        }
+
+        /**
+         * 取出一个数据块，没有预读时同步读取。顺序读取时预读后面的 blocks 个数据块，不超过文件末尾和内存上限
+         *
+         * @param index 数据块序号
+         */
+        byte[] take(long index) throws IOException {
+            Block block;
+            synchronized (this) {
+                lastAccess = System.currentTimeMillis();
+                // 当前位置之前的数据块已经用不到了
+                Iterator<Map.Entry<Long, Block>> iterator = blocks.headMap(index).entrySet().iterator();
+                while (iterator.hasNext()) {
+                    Block stale = iterator.next().getValue();
+                    iterator.remove();
+                    stale.future.cancel(false);
+                    stale.release();
+                }
+                block = blocks.remove(index);
+                if (index == lastTaken || index == lastTaken + 1) {
+                    prefetch(index + 1, index + readAheadProperties.getBlocks());
+                }
+                lastTaken = index;
+            }
+            if (block != null) {
+                try {
+                    return block.future.get(readAheadProperties.getFetchTimeout().toMillis(), TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                } catch (ExecutionException | TimeoutException | CancellationException e) {
+                    log.debug("预读 {}/{} 的数据块 {} 失败，改为同步读取: {}", bucketName, objectName, index, e.toString());
+                } finally {
+                    block.release();
+                }
+            }
+            return fetch(this, index);
+        }
+
+        /**
+         * 在后台读取 [from, to] 范围内还没有预读的数据块，必须持有锁
+         */
+        private void prefetch(long from, long to) {
+            for (long index = from; index <= to; index++) {
+                if (blocks.containsKey(index)) {
+                    continue;
+                }
+                long size = Math.min(blockSize, fileSize - index * blockSize);
+                if (size <= 0 || !tryReserve(size)) {
+                    return;
+                }
+                Block block = new Block(size);
+                long blockIndex = index;
+                try {
+                    executor.execute(() -> {
+                        // 等待执行时已经被丢弃
+                        if (block.future.isDone()) {
+                            return;
+                        }
+                        try (OssSpan span = ossTracer.startSpan("video.prefetch")) {
+                            span.setAttribute("minio.bucket", bucketName).setAttribute("minio.object", objectName);
+                            block.future.complete(fetch(this, blockIndex));
+                        } catch (Exception e) {
+                            block.future.completeExceptionally(e);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    block.release();
+                    return;
+                }
+                blocks.put(index, block);
+            }
+        }
+
+        synchronized void dropAll() {
+            for (Block block : blocks.values()) {
+                block.future.cancel(false);
+                block.release();
+            }
+            blocks.clear();
+        }
+    }
+
+    /**
+     * 按数据块读取 [position, end) 范围内的数据
+     */
+    private class ReadAheadInputStream extends InputStream {
+
+        private final Session session;
+
+        private final long end;
+
+        private long position;
+
+        private byte[] block;
+
+        private long blockStart;
+
+        ReadAheadInputStream(Session session, long position, long end) {
+            this.session = session;
+            this.position = position;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            if (block == null || position >= blockStart + block.length) {
+                long index = position / blockSize;
+                block = session.take(index);
+                blockStart = index * blockSize;
+            }
+            int n = (int) Math.min(len, Math.min(blockStart + block.length, end) - position);
+            System.arraycopy(block, (int) (position - blockStart), b, off, n);
+            position += n;
+            session.position = position;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.minio.media;
+
+import com.minio.config.PacingProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.media.mp4.Mp4Movie;
+import com.minio.media.mp4.Mp4Parser;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import com.minio.util.ThrottledOutputStream;
+import com.minio.util.TokenBucket;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Collections;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname VideoPacer
+ * @description 按视频码率限制每个播放连接的发送速度。码率 = 文件大小 / mvhd 中的时长，第一次播放时解析 moov 计算，
+ * 结果缓存在 Redis 中；每个连接使用单独的令牌桶，桶的容量就是开始时全速发送的数据量
+ * @since 2023/4/29 10:20
+ */
+@Slf4j
+@Component
+public class VideoPacer {
+
+    /**
+     * 视频的平均码率（字节/秒），field 为 桶名:对象名，0 表示无法计算
+     */
+    public static final String BITRATE_KEY = "com:minio:media:bitrate";
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Resource(name = "jsonRedisTemplate")
+    private RedisTemplate<String, Serializable> redisTemplate;
+
+    @Autowired
+    private PacingProperties pacingProperties;
+
+    @Autowired
+    private OssTracer ossTracer;
+
+    /**
+     * 给播放连接的输出流加上码率限速
+     *
+     * @param outputStream 响应的输出流
+     * @param bucketName   桶名
+     * @param objectName   对象名
+     * @param fileSize     文件大小
+     * @return 限速的输出流，未开启或者无法得到码率时原样返回
+     */
+    public OutputStream pace(OutputStream outputStream, String bucketName, String objectName, long fileSize) {
+        if (!pacingProperties.isEnabled()) {
+            return outputStream;
+        }
+        long bytesPerSecond = getBytesPerSecond(bucketName, objectName, fileSize);
+        if (bytesPerSecond <= 0) {
+            return outputStream;
+        }
+        long rate = Math.max(pacingProperties.getMinRate().toBytes(),
+                (long) (bytesPerSecond * pacingProperties.getMultiplier()));
+        long burst = Math.max(pacingProperties.getMinBurst().toBytes(),
+                bytesPerSecond * pacingProperties.getInitialBurst().getSeconds());
+        return new ThrottledOutputStream(outputStream, Collections.singletonList(new TokenBucket(rate, burst)));
+    }
+
+    /**
+     * 视频的平均码率
+     *
+     * @return 字节/秒，无法计算时为 0
+     */
+    private long getBytesPerSecond(String bucketName, String objectName, long fileSize) {
+        String field = bucketName + ":" + objectName;
+        Object cached;
+        try (OssSpan ignored = ossTracer.startSpan("redis.hget")) {
+            cached = redisTemplate.boundHashOps(BITRATE_KEY).get(field);
+        }
+        if (cached != null) {
+            return ((Number) cached).longValue();
+        }
+        long bytesPerSecond = 0;
+        try (OssSpan ignored = ossTracer.startSpan("media.bitrate")) {
+            MediaContext context = new MediaContext(minioTemplate, bucketName, objectName, "mp4");
+            Mp4Movie movie = Mp4Parser.parse(context.getReader(), fileSize);
+            double duration = movie.getDurationSeconds();
+            if (duration > 0) {
+                bytesPerSecond = (long) Math.ceil(fileSize / duration);
+            }
+        } catch (Exception e) {
+            log.warn("计算 {}/{} 的码率失败，不限速: {}", bucketName, objectName, e.getMessage());
+        }
+        redisTemplate.boundHashOps(BITRATE_KEY).put(field, bytesPerSecond);
+        return bytesPerSecond;
+    }
+
+    /**
+     * 视频被改写之后清除缓存的码率
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     */
+    public void evict(String bucketName, String objectName) {
+        redisTemplate.boundHashOps(BITRATE_KEY).delete(bucketName + ":" + objectName);
+    }
+}
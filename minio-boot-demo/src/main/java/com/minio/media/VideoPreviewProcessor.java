@@ -0,0 +1,174 @@
+package com.minio.media;
+
+import com.minio.config.MediaProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.media.mp4.Mp4Track;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import javax.imageio.ImageIO;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname VideoPreviewProcessor
+ * @description 生成视频的封面和拖动进度条时的预览图。只读取 moov 和需要的关键帧，预览图按 ckplayer 的格式拼成网格，
+ * 和视频放在同一个桶中：{objectName}.preview/poster.jpg、{objectName}.preview/sprite-0.jpg
+ * @since 2023/4/27 11:20
+ */
+@Slf4j
+@Component
+@Order(200)
+public class VideoPreviewProcessor implements MediaProcessor {
+
+    /**
+     * 预览图的元数据，field 为 桶名:对象名
+     */
+    public static final String PREVIEW_KEY = "com:minio:media:preview";
+
+    /**
+     * 封面和预览图所在目录的后缀
+     */
+    public static final String PREVIEW_FOLDER_SUFFIX = ".preview/";
+
+    public static final String POSTER_FILE = "poster.jpg";
+
+    public static final String SPRITE_FILE_PREFIX = "sprite-";
+
+    public static final String SPRITE_FILE_SUFFIX = ".jpg";
+
+    /**
+     * 封面取视频 10% 处的关键帧，但不晚于第10秒
+     */
+    private static final double POSTER_POSITION = 0.1;
+
+    private static final double POSTER_MAX_SECONDS = 10;
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Resource(name = "jsonRedisTemplate")
+    private RedisTemplate<String, Serializable> redisTemplate;
+
+    @Autowired
+    private MediaProperties mediaProperties;
+
+    @Autowired
+    private OssTracer ossTracer;
+
+    @Override
+    public boolean supports(MediaContext context) {
+        return context.isMp4();
+    }
+
+    @Override
+    public void process(MediaContext context) throws Exception {
+        Mp4Track track = context.getMovie().getVideoTrack();
+        if (track == null || track.getAvcConfig() == null) {
+            log.info("{}/{} 不是 H.264 视频，跳过生成预览图", context.getBucketName(), context.getObjectName());
+            return;
+        }
+        MediaProperties.Preview preview = mediaProperties.getPreview();
+        H264KeyframeDecoder decoder = new H264KeyframeDecoder(track, context.getReader());
+        double duration = track.getDurationSeconds();
+        String folder = context.getObjectName() + PREVIEW_FOLDER_SUFFIX;
+
+        // 封面
+        BufferedImage poster;
+        try (OssSpan ignored = ossTracer.startSpan("media.poster")) {
+            int sample = track.syncSampleAtOrBefore(Math.min(duration * POSTER_POSITION, POSTER_MAX_SECONDS));
+            poster = decoder.decode(sample);
+            upload(context.getBucketName(), folder + POSTER_FILE, scale(poster, Math.min(preview.getPosterWidth(), poster.getWidth())));
+        }
+
+        // 预览图，每张是 columns * rows 的网格，第 i 个缩略图对应第 i * interval 秒
+        long interval = Math.max(preview.getMinInterval().getSeconds(),
+                (long) Math.ceil(duration / Math.max(1, preview.getMaxThumbs())));
+        interval = Math.max(1, interval);
+        int thumbCount = (int) Math.max(1, Math.ceil(duration / interval));
+        int thumbWidth = preview.getThumbWidth();
+        int thumbHeight = Math.max(2, Math.round((float) thumbWidth * poster.getHeight() / poster.getWidth()) & ~1);
+        int perSheet = preview.getColumns() * preview.getRows();
+        int sheetCount = (thumbCount + perSheet - 1) / perSheet;
+        List<String> files = new ArrayList<>(sheetCount);
+        try (OssSpan span = ossTracer.startSpan("media.sprite")) {
+            span.setAttribute("media.thumbs", thumbCount);
+            Map<Integer, BufferedImage> thumbs = new HashMap<>();
+            for (int sheet = 0; sheet < sheetCount; sheet++) {
+                BufferedImage sprite = new BufferedImage(preview.getColumns() * thumbWidth,
+                        preview.getRows() * thumbHeight, BufferedImage.TYPE_INT_RGB);
+                Graphics2D graphics = sprite.createGraphics();
+                for (int i = sheet * perSheet; i < Math.min(thumbCount, (sheet + 1) * perSheet); i++) {
+                    int sample = track.syncSampleAtOrBefore(i * interval);
+                    BufferedImage thumb = thumbs.get(sample);
+                    if (thumb == null) {
+                        try {
+                            thumb = scale(decoder.decode(sample), thumbWidth);
+                        } catch (IOException e) {
+                            log.warn("解码 {}/{} 的关键帧 {} 失败", context.getBucketName(), context.getObjectName(), sample, e);
+                            continue;
+                        }
+                        thumbs.put(sample, thumb);
+                    }
+                    int cell = i - sheet * perSheet;
+                    graphics.drawImage(thumb, (cell % preview.getColumns()) * thumbWidth,
+                            (cell / preview.getColumns()) * thumbHeight, thumbWidth, thumbHeight, null);
+                }
+                graphics.dispose();
+                String file = SPRITE_FILE_PREFIX + sheet + SPRITE_FILE_SUFFIX;
+                upload(context.getBucketName(), folder + file, sprite);
+                files.add(file);
+            }
+        }
+
+        HashMap<String, Object> meta = new HashMap<>();
+        meta.put("poster", POSTER_FILE);
+        meta.put("files", files);
+        meta.put("thumbnail", Arrays.asList(preview.getColumns(), preview.getRows()));
+        meta.put("scale", interval);
+        meta.put("duration", duration);
+        meta.put(CompressionProcessor.SOURCE_ETAG, context.getEtag());
+        redisTemplate.boundHashOps(PREVIEW_KEY).put(context.getBucketName() + ":" + context.getObjectName(), meta);
+        log.info("{}/{} 的封面和 {} 张预览图生成成功", context.getBucketName(), context.getObjectName(), files.size());
+    }
+
+    private void upload(String bucketName, String objectName, BufferedImage image) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", outputStream);
+        byte[] bytes = outputStream.toByteArray();
+        minioTemplate.putObjectStreaming(new ByteArrayInputStream(bytes), bytes.length, bucketName, objectName,
+                MediaType.IMAGE_JPEG_VALUE);
+    }
+
+    /**
+     * 等比例缩放到指定宽度
+     */
+    private static BufferedImage scale(BufferedImage image, int width) {
+        int height = Math.max(1, Math.round((float) width * image.getHeight() / image.getWidth()));
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = scaled.createGraphics();
+        graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        graphics.drawImage(image, 0, 0, width, height, null);
+        graphics.dispose();
+        return scaled;
+    }
+}
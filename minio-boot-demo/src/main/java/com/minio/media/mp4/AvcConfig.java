@@ -0,0 +1,122 @@
+package com.minio.media.mp4;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname AvcConfig
+ * @description avcC box 中的 H.264 解码配置：NAL 长度字段的字节数以及 SPS/PPS
+ * @since 2023/4/27 09:20
+ */
+public class AvcConfig {
+
+    private final int profile;
+
+    private final int level;
+
+    /**
+     * 样本中每个 NAL 前面的长度字段占用的字节数，通常为 4
+     */
+    private final int nalLengthSize;
+
+    private final List<ByteBuffer> sps;
+
+    private final List<ByteBuffer> pps;
+
+    private AvcConfig(int profile, int level, int nalLengthSize, List<ByteBuffer> sps, List<ByteBuffer> pps) {
+        this.profile = profile;
+        this.level = level;
+        this.nalLengthSize = nalLengthSize;
+        this.sps = sps;
+        this.pps = pps;
+    }
+
+    /**
+     * 解析 avcC box 的内容
+     *
+     * @param payload avcC box 的内容
+     * @return AvcConfig
+     */
+    public static AvcConfig parse(ByteBuffer payload) {
+        ByteBuffer buf = payload.duplicate();
+        // configurationVersion
+        buf.get();
+        int profile = buf.get() & 0xff;
+        // profile_compatibility
+        buf.get();
+        int level = buf.get() & 0xff;
+        int nalLengthSize = (buf.get() & 0x03) + 1;
+        int spsCount = buf.get() & 0x1f;
+        List<ByteBuffer> sps = readParameterSets(buf, spsCount);
+        int ppsCount = buf.get() & 0xff;
+        List<ByteBuffer> pps = readParameterSets(buf, ppsCount);
+        return new AvcConfig(profile, level, nalLengthSize, sps, pps);
+    }
+
+    private static List<ByteBuffer> readParameterSets(ByteBuffer buf, int count) {
+        List<ByteBuffer> sets = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = buf.getShort() & 0xffff;
+            byte[] bytes = new byte[length];
+            buf.get(bytes);
+            sets.add(ByteBuffer.wrap(bytes).asReadOnlyBuffer());
+        }
+        return sets;
+    }
+
+    /**
+     * 把一个样本按长度字段拆分成 NAL
+     *
+     * @param sample 样本数据
+     * @return NAL 列表，不包括长度字段
+     */
+    public List<ByteBuffer> splitNals(ByteBuffer sample) {
+        ByteBuffer buf = sample.duplicate();
+        List<ByteBuffer> nals = new ArrayList<>();
+        while (buf.remaining() >= nalLengthSize) {
+            int length = 0;
+            for (int i = 0; i < nalLengthSize; i++) {
+                length = (length << 8) | (buf.get() & 0xff);
+            }
+            if (length <= 0 || length > buf.remaining()) {
+                break;
+            }
+            ByteBuffer nal = buf.slice();
+            nal.limit(length);
+            nals.add(nal);
+            buf.position(buf.position() + length);
+        }
+        return nals;
+    }
+
+    public int getProfile() {
+        return profile;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    public int getNalLengthSize() {
+        return nalLengthSize;
+    }
+
+    public List<ByteBuffer> getSps() {
+        List<ByteBuffer> copy = new ArrayList<>(sps.size());
+        for (ByteBuffer buffer : sps) {
+            copy.add(buffer.duplicate());
+        }
+        return copy;
+    }
+
+    public List<ByteBuffer> getPps() {
+        List<ByteBuffer> copy = new ArrayList<>(pps.size());
+        for (ByteBuffer buffer : pps) {
+            copy.add(buffer.duplicate());
+        }
+        return copy;
+    }
+}
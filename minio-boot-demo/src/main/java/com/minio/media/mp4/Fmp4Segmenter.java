@@ -0,0 +1,442 @@
+package com.minio.media.mp4;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname Fmp4Segmenter
+ * @description 把普通的 mp4 在关键帧处切分为 HLS 使用的 fMP4 分片：一个初始化分片（ftyp + moov），
+ * 以及若干个媒体分片（moof + mdat）。样本数据原样拷贝，不重新编码；主轨道（有视频时为视频）决定切分位置，
+ * 音频按时间归入对应的分片
+ * @since 2023/4/28 14:10
+ */
+public class Fmp4Segmenter {
+
+    /**
+     * trun 中的 sample_flags：不依赖其他样本（关键帧）
+     */
+    private static final int SYNC_SAMPLE_FLAGS = 0x02000000;
+
+    /**
+     * trun 中的 sample_flags：依赖其他样本，并且不是关键帧
+     */
+    private static final int NON_SYNC_SAMPLE_FLAGS = 0x01010000;
+
+    /**
+     * trun 的 flags：data_offset、sample_duration、sample_size、sample_flags
+     */
+    private static final int TRUN_FLAGS = 0x000001 | 0x000100 | 0x000200 | 0x000400;
+
+    private static final int TRUN_COMPOSITION_OFFSET = 0x000800;
+
+    /**
+     * tfhd 的 flags：default-base-is-moof，trun 中的 data_offset 相对于 moof 的起始位置
+     */
+    private static final int TFHD_DEFAULT_BASE_IS_MOOF = 0x020000;
+
+    /**
+     * 一个分片的样本在原文件中不连续时，跨度不超过样本总大小的这个倍数就一次读取整个跨度
+     */
+    private static final int MAX_READ_SPAN_RATIO = 2;
+
+    /**
+     * 初始化分片中 trak 下需要保留的 box，edts 等其他 box 丢弃
+     */
+    private static final List<String> TRAK_CHILDREN = Arrays.asList("tkhd", "mdia");
+
+    private final Mp4Movie movie;
+
+    /**
+     * 分片中包含的轨道，第一个为主轨道
+     */
+    private final List<Mp4Track> tracks;
+
+    private final List<Segment> segments;
+
+    private Fmp4Segmenter(Mp4Movie movie, List<Mp4Track> tracks, List<Segment> segments) {
+        this.movie = movie;
+        this.tracks = tracks;
+        this.segments = segments;
+    }
+
+    /**
+     * 计算切分方案
+     *
+     * @param movie          解析后的 mp4
+     * @param targetDuration 分片的目标时长，秒，实际时长取决于关键帧的间隔
+     * @return 切分方案，没有可以切分的轨道或者已经是分片的 mp4 时返回 null
+     */
+    public static Fmp4Segmenter create(Mp4Movie movie, double targetDuration) {
+        if (movie.isFragmented()) {
+            return null;
+        }
+        List<Mp4Track> tracks = new ArrayList<>(2);
+        Mp4Track video = movie.getVideoTrack();
+        Mp4Track audio = null;
+        for (Mp4Track track : movie.getTracks()) {
+            if (track.isAudio() && track.getSampleEntryType() != null && track.getSampleCount() > 0) {
+                audio = track;
+                break;
+            }
+        }
+        if (video != null && video.getSampleEntryType() != null && video.getSampleCount() > 0) {
+            tracks.add(video);
+        }
+        if (audio != null) {
+            tracks.add(audio);
+        }
+        if (tracks.isEmpty()) {
+            return null;
+        }
+
+        // 主轨道在关键帧处切分，时长达到目标时长就开始新的分片
+        Mp4Track primary = tracks.get(0);
+        long target = (long) (targetDuration * primary.getTimescale());
+        List<Integer> cuts = new ArrayList<>();
+        cuts.add(0);
+        for (int sample : primary.getSyncSamples()) {
+            if (primary.getSampleTime(sample) - primary.getSampleTime(cuts.get(cuts.size() - 1)) >= target) {
+                cuts.add(sample);
+            }
+        }
+
+        List<Segment> segments = new ArrayList<>(cuts.size());
+        int[] starts = new int[tracks.size()];
+        for (int i = 0; i < cuts.size(); i++) {
+            boolean last = i == cuts.size() - 1;
+            int[] ends = new int[tracks.size()];
+            ends[0] = last ? primary.getSampleCount() : cuts.get(i + 1);
+            long cutTime = last ? Long.MAX_VALUE : primary.getSampleTime(ends[0]);
+            for (int t = 1; t < tracks.size(); t++) {
+                ends[t] = last ? tracks.get(t).getSampleCount() : firstSampleAtOrAfter(tracks.get(t), cutTime,
+                        primary.getTimescale());
+            }
+            long startTime = primary.getSampleTime(starts[0]);
+            long endTime = primary.getSampleTime(ends[0] - 1) + primary.getSampleDuration(ends[0] - 1);
+            segments.add(new Segment(i, starts.clone(), ends, (double) startTime / primary.getTimescale(),
+                    (double) (endTime - startTime) / primary.getTimescale()));
+            starts = ends;
+        }
+        return new Fmp4Segmenter(movie, tracks, Collections.unmodifiableList(segments));
+    }
+
+    /**
+     * 查找解码时间不早于 time 的第一个样本
+     *
+     * @param time      时间
+     * @param timescale time 的单位
+     */
+    private static int firstSampleAtOrAfter(Mp4Track track, long time, long timescale) {
+        int low = 0;
+        int high = track.getSampleCount();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            // 交叉相乘比较，避免换算时间单位时的舍入误差
+            if (track.getSampleTime(mid) * timescale < time * track.getTimescale()) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    public List<Mp4Track> getTracks() {
+        return tracks;
+    }
+
+    /**
+     * 生成初始化分片：复制原文件的轨道描述，样本表为空，加上 mvex
+     *
+     * @return 初始化分片
+     */
+    public byte[] initSegment() {
+        ByteArrayOutputStream moov = new ByteArrayOutputStream();
+        write(moov, box("mvhd", movie.getMoov().child("mvhd").getPayload()));
+        ByteArrayOutputStream mvex = new ByteArrayOutputStream();
+        for (Mp4Track track : tracks) {
+            write(moov, trak(track));
+            ByteBuffer trex = ByteBuffer.allocate(24);
+            // version + flags
+            trex.putInt(0);
+            trex.putInt(track.getTrackId());
+            // default_sample_description_index，其余的默认值都在 trun 中指定
+            trex.putInt(1);
+            write(mvex, box("trex", trex.array()));
+        }
+        write(moov, box("mvex", mvex.toByteArray()));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, ftyp());
+        write(out, box("moov", moov.toByteArray()));
+        return out.toByteArray();
+    }
+
+    private static byte[] ftyp() {
+        ByteBuffer ftyp = ByteBuffer.allocate(20);
+        ftyp.put("iso6".getBytes(StandardCharsets.ISO_8859_1));
+        ftyp.putInt(0);
+        ftyp.put("iso6".getBytes(StandardCharsets.ISO_8859_1));
+        ftyp.put("isom".getBytes(StandardCharsets.ISO_8859_1));
+        ftyp.put("mp41".getBytes(StandardCharsets.ISO_8859_1));
+        return box("ftyp", ftyp.array());
+    }
+
+    private static byte[] trak(Mp4Track track) {
+        Mp4Box trak = track.getTrak();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (String type : TRAK_CHILDREN) {
+            Mp4Box child = trak.child(type);
+            write(out, "mdia".equals(type) ? mdia(child) : copy(child));
+        }
+        return box("trak", out.toByteArray());
+    }
+
+    private static byte[] mdia(Mp4Box mdia) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Mp4Box child : mdia.getChildren()) {
+            write(out, "minf".equals(child.getType()) ? minf(child) : copy(child));
+        }
+        return box("mdia", out.toByteArray());
+    }
+
+    private static byte[] minf(Mp4Box minf) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (Mp4Box child : minf.getChildren()) {
+            if (!"stbl".equals(child.getType())) {
+                write(out, copy(child));
+                continue;
+            }
+            // 只保留 stsd，其余的样本表为空
+            ByteArrayOutputStream stbl = new ByteArrayOutputStream();
+            write(stbl, copy(child.child("stsd")));
+            write(stbl, box("stts", new byte[8]));
+            write(stbl, box("stsc", new byte[8]));
+            write(stbl, box("stsz", new byte[12]));
+            write(stbl, box("stco", new byte[8]));
+            write(out, box("stbl", stbl.toByteArray()));
+        }
+        return box("minf", out.toByteArray());
+    }
+
+    /**
+     * 生成媒体分片
+     *
+     * @param segment 分片
+     * @param reader  读取原文件中的样本数据
+     * @return moof + mdat
+     * @throws IOException 读取失败
+     */
+    public byte[] mediaSegment(Segment segment, RangeReader reader) throws IOException {
+        // moof 的大小只和样本数有关，先用 data_offset = 0 生成一次得到大小
+        int moofSize = moof(segment, 0).length;
+        byte[] moof = moof(segment, moofSize + 8);
+        long dataSize = 0;
+        for (int t = 0; t < tracks.size(); t++) {
+            for (int i = segment.starts[t]; i < segment.ends[t]; i++) {
+                dataSize += tracks.get(t).getSampleSize(i);
+            }
+        }
+        if (moof.length + 8 + dataSize > Integer.MAX_VALUE) {
+            throw new IOException("分片太大: " + dataSize);
+        }
+        ByteBuffer out = ByteBuffer.allocate((int) (moof.length + 8 + dataSize));
+        out.put(moof);
+        out.putInt((int) (8 + dataSize));
+        out.put("mdat".getBytes(StandardCharsets.ISO_8859_1));
+        readSamples(segment, reader, out);
+        return out.array();
+    }
+
+    private byte[] moof(Segment segment, int dataOffset) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // mfhd：version + flags、sequence_number（从1开始）
+        ByteBuffer mfhd = ByteBuffer.allocate(8);
+        mfhd.putInt(0);
+        mfhd.putInt(segment.index + 1);
+        write(out, box("mfhd", mfhd.array()));
+        int offset = dataOffset;
+        for (int t = 0; t < tracks.size(); t++) {
+            Mp4Track track = tracks.get(t);
+            int start = segment.starts[t];
+            int end = segment.ends[t];
+            ByteArrayOutputStream traf = new ByteArrayOutputStream();
+
+            ByteBuffer tfhd = ByteBuffer.allocate(8);
+            tfhd.putInt(TFHD_DEFAULT_BASE_IS_MOOF);
+            tfhd.putInt(track.getTrackId());
+            write(traf, box("tfhd", tfhd.array()));
+
+            // tfdt version 1：64 位的 baseMediaDecodeTime
+            ByteBuffer tfdt = ByteBuffer.allocate(12);
+            tfdt.putInt(0x01000000);
+            tfdt.putLong(start < track.getSampleCount() ? track.getSampleTime(start) : track.getDuration());
+            write(traf, box("tfdt", tfdt.array()));
+
+            // trun version 1：composition offset 是有符号数
+            boolean composition = track.hasCompositionOffsets();
+            int sampleCount = end - start;
+            ByteBuffer trun = ByteBuffer.allocate(12 + sampleCount * (composition ? 16 : 12));
+            trun.putInt(0x01000000 | TRUN_FLAGS | (composition ? TRUN_COMPOSITION_OFFSET : 0));
+            trun.putInt(sampleCount);
+            trun.putInt(offset);
+            for (int i = start; i < end; i++) {
+                trun.putInt((int) track.getSampleDuration(i));
+                trun.putInt(track.getSampleSize(i));
+                trun.putInt(track.isSyncSample(i) ? SYNC_SAMPLE_FLAGS : NON_SYNC_SAMPLE_FLAGS);
+                if (composition) {
+                    trun.putInt(track.getCompositionOffset(i));
+                }
+                offset += track.getSampleSize(i);
+            }
+            write(traf, box("trun", trun.array()));
+            write(out, box("traf", traf.toByteArray()));
+        }
+        return box("moof", out.toByteArray());
+    }
+
+    /**
+     * 按轨道顺序把样本数据写入 mdat，原文件中连续的样本合并成一次读取
+     */
+    private void readSamples(Segment segment, RangeReader reader, ByteBuffer out) throws IOException {
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        long total = 0;
+        for (int t = 0; t < tracks.size(); t++) {
+            Mp4Track track = tracks.get(t);
+            for (int i = segment.starts[t]; i < segment.ends[t]; i++) {
+                min = Math.min(min, track.getSampleOffset(i));
+                max = Math.max(max, track.getSampleOffset(i) + track.getSampleSize(i));
+                total += track.getSampleSize(i);
+            }
+        }
+        if (total == 0) {
+            return;
+        }
+        // 交错存放的音视频通常在原文件中是一段连续的区域，一次读取整个跨度
+        if (max - min <= total * MAX_READ_SPAN_RATIO) {
+            byte[] span = reader.read(min, (int) (max - min));
+            for (int t = 0; t < tracks.size(); t++) {
+                Mp4Track track = tracks.get(t);
+                for (int i = segment.starts[t]; i < segment.ends[t]; i++) {
+                    out.put(span, (int) (track.getSampleOffset(i) - min), track.getSampleSize(i));
+                }
+            }
+            return;
+        }
+        for (int t = 0; t < tracks.size(); t++) {
+            Mp4Track track = tracks.get(t);
+            int i = segment.starts[t];
+            while (i < segment.ends[t]) {
+                long offset = track.getSampleOffset(i);
+                long length = track.getSampleSize(i);
+                int next = i + 1;
+                while (next < segment.ends[t] && track.getSampleOffset(next) == offset + length) {
+                    length += track.getSampleSize(next);
+                    next++;
+                }
+                out.put(reader.read(offset, (int) length));
+                i = next;
+            }
+        }
+    }
+
+    private static byte[] copy(Mp4Box box) {
+        return box(box.getType(), box.getPayload());
+    }
+
+    private static byte[] box(String type, ByteBuffer payload) {
+        byte[] bytes = new byte[payload.remaining()];
+        payload.duplicate().get(bytes);
+        return box(type, bytes);
+    }
+
+    private static byte[] box(String type, byte[] payload) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(8 + payload.length);
+        try (DataOutputStream data = new DataOutputStream(out)) {
+            data.writeInt(8 + payload.length);
+            data.write(type.getBytes(StandardCharsets.ISO_8859_1));
+            data.write(payload);
+        } catch (IOException e) {
+            // 写入内存不会失败
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static void write(ByteArrayOutputStream out, byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 一个媒体分片：每个轨道的样本范围 [start, end)
+     */
+    public static class Segment {
+
+        private final int index;
+
+        private final int[] starts;
+
+        private final int[] ends;
+
+        private final double startSeconds;
+
+        private final double durationSeconds;
+
+        Segment(int index, int[] starts, int[] ends, double startSeconds, double durationSeconds) {
+            this.index = index;
+            this.starts = starts;
+            this.ends = ends;
+            this.startSeconds = startSeconds;
+            this.durationSeconds = durationSeconds;
+        }
+
+        /**
+         * 分片序号
+         *
+         * @return 从0开始
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * 主轨道中第一个样本的序号
+         *
+         * @return 样本序号，从0开始
+         */
+        public int getFirstSample() {
+            return starts[0];
+        }
+
+        /**
+         * 主轨道的样本数
+         *
+         * @return 样本数
+         */
+        public int getSampleCount() {
+            return ends[0] - starts[0];
+        }
+
+        public double getStartSeconds() {
+            return startSeconds;
+        }
+
+        public double getDurationSeconds() {
+            return durationSeconds;
+        }
+    }
+}
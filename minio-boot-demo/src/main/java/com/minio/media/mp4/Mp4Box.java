@@ -0,0 +1,143 @@
+package com.minio.media.mp4;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname Mp4Box
+ * @description mp4 中的一个 box（atom），moov 中的 box 会保留内容，顶层的其他 box（例如 mdat）只记录位置
+ * @since 2023/4/27 09:15
+ */
+public class Mp4Box {
+
+    private final String type;
+
+    /**
+     * box 在文件中的起始位置（包括 box 头）
+     */
+    private final long offset;
+
+    /**
+     * box 的总大小（包括 box 头）
+     */
+    private final long size;
+
+    /**
+     * box 头的大小，8 或者 16（64位的 largesize）
+     */
+    private final int headerSize;
+
+    /**
+     * box 的内容（不包括 box 头），只有 moov 中的 box 有
+     */
+    private final ByteBuffer payload;
+
+    private final List<Mp4Box> children = new ArrayList<>();
+
+    Mp4Box(String type, long offset, long size, int headerSize, ByteBuffer payload) {
+        this.type = type;
+        this.offset = offset;
+        this.size = size;
+        this.headerSize = headerSize;
+        this.payload = payload;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getHeaderSize() {
+        return headerSize;
+    }
+
+    /**
+     * box 内容的起始位置
+     *
+     * @return 文件中的位置
+     */
+    public long getPayloadOffset() {
+        return offset + headerSize;
+    }
+
+    /**
+     * box 的内容，每次返回一个新的只读视图，position 为 0
+     *
+     * @return box 的内容，没有读取内容时为 null
+     */
+    public ByteBuffer getPayload() {
+        return payload == null ? null : payload.duplicate();
+    }
+
+    public List<Mp4Box> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    void addChild(Mp4Box child) {
+        children.add(child);
+    }
+
+    /**
+     * 查找第一个指定类型的子 box
+     *
+     * @param childType 类型
+     * @return 子 box，没有时为 null
+     */
+    public Mp4Box child(String childType) {
+        for (Mp4Box child : children) {
+            if (child.type.equals(childType)) {
+                return child;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 查找所有指定类型的子 box
+     *
+     * @param childType 类型
+     * @return 子 box
+     */
+    public List<Mp4Box> children(String childType) {
+        List<Mp4Box> result = new ArrayList<>();
+        for (Mp4Box child : children) {
+            if (child.type.equals(childType)) {
+                result.add(child);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按路径查找子孙 box，例如 mdia/minf/stbl
+     *
+     * @param path 以 / 分隔的类型
+     * @return 子孙 box，没有时为 null
+     */
+    public Mp4Box find(String path) {
+        Mp4Box box = this;
+        for (String part : path.split("/")) {
+            box = box.child(part);
+            if (box == null) {
+                return null;
+            }
+        }
+        return box;
+    }
+
+    @Override
+    public String toString() {
+        return type + "[offset=" + offset + ", size=" + size + "]";
+    }
+}
@@ -0,0 +1,275 @@
+package com.minio.media.mp4;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname Mp4Faststart
+ * @description 把 moov 移到 mdat 之前（faststart），播放器读取文件开头就可以开始播放。
+ * 只在内存中重写 moov 并修正 stco/co64 中的偏移量，mdat 等其他 box 按原来的字节范围顺序拷贝，内存占用与文件大小无关
+ * @since 2023/4/28 09:20
+ */
+public final class Mp4Faststart {
+
+    /**
+     * 重写时需要递归进入的容器，只有它们的子孙中有 stco/co64
+     */
+    private static final Set<String> REWRITE_CONTAINERS = new HashSet<>(Arrays.asList(
+            "moov", "trak", "mdia", "minf", "stbl"));
+
+    private static final long MAX_UINT32 = 0xffffffffL;
+
+    private Mp4Faststart() {
+    }
+
+    /**
+     * 计算 faststart 之后的文件布局
+     *
+     * @param movie 解析后的 mp4
+     * @return 新文件的布局，已经是 faststart 或者是分片的 mp4 时返回 null
+     */
+    public static Layout plan(Mp4Movie movie) {
+        return plan(movie, false);
+    }
+
+    static Layout plan(Mp4Movie movie, boolean forceCo64) {
+        if (movie.isFaststart() || movie.isFragmented()) {
+            return null;
+        }
+        Mp4Box moov = movie.getMoov();
+        List<Mp4Box> boxes = movie.getBoxes();
+        Mp4Box firstMdat = movie.getBox("mdat");
+
+        // 新的顺序：mdat 之前的 box（ftyp 等）、moov、其余的 box
+        List<Mp4Box> order = new ArrayList<>(boxes.size());
+        for (Mp4Box box : boxes) {
+            if (box.getOffset() < firstMdat.getOffset() && box != moov) {
+                order.add(box);
+            }
+        }
+        int moovIndex = order.size();
+        order.add(moov);
+        for (Mp4Box box : boxes) {
+            if (box.getOffset() >= firstMdat.getOffset() && box != moov) {
+                order.add(box);
+            }
+        }
+
+        // 先按 stco 计算，偏移量超过 32 位时把 stco 换成 co64，moov 变大之后重新计算
+        boolean co64 = forceCo64;
+        long moovSize = size(moov, co64);
+        long[] shifts = shifts(boxes, order, moovIndex, moovSize);
+        if (!co64 && maxRelocatedOffset(moov, boxes, shifts) > MAX_UINT32) {
+            co64 = true;
+            moovSize = size(moov, true);
+            shifts = shifts(boxes, order, moovIndex, moovSize);
+        }
+
+        ByteBuffer newMoov = ByteBuffer.allocate((int) moovSize);
+        write(moov, newMoov, boxes, shifts, co64);
+        newMoov.flip();
+
+        List<Segment> segments = new ArrayList<>();
+        for (Mp4Box box : order) {
+            if (box == moov) {
+                segments.add(new Segment(newMoov.asReadOnlyBuffer(), -1, moovSize));
+            } else {
+                Segment last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+                // 原文件中连续的 box 合并成一次范围读取
+                if (last != null && last.data == null && last.offset + last.length == box.getOffset()) {
+                    segments.set(segments.size() - 1, new Segment(null, last.offset, last.length + box.getSize()));
+                } else {
+                    segments.add(new Segment(null, box.getOffset(), box.getSize()));
+                }
+            }
+        }
+        return new Layout(segments, movie.getFileSize() - moov.getSize() + moovSize);
+    }
+
+    /**
+     * 每个原始顶层 box 移动的距离
+     */
+    private static long[] shifts(List<Mp4Box> boxes, List<Mp4Box> order, int moovIndex, long moovSize) {
+        long[] shifts = new long[boxes.size()];
+        long position = 0;
+        for (int i = 0; i < order.size(); i++) {
+            Mp4Box box = order.get(i);
+            if (i != moovIndex) {
+                shifts[boxes.indexOf(box)] = position - box.getOffset();
+                position += box.getSize();
+            } else {
+                position += moovSize;
+            }
+        }
+        return shifts;
+    }
+
+    /**
+     * 修正一个偏移量：找到它所在的顶层 box，加上这个 box 移动的距离
+     */
+    private static long relocate(long offset, List<Mp4Box> boxes, long[] shifts) {
+        for (int i = 0; i < boxes.size(); i++) {
+            Mp4Box box = boxes.get(i);
+            if (!"moov".equals(box.getType()) && offset >= box.getOffset() && offset < box.getOffset() + box.getSize()) {
+                return offset + shifts[i];
+            }
+        }
+        return offset;
+    }
+
+    private static long maxRelocatedOffset(Mp4Box box, List<Mp4Box> boxes, long[] shifts) {
+        long max = 0;
+        if ("stco".equals(box.getType()) || "co64".equals(box.getType())) {
+            for (long offset : readChunkOffsets(box)) {
+                max = Math.max(max, relocate(offset, boxes, shifts));
+            }
+        } else if (REWRITE_CONTAINERS.contains(box.getType())) {
+            for (Mp4Box child : box.getChildren()) {
+                max = Math.max(max, maxRelocatedOffset(child, boxes, shifts));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * 重写之后 box 的大小（包括 box 头）
+     */
+    private static long size(Mp4Box box, boolean co64) {
+        if ("stco".equals(box.getType()) || "co64".equals(box.getType())) {
+            int count = box.getPayload().getInt(4);
+            int entrySize = co64 || "co64".equals(box.getType()) ? 8 : 4;
+            return 8 + 8 + (long) count * entrySize;
+        }
+        if (REWRITE_CONTAINERS.contains(box.getType())) {
+            long size = 8;
+            for (Mp4Box child : box.getChildren()) {
+                size += size(child, co64);
+            }
+            return size;
+        }
+        return 8 + box.getPayload().remaining();
+    }
+
+    private static void write(Mp4Box box, ByteBuffer out, List<Mp4Box> boxes, long[] shifts, boolean co64) {
+        String type = box.getType();
+        if ("stco".equals(type) || "co64".equals(type)) {
+            boolean wide = co64 || "co64".equals(type);
+            long[] offsets = readChunkOffsets(box);
+            out.putInt((int) size(box, co64));
+            writeType(out, wide ? "co64" : "stco");
+            // version + flags
+            out.putInt(0);
+            out.putInt(offsets.length);
+            for (long offset : offsets) {
+                long relocated = relocate(offset, boxes, shifts);
+                if (wide) {
+                    out.putLong(relocated);
+                } else {
+                    out.putInt((int) relocated);
+                }
+            }
+        } else if (REWRITE_CONTAINERS.contains(type)) {
+            out.putInt((int) size(box, co64));
+            writeType(out, type);
+            for (Mp4Box child : box.getChildren()) {
+                write(child, out, boxes, shifts, co64);
+            }
+        } else {
+            ByteBuffer payload = box.getPayload();
+            out.putInt(8 + payload.remaining());
+            writeType(out, type);
+            out.put(payload);
+        }
+    }
+
+    private static long[] readChunkOffsets(Mp4Box box) {
+        ByteBuffer payload = box.getPayload();
+        int count = payload.getInt(4);
+        long[] offsets = new long[count];
+        boolean wide = "co64".equals(box.getType());
+        for (int i = 0; i < count; i++) {
+            offsets[i] = wide ? payload.getLong(8 + i * 8) : payload.getInt(8 + i * 4) & MAX_UINT32;
+        }
+        return offsets;
+    }
+
+    private static void writeType(ByteBuffer out, String type) {
+        for (int i = 0; i < 4; i++) {
+            out.put((byte) type.charAt(i));
+        }
+    }
+
+    /**
+     * faststart 之后的文件布局，按顺序拼接所有片段就是新的文件
+     */
+    public static class Layout {
+
+        private final List<Segment> segments;
+
+        private final long size;
+
+        Layout(List<Segment> segments, long size) {
+            this.segments = segments;
+            this.size = size;
+        }
+
+        public List<Segment> getSegments() {
+            return segments;
+        }
+
+        /**
+         * 新文件的大小，stco 换成 co64 时比原文件大
+         *
+         * @return 字节数
+         */
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * 新文件的一个片段：内存中的数据（重写后的 moov），或者原文件中的一段字节
+     */
+    public static class Segment {
+
+        private final ByteBuffer data;
+
+        private final long offset;
+
+        private final long length;
+
+        Segment(ByteBuffer data, long offset, long length) {
+            this.data = data;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * 内存中的数据
+         *
+         * @return 数据，片段来自原文件时为 null
+         */
+        public ByteBuffer getData() {
+            return data == null ? null : data.duplicate();
+        }
+
+        /**
+         * 在原文件中的位置
+         *
+         * @return 位置，片段在内存中时为 -1
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+    }
+}
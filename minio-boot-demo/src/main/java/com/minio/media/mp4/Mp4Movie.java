@@ -0,0 +1,116 @@
+package com.minio.media.mp4;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname Mp4Movie
+ * @description 解析后的 mp4：顶层 box 的位置、moov 以及其中的轨道
+ * @since 2023/4/27 09:40
+ */
+public class Mp4Movie {
+
+    private final long fileSize;
+
+    private final List<Mp4Box> boxes;
+
+    private final Mp4Box moov;
+
+    private final long timescale;
+
+    private final long duration;
+
+    private final List<Mp4Track> tracks;
+
+    Mp4Movie(long fileSize, List<Mp4Box> boxes, Mp4Box moov, long timescale, long duration, List<Mp4Track> tracks) {
+        this.fileSize = fileSize;
+        this.boxes = boxes;
+        this.moov = moov;
+        this.timescale = timescale;
+        this.duration = duration;
+        this.tracks = tracks;
+    }
+
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * 顶层 box，按在文件中的顺序
+     *
+     * @return 顶层 box
+     */
+    public List<Mp4Box> getBoxes() {
+        return Collections.unmodifiableList(boxes);
+    }
+
+    public Mp4Box getMoov() {
+        return moov;
+    }
+
+    public long getTimescale() {
+        return timescale;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public double getDurationSeconds() {
+        return timescale == 0 ? 0 : (double) duration / timescale;
+    }
+
+    public List<Mp4Track> getTracks() {
+        return Collections.unmodifiableList(tracks);
+    }
+
+    /**
+     * 第一条视频轨道
+     *
+     * @return 视频轨道，没有时为 null
+     */
+    public Mp4Track getVideoTrack() {
+        for (Mp4Track track : tracks) {
+            if (track.isVideo()) {
+                return track;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 第一个指定类型的顶层 box
+     *
+     * @param type 类型
+     * @return 顶层 box，没有时为 null
+     */
+    public Mp4Box getBox(String type) {
+        for (Mp4Box box : boxes) {
+            if (box.getType().equals(type)) {
+                return box;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 是否为分片的 mp4（moov 中有 mvex）
+     *
+     * @return 是否分片
+     */
+    public boolean isFragmented() {
+        return moov.child("mvex") != null;
+    }
+
+    /**
+     * moov 是否在 mdat 之前，播放器不需要先读取文件末尾就可以开始播放
+     *
+     * @return 是否 faststart
+     */
+    public boolean isFaststart() {
+        Mp4Box mdat = getBox("mdat");
+        return mdat == null || moov.getOffset() < mdat.getOffset();
+    }
+}
@@ -0,0 +1,178 @@
+package com.minio.media.mp4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname Mp4Parser
+ * @description 纯 Java 的 mp4 box 解析。顶层只读取 box 头，moov 整个读入内存后递归解析，不读取 mdat
+ * @since 2023/4/27 09:50
+ */
+public final class Mp4Parser {
+
+    /**
+     * 只包含子 box 的容器
+     */
+    private static final Set<String> CONTAINERS = new HashSet<>(Arrays.asList(
+            "moov", "trak", "mdia", "minf", "stbl", "edts", "dinf", "mvex", "moof", "traf", "udta"));
+
+    /**
+     * 样本描述中，子 box 之前的固定字段长度
+     */
+    private static final int VISUAL_SAMPLE_ENTRY_SIZE = 78;
+
+    private static final int AUDIO_SAMPLE_ENTRY_SIZE = 28;
+
+    private static final Set<String> VISUAL_SAMPLE_ENTRIES = new HashSet<>(Arrays.asList(
+            "avc1", "avc3", "hvc1", "hev1", "mp4v", "encv"));
+
+    private static final Set<String> AUDIO_SAMPLE_ENTRIES = new HashSet<>(Arrays.asList(
+            "mp4a", "ac-3", "ec-3", "Opus", "enca"));
+
+    /**
+     * moov 的最大大小，防止恶意文件占用过多内存
+     */
+    public static final int MAX_MOOV_SIZE = 64 * 1024 * 1024;
+
+    private Mp4Parser() {
+    }
+
+    /**
+     * 解析 mp4
+     *
+     * @param reader   按范围读取文件
+     * @param fileSize 文件大小
+     * @return 解析结果
+     * @throws IOException 读取失败或者不是合法的 mp4
+     */
+    public static Mp4Movie parse(RangeReader reader, long fileSize) throws IOException {
+        List<Mp4Box> boxes = new ArrayList<>();
+        Mp4Box moov = null;
+        long offset = 0;
+        while (offset + 8 <= fileSize) {
+            ByteBuffer header = ByteBuffer.wrap(reader.read(offset, (int) Math.min(16, fileSize - offset)));
+            long size = header.getInt() & 0xffffffffL;
+            String type = fourcc(header, 4);
+            header.position(8);
+            int headerSize = 8;
+            if (size == 1) {
+                if (header.remaining() < 8) {
+                    throw new IOException("box " + type + " 的头不完整");
+                }
+                size = header.getLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                size = fileSize - offset;
+            }
+            if (size < headerSize || offset + size > fileSize) {
+                throw new IOException("box " + type + " 的大小不合法: " + size);
+            }
+            Mp4Box box;
+            if ("moov".equals(type)) {
+                if (size > MAX_MOOV_SIZE) {
+                    throw new IOException("moov 太大: " + size);
+                }
+                ByteBuffer payload = ByteBuffer.wrap(reader.read(offset + headerSize, (int) size - headerSize)).asReadOnlyBuffer();
+                box = new Mp4Box(type, offset, size, headerSize, payload);
+                parseChildren(box, payload, 0, offset + headerSize);
+                moov = box;
+            } else {
+                box = new Mp4Box(type, offset, size, headerSize, null);
+            }
+            boxes.add(box);
+            offset += size;
+        }
+        if (moov == null) {
+            throw new IOException("不是合法的 mp4：没有 moov");
+        }
+        return buildMovie(fileSize, boxes, moov);
+    }
+
+    private static Mp4Movie buildMovie(long fileSize, List<Mp4Box> boxes, Mp4Box moov) throws IOException {
+        Mp4Box mvhd = moov.child("mvhd");
+        if (mvhd == null) {
+            throw new IOException("moov 中缺少 mvhd");
+        }
+        ByteBuffer mvhdData = mvhd.getPayload();
+        long timescale;
+        long duration;
+        if (mvhdData.get(0) == 1) {
+            timescale = mvhdData.getInt(20) & 0xffffffffL;
+            duration = mvhdData.getLong(24);
+        } else {
+            timescale = mvhdData.getInt(12) & 0xffffffffL;
+            duration = mvhdData.getInt(16) & 0xffffffffL;
+        }
+        List<Mp4Track> tracks = new ArrayList<>();
+        for (Mp4Box trak : moov.children("trak")) {
+            tracks.add(Mp4Track.parse(trak));
+        }
+        return new Mp4Movie(fileSize, boxes, moov, timescale, duration, tracks);
+    }
+
+    /**
+     * 解析 [start, limit) 范围内的子 box
+     *
+     * @param parent     父 box
+     * @param buf        父 box 的内容所在的缓冲区
+     * @param start      子 box 在 buf 中的起始位置
+     * @param fileOffset buf 的 position 0 在文件中的位置
+     */
+    private static void parseChildren(Mp4Box parent, ByteBuffer buf, int start, long fileOffset) throws IOException {
+        int position = start;
+        int limit = buf.limit();
+        while (position + 8 <= limit) {
+            long size = buf.getInt(position) & 0xffffffffL;
+            String type = fourcc(buf, position + 4);
+            int headerSize = 8;
+            if (size == 1) {
+                size = buf.getLong(position + 8);
+                headerSize = 16;
+            } else if (size == 0) {
+                size = limit - position;
+            }
+            if (size < headerSize || position + size > limit) {
+                throw new IOException("box " + type + " 的大小不合法: " + size);
+            }
+            ByteBuffer payload = slice(buf, position + headerSize, (int) size - headerSize);
+            Mp4Box box = new Mp4Box(type, fileOffset + position, size, headerSize, payload);
+            parent.addChild(box);
+            long payloadOffset = fileOffset + position + headerSize;
+            if (CONTAINERS.contains(type)) {
+                parseChildren(box, payload, 0, payloadOffset);
+            } else if ("stsd".equals(type)) {
+                // version/flags + entry_count
+                parseChildren(box, payload, 8, payloadOffset);
+            } else if (VISUAL_SAMPLE_ENTRIES.contains(type) && payload.limit() > VISUAL_SAMPLE_ENTRY_SIZE) {
+                parseChildren(box, payload, VISUAL_SAMPLE_ENTRY_SIZE, payloadOffset);
+            } else if (AUDIO_SAMPLE_ENTRIES.contains(type) && payload.limit() > AUDIO_SAMPLE_ENTRY_SIZE) {
+                parseChildren(box, payload, AUDIO_SAMPLE_ENTRY_SIZE, payloadOffset);
+            }
+            position += (int) size;
+        }
+    }
+
+    private static ByteBuffer slice(ByteBuffer buf, int position, int length) {
+        ByteBuffer duplicate = buf.duplicate();
+        duplicate.position(position);
+        ByteBuffer slice = duplicate.slice();
+        slice.limit(length);
+        return slice;
+    }
+
+    static String fourcc(ByteBuffer buf, int position) {
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            bytes[i] = buf.get(position + i);
+        }
+        return new String(bytes, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,411 @@
+package com.minio.media.mp4;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname Mp4Track
+ * @description mp4 中的一条轨道，根据 stts/ctts/stss/stsc/stsz/stco(co64) 计算出每个样本的位置、大小和时间
+ * @since 2023/4/27 09:30
+ */
+public class Mp4Track {
+
+    public static final String HANDLER_VIDEO = "vide";
+
+    public static final String HANDLER_AUDIO = "soun";
+
+    private final Mp4Box trak;
+
+    private final int trackId;
+
+    private final String handlerType;
+
+    private final long timescale;
+
+    private final long duration;
+
+    private final int width;
+
+    private final int height;
+
+    /**
+     * stsd 中第一个样本描述的类型，例如 avc1、hvc1、mp4a
+     */
+    private final String sampleEntryType;
+
+    /**
+     * H.264 的解码配置，其他编码为 null
+     */
+    private final AvcConfig avcConfig;
+
+    private final long[] sampleOffsets;
+
+    private final int[] sampleSizes;
+
+    /**
+     * 每个样本的解码时间，单位为 timescale
+     */
+    private final long[] sampleTimes;
+
+    /**
+     * 每个样本的显示时间与解码时间的差，没有 ctts 时为 null
+     */
+    private final int[] compositionOffsets;
+
+    /**
+     * 关键帧的样本序号（从0开始），没有 stss 时为 null，表示所有样本都是关键帧
+     */
+    private final int[] syncSamples;
+
+    private Mp4Track(Mp4Box trak, int trackId, String handlerType, long timescale, long duration, int width, int height,
+                     String sampleEntryType, AvcConfig avcConfig, long[] sampleOffsets, int[] sampleSizes,
+                     long[] sampleTimes, int[] compositionOffsets, int[] syncSamples) {
+        this.trak = trak;
+        this.trackId = trackId;
+        this.handlerType = handlerType;
+        this.timescale = timescale;
+        this.duration = duration;
+        this.width = width;
+        this.height = height;
+        this.sampleEntryType = sampleEntryType;
+        this.avcConfig = avcConfig;
+        this.sampleOffsets = sampleOffsets;
+        this.sampleSizes = sampleSizes;
+        this.sampleTimes = sampleTimes;
+        this.compositionOffsets = compositionOffsets;
+        this.syncSamples = syncSamples;
+    }
+
+    /**
+     * 解析 trak box
+     *
+     * @param trak trak box
+     * @return 轨道
+     * @throws IOException 缺少必需的 box
+     */
+    static Mp4Track parse(Mp4Box trak) throws IOException {
+        ByteBuffer tkhd = require(trak, "tkhd");
+        int tkhdVersion = tkhd.get(0);
+        int trackId = tkhd.getInt(tkhdVersion == 1 ? 20 : 12);
+        // width 和 height 是 tkhd 最后的两个 16.16 定点数
+        int width = tkhd.getInt(tkhd.limit() - 8) >>> 16;
+        int height = tkhd.getInt(tkhd.limit() - 4) >>> 16;
+
+        ByteBuffer mdhd = require(trak, "mdia/mdhd");
+        long timescale;
+        long duration;
+        if (mdhd.get(0) == 1) {
+            timescale = mdhd.getInt(20) & 0xffffffffL;
+            duration = mdhd.getLong(24);
+        } else {
+            timescale = mdhd.getInt(12) & 0xffffffffL;
+            duration = mdhd.getInt(16) & 0xffffffffL;
+        }
+
+        ByteBuffer hdlr = require(trak, "mdia/hdlr");
+        String handlerType = Mp4Parser.fourcc(hdlr, 8);
+
+        Mp4Box stbl = trak.find("mdia/minf/stbl");
+        if (stbl == null) {
+            throw new IOException("trak 中缺少 stbl");
+        }
+        String sampleEntryType = null;
+        AvcConfig avcConfig = null;
+        Mp4Box stsd = stbl.child("stsd");
+        if (stsd != null && !stsd.getChildren().isEmpty()) {
+            Mp4Box entry = stsd.getChildren().get(0);
+            sampleEntryType = entry.getType();
+            Mp4Box avcC = entry.child("avcC");
+            if (avcC != null) {
+                avcConfig = AvcConfig.parse(avcC.getPayload());
+            }
+        }
+
+        int[] sampleSizes = readSampleSizes(stbl);
+        long[] chunkOffsets = readChunkOffsets(stbl);
+        long[] sampleOffsets = computeSampleOffsets(require(stbl, "stsc"), chunkOffsets, sampleSizes);
+        long[] sampleTimes = readSampleTimes(require(stbl, "stts"), sampleSizes.length);
+        Mp4Box ctts = stbl.child("ctts");
+        int[] compositionOffsets = ctts == null ? null : readCompositionOffsets(ctts.getPayload(), sampleSizes.length);
+        Mp4Box stss = stbl.child("stss");
+        int[] syncSamples = stss == null ? null : readSyncSamples(stss.getPayload());
+
+        return new Mp4Track(trak, trackId, handlerType, timescale, duration, width, height, sampleEntryType, avcConfig,
+                sampleOffsets, sampleSizes, sampleTimes, compositionOffsets, syncSamples);
+    }
+
+    private static ByteBuffer require(Mp4Box parent, String path) throws IOException {
+        Mp4Box box = parent.find(path);
+        if (box == null) {
+            throw new IOException("缺少 " + path);
+        }
+        return box.getPayload();
+    }
+
+    private static int[] readSampleSizes(Mp4Box stbl) throws IOException {
+        ByteBuffer stsz = require(stbl, "stsz");
+        int sampleSize = stsz.getInt(4);
+        int count = stsz.getInt(8);
+        int[] sizes = new int[count];
+        if (sampleSize != 0) {
+            Arrays.fill(sizes, sampleSize);
+        } else {
+            for (int i = 0; i < count; i++) {
+                sizes[i] = stsz.getInt(12 + i * 4);
+            }
+        }
+        return sizes;
+    }
+
+    private static long[] readChunkOffsets(Mp4Box stbl) throws IOException {
+        Mp4Box stco = stbl.child("stco");
+        if (stco != null) {
+            ByteBuffer buf = stco.getPayload();
+            int count = buf.getInt(4);
+            long[] offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                offsets[i] = buf.getInt(8 + i * 4) & 0xffffffffL;
+            }
+            return offsets;
+        }
+        ByteBuffer co64 = require(stbl, "co64");
+        int count = co64.getInt(4);
+        long[] offsets = new long[count];
+        for (int i = 0; i < count; i++) {
+            offsets[i] = co64.getLong(8 + i * 8);
+        }
+        return offsets;
+    }
+
+    private static long[] computeSampleOffsets(ByteBuffer stsc, long[] chunkOffsets, int[] sampleSizes) {
+        int entryCount = stsc.getInt(4);
+        long[] offsets = new long[sampleSizes.length];
+        int sample = 0;
+        for (int e = 0; e < entryCount && sample < sampleSizes.length; e++) {
+            int base = 8 + e * 12;
+            int firstChunk = stsc.getInt(base);
+            int samplesPerChunk = stsc.getInt(base + 4);
+            int lastChunk = e + 1 < entryCount ? stsc.getInt(base + 12) - 1 : chunkOffsets.length;
+            for (int chunk = firstChunk; chunk <= lastChunk && sample < sampleSizes.length; chunk++) {
+                long offset = chunkOffsets[chunk - 1];
+                for (int i = 0; i < samplesPerChunk && sample < sampleSizes.length; i++) {
+                    offsets[sample] = offset;
+                    offset += sampleSizes[sample];
+                    sample++;
+                }
+            }
+        }
+        return offsets;
+    }
+
+    private static long[] readSampleTimes(ByteBuffer stts, int sampleCount) {
+        int entryCount = stts.getInt(4);
+        long[] times = new long[sampleCount];
+        long time = 0;
+        int sample = 0;
+        for (int e = 0; e < entryCount && sample < sampleCount; e++) {
+            int count = stts.getInt(8 + e * 8);
+            long delta = stts.getInt(12 + e * 8) & 0xffffffffL;
+            for (int i = 0; i < count && sample < sampleCount; i++) {
+                times[sample++] = time;
+                time += delta;
+            }
+        }
+        return times;
+    }
+
+    private static int[] readCompositionOffsets(ByteBuffer ctts, int sampleCount) {
+        int entryCount = ctts.getInt(4);
+        int[] offsets = new int[sampleCount];
+        int sample = 0;
+        for (int e = 0; e < entryCount && sample < sampleCount; e++) {
+            int count = ctts.getInt(8 + e * 8);
+            // version 0 是无符号数，实际使用中不会超过 int 的范围
+            int offset = ctts.getInt(12 + e * 8);
+            for (int i = 0; i < count && sample < sampleCount; i++) {
+                offsets[sample++] = offset;
+            }
+        }
+        return offsets;
+    }
+
+    private static int[] readSyncSamples(ByteBuffer stss) {
+        int count = stss.getInt(4);
+        int[] samples = new int[count];
+        for (int i = 0; i < count; i++) {
+            samples[i] = stss.getInt(8 + i * 4) - 1;
+        }
+        return samples;
+    }
+
+    public Mp4Box getTrak() {
+        return trak;
+    }
+
+    public int getTrackId() {
+        return trackId;
+    }
+
+    public String getHandlerType() {
+        return handlerType;
+    }
+
+    public long getTimescale() {
+        return timescale;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    /**
+     * 轨道时长
+     *
+     * @return 秒
+     */
+    public double getDurationSeconds() {
+        return timescale == 0 ? 0 : (double) duration / timescale;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getSampleEntryType() {
+        return sampleEntryType;
+    }
+
+    public AvcConfig getAvcConfig() {
+        return avcConfig;
+    }
+
+    public boolean isVideo() {
+        return HANDLER_VIDEO.equals(handlerType);
+    }
+
+    public boolean isAudio() {
+        return HANDLER_AUDIO.equals(handlerType);
+    }
+
+    public int getSampleCount() {
+        return sampleSizes.length;
+    }
+
+    public long getSampleOffset(int sample) {
+        return sampleOffsets[sample];
+    }
+
+    public int getSampleSize(int sample) {
+        return sampleSizes[sample];
+    }
+
+    /**
+     * 样本的解码时间
+     *
+     * @param sample 样本序号，从0开始
+     * @return 单位为 timescale
+     */
+    public long getSampleTime(int sample) {
+        return sampleTimes[sample];
+    }
+
+    /**
+     * 样本的时长，最后一个样本使用轨道时长计算
+     *
+     * @param sample 样本序号，从0开始
+     * @return 单位为 timescale
+     */
+    public long getSampleDuration(int sample) {
+        long next = sample + 1 < sampleTimes.length ? sampleTimes[sample + 1] : Math.max(duration, sampleTimes[sample]);
+        return next - sampleTimes[sample];
+    }
+
+    /**
+     * 样本的显示时间与解码时间的差
+     *
+     * @param sample 样本序号，从0开始
+     * @return 单位为 timescale
+     */
+    public int getCompositionOffset(int sample) {
+        return compositionOffsets == null ? 0 : compositionOffsets[sample];
+    }
+
+    public boolean hasCompositionOffsets() {
+        return compositionOffsets != null;
+    }
+
+    /**
+     * 关键帧的样本序号（从0开始，升序）
+     *
+     * @return 样本序号
+     */
+    public int[] getSyncSamples() {
+        if (syncSamples != null) {
+            return syncSamples.clone();
+        }
+        int[] all = new int[sampleSizes.length];
+        for (int i = 0; i < all.length; i++) {
+            all[i] = i;
+        }
+        return all;
+    }
+
+    public boolean isSyncSample(int sample) {
+        return syncSamples == null || Arrays.binarySearch(syncSamples, sample) >= 0;
+    }
+
+    /**
+     * 查找解码时间不晚于 seconds 的最后一个关键帧
+     *
+     * @param seconds 时间，秒
+     * @return 样本序号，从0开始
+     */
+    public int syncSampleAtOrBefore(double seconds) {
+        long time = (long) (seconds * timescale);
+        if (syncSamples == null) {
+            return Math.max(0, lastSampleAtOrBefore(time));
+        }
+        int low = 0;
+        int high = syncSamples.length - 1;
+        int result = syncSamples.length == 0 ? 0 : syncSamples[0];
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (sampleTimes[syncSamples[mid]] <= time) {
+                result = syncSamples[mid];
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 查找解码时间不晚于 time 的最后一个样本
+     *
+     * @param time 单位为 timescale
+     * @return 样本序号，从0开始，没有时为 -1
+     */
+    public int lastSampleAtOrBefore(long time) {
+        int low = 0;
+        int high = sampleTimes.length - 1;
+        int result = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (sampleTimes[mid] <= time) {
+                result = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return result;
+    }
+}
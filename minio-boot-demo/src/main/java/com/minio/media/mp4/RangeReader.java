@@ -0,0 +1,24 @@
+package com.minio.media.mp4;
+
+import java.io.IOException;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname RangeReader
+ * @description 按字节范围读取对象，解析 mp4 时只读取需要的部分，不下载整个文件
+ * @since 2023/4/27 09:10
+ */
+@FunctionalInterface
+public interface RangeReader {
+
+    /**
+     * 读取 [offset, offset + length) 范围内的字节
+     *
+     * @param offset 起始位置
+     * @param length 长度
+     * @return 读取到的字节，长度必须等于 length
+     * @throws IOException 读取失败
+     */
+    byte[] read(long offset, int length) throws IOException;
+}
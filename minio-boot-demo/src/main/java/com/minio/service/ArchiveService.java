@@ -0,0 +1,22 @@
+package com.minio.service;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ArchiveService
+ * @description 把一个前缀下的所有对象打包成 zip 下载
+ * @since 2023/4/30 14:00
+ */
+public interface ArchiveService {
+
+    /**
+     * 输出 zip，第一个对象读取到就开始输出，不需要等待列举完所有对象
+     *
+     * @param response   响应对象
+     * @param bucketName 桶名
+     * @param prefix     对象名的前缀，为空时打包整个桶
+     */
+    void export(HttpServletResponse response, String bucketName, String prefix);
+}
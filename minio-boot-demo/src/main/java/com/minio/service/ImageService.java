@@ -0,0 +1,38 @@
+package com.minio.service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ImageService
+ * @description 图片的缩放、裁剪和格式转换，变换结果第一次请求时生成并保存到 MinIO
+ * @since 2023/4/30 10:20
+ */
+public interface ImageService {
+
+    /**
+     * 输出变换之后的图片
+     *
+     * @param request    请求对象
+     * @param response   响应对象
+     * @param bucketName 桶名
+     * @param objectName 原图的对象名
+     * @param width      目标宽度，为空时按高度等比例计算
+     * @param height     目标高度，为空时按宽度等比例计算
+     * @param fit        缩放方式：contain、cover 或 fill，为空时为 contain
+     * @param format     输出格式：jpg 或 png，为空时 png/gif 原图输出 png，其余输出 jpg
+     * @param quality    JPEG 质量，1-100
+     */
+    void writeImage(HttpServletRequest request, HttpServletResponse response, String bucketName, String objectName,
+                    Integer width, Integer height, String fit, String format, Integer quality);
+
+    /**
+     * 原图被改写或者删除之后，删除它的所有变换结果：本地内存中的缓存、Redis 中的访问记录和 MinIO 中的对象
+     *
+     * @param bucketName 桶名
+     * @param objectName 原图的对象名
+     */
+    void removeVariants(String bucketName, String objectName);
+}
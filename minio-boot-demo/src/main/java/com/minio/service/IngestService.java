@@ -0,0 +1,22 @@
+package com.minio.service;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname IngestService
+ * @description 批量导入：请求体是一个 zip 或 tar（可以是 tar.gz）包，其中的每个文件上传为一个对象
+ * @since 2023/4/30 16:00
+ */
+public interface IngestService {
+
+    /**
+     * 导入请求体中的包
+     *
+     * @param req 请求，可选参数 bucketName 指定目标桶，默认为默认桶
+     * @return 导入清单：每个文件的对象名、大小、md5、类型和结果
+     */
+    Map<String, Object> ingest(HttpServletRequest req);
+}
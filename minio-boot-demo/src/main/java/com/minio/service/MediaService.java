@@ -0,0 +1,66 @@
+package com.minio.service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname MediaService
+ * @description 合并之后的媒体处理（封面、预览图、HLS 分片等）以及处理结果的读取
+ * @since 2023/4/27 11:40
+ */
+public interface MediaService {
+
+    /**
+     * 在后台处理合并好的文件，立即返回
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @param fileType   文件类型（扩展名）
+     */
+    void process(String bucketName, String objectName, String fileType);
+
+    /**
+     * 查询视频的封面和预览图
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @return 预览图的元数据，还没有生成时为 null
+     */
+    Map<String, Object> getPreview(String bucketName, String objectName);
+
+    /**
+     * 输出视频的封面或者预览图
+     *
+     * @param request    请求对象
+     * @param response   响应对象
+     * @param bucketName 桶名
+     * @param objectName 视频的对象名
+     * @param fileName   poster.jpg 或者 sprite-{n}.jpg
+     */
+    void writePreview(HttpServletRequest request, HttpServletResponse response, String bucketName, String objectName,
+                      String fileName);
+
+    /**
+     * 查询视频的 HLS 切片信息
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @return HLS 的元数据，还没有生成时为 null
+     */
+    Map<String, Object> getHls(String bucketName, String objectName);
+
+    /**
+     * 输出视频的 HLS 播放列表或者分片
+     *
+     * @param request    请求对象
+     * @param response   响应对象
+     * @param bucketName 桶名
+     * @param objectName 视频的对象名
+     * @param fileName   index.m3u8、init.mp4 或者 seg-{n}.m4s
+     */
+    void writeHls(HttpServletRequest request, HttpServletResponse response, String bucketName, String objectName,
+                  String fileName);
+}
@@ -14,13 +14,27 @@ import java.util.Map;
 public interface MinioService {
 
     /**
-     * 文件上传前的检查，这是为了实现秒传接口
+     * 文件上传前的检查，这是为了实现秒传和断点续传接口
+     * 文件已存在时返回文件的url，不存在时通过 chunks 返回已经上传过的分片序号
      *
      * @param md5 文件的md5
      * @return 文件是否上传过的元数据
      */
     Map<String, Object> uploadCheck(String md5);
 
+    /**
+     * 初始化上传会话，协商本次上传的分片大小
+     * 分片大小根据文件大小、S3的分片限制以及该客户端最近的上传速度计算，同一个文件的会话内保持不变，
+     * 保证断点续传时分片序号对应的文件区间不变
+     *
+     * @param md5      文件的md5
+     * @param fileName 文件名
+     * @param fileSize 文件大小
+     * @param req      请求
+     * @return 文件已存在时返回url，否则返回 chunkSize、shardCount 以及已上传的分片序号
+     */
+    Map<String, Object> uploadInit(String md5, String fileName, Long fileSize, HttpServletRequest req);
+
     /**
      * 文件上传的核心功能
      *
@@ -29,6 +43,15 @@ public interface MinioService {
      */
     Map<String, Object> upload(HttpServletRequest req);
 
+    /**
+     * 流式上传分片，请求体就是分片的原始字节（application/octet-stream），
+     * 直接转发到 MinIO，边传边计算md5，不经过 multipart 解析，不在内存或临时文件中暂存
+     *
+     * @param req 请求，md5、index、total、name 等参数放在查询字符串中，可选的 chunkMd5 用于校验分片
+     * @return 上传结果的元数据
+     */
+    Map<String, Object> uploadStream(HttpServletRequest req);
+
     /**
      * 分片文件合并的核心方法
      *
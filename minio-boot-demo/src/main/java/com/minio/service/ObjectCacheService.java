@@ -0,0 +1,58 @@
+package com.minio.service;
+
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectCacheService
+ * @description 对象被改写或者删除之后，清理与对象相关的缓存和记录，以及由它生成的派生结果：
+ * gzip 副本、HLS 分片、封面和预览图、图片变换结果。
+ * 不依赖 MinioService，媒体处理器和桶通知的监听器都可以使用，不会形成循环依赖
+ * @since 2023/5/4 10:00
+ */
+public interface ObjectCacheService {
+
+    /**
+     * 清除播放时缓存的对象元数据、视频码率和预读的数据
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     */
+    void evict(String bucketName, String objectName);
+
+    /**
+     * 应用自己即将改写对象，之后一段时间内这个对象的桶通知不当作外部修改处理
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     */
+    void markSelfWrite(String bucketName, String objectName);
+
+    /**
+     * 查询哪些对象正在被应用自己改写
+     *
+     * @param objectKeys 桶名:对象名
+     * @return 其中被标记的部分
+     */
+    Set<String> selfWrites(Collection<String> objectKeys);
+
+    /**
+     * 对象内容变化之后，清除预读的数据和图片变换结果，以及原对象 ETag 与 etag 不同的 gzip 副本、HLS、预览图的元数据。
+     * 这些派生对象保留在 MinIO 中，重新处理时覆盖
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @param etag       对象现在的 ETag，为 null 时清除全部元数据
+     */
+    void evictDerived(String bucketName, String objectName, String etag);
+
+    /**
+     * 对象被删除之后，清除派生结果的元数据并删除 MinIO 中的派生对象
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     */
+    void removeDerived(String bucketName, String objectName);
+}
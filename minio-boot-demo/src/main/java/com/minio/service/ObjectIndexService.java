@@ -0,0 +1,36 @@
+package com.minio.service;
+
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectIndexService
+ * @description 基于本地对象索引的列举和查询，不访问 MinIO
+ * @since 2023/5/2 11:00
+ */
+public interface ObjectIndexService {
+
+    /**
+     * 按前缀和属性查询对象，结果按对象名排序
+     *
+     * @param bucketName  桶名，为空时为默认桶
+     * @param prefix      对象名的前缀，可以为空
+     * @param startAfter  上一页最后一个对象名，可以为空
+     * @param contentType 对象类型的前缀，例如 video/，可以为空
+     * @param minSize     最小大小，可以为空
+     * @param maxSize     最大大小，可以为空
+     * @param limit       每页数量
+     * @return 对象列表，以及下一页的 startAfter
+     */
+    Map<String, Object> search(String bucketName, String prefix, String startAfter, String contentType, Long minSize,
+                               Long maxSize, int limit);
+
+    /**
+     * 用 listObjects 的结果重建一个桶的索引
+     *
+     * @param bucketName 桶名
+     * @return 重建后的对象数
+     */
+    Map<String, Object> rebuild(String bucketName);
+}
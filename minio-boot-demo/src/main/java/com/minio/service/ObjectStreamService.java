@@ -0,0 +1,24 @@
+package com.minio.service;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectStreamService
+ * @description 任意类型对象的流式下载，支持 Range 和 HEAD，视频播放也使用它
+ * @since 2023/4/29 14:00
+ */
+public interface ObjectStreamService {
+
+    /**
+     * 输出对象，请求中有 Range 时只输出对应的范围，HEAD 请求只输出响应头
+     *
+     * @param request    请求对象
+     * @param response   响应对象
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     */
+    void stream(HttpServletRequest request, HttpServletResponse response, String bucketName, String objectName);
+}
@@ -0,0 +1,72 @@
+package com.minio.service;
+
+import com.minio.util.ByteThrottle;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.List;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ThrottleService
+ * @description 分布式限流，限制每个 用户/桶/IP 的并发数和带宽
+ * @since 2023/4/23 10:05
+ */
+public interface ThrottleService {
+
+    /**
+     * 被限流的操作
+     */
+    enum ThrottleScope {
+        /**
+         * 分片上传
+         */
+        UPLOAD,
+        /**
+         * 分片合并
+         */
+        MERGE,
+        /**
+         * 视频播放等流式下载
+         */
+        STREAM
+    }
+
+    /**
+     * 并发许可，使用完之后必须关闭
+     */
+    interface Permit extends AutoCloseable {
+        /**
+         * 释放许可
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * 解析请求对应的限流维度
+     *
+     * @param request    请求
+     * @param bucketName 请求访问的桶
+     * @return 形如 ip:127.0.0.1、user:xxx、bucket:xxx 的维度集合
+     */
+    List<String> resolveKeys(HttpServletRequest request, String bucketName);
+
+    /**
+     * 尝试获取并发许可，任意一个维度超过上限时返回null，不会阻塞
+     *
+     * @param scope 操作
+     * @param keys  限流维度
+     * @return 许可，获取失败返回null
+     */
+    Permit tryAcquire(ThrottleScope scope, List<String> keys);
+
+    /**
+     * 获取各个维度的带宽限制
+     *
+     * @param scope 操作
+     * @param keys  限流维度
+     * @return 带宽限制，不限速时为空集合
+     */
+    List<ByteThrottle> bandwidth(ThrottleScope scope, List<String> keys);
+}
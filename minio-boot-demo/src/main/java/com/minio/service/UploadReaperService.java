@@ -0,0 +1,20 @@
+package com.minio.service;
+
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname UploadReaperService
+ * @description 清理废弃的上传：过期会话的临时桶、没有会话记录的临时桶、未完成的分片上传
+ * @since 2023/4/25 10:30
+ */
+public interface UploadReaperService {
+
+    /**
+     * 执行一次清理，集群内同一时间只有一个节点执行
+     *
+     * @return 清理结果
+     */
+    Map<String, Object> reap();
+}
@@ -0,0 +1,336 @@
+package com.minio.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.minio.config.ArchiveProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.entity.Result;
+import com.minio.entity.StatusCode;
+import com.minio.service.ArchiveService;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import io.minio.errors.ErrorResponseException;
+import io.minio.messages.Item;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ObjectUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ArchiveServiceImpl
+ * @description 按页列举对象，输出当前对象的同时在后台打开后面几个对象（只建立连接、读取响应头，数据仍在网络缓冲区中），
+ * 对象之间没有等待。已经压缩过的类型使用 0 级压缩：ZipOutputStream 的 STORED 条目要求事先知道 CRC，
+ * 流式输出时无法做到，0 级 DEFLATE 的开销只有每 64KB 几个字节。超过 4GB 或 65535 个条目时自动使用 Zip64。
+ * 读取 MinIO 失败时不写 zip 的目录：还没有输出时返回 500，已经输出了一部分时断开连接，客户端不会得到一个缺少文件却能正常打开的 zip
+ * @since 2023/4/30 14:10
+ */
+@Slf4j
+@Service
+public class ArchiveServiceImpl implements ArchiveService {
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Autowired
+    private ArchiveProperties archiveProperties;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private OssTracer ossTracer;
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, archiveProperties.getThreads());
+        executor = ossTracer.wrap(new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(threads * Math.max(1, archiveProperties.getPrefetch()))));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void export(HttpServletResponse response, String bucketName, String prefix) {
+        if (!archiveProperties.isEnabled() || !minioTemplate.bucketExists(bucketName)) {
+            writeNotFound(response);
+            return;
+        }
+        String normalizedPrefix = prefix == null ? "" : prefix;
+        // 条目名去掉前缀中最后一个 / 之前的部分，打包 a/b/ 时条目为 b/...
+        int slash = normalizedPrefix.lastIndexOf('/', normalizedPrefix.endsWith("/")
+                ? normalizedPrefix.length() - 2 : normalizedPrefix.length() - 1);
+        String base = slash < 0 ? "" : normalizedPrefix.substring(0, slash + 1);
+        String archiveName = normalizedPrefix.substring(base.length()).replaceAll("/+$", "");
+        if (archiveName.isEmpty()) {
+            archiveName = bucketName;
+        }
+
+        response.setContentType("application/zip");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.builder("attachment")
+                .filename(archiveName + ".zip", StandardCharsets.UTF_8)
+                .build()
+                .toString());
+        response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+
+        Iterator<io.minio.Result<Item>> items = minioTemplate.listObjects(bucketName, normalizedPrefix, true).iterator();
+        Deque<Pending> pending = new ArrayDeque<>();
+        int prefetch = Math.max(0, archiveProperties.getPrefetch());
+        long entries = 0;
+        long bytes = 0;
+        ClientOutputStream client = null;
+        try (OssSpan span = ossTracer.startSpan("archive.export")) {
+            span.setAttribute("minio.bucket", bucketName).setAttribute("minio.prefix", normalizedPrefix);
+            client = new ClientOutputStream(response.getOutputStream());
+            // 只在成功时关闭，失败时不能让 close() 写出 zip 的目录
+            ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(client,
+                    (int) archiveProperties.getBufferSize().toBytes()));
+            byte[] buffer = new byte[(int) archiveProperties.getBufferSize().toBytes()];
+            fill(pending, items, bucketName, prefetch + 1);
+            while (!pending.isEmpty()) {
+                Pending current = pending.poll();
+                fill(pending, items, bucketName, prefetch + 1);
+                InputStream inputStream = await(current);
+                if (inputStream == null) {
+                    continue;
+                }
+                try (InputStream in = inputStream) {
+                    ZipEntry entry = new ZipEntry(current.item.objectName().substring(base.length()));
+                    entry.setTime(current.item.lastModified().toInstant().toEpochMilli());
+                    zip.setLevel(isStored(current.item.objectName()) ? Deflater.NO_COMPRESSION
+                            : archiveProperties.getLevel());
+                    zip.putNextEntry(entry);
+                    bytes += IOUtils.copyLarge(in, zip, buffer);
+                    zip.closeEntry();
+                }
+                entries++;
+            }
+            zip.close();
+            span.setAttribute("archive.entries", entries).setAttribute("archive.bytes", bytes);
+        } catch (IOException e) {
+            if (client != null && client.failed) {
+                // 客户端断开
+                log.debug("打包下载 {}/{} 中断: {}", bucketName, normalizedPrefix, e.getMessage());
+                return;
+            }
+            log.warn("打包下载 {}/{} 时读取 MinIO 失败，已输出 {} 个对象，中止下载", bucketName, normalizedPrefix,
+                    entries, e);
+            abort(response, e);
+        } finally {
+            for (Pending remaining : pending) {
+                remaining.discard();
+            }
+        }
+    }
+
+    /**
+     * 列举后面的对象并在后台打开，直到有 count 个等待输出的对象
+     */
+    private void fill(Deque<Pending> pending, Iterator<io.minio.Result<Item>> items, String bucketName, int count)
+            throws IOException {
+        while (pending.size() < count && items.hasNext()) {
+            Item item;
+            try {
+                item = items.next().get();
+            } catch (Exception e) {
+                throw new IOException("列举对象失败", e);
+            }
+            if (item.isDir()) {
+                continue;
+            }
+            Callable<InputStream> open = () -> minioTemplate.getObject(bucketName, item.objectName());
+            try {
+                pending.add(new Pending(item, executor.submit(open), null));
+            } catch (RejectedExecutionException e) {
+                // 线程池已满，轮到它时在当前线程中打开
+                FutureTask<InputStream> task = new FutureTask<>(open);
+                pending.add(new Pending(item, task, task));
+            }
+        }
+    }
+
+    /**
+     * 等待对象打开
+     *
+     * @return 输入流，列举之后被删除的对象返回 null
+     */
+    private InputStream await(Pending pending) throws IOException {
+        if (pending.deferred != null) {
+            pending.deferred.run();
+        }
+        try {
+            return pending.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ErrorResponseException
+                    && "NoSuchKey".equals(((ErrorResponseException) cause).errorResponse().code())) {
+                log.debug("打包时跳过已经删除的对象 {}", pending.item.objectName());
+                return null;
+            }
+            throw new IOException("读取对象 " + pending.item.objectName() + " 失败", cause);
+        }
+    }
+
+    /**
+     * 服务端失败时中止下载。响应还没有提交时丢弃缓冲区返回 500；已经提交时抛出异常，
+     * 容器在响应已提交的情况下遇到异常会直接关闭连接，不发送 chunked 编码的结束块，客户端会认为下载失败
+     */
+    private void abort(HttpServletResponse response, IOException cause) {
+        if (!response.isCommitted()) {
+            response.reset();
+            response.setCharacterEncoding(StandardCharsets.UTF_8.toString());
+            response.setContentType("application/json;charset=utf-8");
+            response.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            try {
+                response.getWriter().write(objectMapper.writeValueAsString(Result.error(StatusCode.FAILURE)));
+            } catch (IOException e) {
+                log.debug("输出错误信息失败: {}", e.getMessage());
+            }
+            return;
+        }
+        throw new IllegalStateException("打包下载失败，已中止", cause);
+    }
+
+    private boolean isStored(String objectName) {
+        String type = MediaTypeFactory.getMediaType(objectName)
+                .map(MediaType::toString)
+                .orElse("")
+                .toLowerCase(Locale.ENGLISH);
+        if (ObjectUtils.isEmpty(type)) {
+            return false;
+        }
+        for (String pattern : archiveProperties.getStoredTypes()) {
+            if (pattern.endsWith("/*") ? type.startsWith(pattern.substring(0, pattern.length() - 1)) : type.equals(pattern)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeNotFound(HttpServletResponse response) {
+        response.setCharacterEncoding(StandardCharsets.UTF_8.toString());
+        response.setContentType("application/json;charset=utf-8");
+        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        try {
+            response.getWriter().write(objectMapper.writeValueAsString(Result.error(StatusCode.NOT_FOUND)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 响应的输出流，记录写入是否失败，用来区分客户端断开和读取 MinIO 失败
+     */
+    private static class ClientOutputStream extends FilterOutputStream {
+
+        private boolean failed;
+
+        ClientOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            try {
+                out.write(b);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            try {
+                out.write(b, off, len);
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            try {
+                out.flush();
+            } catch (IOException e) {
+                failed = true;
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 等待输出的对象
+     */
+    private static class Pending {
+
+        private final Item item;
+
+        private final Future<InputStream> future;
+
+        /**
+         * 没有提交到线程池、需要在输出线程中执行的打开操作
+         */
+        private final FutureTask<InputStream> deferred;
+
+        Pending(Item item, Future<InputStream> future, FutureTask<InputStream> deferred) {
+            this.item = item;
+            this.future = future;
+            this.deferred = deferred;
+        }
+
+        /**
+         * 下载中断时关闭已经打开的对象，没有打开的取消
+         */
+        void discard() {
+            if (future.cancel(true)) {
+                return;
+            }
+            try {
+                IOUtils.closeQuietly(future.get());
+            } catch (Exception ignored) {
+                // 打开失败，没有需要关闭的
+            }
+        }
+    }
+}
@@ -0,0 +1,411 @@
+package com.minio.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.minio.config.ImageProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.core.SingleFlight;
+import com.minio.entity.Result;
+import com.minio.entity.StatusCode;
+import com.minio.media.ImageTransformer;
+import com.minio.service.ImageService;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.BoundZSetOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ImageServiceImpl
+ * @description 变换结果保存为 {objectName}.variants/{宽}x{高}-{缩放方式}-q{质量}.{格式}，
+ * 最近使用的变换结果同时缓存在本地内存中。MinIO 中的变换结果按最后访问时间记录在 Redis 的有序集合中，
+ * 数量超过上限时删除最久没有访问的。变换在固定大小的线程池中执行，排队过多时返回 503，
+ * 同一个变换同时只执行一次
+ * @since 2023/4/30 10:30
+ */
+@Slf4j
+@Service
+public class ImageServiceImpl implements ImageService {
+
+    /**
+     * MinIO 中的变换结果，member 为 {bucketName}:{variantName}，score 为最后访问时间
+     */
+    public static final String VARIANTS_KEY = "com:minio:image:variants";
+
+    public static final String VARIANTS_FOLDER_SUFFIX = ".variants/";
+
+    /**
+     * 每张原图的变换结果，完整的key为 前缀 + 桶名:原图对象名，member 与 VARIANTS_KEY 中的相同
+     */
+    public static final String SOURCE_VARIANTS_KEY_PREFIX = "com:minio:image:sourceVariants:";
+
+    /**
+     * 变换的最长等待时间
+     */
+    private static final long TRANSFORM_TIMEOUT_SECONDS = 30;
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Autowired
+    private ImageProperties imageProperties;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Resource(name = "jsonRedisTemplate")
+    private RedisTemplate<String, Serializable> redisTemplate;
+
+    @Autowired
+    private OssTracer ossTracer;
+
+    private final SingleFlight<String, Variant> flight = new SingleFlight<>();
+
+    private final VariantCache memoryCache = new VariantCache();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, imageProperties.getThreads());
+        executor = ossTracer.wrap(new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, imageProperties.getQueueCapacity()))));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void writeImage(HttpServletRequest request, HttpServletResponse response, String bucketName,
+                           String objectName, Integer width, Integer height, String fit, String format,
+                           Integer quality) {
+        if (!imageProperties.isEnabled()) {
+            writeError(response, HttpServletResponse.SC_NOT_FOUND, StatusCode.NOT_FOUND);
+            return;
+        }
+        int max = imageProperties.getMaxDimension();
+        int w = width == null ? 0 : width;
+        int h = height == null ? 0 : height;
+        ImageTransformer.Fit mode = parseFit(fit);
+        String outputFormat = parseFormat(format, objectName);
+        int q = quality == null ? imageProperties.getDefaultQuality() : quality;
+        if (w < 0 || h < 0 || w > max || h > max || (w == 0 && h == 0) || mode == null || outputFormat == null
+                || q < 1 || q > 100) {
+            writeError(response, HttpServletResponse.SC_BAD_REQUEST, StatusCode.PARAM_ERROR);
+            return;
+        }
+        // 只指定一边时三种缩放方式的结果相同
+        if (w == 0 || h == 0) {
+            mode = ImageTransformer.Fit.CONTAIN;
+        }
+        String variantName = objectName + VARIANTS_FOLDER_SUFFIX + w + "x" + h + "-"
+                + mode.name().toLowerCase(Locale.ENGLISH) + ("jpg".equals(outputFormat) ? "-q" + q : "")
+                + "." + outputFormat;
+        String key = bucketName + ":" + variantName;
+
+        Variant variant = memoryCache.get(key);
+        if (variant == null) {
+            try {
+                ImageTransformer.Fit finalMode = mode;
+                variant = flight.execute(key, () -> loadOrCreate(bucketName, objectName, variantName, w, h,
+                        finalMode, outputFormat, q));
+            } catch (RejectedExecutionException | TimeoutException e) {
+                writeError(response, HttpServletResponse.SC_SERVICE_UNAVAILABLE, StatusCode.TOO_MANY_REQUESTS);
+                return;
+            } catch (IOException e) {
+                log.info("变换图片 {}/{} 失败: {}", bucketName, objectName, e.getMessage());
+                writeError(response, HttpServletResponse.SC_BAD_REQUEST, StatusCode.PARAM_ERROR);
+                return;
+            } catch (Exception e) {
+                log.warn("变换图片 {}/{} 失败", bucketName, objectName, e);
+                writeError(response, HttpServletResponse.SC_INTERNAL_SERVER_ERROR, StatusCode.FAILURE);
+                return;
+            }
+            if (variant == null) {
+                writeError(response, HttpServletResponse.SC_NOT_FOUND, StatusCode.NOT_FOUND);
+                return;
+            }
+            memoryCache.put(key, variant);
+        }
+        touch(key);
+
+        String etag = "\"" + variant.etag + "\"";
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", imageProperties.getCacheControl());
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(variant.contentType);
+        response.setContentLength(variant.data.length);
+        try (OutputStream outputStream = response.getOutputStream()) {
+            outputStream.write(variant.data);
+        } catch (IOException e) {
+            log.debug("输出图片 {}/{} 失败: {}", bucketName, variantName, e.getMessage());
+        }
+    }
+
+    /**
+     * 读取 MinIO 中已经保存的变换结果，没有时生成并保存
+     *
+     * @return 变换结果，原图不存在时为 null
+     */
+    private Variant loadOrCreate(String bucketName, String objectName, String variantName, int width, int height,
+                                 ImageTransformer.Fit fit, String format, int quality) throws Exception {
+        String contentType = "png".equals(format) ? "image/png" : "image/jpeg";
+        StatObjectResponse stored = stat(bucketName, variantName);
+        if (stored != null) {
+            // 记录之前保存的结果也登记到原图下
+            redisTemplate.opsForSet().add(SOURCE_VARIANTS_KEY_PREFIX + bucketName + ":" + objectName,
+                    bucketName + ":" + variantName);
+            try (InputStream inputStream = minioTemplate.getObject(bucketName, variantName)) {
+                return new Variant(IOUtils.toByteArray(inputStream), trimQuotes(stored.etag()), contentType);
+            }
+        }
+        if (stat(bucketName, objectName) == null) {
+            return null;
+        }
+
+        Future<byte[]> future = executor.submit(() -> {
+            try (OssSpan span = ossTracer.startSpan("image.transform");
+                 InputStream inputStream = minioTemplate.getObject(bucketName, objectName)) {
+                span.setAttribute("minio.bucket", bucketName).setAttribute("minio.object", variantName);
+                return ImageTransformer.transform(inputStream, width, height, fit, format, quality,
+                        imageProperties.getMaxSourcePixels());
+            }
+        });
+        byte[] data;
+        try {
+            data = future.get(TRANSFORM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+
+        String etag = minioTemplate.putObjectStreaming(new ByteArrayInputStream(data), data.length, bucketName,
+                variantName, contentType);
+        redisTemplate.opsForSet().add(SOURCE_VARIANTS_KEY_PREFIX + bucketName + ":" + objectName,
+                bucketName + ":" + variantName);
+        touch(bucketName + ":" + variantName);
+        trimStoredVariants();
+        return new Variant(data, trimQuotes(etag), contentType);
+    }
+
+    private StatObjectResponse stat(String bucketName, String objectName) throws Exception {
+        try {
+            return minioTemplate.getObjectInfo(bucketName, objectName);
+        } catch (Exception e) {
+            if (e instanceof ErrorResponseException
+                    && "NoSuchKey".equals(((ErrorResponseException) e).errorResponse().code())) {
+                return null;
+            }
+            throw e;
+        }
+    }
+
+    private void touch(String key) {
+        try (OssSpan ignored = ossTracer.startSpan("redis.zadd")) {
+            redisTemplate.boundZSetOps(VARIANTS_KEY).add(key, System.currentTimeMillis());
+        } catch (Exception e) {
+            log.debug("记录图片 {} 的访问时间失败: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * MinIO 中的变换结果超过上限时，删除最久没有访问的
+     */
+    private void trimStoredVariants() {
+        BoundZSetOperations<String, Serializable> variants = redisTemplate.boundZSetOps(VARIANTS_KEY);
+        Long size = variants.zCard();
+        long excess = size == null ? 0 : size - imageProperties.getMaxStoredVariants();
+        if (excess <= 0) {
+            return;
+        }
+        Set<Serializable> oldest = variants.range(0, excess - 1);
+        if (oldest == null || oldest.isEmpty()) {
+            return;
+        }
+        Map<String, List<String>> byBucket = new LinkedHashMap<>();
+        for (Serializable member : oldest) {
+            String key = member.toString();
+            int index = key.indexOf(':');
+            String variantName = key.substring(index + 1);
+            byBucket.computeIfAbsent(key.substring(0, index), b -> new ArrayList<>()).add(variantName);
+            memoryCache.remove(key);
+            int suffix = variantName.lastIndexOf(VARIANTS_FOLDER_SUFFIX);
+            if (suffix > 0) {
+                redisTemplate.opsForSet().remove(SOURCE_VARIANTS_KEY_PREFIX + key.substring(0, index) + ":"
+                        + variantName.substring(0, suffix), member);
+            }
+        }
+        variants.remove(oldest.toArray());
+        byBucket.forEach(minioTemplate::removeObjects);
+        log.info("删除了 {} 个最久没有访问的图片变换结果", oldest.size());
+    }
+
+    @Override
+    public void removeVariants(String bucketName, String objectName) {
+        String sourceKey = SOURCE_VARIANTS_KEY_PREFIX + bucketName + ":" + objectName;
+        memoryCache.removePrefix(bucketName + ":" + objectName + VARIANTS_FOLDER_SUFFIX);
+        Set<Serializable> members = redisTemplate.opsForSet().members(sourceKey);
+        if (members == null || members.isEmpty()) {
+            return;
+        }
+        List<String> variantNames = new ArrayList<>(members.size());
+        for (Serializable member : members) {
+            variantNames.add(member.toString().substring(bucketName.length() + 1));
+        }
+        redisTemplate.boundZSetOps(VARIANTS_KEY).remove(members.toArray());
+        minioTemplate.removeObjects(bucketName, variantNames);
+        redisTemplate.delete(sourceKey);
+        log.info("{}/{} 已被改写或删除，删除了 {} 个图片变换结果", bucketName, objectName, variantNames.size());
+    }
+
+    private static ImageTransformer.Fit parseFit(String fit) {
+        if (fit == null || fit.isEmpty()) {
+            return ImageTransformer.Fit.CONTAIN;
+        }
+        for (ImageTransformer.Fit value : ImageTransformer.Fit.values()) {
+            if (value.name().equalsIgnoreCase(fit)) {
+                return value;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * JDK 自带的编码器只支持 JPEG、PNG、GIF、BMP，这里只输出 JPEG 和 PNG
+     */
+    private static String parseFormat(String format, String objectName) {
+        if (format == null || format.isEmpty()) {
+            String name = objectName.toLowerCase(Locale.ENGLISH);
+            return name.endsWith(".png") || name.endsWith(".gif") ? "png" : "jpg";
+        }
+        String lower = format.toLowerCase(Locale.ENGLISH);
+        if ("jpg".equals(lower) || "jpeg".equals(lower)) {
+            return "jpg";
+        }
+        return "png".equals(lower) ? "png" : null;
+    }
+
+    private static String trimQuotes(String etag) {
+        return etag == null ? "" : etag.replace("\"", "");
+    }
+
+    private void writeError(HttpServletResponse response, int status, StatusCode statusCode) {
+        response.setCharacterEncoding(StandardCharsets.UTF_8.toString());
+        response.setContentType("application/json;charset=utf-8");
+        response.setStatus(status);
+        try {
+            response.getWriter().write(objectMapper.writeValueAsString(Result.error(statusCode)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 一个变换结果
+     */
+    private static class Variant {
+
+        private final byte[] data;
+
+        private final String etag;
+
+        private final String contentType;
+
+        Variant(byte[] data, String etag, String contentType) {
+            this.data = data;
+            this.etag = etag;
+            this.contentType = contentType;
+        }
+    }
+
+    /**
+     * 本地内存中的变换结果，按总字节数限制，淘汰最近最少使用的
+     */
+    private class VariantCache {
+
+        private final LinkedHashMap<String, Variant> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+        private long bytes;
+
+        synchronized Variant get(String key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(String key, Variant variant) {
+            long capacity = imageProperties.getMemoryCacheSize().toBytes();
+            // 太大的图片不缓存，避免把其他图片都挤出去
+            if (variant.data.length > capacity / 8) {
+                return;
+            }
+            Variant previous = entries.put(key, variant);
+            if (previous != null) {
+                bytes -= previous.data.length;
+            }
+            bytes += variant.data.length;
+            Iterator<Variant> iterator = entries.values().iterator();
+            while (bytes > capacity && iterator.hasNext()) {
+                bytes -= iterator.next().data.length;
+                iterator.remove();
+            }
+        }
+
+        synchronized void remove(String key) {
+            Variant previous = entries.remove(key);
+            if (previous != null) {
+                bytes -= previous.data.length;
+            }
+        }
+
+        synchronized void removePrefix(String prefix) {
+            Iterator<Map.Entry<String, Variant>> iterator = entries.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Variant> entry = iterator.next();
+                if (entry.getKey().startsWith(prefix)) {
+                    bytes -= entry.getValue().data.length;
+                    iterator.remove();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package com.minio.service.impl;
+
+import com.minio.config.IngestProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.entity.OssFile;
+import com.minio.entity.StatusCode;
+import com.minio.service.IngestService;
+import com.minio.service.MediaService;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import com.minio.util.BucketAccessUtil;
+import com.minio.util.FileTypeUtil;
+import com.minio.util.Md5Util;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.zip.ZipArchiveInputStream;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.BoundHashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ObjectUtils;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname IngestServiceImpl
+ * @description 在请求线程中顺序读取包中的文件，小文件读入内存后交给线程池识别类型、上传、写入 md5 索引，
+ * 读取线程不等待上传完成就继续读取下一个文件；读入内存的总大小有上限，超过时读取线程等待。
+ * 大文件在读取线程中边读边上传。与分片上传共用 md5 索引，内容已经存在的文件不再上传，直接返回已有的地址。
+ * 解压后的总大小在读取时计数，超过上限立即失败，压缩率很高的文件（zip 炸弹）不会把大量数据写入 MinIO
+ * @since 2023/4/30 16:10
+ */
+@Slf4j
+@Service
+public class IngestServiceImpl implements IngestService {
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * 大文件用于识别类型的开头部分
+     */
+    private static final int DETECT_SIZE = 64 * 1024;
+
+    /**
+     * 大文件上传的最小分片
+     */
+    private static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Autowired
+    private IngestProperties ingestProperties;
+
+    @Autowired
+    private MediaService mediaService;
+
+    @Resource(name = "jsonRedisTemplate")
+    private RedisTemplate<String, Serializable> redisTemplate;
+
+    @Autowired
+    private OssTracer ossTracer;
+
+    private ExecutorService executor;
+
+    /**
+     * 读入内存、等待上传的字节数，单位为 KB
+     */
+    private Semaphore memory;
+
+    @PostConstruct
+    public void init() {
+        int threads = Math.max(1, ingestProperties.getThreads());
+        // 排队的任务受内存上限约束，队列本身不需要限制长度
+        executor = ossTracer.wrap(new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>()));
+        memory = new Semaphore((int) Math.max(1, ingestProperties.getMaxInFlightMemory().toKilobytes()));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public Map<String, Object> ingest(HttpServletRequest req) {
+        Map<String, Object> retMap = new HashMap<>();
+        String bucketName = req.getParameter("bucketName");
+        if (ObjectUtils.isEmpty(bucketName)) {
+            bucketName = minioTemplate.getDefaultBucketName();
+        }
+        if (!ingestProperties.isEnabled()) {
+            retMap.put("status", StatusCode.NOT_FOUND.getCode());
+            return retMap;
+        }
+        if (!BucketAccessUtil.isAllowed(bucketName, ingestProperties.getAllowedBuckets(),
+                minioTemplate.getDefaultBucketName())) {
+            retMap.put("status", StatusCode.FORBIDDEN.getCode());
+            return retMap;
+        }
+        if (!minioTemplate.bucketExists(bucketName)) {
+            retMap.put("status", StatusCode.NOT_FOUND.getCode());
+            return retMap;
+        }
+
+        long inMemoryLimit = Math.min(ingestProperties.getMaxInMemoryEntrySize().toBytes(),
+                ingestProperties.getMaxInFlightMemory().toBytes());
+        List<Future<Map<String, Object>>> results = new ArrayList<>();
+        StatusCode status = StatusCode.SUCCESS;
+        try (OssSpan span = ossTracer.startSpan("ingest");
+             ArchiveInputStream archive = openArchive(req.getInputStream())) {
+            span.setAttribute("minio.bucket", bucketName);
+            // 所有文件共用解压后的总大小配额，读到超过配额的字节时抛出异常
+            SizeLimitInputStream content = new SizeLimitInputStream(archive, ingestProperties.getMaxTotalSize().toBytes());
+            ArchiveEntry entry;
+            while ((entry = archive.getNextEntry()) != null) {
+                if (entry.isDirectory()) {
+                    continue;
+                }
+                if (results.size() >= ingestProperties.getMaxEntries()) {
+                    status = StatusCode.PAYLOAD_TOO_LARGE;
+                    break;
+                }
+                String name = entry.getName().replace('\\', '/').replaceAll("^/+", "");
+                if (!archive.canReadEntryData(entry)) {
+                    results.add(done(failed(name, "不支持的压缩方式或加密的文件")));
+                    continue;
+                }
+                byte[] head = readAtMost(content, inMemoryLimit + 1);
+                if (head.length <= inMemoryLimit) {
+                    results.add(submit(bucketName, name, head));
+                } else {
+                    results.add(done(uploadLarge(bucketName, name, head, content)));
+                }
+                if (content.exceeded) {
+                    log.warn("批量导入到桶 {} 的包解压后超过 {}，停止导入", bucketName, ingestProperties.getMaxTotalSize());
+                    status = StatusCode.PAYLOAD_TOO_LARGE;
+                    break;
+                }
+            }
+            span.setAttribute("ingest.entries", results.size());
+        } catch (SizeLimitExceededException e) {
+            log.warn("批量导入到桶 {} 的包解压后超过 {}，停止导入", bucketName, ingestProperties.getMaxTotalSize());
+            status = StatusCode.PAYLOAD_TOO_LARGE;
+        } catch (ArchiveException | CompressorException e) {
+            log.info("批量导入的请求体不是 zip 或 tar 包: {}", e.getMessage());
+            retMap.put("status", StatusCode.PARAM_ERROR.getCode());
+            return retMap;
+        } catch (IOException e) {
+            // 客户端断开或者包已损坏，返回已经读取的文件的结果
+            log.warn("读取批量导入的包失败: {}", e.getMessage());
+            status = StatusCode.FAILURE;
+        }
+
+        List<Map<String, Object>> manifest = new ArrayList<>(results.size());
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        for (Future<Map<String, Object>> result : results) {
+            Map<String, Object> item;
+            try {
+                item = result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                // 上传任务已经把异常记录在结果中，这里不会发生
+                item = failed("", String.valueOf(e.getCause()));
+            }
+            manifest.add(item);
+            counts.merge((String) item.get("result"), 1, Integer::sum);
+        }
+        log.info("批量导入到桶 {}: {}", bucketName, counts);
+        retMap.put("status", status.getCode());
+        retMap.put("bucketName", bucketName);
+        retMap.put("counts", counts);
+        retMap.put("entries", manifest);
+        return retMap;
+    }
+
+    /**
+     * 识别包的格式：zip、tar 或者 gzip 压缩的 tar
+     */
+    private ArchiveInputStream openArchive(InputStream body) throws IOException, ArchiveException, CompressorException {
+        InputStream in = new BufferedInputStream(body, STREAM_BUFFER_SIZE);
+        String compressor = null;
+        try {
+            compressor = CompressorStreamFactory.detect(in);
+        } catch (CompressorException ignored) {
+            // 没有压缩
+        }
+        if (CompressorStreamFactory.GZIP.equals(compressor)) {
+            in = new BufferedInputStream(new CompressorStreamFactory().createCompressorInputStream(compressor, in),
+                    STREAM_BUFFER_SIZE);
+        }
+        String format = ArchiveStreamFactory.detect(in);
+        if (ArchiveStreamFactory.ZIP.equals(format)) {
+            // 允许带数据描述符的 STORED 条目，流式打包工具常见
+            return new ZipArchiveInputStream(in, StandardCharsets.UTF_8.name(), true, true);
+        }
+        if (ArchiveStreamFactory.TAR.equals(format)) {
+            return new TarArchiveInputStream(in, StandardCharsets.UTF_8.name());
+        }
+        throw new ArchiveException("不支持的格式: " + format);
+    }
+
+    /**
+     * 把小文件交给线程池上传，读入内存的总大小超过上限时等待
+     */
+    private Future<Map<String, Object>> submit(String bucketName, String name, byte[] data) {
+        int permits = (int) Math.max(1, (data.length + 1023) / 1024);
+        memory.acquireUninterruptibly(permits);
+        try {
+            return executor.submit(() -> {
+                try {
+                    return uploadSmall(bucketName, name, data);
+                } catch (Exception e) {
+                    log.warn("批量导入 {} 失败", name, e);
+                    return failed(name, e.getMessage());
+                } finally {
+                    memory.release(permits);
+                }
+            });
+        } catch (RuntimeException e) {
+            memory.release(permits);
+            throw e;
+        }
+    }
+
+    private Map<String, Object> uploadSmall(String bucketName, String name, byte[] data) {
+        String md5 = Md5Util.calculateMd5(data);
+        String contentType = detectContentType(new ByteArrayInputStream(data), name, (long) data.length);
+        Map<String, Object> item = item(name, data.length, md5, contentType);
+        // 内容已经存在，不再上传
+        String existing = (String) md5Index().get(md5);
+        if (!ObjectUtils.isEmpty(existing)) {
+            item.put("result", "duplicate");
+            item.put("url", existing);
+            return item;
+        }
+        OssFile ossFile = minioTemplate.putObject(new ByteArrayInputStream(data), bucketName, fileName(name),
+                contentType);
+        return commit(bucketName, ossFile.getOssFilePath(), name, md5, item);
+    }
+
+    /**
+     * 大文件边读边上传，上传完成后才知道 md5，内容已经存在时删除刚上传的对象
+     */
+    private Map<String, Object> uploadLarge(String bucketName, String name, byte[] head, InputStream archive)
+            throws IOException {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        String contentType = detectContentType(new ByteArrayInputStream(head, 0, Math.min(head.length, DETECT_SIZE)),
+                name, null);
+        String objectName = minioTemplate.generateFileInMinioName(fileName(name));
+        long partSize = Math.max(MIN_PART_SIZE, ingestProperties.getMaxInMemoryEntrySize().toBytes());
+        // 包中当前文件读完之后 SequenceInputStream 会关闭它，不能关闭整个包
+        CountingInputStream counting = new CountingInputStream(new SequenceInputStream(new ByteArrayInputStream(head),
+                CloseShieldInputStream.wrap(archive)));
+        InputStream content = new DigestInputStream(counting, messageDigest);
+        try {
+            minioTemplate.putObjectUnknownSize(content, bucketName, objectName, contentType, partSize);
+        } catch (Exception e) {
+            log.warn("批量导入 {} 失败", name, e);
+            return failed(name, e.getMessage());
+        }
+        String md5 = Md5Util.encodeHex(messageDigest.digest());
+        return commit(bucketName, objectName, name, md5, item(name, counting.getByteCount(), md5, contentType));
+    }
+
+    /**
+     * 写入 md5 索引，同样内容的文件同时导入时只保留先写入的
+     */
+    private Map<String, Object> commit(String bucketName, String objectName, String name, String md5,
+                                       Map<String, Object> item) {
+        String url = minioTemplate.getPresignedObjectUrl(bucketName, objectName);
+        BoundHashOperations<String, Object, Object> md5Index = md5Index();
+        if (!Boolean.TRUE.equals(md5Index.putIfAbsent(md5, url))) {
+            minioTemplate.deleteObject(bucketName, objectName);
+            item.put("result", "duplicate");
+            item.put("url", md5Index.get(md5));
+            return item;
+        }
+        redisTemplate.boundHashOps(MinioServiceImpl.MD5_OBJECT_KEY).put(bucketName + ":" + objectName, md5);
+        String fileType = StringUtils.getFilenameExtension(name);
+        if (!ObjectUtils.isEmpty(fileType)) {
+            mediaService.process(bucketName, objectName, fileType);
+        }
+        item.put("result", "uploaded");
+        item.put("objectName", objectName);
+        item.put("url", url);
+        return item;
+    }
+
+    private BoundHashOperations<String, Object, Object> md5Index() {
+        return redisTemplate.boundHashOps(MinioServiceImpl.MD5_KEY);
+    }
+
+    private static String detectContentType(InputStream inputStream, String name, Long size) {
+        try {
+            String contentType = FileTypeUtil.getFileMimeType(inputStream, fileName(name), size);
+            if (!ObjectUtils.isEmpty(contentType)) {
+                return contentType;
+            }
+        } catch (IllegalArgumentException e) {
+            log.debug("识别 {} 的类型失败: {}", name, e.getMessage());
+        }
+        return MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+
+    /**
+     * 读取当前文件，最多 limit 个字节
+     */
+    private static byte[] readAtMost(InputStream inputStream, long limit) throws IOException {
+        byte[] buffer = new byte[(int) Math.min(limit, STREAM_BUFFER_SIZE)];
+        int length = 0;
+        while (length < limit) {
+            if (length == buffer.length) {
+                buffer = Arrays.copyOf(buffer, (int) Math.min(limit, (long) buffer.length * 2));
+            }
+            int n = inputStream.read(buffer, length, buffer.length - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+        }
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * 对象名中只保留文件名，目录层级不带入
+     */
+    private static String fileName(String name) {
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+
+    private static Map<String, Object> item(String name, long size, String md5, String contentType) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("name", name);
+        item.put("size", size);
+        item.put("md5", md5);
+        item.put("contentType", contentType);
+        return item;
+    }
+
+    private static Map<String, Object> failed(String name, String error) {
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("name", name);
+        item.put("result", "failed");
+        item.put("error", error);
+        return item;
+    }
+
+    private static Future<Map<String, Object>> done(Map<String, Object> item) {
+        return CompletableFuture.completedFuture(item);
+    }
+
+    /**
+     * 读取的字节数超过配额时抛出 {@link SizeLimitExceededException}，不会像 BoundedInputStream 那样悄悄截断文件。
+     * 不关闭包的输入流
+     */
+    private static class SizeLimitInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        private boolean exceeded;
+
+        SizeLimitInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                consume(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            // 配额用完之后仍然读取一个字节，确认文件确实超过了配额
+            int n = in.read(b, off, (int) Math.min(len, Math.max(1, remaining)));
+            if (n > 0) {
+                consume(n);
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = in.skip(Math.min(n, Math.max(1, remaining)));
+            if (skipped > 0) {
+                consume(skipped);
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // 包由调用方关闭
+        }
+
+        private void consume(long n) throws SizeLimitExceededException {
+            remaining -= n;
+            if (remaining < 0) {
+                exceeded = true;
+                throw new SizeLimitExceededException();
+            }
+        }
+    }
+
+    private static class SizeLimitExceededException extends IOException {
+
+        SizeLimitExceededException() {
+            super("包解压后的大小超过上限");
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.minio.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.minio.config.MediaProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.entity.Result;
+import com.minio.entity.StatusCode;
+import com.minio.media.HlsProcessor;
+import com.minio.media.MediaContext;
+import com.minio.media.MediaProcessor;
+import com.minio.media.VideoPreviewProcessor;
+import com.minio.service.MediaService;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import io.minio.StatObjectResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname MediaServiceImpl
+ * @description 按 @Order 顺序执行所有的 MediaProcessor，一个步骤失败不影响后面的步骤
+ * @since 2023/4/27 11:45
+ */
+@Slf4j
+@Service
+public class MediaServiceImpl implements MediaService {
+
+    /**
+     * 等待处理的文件数上限，超过之后丢弃，避免大量合并时占用过多内存
+     */
+    private static final int QUEUE_CAPACITY = 1000;
+
+    /**
+     * 封面和预览图的文件名，只允许读取这些文件
+     */
+    private static final Pattern PREVIEW_FILE = Pattern.compile("poster\\.jpg|sprite-\\d+\\.jpg");
+
+    /**
+     * HLS 的文件名，只允许读取这些文件
+     */
+    private static final Pattern HLS_FILE = Pattern.compile("index\\.m3u8|init\\.mp4|seg-\\d+\\.m4s");
+
+    /**
+     * 封面、预览图和 HLS 分片的对象名是唯一的，内容不会改变，可以一直缓存
+     */
+    private static final String IMMUTABLE_CACHE_CONTROL = "public, max-age=31536000, immutable";
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Resource(name = "jsonRedisTemplate")
+    private RedisTemplate<String, Serializable> redisTemplate;
+
+    @Autowired
+    private OssTracer ossTracer;
+
+    @Autowired
+    private MediaProperties mediaProperties;
+
+    @Autowired(required = false)
+    private List<MediaProcessor> processors = new ArrayList<>();
+
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        int threads = mediaProperties.getThreads();
+        executor = ossTracer.wrap(new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY)));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public void process(String bucketName, String objectName, String fileType) {
+        if (!mediaProperties.isEnabled() || processors.isEmpty()) {
+            return;
+        }
+        try {
+            executor.execute(() -> doProcess(new MediaContext(minioTemplate, bucketName, objectName, fileType)));
+        } catch (RejectedExecutionException e) {
+            log.warn("媒体处理队列已满，跳过 {}/{}", bucketName, objectName);
+        }
+    }
+
+    private void doProcess(MediaContext context) {
+        for (MediaProcessor processor : processors) {
+            if (!processor.supports(context)) {
+                continue;
+            }
+            String name = processor.getClass().getSimpleName();
+            try (OssSpan span = ossTracer.startSpan("media." + name)) {
+                span.setAttribute("minio.bucket", context.getBucketName());
+                span.setAttribute("minio.object", context.getObjectName());
+                try {
+                    processor.process(context);
+                } catch (Exception e) {
+                    span.recordException(e);
+                    log.error("{} 处理 {}/{} 失败", name, context.getBucketName(), context.getObjectName(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getPreview(String bucketName, String objectName) {
+        try (OssSpan ignored = ossTracer.startSpan("redis.hget")) {
+            return (Map<String, Object>) redisTemplate.boundHashOps(VideoPreviewProcessor.PREVIEW_KEY)
+                    .get(bucketName + ":" + objectName);
+        }
+    }
+
+    @Override
+    public void writePreview(HttpServletRequest request, HttpServletResponse response, String bucketName,
+                             String objectName, String fileName) {
+        if (!PREVIEW_FILE.matcher(fileName).matches()) {
+            writeNotFound(response);
+            return;
+        }
+        writeImmutable(request, response, bucketName, objectName + VideoPreviewProcessor.PREVIEW_FOLDER_SUFFIX + fileName);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> getHls(String bucketName, String objectName) {
+        try (OssSpan ignored = ossTracer.startSpan("redis.hget")) {
+            return (Map<String, Object>) redisTemplate.boundHashOps(HlsProcessor.HLS_KEY)
+                    .get(bucketName + ":" + objectName);
+        }
+    }
+
+    @Override
+    public void writeHls(HttpServletRequest request, HttpServletResponse response, String bucketName,
+                         String objectName, String fileName) {
+        if (!HLS_FILE.matcher(fileName).matches()) {
+            writeNotFound(response);
+            return;
+        }
+        writeImmutable(request, response, bucketName, objectName + HlsProcessor.HLS_FOLDER_SUFFIX + fileName);
+    }
+
+    /**
+     * 输出内容不会改变的对象，带上 ETag 和长期缓存的响应头，If-None-Match 匹配时返回 304
+     */
+    private void writeImmutable(HttpServletRequest request, HttpServletResponse response, String bucketName,
+                                String objectName) {
+        StatObjectResponse objectInfo;
+        try {
+            objectInfo = minioTemplate.getObjectInfo(bucketName, objectName);
+        } catch (Exception e) {
+            writeNotFound(response);
+            return;
+        }
+        String etag = "\"" + objectInfo.etag() + "\"";
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", IMMUTABLE_CACHE_CONTROL);
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType(objectInfo.contentType());
+        response.setContentLengthLong(objectInfo.size());
+        try (InputStream inputStream = minioTemplate.getObject(bucketName, objectName);
+             OutputStream outputStream = response.getOutputStream()) {
+            IOUtils.copy(inputStream, outputStream);
+        } catch (IOException e) {
+            log.warn("输出 {}/{} 失败: {}", bucketName, objectName, e.getMessage());
+        }
+    }
+
+    private void writeNotFound(HttpServletResponse response) {
+        response.setCharacterEncoding(StandardCharsets.UTF_8.toString());
+        response.setContentType("application/json;charset=utf-8");
+        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        try {
+            response.getWriter().write(objectMapper.writeValueAsString(Result.error(StatusCode.NOT_FOUND)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -1,24 +1,40 @@
 package com.minio.service.impl;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.minio.config.ReaperProperties;
+import com.minio.config.ThrottleProperties;
 import com.minio.core.MinioTemplate;
-import com.minio.entity.MinioObject;
 import com.minio.entity.OssFile;
-import com.minio.entity.Result;
 import com.minio.entity.StatusCode;
+import com.minio.media.FaststartProcessor;
+import com.minio.media.VideoPacer;
+import com.minio.service.MediaService;
 import com.minio.service.MinioService;
+import com.minio.service.ObjectStreamService;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import com.minio.util.ChunkSizeUtil;
 import com.minio.util.FileTypeUtil;
+import com.minio.util.IpUtil;
 import com.minio.util.Md5Util;
-import io.minio.StatObjectResponse;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.catalina.connector.ClientAbortException;
-import org.apache.commons.io.IOUtils;
-import org.springframework.beans.BeanUtils;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.BoundHashOperations;
+import org.springframework.data.redis.core.BoundValueOperations;
+import org.springframework.data.redis.core.BoundSetOperations;
+import org.springframework.data.redis.core.BoundZSetOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.stereotype.Service;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.multipart.MultipartHttpServletRequest;
 
@@ -27,7 +43,11 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author lyf
@@ -43,12 +63,90 @@ public class MinioServiceImpl implements MinioService {
     /**
      * 存储视频的元数据列表
      */
-    private static final String OBJECT_INFO_LIST = "com:minio:media:objectList";
+    static final String OBJECT_INFO_LIST = "com:minio:media:objectList";
 
     /**
      * 已上传文件的md5列表
      */
-    private static final String MD5_KEY = "com:minio:file:md5List";
+    static final String MD5_KEY = "com:minio:file:md5List";
+
+    /**
+     * md5列表的反向索引，key 为 桶名:对象名，值为文件的md5，对象被删除时用它清理md5列表
+     */
+    static final String MD5_OBJECT_KEY = "com:minio:file:md5Object";
+
+    /**
+     * 已上传分片的索引集合的前缀，完整的key为 前缀 + 文件md5，值为分片的序号（从1开始）
+     */
+    static final String CHUNK_INDEX_KEY_PREFIX = "com:minio:file:chunks:";
+
+    /**
+     * 分片索引的过期时间，超过这个时间没有新的分片上传，就认为这次上传已经被放弃了
+     */
+    private static final long CHUNK_INDEX_EXPIRE_DAYS = 7;
+
+    /**
+     * 上传会话的前缀，完整的key为 前缀 + 文件md5，记录协商好的分片大小
+     */
+    static final String UPLOAD_SESSION_KEY_PREFIX = "com:minio:file:session:";
+
+    /**
+     * 客户端上传速度（字节/秒）的移动平均值的前缀，完整的key为 前缀 + 客户端IP
+     */
+    private static final String UPLOAD_THROUGHPUT_KEY_PREFIX = "com:minio:upload:throughput:";
+
+    /**
+     * 上传速度的过期时间，客户端长时间没有上传时速度已经没有参考价值，过期后按默认分片大小协商
+     */
+    private static final long UPLOAD_THROUGHPUT_EXPIRE_DAYS = 7;
+
+    /**
+     * 合并锁的前缀，完整的key为 前缀 + 文件md5
+     */
+    static final String MERGE_LOCK_KEY_PREFIX = "com:minio:file:mergeLock:";
+
+    /**
+     * 合并令牌的前缀，每次拿到合并锁时递增，用于识别租期已过期的旧持有者
+     */
+    static final String MERGE_FENCE_KEY_PREFIX = "com:minio:file:mergeFence:";
+
+    /**
+     * 令牌仍然是最新的时候才写入md5列表和反向索引，校验和写入在一个脚本中完成，
+     * 旧的持有者在校验之后暂停也无法覆盖新的结果。合并令牌由 Redisson 以数字字符串保存
+     */
+    private static final RedisScript<Long> FENCED_COMMIT_SCRIPT = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) ~= ARGV[1] then return 0 end "
+                    + "redis.call('HSET', KEYS[2], ARGV[2], ARGV[3]) "
+                    + "redis.call('HSET', KEYS[3], ARGV[4], ARGV[5]) "
+                    + "return 1", Long.class);
+
+    /**
+     * 临时桶的标签，清理任务只删除带有这个标签或者有会话记录的桶，不会误删名字恰好是32位十六进制的其他桶
+     */
+    static final String UPLOAD_BUCKET_TAG = "oss-upload-session";
+
+    /**
+     * 上传会话的最后活动时间，member 为文件md5，score 为最后一个分片上传成功的时间戳，供清理任务查找废弃的会话
+     */
+    static final String UPLOAD_ACTIVITY_KEY = "com:minio:file:uploadActivity";
+
+    /**
+     * 等待其他请求合并同一个文件的最长时间，超时后返回合并中的状态
+     */
+    @Value("${minio.merge.wait-time:60s}")
+    private Duration mergeWaitTime;
+
+    /**
+     * 合并锁的租期，必须大于合并一个最大文件所需要的时间
+     */
+    @Value("${minio.merge.lease-time:30m}")
+    private Duration mergeLeaseTime;
+
+    /**
+     * 分片大小上限，不能超过 spring.servlet.multipart.max-file-size
+     */
+    @Value("${minio.upload.max-chunk-size:64MB}")
+    private DataSize maxChunkSize;
 
     @Autowired
     private MinioTemplate minioTemplate;
@@ -59,8 +157,32 @@ public class MinioServiceImpl implements MinioService {
     @Resource(name = "jsonRedisTemplate")
     private RedisTemplate<String, Serializable> redisTemplate;
 
+    @Autowired
+    private OssTracer ossTracer;
+
+    @Autowired
+    private ThrottleProperties throttleProperties;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private ReaperProperties reaperProperties;
+
+    @Autowired
+    private ObjectStreamService objectStreamService;
+
+    @Autowired
+    private VideoPacer videoPacer;
+
+    @Autowired
+    private MediaService mediaService;
+
+    @Autowired
+    private FaststartProcessor faststartProcessor;
+
     /**
-     * 文件上传前的检查，这是为了实现秒传接口
+     * 文件上传前的检查，这是为了实现秒传和断点续传接口
      *
      * @param md5 文件的md5
      * @return 文件是否上传过的元数据
@@ -75,9 +197,10 @@ public class MinioServiceImpl implements MinioService {
         // 先从Redis中查询
         String url = (String) redisTemplate.boundHashOps(MD5_KEY).get(md5);
 
-        // 文件不存在
+        // 文件不存在，返回已经上传过的分片序号，前端只需要上传缺少的分片
         if (ObjectUtils.isEmpty(url)) {
             resultMap.put("status", StatusCode.NOT_FOUND.getCode());
+            resultMap.put("chunks", listUploadedChunks(md5));
             return resultMap;
         }
 
@@ -87,6 +210,75 @@ public class MinioServiceImpl implements MinioService {
         return resultMap;
     }
 
+    /**
+     * 初始化上传会话，协商本次上传的分片大小
+     *
+     * @param md5      文件的md5
+     * @param fileName 文件名
+     * @param fileSize 文件大小
+     * @param req      请求
+     * @return 文件已存在时返回url，否则返回 chunkSize、shardCount 以及已上传的分片序号
+     */
+    @Override
+    public Map<String, Object> uploadInit(String md5, String fileName, Long fileSize, HttpServletRequest req) {
+        Map<String, Object> resultMap = uploadCheck(md5);
+        if (!StatusCode.NOT_FOUND.getCode().equals(resultMap.get("status"))) {
+            return resultMap;
+        }
+        if (fileSize == null || fileSize < 0) {
+            resultMap.put("status", StatusCode.PARAM_ERROR.getCode());
+            return resultMap;
+        }
+
+        BoundHashOperations<String, String, Serializable> session = redisTemplate.boundHashOps(UPLOAD_SESSION_KEY_PREFIX + md5);
+        Serializable storedChunkSize = session.get("chunkSize");
+        long chunkSize;
+        if (storedChunkSize != null) {
+            // 断点续传时沿用之前的分片大小
+            chunkSize = ((Number) storedChunkSize).longValue();
+        } else {
+            Object throughput = redisTemplate.opsForValue().get(UPLOAD_THROUGHPUT_KEY_PREFIX + IpUtil.getClientIp(req, throttleProperties.getTrustedProxies()));
+            long bytesPerSecond = throughput == null ? 0 : ((Number) throughput).longValue();
+            chunkSize = ChunkSizeUtil.suggestChunkSize(fileSize, bytesPerSecond, maxChunkSize.toBytes());
+            Map<String, Serializable> sessionInfo = new HashMap<>();
+            sessionInfo.put("chunkSize", chunkSize);
+            sessionInfo.put("fileSize", fileSize);
+            sessionInfo.put("fileName", fileName);
+            session.putAll(sessionInfo);
+            log.info("上传会话 md5:{}, 文件大小:{}, 上传速度:{}B/s, 分片大小:{}", md5, fileSize, bytesPerSecond, chunkSize);
+        }
+        session.expire(CHUNK_INDEX_EXPIRE_DAYS, TimeUnit.DAYS);
+
+        resultMap.put("chunkSize", chunkSize);
+        resultMap.put("shardCount", ChunkSizeUtil.chunkCount(fileSize, chunkSize));
+        return resultMap;
+    }
+
+    /**
+     * 记录客户端测量到的上一个分片的上传速度
+     *
+     * @param req 请求，speed 参数为字节/秒
+     */
+    private void recordThroughput(HttpServletRequest req) {
+        String speed = req.getParameter("speed");
+        if (ObjectUtils.isEmpty(speed)) {
+            return;
+        }
+        try {
+            long sample = Long.parseLong(speed);
+            if (sample <= 0) {
+                return;
+            }
+            BoundValueOperations<String, Serializable> throughput =
+                    redisTemplate.boundValueOps(UPLOAD_THROUGHPUT_KEY_PREFIX + IpUtil.getClientIp(req, throttleProperties.getTrustedProxies()));
+            Serializable previous = throughput.get();
+            throughput.set(ChunkSizeUtil.ewma(previous == null ? 0 : ((Number) previous).longValue(), sample),
+                    UPLOAD_THROUGHPUT_EXPIRE_DAYS, TimeUnit.DAYS);
+        } catch (NumberFormatException e) {
+            log.warn("非法的上传速度: {}", speed);
+        }
+    }
+
     /**
      * 文件上传的核心功能
      *
@@ -116,6 +308,9 @@ public class MinioServiceImpl implements MinioService {
 
         String md5 = multipartRequest.getParameter("md5");
 
+        // 记录上传速度，用于下次协商分片大小
+        recordThroughput(multipartRequest);
+
         // 创建文件桶
         minioTemplate.makeBucket(md5);
         String objectName = String.valueOf(index);
@@ -128,6 +323,7 @@ public class MinioServiceImpl implements MinioService {
                 // 上传文件
                 OssFile ossFile = minioTemplate.putChunkObject(file.getInputStream(), md5, objectName);
                 log.info("{} upload success {}", objectName, ossFile);
+                recordUploadedChunk(md5, index);
 
                 // 设置上传分片的状态
                 map.put("status", StatusCode.ALONE_CHUNK_UPLOAD_SUCCESS.getCode());
@@ -142,6 +338,7 @@ public class MinioServiceImpl implements MinioService {
             try {
                 // 上传文件
                 minioTemplate.putChunkObject(file.getInputStream(), md5, objectName);
+                recordUploadedChunk(md5, index);
 
                 // 设置上传分片的状态
                 map.put("status", StatusCode.ALL_CHUNK_UPLOAD_SUCCESS.getCode());
@@ -154,6 +351,66 @@ public class MinioServiceImpl implements MinioService {
         }
     }
 
+    /**
+     * 流式上传分片
+     *
+     * @param req 请求
+     * @return 上传结果的元数据
+     */
+    @Override
+    public Map<String, Object> uploadStream(HttpServletRequest req) {
+        Map<String, Object> map = new HashMap<>();
+        String md5 = req.getParameter("md5");
+        String indexParam = req.getParameter("index");
+        String totalParam = req.getParameter("total");
+        long contentLength = req.getContentLengthLong();
+        // 没有Content-Length时无法做到不暂存地转发到MinIO
+        if (ObjectUtils.isEmpty(md5) || ObjectUtils.isEmpty(indexParam) || ObjectUtils.isEmpty(totalParam)
+                || contentLength < 0) {
+            map.put("status", StatusCode.PARAM_ERROR.getCode());
+            return map;
+        }
+        // 单个请求的字节预算
+        if (contentLength > maxChunkSize.toBytes()) {
+            map.put("status", StatusCode.PAYLOAD_TOO_LARGE.getCode());
+            return map;
+        }
+        int index = Integer.parseInt(indexParam);
+        int total = Integer.parseInt(totalParam);
+        String objectName = String.valueOf(index);
+        recordThroughput(req);
+        minioTemplate.makeBucket(md5);
+
+        String chunkMd5;
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance("MD5");
+            try (DigestInputStream inputStream = new DigestInputStream(req.getInputStream(), messageDigest)) {
+                minioTemplate.putObjectStreaming(inputStream, contentLength, md5, objectName, null);
+            }
+            chunkMd5 = Md5Util.encodeHex(messageDigest.digest());
+        } catch (Exception e) {
+            log.error("分片 {}/{} 流式上传失败", md5, objectName, e);
+            map.put("status", StatusCode.FAILURE.getCode());
+            return map;
+        }
+
+        String expectedChunkMd5 = req.getParameter("chunkMd5");
+        if (!ObjectUtils.isEmpty(expectedChunkMd5) && !expectedChunkMd5.equalsIgnoreCase(chunkMd5)) {
+            log.info("分片 {}/{} 校验失败, 期望md5:{}, 实际md5:{}", md5, objectName, expectedChunkMd5, chunkMd5);
+            minioTemplate.deleteObject(md5, objectName);
+            map.put("status", StatusCode.CHECKSUM_ERROR.getCode());
+            return map;
+        }
+        recordUploadedChunk(md5, index);
+        log.info("index: {}, total:{}, md5:{}, size:{}, chunkMd5:{} stream upload success", index, total, md5,
+                contentLength, chunkMd5);
+
+        map.put("chunkMd5", chunkMd5);
+        map.put("status", index < total ? StatusCode.ALONE_CHUNK_UPLOAD_SUCCESS.getCode()
+                : StatusCode.ALL_CHUNK_UPLOAD_SUCCESS.getCode());
+        return map;
+    }
+
     /**
      * 分片文件合并的核心方法
      *
@@ -167,187 +424,268 @@ public class MinioServiceImpl implements MinioService {
     @Override
     public Map<String, Object> merge(Integer shardCount, String fileName, String md5, String fileType, Long fileSize) {
         Map<String, Object> retMap = new HashMap<>();
+        if (ObjectUtils.isEmpty(md5) || shardCount == null || ObjectUtils.isEmpty(fileType)) {
+            retMap.put("status", StatusCode.PARAM_ERROR.getCode());
+            return retMap;
+        }
 
-        try {
-            // 查询片数据
-            List<String> objectNameList = minioTemplate.listObjectNames(md5);
-            if (shardCount != objectNameList.size()) {
-                // 失败
-                retMap.put("status", StatusCode.FAILURE.getCode());
-            } else {
-                // 开始合并请求
-                String targetBucketName = minioTemplate.getDefaultBucketName();
-                String filenameExtension = StringUtils.getFilenameExtension(fileName);
-                String fileNameWithoutExtension = UUID.randomUUID().toString();
-                String objectName = fileNameWithoutExtension + "." + filenameExtension;
-                minioTemplate.composeObject(md5, targetBucketName, objectName);
-
-                log.info("桶：{} 中的分片文件，已经在桶：{},文件 {} 合并成功", md5, targetBucketName, objectName);
-
-                // 合并成功之后删除对应的临时桶
-                minioTemplate.removeBucket(md5, true);
-                log.info("删除桶 {} 成功", md5);
-
-                // 计算文件的md5
-                String fileMd5 = null;
-                try (InputStream inputStream = minioTemplate.getObject(targetBucketName, objectName)) {
-                    fileMd5 = Md5Util.calculateMd5(inputStream);
-                } catch (IOException e) {
-                    log.error("", e);
-                }
-
-                // 计算文件真实的类型
-                String type = null;
-                List<String> typeList = new ArrayList<>();
-                try (InputStream inputStreamCopy = minioTemplate.getObject(targetBucketName, objectName)) {
-                    typeList.addAll(FileTypeUtil.getFileRealTypeList(inputStreamCopy, fileName, fileSize));
-                } catch (IOException e) {
-                    log.error("", e);
-                }
+        // 同一个md5同时只允许一个合并，后来的请求等待前一个合并的结果
+        RLock mergeLock = redissonClient.getLock(MERGE_LOCK_KEY_PREFIX + md5);
+        boolean locked = false;
+        try (OssSpan mergeSpan = ossTracer.startSpan("MinioService.merge")) {
+            mergeSpan.setAttribute("file.md5", md5).setAttribute("file.name", fileName);
+            if (fileSize != null) {
+                mergeSpan.setAttribute("file.size", fileSize);
+            }
+            try (OssSpan ignored = ossTracer.startSpan("merge.lock")) {
+                locked = mergeLock.tryLock(mergeWaitTime.toMillis(), mergeLeaseTime.toMillis(), TimeUnit.MILLISECONDS);
+            }
+            if (!locked) {
+                log.info("文件 {} 正在合并中", md5);
+                retMap.put("status", StatusCode.MERGING.getCode());
+                return retMap;
+            }
 
-                // 并和前台的md5进行对比
-                if (!ObjectUtils.isEmpty(fileMd5) && !ObjectUtils.isEmpty(typeList) && fileMd5.equalsIgnoreCase(md5) && typeList.contains(fileType.toLowerCase(Locale.ENGLISH))) {
-                    // 表示是同一个文件, 且文件后缀名没有被修改过
-                    String url = minioTemplate.getPresignedObjectUrl(targetBucketName, objectName);
-
-                    // 存入redis中
-                    redisTemplate.boundHashOps(MD5_KEY).put(fileMd5, url);
-
-                    // 成功
-                    retMap.put("status", StatusCode.SUCCESS.getCode());
-                } else {
-                    log.info("非法的文件信息: 分片数量:{}, 文件名称:{}, 文件fileMd5:{}, 文件真实类型:{}, 文件大小:{}",
-                            shardCount, fileName, fileMd5, typeList, fileSize);
-                    log.info("非法的文件信息: 分片数量:{}, 文件名称:{}, 文件md5:{}, 文件类型:{}, 文件大小:{}",
-                            shardCount, fileName, md5, fileType, fileSize);
-
-                    // 并需要删除对象
-                    minioTemplate.deleteObject(targetBucketName, objectName);
-                    retMap.put("status", StatusCode.FAILURE.getCode());
-                }
+            // 拿到锁之后再检查一次，前一个持有者可能已经合并完成
+            String url = (String) redisTemplate.boundHashOps(MD5_KEY).get(md5);
+            if (!ObjectUtils.isEmpty(url)) {
+                log.info("文件 {} 已经合并过了，直接返回合并结果", md5);
+                retMap.put("status", StatusCode.SUCCESS.getCode());
+                retMap.put("url", url);
+                return retMap;
             }
+
+            // 每次拿到锁都生成一个递增的令牌，锁的租期过期后其他请求会拿到更大的令牌，旧的持有者不能再提交结果
+            long fencingToken = redissonClient.getAtomicLong(MERGE_FENCE_KEY_PREFIX + md5).incrementAndGet();
+            doMerge(retMap, shardCount, fileName, md5, fileType, fileSize, fencingToken);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            retMap.put("status", StatusCode.FAILURE.getCode());
         } catch (Exception e) {
             log.error("", e);
             // 失败
             retMap.put("status", StatusCode.FAILURE.getCode());
+        } finally {
+            if (locked && mergeLock.isHeldByCurrentThread()) {
+                mergeLock.unlock();
+            }
         }
         return retMap;
     }
 
     /**
-     * 视频播放的核心功能
-     *
-     * @param request    request
-     * @param response   response
-     * @param bucketName 视频文件所在的桶
-     * @param objectName 视频文件名
+     * 持有合并锁时执行合并，在提交结果（写入md5索引、删除临时桶）之前校验令牌
      */
-    @Override
-    public void videoPlay(HttpServletRequest request, HttpServletResponse response, String bucketName, String objectName) {
-        // 设置响应报头
-        // 需要查询redis
-        String key = bucketName + ":" + objectName;
-        Object obj = redisTemplate.boundHashOps(OBJECT_INFO_LIST).get(key);
-
-        // 用于记录视频文件的元数据
-        // 这里使用Redis的缓存作为优化
-        MinioObject minioObject;
-        if (obj == null) {
-            StatObjectResponse objectInfo = null;
-            try {
-                objectInfo = minioTemplate.getObjectInfo(bucketName, objectName);
-            } catch (Exception e) {
-                log.error("{}中{}不存在: {}", bucketName, objectName, e.getMessage());
-                response.setCharacterEncoding(StandardCharsets.UTF_8.toString());
-                response.setContentType("application/json;charset=utf-8");
-                response.setStatus(HttpServletResponse.SC_NOT_FOUND);
-                try {
-                    response.getWriter().write(objectMapper.writeValueAsString(Result.error(StatusCode.NOT_FOUND)));
-                } catch (IOException ex) {
-                    throw new RuntimeException(ex);
-                }
-                return;
+    private void doMerge(Map<String, Object> retMap, Integer shardCount, String fileName, String md5, String fileType,
+                         Long fileSize, long fencingToken) {
+        // 查询片数据，只统计第一层的分片，不包括合并失败时遗留的中间对象
+        List<String> objectNameList;
+        try (OssSpan span = ossTracer.startSpan("merge.listChunks")) {
+            objectNameList = minioTemplate.listTopLevelObjectNames(md5);
+            span.setAttribute("merge.chunks", objectNameList.size());
+        }
+        if (shardCount != objectNameList.size()) {
+            // 失败
+            retMap.put("status", StatusCode.FAILURE.getCode());
+            return;
+        }
+        // 开始合并请求
+        String targetBucketName = minioTemplate.getDefaultBucketName();
+        String filenameExtension = StringUtils.getFilenameExtension(fileName);
+        String fileNameWithoutExtension = UUID.randomUUID().toString();
+        String objectName = fileNameWithoutExtension + "." + filenameExtension;
+        try (OssSpan ignored = ossTracer.startSpan("merge.compose")) {
+            minioTemplate.composeObject(md5, targetBucketName, objectName);
+        }
+
+        log.info("桶：{} 中的分片文件，已经在桶：{},文件 {} 合并成功", md5, targetBucketName, objectName);
+
+        // 计算文件的md5
+        String fileMd5 = null;
+        try (OssSpan ignored = ossTracer.startSpan("merge.md5");
+             InputStream inputStream = minioTemplate.getObject(targetBucketName, objectName)) {
+            fileMd5 = Md5Util.calculateMd5(inputStream);
+        } catch (IOException e) {
+            log.error("", e);
+        }
+
+        // 计算文件真实的类型
+        List<String> typeList = new ArrayList<>();
+        try (OssSpan ignored = ossTracer.startSpan("merge.detectType");
+             InputStream inputStreamCopy = minioTemplate.getObject(targetBucketName, objectName)) {
+            typeList.addAll(FileTypeUtil.getFileRealTypeList(inputStreamCopy, fileName, fileSize));
+        } catch (IOException e) {
+            log.error("", e);
+        }
+
+        // 锁的租期已经过期，并且有新的合并拿到了锁，丢弃本次的结果
+        long currentToken = redissonClient.getAtomicLong(MERGE_FENCE_KEY_PREFIX + md5).get();
+        if (currentToken != fencingToken) {
+            log.warn("文件 {} 的合并令牌 {} 已失效，当前令牌 {}，丢弃合并结果 {}", md5, fencingToken, currentToken, objectName);
+            minioTemplate.deleteObject(targetBucketName, objectName);
+            retMap.put("status", StatusCode.MERGING.getCode());
+            return;
+        }
+
+        // 并和前台的md5进行对比
+        if (!ObjectUtils.isEmpty(fileMd5) && !ObjectUtils.isEmpty(typeList) && fileMd5.equalsIgnoreCase(md5) && typeList.contains(fileType.toLowerCase(Locale.ENGLISH))) {
+            // 表示是同一个文件, 且文件后缀名没有被修改过
+            // 在发布之前改写为 faststart，url 指向改写后的对象，md5列表中仍然是上传文件的md5
+            objectName = faststart(targetBucketName, objectName, fileType);
+            String url = minioTemplate.getPresignedObjectUrl(targetBucketName, objectName);
+
+            // 存入redis中，校验令牌之后可能有新的合并拿到了锁，写入时再原子地校验一次
+            boolean committed;
+            try (OssSpan ignored = ossTracer.startSpan("redis.hset")) {
+                committed = commitMd5(md5, fencingToken, fileMd5, url, targetBucketName + ":" + objectName);
             }
-            // 判断是否是视频，是否为mp4格式
-            String filenameExtension = StringUtils.getFilenameExtension(objectName);
-            if (ObjectUtils.isEmpty(filenameExtension) ||
-                    !"mp4".equalsIgnoreCase(filenameExtension.toLowerCase(Locale.ENGLISH))) {
-                throw new IllegalArgumentException("不支持的媒体类型, 文件名: " + objectName);
+            if (!committed) {
+                log.warn("文件 {} 的合并令牌 {} 在提交时已失效，丢弃合并结果 {}", md5, fencingToken, objectName);
+                minioTemplate.deleteObject(targetBucketName, objectName);
+                retMap.put("status", StatusCode.MERGING.getCode());
+                return;
             }
 
-            minioObject = new MinioObject();
-            BeanUtils.copyProperties(objectInfo, minioObject);
-
+            // 后台生成封面、预览图等
+            mediaService.process(targetBucketName, objectName, fileType);
 
-            redisTemplate.boundHashOps(OBJECT_INFO_LIST).put(key, minioObject);
+            // 成功
+            retMap.put("status", StatusCode.SUCCESS.getCode());
+            retMap.put("url", url);
         } else {
-            minioObject = (MinioObject) obj;
-        }
+            log.info("非法的文件信息: 分片数量:{}, 文件名称:{}, 文件fileMd5:{}, 文件真实类型:{}, 文件大小:{}",
+                    shardCount, fileName, fileMd5, typeList, fileSize);
+            log.info("非法的文件信息: 分片数量:{}, 文件名称:{}, 文件md5:{}, 文件类型:{}, 文件大小:{}",
+                    shardCount, fileName, md5, fileType, fileSize);
 
+            // 并需要删除对象
+            minioTemplate.deleteObject(targetBucketName, objectName);
+            retMap.put("status", StatusCode.FAILURE.getCode());
+        }
 
-        // 获取文件的长度
-        long fileSize = minioObject.getSize();
-        // Accept-Ranges: bytes
-        response.setHeader("Accept-Ranges", "bytes");
-        //pos开始读取位置;  last最后读取位置
-        long startPos = 0;
-        long endPos = fileSize - 1;
-        String rangeHeader = request.getHeader("Range");
-        if (!ObjectUtils.isEmpty(rangeHeader) && rangeHeader.startsWith("bytes=")) {
+        // 结果已经提交，删除对应的临时桶
+        try (OssSpan ignored = ossTracer.startSpan("merge.removeTempBucket")) {
+            minioTemplate.removeBucket(md5, true);
+            redisTemplate.delete(Arrays.asList(CHUNK_INDEX_KEY_PREFIX + md5, UPLOAD_SESSION_KEY_PREFIX + md5));
+            redisTemplate.boundZSetOps(UPLOAD_ACTIVITY_KEY).remove(md5);
+        }
+        log.info("删除桶 {} 成功", md5);
+    }
 
+    /**
+     * 合并结果是 moov 在末尾的 mp4 时改写到新的对象并删除原对象，改写失败时仍然使用原对象
+     *
+     * @return 发布的对象名
+     */
+    private String faststart(String bucketName, String objectName, String fileType) {
+        if (!faststartProcessor.supports(fileType)) {
+            return objectName;
+        }
+        String targetObjectName = UUID.randomUUID() + "." + StringUtils.getFilenameExtension(objectName);
+        try (OssSpan span = ossTracer.startSpan("merge.faststart")) {
             try {
-                // 情景一：RANGE: bytes=2000070- 情景二：RANGE: bytes=2000070-2000970
-                String numRang = request.getHeader("Range").replaceAll("bytes=", "");
-                if (numRang.startsWith("-")) {
-                    endPos = fileSize - 1;
-                    startPos = endPos - Long.parseLong(new String(numRang.getBytes(StandardCharsets.UTF_8), 1,
-                            numRang.length() - 1)) + 1;
-                } else if (numRang.endsWith("-")) {
-                    endPos = fileSize - 1;
-                    startPos = Long.parseLong(new String(numRang.getBytes(StandardCharsets.UTF_8), 0,
-                            numRang.length() - 1));
-                } else {
-                    String[] strRange = numRang.split("-");
-                    if (strRange.length == 2) {
-                        startPos = Long.parseLong(strRange[0].trim());
-                        endPos = Long.parseLong(strRange[1].trim());
-                    } else {
-                        startPos = Long.parseLong(numRang.replaceAll("-", "").trim());
-                    }
+                if (faststartProcessor.rewrite(bucketName, objectName, fileType, targetObjectName)) {
+                    minioTemplate.deleteObject(bucketName, objectName);
+                    return targetObjectName;
                 }
+            } catch (Exception e) {
+                span.recordException(e);
+                log.warn("{}/{} 改写为 faststart 失败，使用原文件", bucketName, objectName, e);
+            }
+        }
+        return objectName;
+    }
 
-                if (startPos < 0 || endPos < 0 || endPos >= fileSize || startPos > endPos) {
-                    // SC 要求的范围不满足
-                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
-                    return;
-                }
+    /**
+     * 令牌仍然有效时写入md5列表和反向索引
+     *
+     * @return 令牌已经失效时返回false，什么都不写入
+     */
+    @SuppressWarnings("unchecked")
+    private boolean commitMd5(String md5, long fencingToken, String fileMd5, String url, String objectKey) {
+        RedisSerializer<String> keySerializer = (RedisSerializer<String>) redisTemplate.getHashKeySerializer();
+        RedisSerializer<Object> valueSerializer = (RedisSerializer<Object>) redisTemplate.getHashValueSerializer();
+        Long result = redisTemplate.execute(FENCED_COMMIT_SCRIPT, RedisSerializer.byteArray(),
+                new GenericToStringSerializer<>(Long.class),
+                Arrays.asList(MERGE_FENCE_KEY_PREFIX + md5, MD5_KEY, MD5_OBJECT_KEY),
+                String.valueOf(fencingToken).getBytes(StandardCharsets.UTF_8),
+                keySerializer.serialize(fileMd5), valueSerializer.serialize(url),
+                keySerializer.serialize(objectKey), valueSerializer.serialize(fileMd5));
+        return result != null && result == 1L;
+    }
 
-                // 断点续传 状态码206
-                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-            } catch (NumberFormatException e) {
-                log.error(request.getHeader("Range") + " is not Number!");
-                startPos = 0;
+    /**
+     * 记录已经上传成功的分片，并刷新索引的过期时间
+     *
+     * @param md5   文件的md5
+     * @param index 分片序号
+     */
+    private void recordUploadedChunk(String md5, int index) {
+        try (OssSpan ignored = ossTracer.startSpan("redis.sadd")) {
+            BoundSetOperations<String, Serializable> chunkIndex = redisTemplate.boundSetOps(CHUNK_INDEX_KEY_PREFIX + md5);
+            chunkIndex.add(index);
+            chunkIndex.expire(CHUNK_INDEX_EXPIRE_DAYS, TimeUnit.DAYS);
+        }
+        boolean newSession;
+        try (OssSpan ignored = ossTracer.startSpan("redis.zadd")) {
+            BoundZSetOperations<String, Serializable> activity = redisTemplate.boundZSetOps(UPLOAD_ACTIVITY_KEY);
+            long now = System.currentTimeMillis();
+            newSession = Boolean.TRUE.equals(activity.addIfAbsent(md5, now));
+            if (!newSession) {
+                activity.add(md5, now);
             }
         }
-
-        // 总共需要读取的字节
-        long rangLength = endPos - startPos + 1;
-        response.setHeader("Content-Range", String.format("bytes %d-%d/%d", startPos, endPos, fileSize));
-        response.addHeader("Content-Length", String.valueOf(rangLength));
-        //response.setHeader("Connection", "keep-alive");
-        response.addHeader("Content-Type", "video/mp4");
-
-        try (BufferedOutputStream bos = new BufferedOutputStream(response.getOutputStream());
-             BufferedInputStream bis = new BufferedInputStream(
-                     minioTemplate.getObject(bucketName, objectName, startPos, rangLength))) {
-            IOUtils.copy(bis, bos);
-        } catch (
-                IOException e) {
-            if (e instanceof ClientAbortException) {
-                // ignore 这里就不要打日志，这里的异常原因是用户在拖拽视频进度造成的
-            } else {
-                log.error(e.getMessage());
+        // 第一个分片上传成功时给临时桶打上标签，清理任务据此确认是本应用创建的临时桶
+        if (newSession) {
+            try {
+                minioTemplate.setBucketTags(md5, Collections.singletonMap(UPLOAD_BUCKET_TAG, "true"));
+            } catch (Exception e) {
+                log.warn("设置临时桶 {} 的标签失败", md5, e);
             }
         }
+        // 同时设置生命周期规则，应用的清理任务没有执行时由 MinIO 兜底回收
+        int lifecycleDays = reaperProperties.getLifecycleDays();
+        if (newSession && lifecycleDays > 0) {
+            try {
+                minioTemplate.setBucketExpiration(md5, lifecycleDays);
+            } catch (Exception e) {
+                log.warn("设置临时桶 {} 的生命周期规则失败", md5, e);
+            }
+        }
+    }
+
+    /**
+     * 查询已经上传成功的分片序号，升序
+     *
+     * @param md5 文件的md5
+     * @return 分片序号集合
+     */
+    private List<Integer> listUploadedChunks(String md5) {
+        Set<Serializable> members;
+        try (OssSpan ignored = ossTracer.startSpan("redis.smembers")) {
+            members = redisTemplate.boundSetOps(CHUNK_INDEX_KEY_PREFIX + md5).members();
+        }
+        if (ObjectUtils.isEmpty(members)) {
+            return Collections.emptyList();
+        }
+        List<Integer> chunks = new ArrayList<>(members.size());
+        for (Serializable member : members) {
+            chunks.add(((Number) member).intValue());
+        }
+        Collections.sort(chunks);
+        return chunks;
+    }
+
+    /**
+     * 视频播放的核心功能
+     *
+     * @param request    request
+     * @param response   response
+     * @param bucketName 视频文件所在的桶
+     * @param objectName 视频文件名
+     */
+    @Override
+    public void videoPlay(HttpServletRequest request, HttpServletResponse response, String bucketName, String objectName) {
+        objectStreamService.stream(request, response, bucketName, objectName);
     }
 }
@@ -0,0 +1,227 @@
+package com.minio.service.impl;
+
+import com.minio.core.MinioTemplate;
+import com.minio.index.ObjectIndex;
+import com.minio.index.ObjectMeta;
+import com.minio.media.CompressionProcessor;
+import com.minio.media.HlsProcessor;
+import com.minio.media.ReadAheadManager;
+import com.minio.media.VideoPacer;
+import com.minio.media.VideoPreviewProcessor;
+import com.minio.notify.ObjectEvent;
+import com.minio.notify.ObjectEventListener;
+import com.minio.service.ObjectCacheService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectCacheEventListener
+ * @description 对象在应用之外被修改或者删除时清理缓存：对象元数据、视频码率、预读的数据，删除的对象在md5列表中的记录，
+ * 以及 gzip 副本、HLS、预览图、图片变换等派生结果，对象被删除时派生对象也一起删除。
+ * 一批事件中元数据和码率的删除合并成每个 key 一次 HDEL。排在对象索引之后，RESYNC 时可以用重建后的索引判断对象是否还存在。
+ * 应用自己写入的、内容与上传的文件不同的对象（例如合并时改写的 faststart 视频）在写入前做了标记，对应的事件跳过
+ * @since 2023/5/2 17:30
+ */
+@Slf4j
+@Component
+@Order(100)
+@ConditionalOnProperty(prefix = "oss.minio.notify", name = "enabled", havingValue = "true")
+public class ObjectCacheEventListener implements ObjectEventListener {
+
+    /**
+     * RESYNC 时每次 HSCAN 的数量
+     */
+    private static final int SCAN_COUNT = 1000;
+
+    /**
+     * 派生结果的元数据，field 都是 桶名:对象名
+     */
+    private static final String[] DERIVED_KEYS = {CompressionProcessor.COMPRESSED_KEY, HlsProcessor.HLS_KEY,
+            VideoPreviewProcessor.PREVIEW_KEY};
+
+    @Resource(name = "jsonRedisTemplate")
+    private RedisTemplate<String, Serializable> redisTemplate;
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Autowired
+    private ObjectCacheService objectCacheService;
+
+    @Autowired
+    private ReadAheadManager readAheadManager;
+
+    @Override
+    public void onEvents(List<ObjectEvent> batch) {
+        Set<String> selfWrites = objectCacheService.selfWrites(batch.stream()
+                .map(event -> event.getBucketName() + ":" + event.getObjectName())
+                .collect(Collectors.toList()));
+        List<ObjectEvent> events = selfWrites.isEmpty() ? batch : batch.stream()
+                .filter(event -> !selfWrites.contains(event.getBucketName() + ":" + event.getObjectName()))
+                .collect(Collectors.toList());
+        if (events.isEmpty()) {
+            return;
+        }
+        HashOperations<String, Object, Object> hash = redisTemplate.opsForHash();
+        List<Object> fields = new ArrayList<>(events.size());
+        for (ObjectEvent event : events) {
+            fields.add(event.getBucketName() + ":" + event.getObjectName());
+        }
+        hash.delete(MinioServiceImpl.OBJECT_INFO_LIST, fields.toArray());
+        hash.delete(VideoPacer.BITRATE_KEY, fields.toArray());
+        for (ObjectEvent event : events) {
+            if (event.getType() == ObjectEvent.Type.REMOVED) {
+                objectCacheService.removeDerived(event.getBucketName(), event.getObjectName());
+            } else {
+                objectCacheService.evictDerived(event.getBucketName(), event.getObjectName(), event.getEtag());
+            }
+        }
+
+        // 删除的对象，以及内容已经变化的对象，从md5列表中移除，之后相同的文件会重新上传
+        List<Object> md5s = hash.multiGet(MinioServiceImpl.MD5_OBJECT_KEY, fields);
+        List<Object> staleFields = new ArrayList<>();
+        List<Object> staleMd5s = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            Object md5 = md5s.get(i);
+            if (md5 != null && isStale(events.get(i), (String) md5)) {
+                staleFields.add(fields.get(i));
+                staleMd5s.add(md5);
+            }
+        }
+        if (!staleMd5s.isEmpty()) {
+            hash.delete(MinioServiceImpl.MD5_KEY, staleMd5s.toArray());
+            hash.delete(MinioServiceImpl.MD5_OBJECT_KEY, staleFields.toArray());
+            log.info("对象已在应用之外被删除或修改，移除 {} 个md5记录", staleMd5s.size());
+        }
+    }
+
+    @Override
+    public void onResync(String bucketName) {
+        String pattern = bucketName + ":*";
+        deleteMatching(MinioServiceImpl.OBJECT_INFO_LIST, pattern);
+        deleteMatching(VideoPacer.BITRATE_KEY, pattern);
+        readAheadManager.evictBucket(bucketName);
+
+        // md5列表和派生结果只能借助完整的对象索引校验，没有索引时保留
+        ObjectIndex objectIndex = minioTemplate.getObjectIndex();
+        if (objectIndex == null || !objectIndex.isReady(bucketName)) {
+            log.warn("桶 {} 的事件有遗漏，没有完整的对象索引，md5列表和派生结果未校验", bucketName);
+            return;
+        }
+        resyncDerived(bucketName, objectIndex);
+
+        HashOperations<String, Object, Object> hash = redisTemplate.opsForHash();
+        List<Object> staleFields = new ArrayList<>();
+        List<Object> staleMd5s = new ArrayList<>();
+        try (Cursor<Map.Entry<Object, Object>> cursor = hash.scan(MinioServiceImpl.MD5_OBJECT_KEY,
+                ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build())) {
+            while (cursor.hasNext()) {
+                Map.Entry<Object, Object> entry = cursor.next();
+                String objectName = ((String) entry.getKey()).substring(bucketName.length() + 1);
+                if (objectIndex.get(bucketName, objectName) == null) {
+                    staleFields.add(entry.getKey());
+                    staleMd5s.add(entry.getValue());
+                }
+            }
+        }
+        if (!staleMd5s.isEmpty()) {
+            hash.delete(MinioServiceImpl.MD5_KEY, staleMd5s.toArray());
+            hash.delete(MinioServiceImpl.MD5_OBJECT_KEY, staleFields.toArray());
+        }
+        log.info("桶 {} 重新同步，移除 {} 个md5记录", bucketName, staleMd5s.size());
+    }
+
+    /**
+     * 派生结果的原对象已经不存在时删除，ETag 变化时清除元数据
+     */
+    private void resyncDerived(String bucketName, ObjectIndex objectIndex) {
+        Set<String> objectNames = new HashSet<>();
+        for (String key : DERIVED_KEYS) {
+            objectNames.addAll(scanObjectNames(key, bucketName));
+        }
+        objectNames.addAll(scanObjectNames(ImageServiceImpl.SOURCE_VARIANTS_KEY_PREFIX, bucketName));
+        int removed = 0;
+        for (String objectName : objectNames) {
+            ObjectMeta meta = objectIndex.get(bucketName, objectName);
+            if (meta == null) {
+                objectCacheService.removeDerived(bucketName, objectName);
+                removed++;
+            } else {
+                objectCacheService.evictDerived(bucketName, objectName, meta.getEtag());
+            }
+        }
+        log.info("桶 {} 重新同步，校验了 {} 个对象的派生结果，其中 {} 个对象已删除", bucketName, objectNames.size(), removed);
+    }
+
+    /**
+     * 派生结果的元数据所属的对象名。图片变换结果每张原图一个 key，其余是 field 为 桶名:对象名 的 hash
+     */
+    private Set<String> scanObjectNames(String key, String bucketName) {
+        Set<String> objectNames = new HashSet<>();
+        String prefix = bucketName + ":";
+        if (key.equals(ImageServiceImpl.SOURCE_VARIANTS_KEY_PREFIX)) {
+            ScanOptions options = ScanOptions.scanOptions().match(key + prefix + "*").count(SCAN_COUNT).build();
+            try (Cursor<byte[]> cursor = redisTemplate.executeWithStickyConnection(
+                    connection -> connection.keyCommands().scan(options))) {
+                while (cursor != null && cursor.hasNext()) {
+                    String name = new String(cursor.next(), StandardCharsets.UTF_8);
+                    objectNames.add(name.substring(key.length() + prefix.length()));
+                }
+            }
+            return objectNames;
+        }
+        try (Cursor<Map.Entry<Object, Object>> cursor = redisTemplate.opsForHash().scan(key,
+                ScanOptions.scanOptions().match(prefix + "*").count(SCAN_COUNT).build())) {
+            cursor.forEachRemaining(entry -> objectNames.add(((String) entry.getKey()).substring(prefix.length())));
+        }
+        return objectNames;
+    }
+
+    /**
+     * 删除的对象一定失效；覆盖的对象只有单次上传（ETag 就是 md5）时才能判断内容是否变化
+     */
+    private static boolean isStale(ObjectEvent event, String md5) {
+        if (event.getType() == ObjectEvent.Type.REMOVED) {
+            return true;
+        }
+        String etagMd5 = ObjectMeta.of(event.getObjectName(), event.getSize(), event.getEtag(), null, 0).getMd5();
+        return etagMd5 != null && !etagMd5.equalsIgnoreCase(md5);
+    }
+
+    private void deleteMatching(String key, String pattern) {
+        HashOperations<String, Object, Object> hash = redisTemplate.opsForHash();
+        List<Object> fields = new ArrayList<>();
+        try (Cursor<Map.Entry<Object, Object>> cursor = hash.scan(key,
+                ScanOptions.scanOptions().match(pattern).count(SCAN_COUNT).build())) {
+            while (cursor.hasNext()) {
+                fields.add(cursor.next().getKey());
+                if (fields.size() >= SCAN_COUNT) {
+                    hash.delete(key, fields.toArray());
+                    fields.clear();
+                }
+            }
+        }
+        if (!fields.isEmpty()) {
+            hash.delete(key, fields.toArray());
+        }
+    }
+}
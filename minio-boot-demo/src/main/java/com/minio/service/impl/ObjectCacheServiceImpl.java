@@ -0,0 +1,165 @@
+package com.minio.service.impl;
+
+import com.minio.core.MinioTemplate;
+import com.minio.media.CompressionProcessor;
+import com.minio.media.HlsProcessor;
+import com.minio.media.ReadAheadManager;
+import com.minio.media.VideoPacer;
+import com.minio.media.VideoPreviewProcessor;
+import com.minio.service.ImageService;
+import com.minio.service.ObjectCacheService;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.Resource;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectCacheServiceImpl
+ * @description 对象缓存的清理，改写标记保存在 Redis 中，集群内所有节点的监听器都能看到。
+ * 预读的数据和图片变换结果的内存缓存只在本节点清理，每个节点的监听器都会收到同样的事件
+ * @since 2023/5/4 10:10
+ */
+@Slf4j
+@Service
+public class ObjectCacheServiceImpl implements ObjectCacheService {
+
+    /**
+     * 应用自己改写对象的标记的前缀，完整的key为 前缀 + 桶名:对象名
+     */
+    static final String SELF_WRITE_KEY_PREFIX = "com:minio:notify:selfWrite:";
+
+    /**
+     * 改写标记的有效期，覆盖改写完成到收到桶通知之间的延迟
+     */
+    private static final long SELF_WRITE_TTL_MINUTES = 10;
+
+    /**
+     * 派生结果的元数据，field 都是 桶名:对象名
+     */
+    private static final String[] DERIVED_KEYS = {CompressionProcessor.COMPRESSED_KEY, HlsProcessor.HLS_KEY,
+            VideoPreviewProcessor.PREVIEW_KEY};
+
+    @Resource(name = "jsonRedisTemplate")
+    private RedisTemplate<String, Serializable> redisTemplate;
+
+    @Autowired
+    private VideoPacer videoPacer;
+
+    @Autowired
+    private ReadAheadManager readAheadManager;
+
+    @Autowired
+    private ImageService imageService;
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Autowired
+    private OssTracer ossTracer;
+
+    @Override
+    public void evict(String bucketName, String objectName) {
+        try (OssSpan ignored = ossTracer.startSpan("redis.hdel")) {
+            redisTemplate.boundHashOps(MinioServiceImpl.OBJECT_INFO_LIST).delete(bucketName + ":" + objectName);
+            videoPacer.evict(bucketName, objectName);
+        }
+        readAheadManager.evict(bucketName, objectName);
+    }
+
+    @Override
+    public void markSelfWrite(String bucketName, String objectName) {
+        redisTemplate.opsForValue().set(SELF_WRITE_KEY_PREFIX + bucketName + ":" + objectName, Boolean.TRUE,
+                SELF_WRITE_TTL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    @Override
+    public Set<String> selfWrites(Collection<String> objectKeys) {
+        List<String> keys = new ArrayList<>(objectKeys.size());
+        for (String objectKey : objectKeys) {
+            keys.add(SELF_WRITE_KEY_PREFIX + objectKey);
+        }
+        List<Serializable> values = redisTemplate.opsForValue().multiGet(keys);
+        Set<String> marked = new HashSet<>();
+        if (values == null) {
+            return marked;
+        }
+        int i = 0;
+        for (String objectKey : objectKeys) {
+            if (values.get(i++) != null) {
+                marked.add(objectKey);
+            }
+        }
+        return marked;
+    }
+
+    @Override
+    public void evictDerived(String bucketName, String objectName, String etag) {
+        readAheadManager.evict(bucketName, objectName);
+        String field = bucketName + ":" + objectName;
+        for (String key : DERIVED_KEYS) {
+            evictMeta(key, field, etag);
+        }
+        imageService.removeVariants(bucketName, objectName);
+    }
+
+    @Override
+    public void removeDerived(String bucketName, String objectName) {
+        readAheadManager.evict(bucketName, objectName);
+        String field = bucketName + ":" + objectName;
+        // 只有生成过的派生结果才需要访问 MinIO，批量删除时大部分对象没有派生结果
+        List<String> derived = new ArrayList<>();
+        if (evictMeta(CompressionProcessor.COMPRESSED_KEY, field, null)) {
+            derived.add(objectName + CompressionProcessor.GZIP_SUFFIX);
+        }
+        if (evictMeta(HlsProcessor.HLS_KEY, field, null)) {
+            derived.addAll(minioTemplate.listObjectNames(bucketName, objectName + HlsProcessor.HLS_FOLDER_SUFFIX));
+        }
+        if (evictMeta(VideoPreviewProcessor.PREVIEW_KEY, field, null)) {
+            derived.addAll(minioTemplate.listObjectNames(bucketName,
+                    objectName + VideoPreviewProcessor.PREVIEW_FOLDER_SUFFIX));
+        }
+        if (!derived.isEmpty()) {
+            minioTemplate.removeObjects(bucketName, derived);
+            log.info("{}/{} 已被删除，删除了 {} 个派生对象", bucketName, objectName, derived.size());
+        }
+        imageService.removeVariants(bucketName, objectName);
+    }
+
+    /**
+     * 删除派生结果的元数据，etag 不为 null 时只删除原对象 ETag 不同的
+     *
+     * @return 是否删除了
+     */
+    @SuppressWarnings("unchecked")
+    private boolean evictMeta(String key, String field, String etag) {
+        HashOperations<String, String, Serializable> hash = redisTemplate.opsForHash();
+        Map<String, Object> meta = (Map<String, Object>) hash.get(key, field);
+        if (meta == null) {
+            return false;
+        }
+        if (etag != null && trimQuotes(etag).equals(meta.get(CompressionProcessor.SOURCE_ETAG))) {
+            return false;
+        }
+        hash.delete(key, field);
+        return true;
+    }
+
+    private static String trimQuotes(String etag) {
+        return etag.replace("\"", "");
+    }
+}
@@ -0,0 +1,86 @@
+package com.minio.service.impl;
+
+import com.minio.core.MinioTemplate;
+import com.minio.entity.StatusCode;
+import com.minio.index.ObjectIndex;
+import com.minio.index.ObjectMeta;
+import com.minio.service.ObjectIndexService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ObjectUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectIndexServiceImpl
+ * @description 基于本地对象索引的列举和查询，未开启索引或者桶的索引还不完整时返回 NOT_FOUND
+ * @since 2023/5/2 11:10
+ */
+@Slf4j
+@Service
+public class ObjectIndexServiceImpl implements ObjectIndexService {
+
+    /**
+     * 每页的最大数量
+     */
+    private static final int MAX_LIMIT = 10000;
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Override
+    public Map<String, Object> search(String bucketName, String prefix, String startAfter, String contentType,
+                                      Long minSize, Long maxSize, int limit) {
+        Map<String, Object> retMap = new HashMap<>();
+        String targetBucketName = ObjectUtils.isEmpty(bucketName) ? minioTemplate.getDefaultBucketName() : bucketName;
+        ObjectIndex objectIndex = minioTemplate.getObjectIndex();
+        if (objectIndex == null || !objectIndex.isReady(targetBucketName)) {
+            retMap.put("status", StatusCode.NOT_FOUND.getCode());
+            return retMap;
+        }
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            retMap.put("status", StatusCode.PARAM_ERROR.getCode());
+            return retMap;
+        }
+
+        Predicate<ObjectMeta> filter = meta -> true;
+        if (!ObjectUtils.isEmpty(contentType)) {
+            filter = filter.and(meta -> meta.getContentType() != null && meta.getContentType().startsWith(contentType));
+        }
+        if (minSize != null) {
+            filter = filter.and(meta -> meta.getSize() >= minSize);
+        }
+        if (maxSize != null) {
+            filter = filter.and(meta -> meta.getSize() <= maxSize);
+        }
+        List<ObjectMeta> objects = objectIndex.search(targetBucketName,
+                ObjectUtils.isEmpty(prefix) ? null : prefix, startAfter, filter, limit);
+
+        retMap.put("status", StatusCode.SUCCESS.getCode());
+        retMap.put("bucketName", targetBucketName);
+        retMap.put("objects", objects);
+        if (objects.size() == limit) {
+            retMap.put("nextStartAfter", objects.get(objects.size() - 1).getKey());
+        }
+        return retMap;
+    }
+
+    @Override
+    public Map<String, Object> rebuild(String bucketName) {
+        Map<String, Object> retMap = new HashMap<>();
+        if (minioTemplate.getObjectIndex() == null || !minioTemplate.bucketExists(bucketName)) {
+            retMap.put("status", StatusCode.NOT_FOUND.getCode());
+            return retMap;
+        }
+        minioTemplate.rebuildIndex(bucketName);
+        retMap.put("status", StatusCode.SUCCESS.getCode());
+        retMap.put("count", minioTemplate.getObjectIndex().list(bucketName, null, null, Integer.MAX_VALUE).size());
+        return retMap;
+    }
+}
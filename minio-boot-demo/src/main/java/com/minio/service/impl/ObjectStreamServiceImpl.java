@@ -0,0 +1,372 @@
+package com.minio.service.impl;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.minio.config.CompressionProperties;
+import com.minio.config.StreamProperties;
+import com.minio.config.ThrottleProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.crypto.EncryptedObjectStore;
+import com.minio.entity.MinioObject;
+import com.minio.entity.Result;
+import com.minio.entity.StatusCode;
+import com.minio.media.CompressionProcessor;
+import com.minio.media.PlaybackReader;
+import com.minio.media.ReadAheadManager;
+import com.minio.media.VideoPacer;
+import com.minio.service.ObjectStreamService;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import com.minio.util.IpUtil;
+import io.minio.StatObjectResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.catalina.connector.ClientAbortException;
+import org.apache.commons.io.IOUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ObjectUtils;
+
+import javax.annotation.Resource;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectStreamServiceImpl
+ * @description 对象的元数据缓存在 Redis 中，HEAD 请求和 Range 校验都不需要访问 MinIO；
+ * Content-Type 优先使用上传时记录的类型，没有时按扩展名推断；缓冲区大小、缓存策略、预读和限速按类型配置。
+ * 文本类的对象在客户端接受 gzip 时返回压缩副本，没有副本时边读边压缩
+ * @since 2023/4/29 14:10
+ */
+@Slf4j
+@Service
+public class ObjectStreamServiceImpl implements ObjectStreamService {
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Resource(name = "jsonRedisTemplate")
+    private RedisTemplate<String, Serializable> redisTemplate;
+
+    @Autowired
+    private OssTracer ossTracer;
+
+    @Autowired
+    private ThrottleProperties throttleProperties;
+
+    @Autowired
+    private StreamProperties streamProperties;
+
+    @Autowired
+    private ReadAheadManager readAheadManager;
+
+    @Autowired
+    private VideoPacer videoPacer;
+
+    @Autowired
+    private PlaybackReader playbackReader;
+
+    @Autowired
+    private CompressionProcessor compressionProcessor;
+
+    @Autowired
+    private CompressionProperties compressionProperties;
+
+    /**
+     * 开启 oss.minio.encryption.enabled 时才有
+     */
+    @Autowired(required = false)
+    private EncryptedObjectStore encryptedObjectStore;
+
+    @Override
+    public void stream(HttpServletRequest request, HttpServletResponse response, String bucketName, String objectName) {
+        try (OssSpan span = ossTracer.startSpan("ObjectStreamService.stream")) {
+            span.setAttribute("minio.bucket", bucketName).setAttribute("minio.object", objectName);
+            doStream(request, response, bucketName, objectName);
+        }
+    }
+
+    private void doStream(HttpServletRequest request, HttpServletResponse response, String bucketName, String objectName) {
+        MinioObject minioObject = getObjectMeta(bucketName, objectName);
+        // 加密的对象没有配置密钥时无法解密
+        boolean encrypted = EncryptedObjectStore.isEncrypted(minioObject == null ? null : minioObject.getUserMetadata());
+        if (minioObject == null || encrypted && encryptedObjectStore == null) {
+            writeNotFound(response);
+            return;
+        }
+        String contentType = resolveContentType(minioObject, objectName);
+        StreamProperties.Policy policy = streamProperties.policyFor(contentType);
+        // 不允许浏览器猜测类型，会执行的类型以附件的形式下载
+        response.setHeader("X-Content-Type-Options", "nosniff");
+        if (streamProperties.isAttachment(contentType)) {
+            response.setHeader("Content-Disposition", ContentDisposition.attachment()
+                    .filename(objectName.substring(objectName.lastIndexOf('/') + 1), StandardCharsets.UTF_8)
+                    .build().toString());
+        }
+        // 压缩是基于 MinIO 中的原始内容，加密的对象不压缩
+        if (!encrypted && compressionProcessor.isCompressible(contentType)) {
+            response.addHeader("Vary", "Accept-Encoding");
+            // 压缩的内容不支持 Range，有 Range 时返回原始内容的对应范围
+            if (ObjectUtils.isEmpty(request.getHeader("Range")) && acceptsGzip(request)
+                    && minioObject.getSize() >= compressionProperties.getMinSize().toBytes()
+                    && writeCompressed(request, response, bucketName, objectName, minioObject, contentType, policy)) {
+                return;
+            }
+        }
+
+        // 获取文件的长度
+        long fileSize = minioObject.getSize();
+        String etag = "\"" + minioObject.getEtag() + "\"";
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setHeader("ETag", etag);
+        response.setContentType(contentType);
+        if (!ObjectUtils.isEmpty(policy.getCacheControl())) {
+            response.setHeader("Cache-Control", policy.getCacheControl());
+        }
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        //pos开始读取位置;  last最后读取位置
+        long startPos = 0;
+        long endPos = fileSize - 1;
+        String rangeHeader = request.getHeader("Range");
+        if (!ObjectUtils.isEmpty(rangeHeader) && rangeHeader.startsWith("bytes=")) {
+            try {
+                // 情景一：RANGE: bytes=2000070- 情景二：RANGE: bytes=2000070-2000970 情景三：RANGE: bytes=-500
+                String numRang = rangeHeader.substring("bytes=".length()).trim();
+                if (numRang.startsWith("-")) {
+                    // 后缀长度超过文件大小时返回整个文件
+                    startPos = Math.max(0, fileSize - Long.parseLong(numRang.substring(1).trim()));
+                } else if (numRang.endsWith("-")) {
+                    startPos = Long.parseLong(numRang.substring(0, numRang.length() - 1).trim());
+                } else {
+                    String[] strRange = numRang.split("-");
+                    startPos = Long.parseLong(strRange[0].trim());
+                    // 结束位置超过文件末尾时截断到文件末尾
+                    endPos = Math.min(fileSize - 1, Long.parseLong(strRange[1].trim()));
+                }
+
+                if (startPos < 0 || startPos > endPos) {
+                    // SC 要求的范围不满足
+                    response.setHeader("Content-Range", "bytes */" + fileSize);
+                    response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+                    return;
+                }
+                // 断点续传 状态码206
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", String.format("bytes %d-%d/%d", startPos, endPos, fileSize));
+            } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                log.error(rangeHeader + " is not Number!");
+                startPos = 0;
+                endPos = fileSize - 1;
+            }
+        }
+
+        // 总共需要读取的字节
+        long rangLength = endPos - startPos + 1;
+        response.setContentLengthLong(rangLength);
+        // HEAD 请求只需要响应头，不读取对象内容
+        if ("HEAD".equalsIgnoreCase(request.getMethod()) || rangLength <= 0) {
+            return;
+        }
+
+        int bufferSize = (int) policy.getBufferSize().toBytes();
+        try (OssSpan span = ossTracer.startSpan("object.stream")
+                .setAttribute("minio.object.size", fileSize)
+                .setAttribute("http.range.start", startPos)
+                .setAttribute("http.range.end", endPos);
+             InputStream inputStream = open(request, minioObject, bucketName, objectName, startPos, rangLength, policy);
+             OutputStream outputStream = new BufferedOutputStream(policy.isPacing()
+                     ? videoPacer.pace(response.getOutputStream(), bucketName, objectName, fileSize)
+                     : response.getOutputStream(), bufferSize)) {
+            IOUtils.copyLarge(inputStream, outputStream, new byte[bufferSize]);
+        } catch (ClientAbortException e) {
+            // ignore 这里就不要打日志，这里的异常原因是用户在拖拽视频进度或者取消下载造成的
+        } catch (IOException e) {
+            log.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 输出 gzip 压缩的内容：优先使用合并时生成的压缩副本，没有时边读边压缩
+     *
+     * @return 是否已经输出，未开启即时压缩并且没有副本时返回 false
+     */
+    private boolean writeCompressed(HttpServletRequest request, HttpServletResponse response, String bucketName,
+                                    String objectName, MinioObject minioObject, String contentType,
+                                    StreamProperties.Policy policy) {
+        Map<String, Object> variant = compressionProcessor.getVariant(bucketName, objectName);
+        if (variant == null && !compressionProperties.isOnTheFly()) {
+            return false;
+        }
+        // 压缩的内容是另一种表示，使用不同的 ETag
+        String etag = "\"" + minioObject.getEtag() + "-" + CompressionProcessor.GZIP_ENCODING + "\"";
+        response.setHeader("ETag", etag);
+        response.setContentType(contentType);
+        response.setHeader("Content-Encoding", CompressionProcessor.GZIP_ENCODING);
+        if (!ObjectUtils.isEmpty(policy.getCacheControl())) {
+            response.setHeader("Cache-Control", policy.getCacheControl());
+        }
+        if (etag.equals(request.getHeader("If-None-Match"))) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return true;
+        }
+        if (variant != null) {
+            response.setContentLengthLong(((Number) variant.get("size")).longValue());
+        }
+        if ("HEAD".equalsIgnoreCase(request.getMethod())) {
+            return true;
+        }
+
+        int bufferSize = (int) policy.getBufferSize().toBytes();
+        try (OssSpan span = ossTracer.startSpan("object.stream.gzip")
+                .setAttribute("minio.object.size", minioObject.getSize())
+                .setAttribute("compression.precompressed", String.valueOf(variant != null))) {
+            if (variant != null) {
+                try (InputStream inputStream = minioTemplate.getObject(bucketName, (String) variant.get("object"));
+                     OutputStream outputStream = response.getOutputStream()) {
+                    IOUtils.copyLarge(inputStream, outputStream, new byte[bufferSize]);
+                }
+            } else {
+                // 长度未知，使用 chunked 编码
+                try (InputStream inputStream = minioTemplate.getObject(bucketName, objectName);
+                     OutputStream outputStream = new GZIPOutputStream(response.getOutputStream(), bufferSize)) {
+                    IOUtils.copyLarge(inputStream, outputStream, new byte[bufferSize]);
+                }
+            }
+        } catch (ClientAbortException e) {
+            // ignore 用户取消了下载
+        } catch (IOException e) {
+            log.error(e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Accept-Encoding 中是否有 q 值不为 0 的 gzip 或 *
+     */
+    private static boolean acceptsGzip(HttpServletRequest request) {
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        if (ObjectUtils.isEmpty(acceptEncoding)) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parts = coding.split(";");
+            String name = parts[0].trim();
+            if (!CompressionProcessor.GZIP_ENCODING.equalsIgnoreCase(name) && !"*".equals(name)) {
+                continue;
+            }
+            boolean rejected = false;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        rejected = Double.parseDouble(parameter.substring(2)) <= 0;
+                    } catch (NumberFormatException e) {
+                        rejected = true;
+                    }
+                }
+            }
+            if (!rejected) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private InputStream open(HttpServletRequest request, MinioObject minioObject, String bucketName, String objectName,
+                             long offset, long length, StreamProperties.Policy policy) {
+        long fileSize = minioObject.getSize();
+        if (EncryptedObjectStore.isEncrypted(minioObject.getUserMetadata())) {
+            // 只下载覆盖这个范围的密文段，元数据已经缓存，不需要再查询
+            return encryptedObjectStore.getObject(bucketName, objectName, minioObject.getUserMetadata(), fileSize,
+                    offset, length);
+        }
+        if (policy.isReadAhead()) {
+            // 同一个观看者顺序读取时，后面的数据已经在后台预读
+            return readAheadManager.open(bucketName, objectName,
+                    IpUtil.getClientIp(request, throttleProperties.getTrustedProxies()) + ":" + request.getHeader("User-Agent"), fileSize, offset, length);
+        }
+        return playbackReader.getObject(bucketName, objectName, offset, length);
+    }
+
+    /**
+     * 对象的元数据，使用 Redis 缓存
+     *
+     * @return 元数据，对象不存在时为 null
+     */
+    private MinioObject getObjectMeta(String bucketName, String objectName) {
+        String key = bucketName + ":" + objectName;
+        Object obj;
+        try (OssSpan ignored = ossTracer.startSpan("redis.hget")) {
+            obj = redisTemplate.boundHashOps(MinioServiceImpl.OBJECT_INFO_LIST).get(key);
+        }
+        // 没有 etag 的是旧版本写入的缓存，重新查询
+        if (obj != null && ((MinioObject) obj).getEtag() != null) {
+            return (MinioObject) obj;
+        }
+        StatObjectResponse objectInfo;
+        try {
+            objectInfo = minioTemplate.getObjectInfo(bucketName, objectName);
+        } catch (Exception e) {
+            log.error("{}中{}不存在: {}", bucketName, objectName, e.getMessage());
+            return null;
+        }
+        MinioObject minioObject = new MinioObject();
+        minioObject.setBucket(objectInfo.bucket());
+        minioObject.setRegion(objectInfo.region());
+        minioObject.setObject(objectInfo.object());
+        minioObject.setEtag(objectInfo.etag());
+        // 加密的对象返回明文的大小，Range 按明文计算
+        minioObject.setSize(EncryptedObjectStore.isEncrypted(objectInfo.userMetadata())
+                ? EncryptedObjectStore.plaintextSize(objectInfo.userMetadata(), objectInfo.size()) : objectInfo.size());
+        minioObject.setDeleteMarker(objectInfo.deleteMarker());
+        minioObject.setUserMetadata(objectInfo.userMetadata());
+        minioObject.setContentType(objectInfo.contentType());
+        try (OssSpan ignored = ossTracer.startSpan("redis.hset")) {
+            redisTemplate.boundHashOps(MinioServiceImpl.OBJECT_INFO_LIST).put(key, minioObject);
+        }
+        return minioObject;
+    }
+
+    /**
+     * 上传时记录的 Content-Type，没有或者只是 application/octet-stream 时按扩展名推断
+     */
+    private static String resolveContentType(MinioObject minioObject, String objectName) {
+        String contentType = minioObject.getContentType();
+        if (!ObjectUtils.isEmpty(contentType) && !MediaType.APPLICATION_OCTET_STREAM_VALUE.equals(contentType)) {
+            return contentType;
+        }
+        return MediaTypeFactory.getMediaType(objectName)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+    }
+
+    private void writeNotFound(HttpServletResponse response) {
+        response.setCharacterEncoding(StandardCharsets.UTF_8.toString());
+        response.setContentType("application/json;charset=utf-8");
+        response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+        try {
+            response.getWriter().write(objectMapper.writeValueAsString(Result.error(StatusCode.NOT_FOUND)));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
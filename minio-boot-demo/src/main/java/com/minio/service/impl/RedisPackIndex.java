@@ -0,0 +1,277 @@
+package com.minio.service.impl;
+
+import com.minio.pack.PackEntry;
+import com.minio.pack.PackIndex;
+import com.minio.pack.PackInfo;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.BoundHashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.Resource;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname RedisPackIndex
+ * @description 保存在 Redis 中的小对象索引，多个实例共用。修改索引时持有桶级别的分布式锁，
+ * 写入方按 pack 批量提交，锁的竞争很少。对象名另外保存在一个分值都为 0 的有序集合中，按字典序列举
+ * @since 2023/5/1 14:00
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(prefix = "oss.minio.pack", name = "enabled", havingValue = "true")
+public class RedisPackIndex implements PackIndex {
+
+    /**
+     * 有 pack 的桶
+     */
+    static final String BUCKETS_KEY = "com:minio:pack:buckets";
+
+    /**
+     * 对象的位置，完整的key为 前缀 + 桶名，field 为对象名
+     */
+    static final String ENTRIES_KEY_PREFIX = "com:minio:pack:entries:";
+
+    /**
+     * 按字典序排列的对象名，完整的key为 前缀 + 桶名
+     */
+    static final String NAMES_KEY_PREFIX = "com:minio:pack:names:";
+
+    /**
+     * pack 的统计信息，完整的key为 前缀 + 桶名，field 为 pack 名
+     */
+    static final String PACKS_KEY_PREFIX = "com:minio:pack:packs:";
+
+    /**
+     * pack 中仍然有效的对象名，完整的key为 前缀 + 桶名 + : + pack 名
+     */
+    static final String MEMBERS_KEY_PREFIX = "com:minio:pack:members:";
+
+    static final String LOCK_KEY_PREFIX = "com:minio:pack:lock:";
+
+    private static final long LOCK_WAIT_SECONDS = 30;
+
+    @Resource(name = "jsonRedisTemplate")
+    private RedisTemplate<String, Serializable> redisTemplate;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Override
+    public Set<String> buckets() {
+        Set<String> buckets = stringRedisTemplate.opsForSet().members(BUCKETS_KEY);
+        return buckets == null ? Collections.emptySet() : buckets;
+    }
+
+    @Override
+    public PackEntry get(String bucketName, String key) {
+        return this.<PackEntry>entryHash(bucketName).get(key);
+    }
+
+    @Override
+    public List<String> keys(String bucketName, String prefix, int limit) {
+        RedisZSetCommands.Range range = prefix.isEmpty() ? RedisZSetCommands.Range.unbounded()
+                : RedisZSetCommands.Range.range().gte(prefix).lt(prefix + Character.MAX_VALUE);
+        Set<String> keys = stringRedisTemplate.opsForZSet().rangeByLex(NAMES_KEY_PREFIX + bucketName, range,
+                RedisZSetCommands.Limit.limit().count(limit));
+        return keys == null ? Collections.emptyList() : new ArrayList<>(keys);
+    }
+
+    @Override
+    public void addPack(String bucketName, String pack, long size, Map<String, PackEntry> newEntries) {
+        withLock(bucketName, () -> {
+            stringRedisTemplate.opsForSet().add(BUCKETS_KEY, bucketName);
+            long live = newEntries.values().stream().mapToLong(PackEntry::getLength).sum();
+            this.<PackInfo>packHash(bucketName).put(pack, new PackInfo(pack, size, size - live));
+            if (newEntries.isEmpty()) {
+                return null;
+            }
+            List<String> keys = new ArrayList<>(newEntries.keySet());
+            BoundHashOperations<String, String, PackEntry> entries = entryHash(bucketName);
+            List<PackEntry> previous = entries.multiGet(keys);
+            entries.putAll(newEntries);
+            for (String key : keys) {
+                stringRedisTemplate.opsForZSet().add(NAMES_KEY_PREFIX + bucketName, key, 0);
+            }
+            stringRedisTemplate.opsForSet().add(membersKey(bucketName, pack), keys.toArray(new String[0]));
+            markDead(bucketName, keys, previous);
+            return null;
+        });
+    }
+
+    @Override
+    public PackEntry remove(String bucketName, String key) {
+        return withLock(bucketName, () -> {
+            BoundHashOperations<String, String, PackEntry> entries = entryHash(bucketName);
+            PackEntry previous = entries.get(key);
+            if (previous != null) {
+                entries.delete(key);
+                stringRedisTemplate.opsForZSet().remove(NAMES_KEY_PREFIX + bucketName, key);
+                markDead(bucketName, Collections.singletonList(key), Collections.singletonList(previous));
+            }
+            return previous;
+        });
+    }
+
+    @Override
+    public int movePack(String bucketName, String oldPack, Map<String, PackEntry> moved) {
+        if (moved.isEmpty()) {
+            return 0;
+        }
+        return withLock(bucketName, () -> {
+            BoundHashOperations<String, String, PackEntry> entries = entryHash(bucketName);
+            List<String> keys = new ArrayList<>(moved.keySet());
+            List<PackEntry> current = entries.multiGet(keys);
+            Map<String, PackEntry> updates = new LinkedHashMap<>();
+            long movedBytes = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                PackEntry entry = current.get(i);
+                if (entry != null && oldPack.equals(entry.getPack())) {
+                    PackEntry update = moved.get(keys.get(i));
+                    updates.put(keys.get(i), update);
+                    movedBytes += update.getLength();
+                }
+            }
+            if (updates.isEmpty()) {
+                return 0;
+            }
+            String newPack = updates.values().iterator().next().getPack();
+            entries.putAll(updates);
+            String[] movedKeys = updates.keySet().toArray(new String[0]);
+            stringRedisTemplate.opsForSet().add(membersKey(bucketName, newPack), movedKeys);
+            stringRedisTemplate.opsForSet().remove(membersKey(bucketName, oldPack), (Object[]) movedKeys);
+            addDeadBytes(bucketName, newPack, -movedBytes);
+            return updates.size();
+        });
+    }
+
+    @Override
+    public List<PackInfo> packs(String bucketName) {
+        List<PackInfo> packs = this.<PackInfo>packHash(bucketName).values();
+        return packs == null ? Collections.emptyList() : packs;
+    }
+
+    @Override
+    public Map<String, PackEntry> entries(String bucketName, String pack) {
+        Map<String, PackEntry> result = new LinkedHashMap<>();
+        Set<String> members = stringRedisTemplate.opsForSet().members(membersKey(bucketName, pack));
+        if (members == null || members.isEmpty()) {
+            return result;
+        }
+        List<String> keys = new ArrayList<>(members);
+        List<PackEntry> entries = this.<PackEntry>entryHash(bucketName).multiGet(keys);
+        for (int i = 0; i < keys.size(); i++) {
+            PackEntry entry = entries.get(i);
+            if (entry != null && pack.equals(entry.getPack())) {
+                result.put(keys.get(i), entry);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void removePack(String bucketName, String pack) {
+        withLock(bucketName, () -> {
+            BoundHashOperations<String, String, PackInfo> packs = packHash(bucketName);
+            packs.delete(pack);
+            redisTemplate.delete(membersKey(bucketName, pack));
+            Long size = packs.size();
+            if (size == null || size == 0) {
+                stringRedisTemplate.opsForSet().remove(BUCKETS_KEY, bucketName);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void clear(String bucketName) {
+        withLock(bucketName, () -> {
+            Set<String> packs = this.<PackInfo>packHash(bucketName).keys();
+            List<String> keys = new ArrayList<>();
+            if (packs != null) {
+                packs.forEach(pack -> keys.add(membersKey(bucketName, pack)));
+            }
+            keys.add(ENTRIES_KEY_PREFIX + bucketName);
+            keys.add(NAMES_KEY_PREFIX + bucketName);
+            keys.add(PACKS_KEY_PREFIX + bucketName);
+            redisTemplate.delete(keys);
+            stringRedisTemplate.opsForSet().remove(BUCKETS_KEY, bucketName);
+            return null;
+        });
+    }
+
+    /**
+     * 被覆盖或者删除的对象所占的字节计入原来 pack 的无效字节
+     */
+    private void markDead(String bucketName, List<String> keys, List<PackEntry> previous) {
+        Map<String, Long> deadBytes = new HashMap<>();
+        for (int i = 0; i < keys.size(); i++) {
+            PackEntry entry = previous.get(i);
+            if (entry != null) {
+                deadBytes.merge(entry.getPack(), entry.getLength(), Long::sum);
+                stringRedisTemplate.opsForSet().remove(membersKey(bucketName, entry.getPack()), keys.get(i));
+            }
+        }
+        deadBytes.forEach((pack, bytes) -> addDeadBytes(bucketName, pack, bytes));
+    }
+
+    private void addDeadBytes(String bucketName, String pack, long bytes) {
+        BoundHashOperations<String, String, PackInfo> packs = packHash(bucketName);
+        PackInfo info = packs.get(pack);
+        if (info != null) {
+            info.setDeadBytes(info.getDeadBytes() + bytes);
+            packs.put(pack, info);
+        }
+    }
+
+    private <T> T withLock(String bucketName, Supplier<T> action) {
+        RLock lock = redissonClient.getLock(LOCK_KEY_PREFIX + bucketName);
+        boolean locked = false;
+        try {
+            locked = lock.tryLock(LOCK_WAIT_SECONDS, TimeUnit.SECONDS);
+            if (!locked) {
+                throw new IllegalStateException("获取桶 " + bucketName + " 的 pack 索引锁超时");
+            }
+            return action.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            if (locked && lock.isHeldByCurrentThread()) {
+                lock.unlock();
+            }
+        }
+    }
+
+    private <V> BoundHashOperations<String, String, V> entryHash(String bucketName) {
+        return redisTemplate.boundHashOps(ENTRIES_KEY_PREFIX + bucketName);
+    }
+
+    private <V> BoundHashOperations<String, String, V> packHash(String bucketName) {
+        return redisTemplate.boundHashOps(PACKS_KEY_PREFIX + bucketName);
+    }
+
+    private static String membersKey(String bucketName, String pack) {
+        return MEMBERS_KEY_PREFIX + bucketName + ":" + pack;
+    }
+}
@@ -0,0 +1,378 @@
+package com.minio.service.impl;
+
+import com.minio.config.ThrottleProperties;
+import com.minio.service.ThrottleService;
+import com.minio.util.ByteThrottle;
+import com.minio.util.IpUtil;
+import com.minio.util.TokenBucket;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RPermitExpirableSemaphore;
+import org.redisson.api.RRateLimiter;
+import org.redisson.api.RateIntervalUnit;
+import org.redisson.api.RateType;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.util.ObjectUtils;
+
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ThrottleServiceImpl
+ * @description 基于 Redisson 的分布式限流
+ * <p>
+ * 并发数：先用本地信号量快速拒绝，再用 Redis 中带租期的信号量保证集群内的上限，请求持续期间定期续期；
+ * 带宽：使用 Redis 中的令牌桶（RRateLimiter），每次批量领取一批配额在本地消费，Redis 不可用时退化为单机令牌桶。
+ * Redis 中的 key 按维度创建，使用期间不断延长过期时间，空闲超过 keyIdleTime 后自动删除
+ * @since 2023/4/23 10:20
+ */
+@Slf4j
+@Service
+public class ThrottleServiceImpl implements ThrottleService {
+
+    /**
+     * 并发许可的信号量前缀
+     */
+    private static final String CONCURRENCY_KEY_PREFIX = "com:minio:throttle:concurrency:";
+
+    /**
+     * 带宽令牌桶的前缀，令牌单位为KiB
+     */
+    private static final String BANDWIDTH_KEY_PREFIX = "com:minio:throttle:bandwidth:";
+
+    /**
+     * 本地缓存的维度超过这个数量时，清理空闲的维度
+     */
+    private static final int MAX_LOCAL_KEYS = 10000;
+
+    private static final long KIB = 1024;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private ThrottleProperties throttleProperties;
+
+    private final Map<String, Semaphore> localSemaphores = new ConcurrentHashMap<>();
+
+    private final Map<String, DistributedByteThrottle> bandwidthThrottles = new ConcurrentHashMap<>();
+
+    /**
+     * 为长时间的请求（视频播放、下载）续期并发许可
+     */
+    private final ScheduledExecutorService leaseRenewer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "throttle-lease-renewer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void destroy() {
+        leaseRenewer.shutdownNow();
+    }
+
+    @Override
+    public List<String> resolveKeys(HttpServletRequest request, String bucketName) {
+        List<String> keys = new ArrayList<>(throttleProperties.getDimensions().size());
+        for (String dimension : throttleProperties.getDimensions()) {
+            String value;
+            switch (dimension.toLowerCase(Locale.ENGLISH)) {
+                case "ip":
+                    value = IpUtil.getClientIp(request, throttleProperties.getTrustedProxies());
+                    break;
+                case "user":
+                    value = request.getHeader(throttleProperties.getUserHeader());
+                    break;
+                case "bucket":
+                    value = bucketName;
+                    break;
+                default:
+                    throw new IllegalArgumentException("不支持的限流维度: " + dimension);
+            }
+            if (!ObjectUtils.isEmpty(value)) {
+                keys.add(dimension + ":" + value);
+            }
+        }
+        return keys;
+    }
+
+    @Override
+    public Permit tryAcquire(ThrottleScope scope, List<String> keys) {
+        int maxConcurrency = maxConcurrency(scope);
+        List<Runnable> releases = new ArrayList<>(keys.size() * 2);
+        List<Lease> leases = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            String name = scope.name().toLowerCase(Locale.ENGLISH) + ":" + key;
+
+            // 本地快速路径：单个节点上已经达到上限时不必访问Redis
+            Semaphore localSemaphore = localSemaphores.computeIfAbsent(name, k -> new Semaphore(maxConcurrency));
+            if (!localSemaphore.tryAcquire()) {
+                releaseAll(releases);
+                return null;
+            }
+            releases.add(localSemaphore::release);
+
+            RPermitExpirableSemaphore semaphore = redissonClient.getPermitExpirableSemaphore(CONCURRENCY_KEY_PREFIX + name);
+            String permitId;
+            try {
+                semaphore.trySetPermits(maxConcurrency);
+                permitId = semaphore.tryAcquire(0, throttleProperties.getLeaseTime().toMillis(), TimeUnit.MILLISECONDS);
+                if (permitId != null) {
+                    semaphore.expireAsync(semaphoreTtl());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                releaseAll(releases);
+                return null;
+            } catch (RedisException e) {
+                // Redis不可用时只做单机限制，不影响业务
+                log.warn("获取并发许可 {} 失败，退化为单机限流: {}", name, e.getMessage());
+                continue;
+            }
+            if (permitId == null) {
+                releaseAll(releases);
+                return null;
+            }
+            Lease lease = new Lease(name, semaphore, permitId);
+            leases.add(lease);
+            releases.add(() -> releaseQuietly(lease));
+        }
+        evictIdleKeys();
+        ScheduledFuture<?> renewal = leases.isEmpty() ? null : scheduleRenewal(leases);
+        return () -> {
+            if (renewal != null) {
+                renewal.cancel(false);
+            }
+            releaseAll(releases);
+        };
+    }
+
+    /**
+     * 请求持续期间每隔三分之一租期续期一次，租期只用于节点宕机时兜底释放；
+     * 许可已经过期（例如 Redis 短暂不可用）时重新获取，重新获取不到说明集群内已经超过上限，只记录日志
+     */
+    private ScheduledFuture<?> scheduleRenewal(List<Lease> leases) {
+        long leaseMillis = throttleProperties.getLeaseTime().toMillis();
+        long period = Math.max(1000, leaseMillis / 3);
+        return leaseRenewer.scheduleAtFixedRate(() -> {
+            for (Lease lease : leases) {
+                try {
+                    lease.semaphore.expire(semaphoreTtl());
+                    if (lease.semaphore.updateLeaseTime(lease.permitId, leaseMillis, TimeUnit.MILLISECONDS)) {
+                        continue;
+                    }
+                    String permitId = lease.semaphore.tryAcquire(0, leaseMillis, TimeUnit.MILLISECONDS);
+                    if (permitId == null) {
+                        log.warn("并发许可 {} 已经过期，重新获取失败", lease.name);
+                    } else {
+                        lease.permitId = permitId;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (RedisException e) {
+                    log.warn("续期并发许可 {} 失败: {}", lease.name, e.getMessage());
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public List<ByteThrottle> bandwidth(ThrottleScope scope, List<String> keys) {
+        long bytesPerSecond = bandwidthOf(scope);
+        if (bytesPerSecond <= 0 || keys.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<ByteThrottle> throttles = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            String name = scope.name().toLowerCase(Locale.ENGLISH) + ":" + key;
+            throttles.add(bandwidthThrottles.computeIfAbsent(name, k -> new DistributedByteThrottle(
+                    redissonClient.getRateLimiter(BANDWIDTH_KEY_PREFIX + k), bytesPerSecond,
+                    throttleProperties.getLocalBatch().toBytes(), throttleProperties.getKeyIdleTime())));
+        }
+        return throttles;
+    }
+
+    /**
+     * 信号量的过期时间不短于两倍租期，持有许可期间 key 不会过期，
+     * 否则 key 被删除后重新 trySetPermits 会让集群内的许可数超过上限
+     */
+    private Duration semaphoreTtl() {
+        Duration doubleLease = throttleProperties.getLeaseTime().multipliedBy(2);
+        return doubleLease.compareTo(throttleProperties.getKeyIdleTime()) > 0 ? doubleLease : throttleProperties.getKeyIdleTime();
+    }
+
+    private int maxConcurrency(ThrottleScope scope) {
+        switch (scope) {
+            case UPLOAD:
+                return throttleProperties.getMaxConcurrentUploads();
+            case MERGE:
+                return throttleProperties.getMaxConcurrentMerges();
+            default:
+                return throttleProperties.getMaxConcurrentStreams();
+        }
+    }
+
+    private long bandwidthOf(ThrottleScope scope) {
+        switch (scope) {
+            case UPLOAD:
+                return throttleProperties.getUploadBandwidth().toBytes();
+            case STREAM:
+                return throttleProperties.getStreamBandwidth().toBytes();
+            default:
+                return 0;
+        }
+    }
+
+    private void releaseQuietly(Lease lease) {
+        try {
+            // 许可可能已经因为租期到了而被释放
+            lease.semaphore.tryRelease(lease.permitId);
+        } catch (RedisException e) {
+            log.warn("释放并发许可失败: {}", e.getMessage());
+        }
+    }
+
+    private void releaseAll(List<Runnable> releases) {
+        for (int i = releases.size() - 1; i >= 0; i--) {
+            releases.get(i).run();
+        }
+    }
+
+    /**
+     * 本地缓存以 IP、用户为key，数量没有上限，超过阈值时清理没有被使用的维度
+     */
+    private void evictIdleKeys() {
+        if (localSemaphores.size() > MAX_LOCAL_KEYS) {
+            // key 的格式为 scope:dimension:value，许可全部空闲的维度可以直接丢弃，Redis 中的上限不受影响
+            localSemaphores.entrySet().removeIf(entry -> {
+                String scope = entry.getKey().substring(0, entry.getKey().indexOf(':'));
+                int maxConcurrency = maxConcurrency(ThrottleScope.valueOf(scope.toUpperCase(Locale.ENGLISH)));
+                return entry.getValue().availablePermits() >= maxConcurrency;
+            });
+        }
+        if (bandwidthThrottles.size() > MAX_LOCAL_KEYS) {
+            bandwidthThrottles.clear();
+        }
+    }
+
+    /**
+     * 一个维度上持有的分布式并发许可
+     */
+    private static class Lease {
+
+        private final String name;
+
+        private final RPermitExpirableSemaphore semaphore;
+
+        /**
+         * 过期后重新获取时会变化
+         */
+        private volatile String permitId;
+
+        Lease(String name, RPermitExpirableSemaphore semaphore, String permitId) {
+            this.name = name;
+            this.semaphore = semaphore;
+            this.permitId = permitId;
+        }
+    }
+
+    /**
+     * 集群共享的带宽限制，每次从 Redis 中领取一批配额后在本地消费。
+     * 向 Redis 领取配额时会阻塞到令牌足够，领取在锁外进行，一个慢的流不会挡住同一个维度上的其他流
+     */
+    private static class DistributedByteThrottle implements ByteThrottle {
+
+        private final RRateLimiter rateLimiter;
+
+        private final long rateKib;
+
+        private final long batchKib;
+
+        private final Duration keyTtl;
+
+        /**
+         * Redis 不可用时使用的单机令牌桶
+         */
+        private final TokenBucket fallback;
+
+        /**
+         * 本地剩余的配额
+         */
+        private long localBytes;
+
+        /**
+         * 上次设置速率和过期时间的时间，超过半个过期时间后重新设置，key 过期之后也能重新初始化速率
+         */
+        private volatile long keyRefreshedNanos;
+
+        private volatile boolean keyRefreshed;
+
+        DistributedByteThrottle(RRateLimiter rateLimiter, long bytesPerSecond, long batchBytes, Duration keyTtl) {
+            this.rateLimiter = rateLimiter;
+            this.rateKib = Math.max(1, bytesPerSecond / KIB);
+            // 单次领取的配额不能超过每秒的配额，否则 RRateLimiter 会拒绝
+            this.batchKib = Math.max(1, Math.min(batchBytes / KIB, rateKib));
+            this.keyTtl = keyTtl;
+            this.fallback = new TokenBucket(bytesPerSecond, batchBytes);
+        }
+
+        @Override
+        public void acquire(long bytes) throws InterruptedIOException {
+            long needed;
+            synchronized (this) {
+                long taken = Math.min(localBytes, bytes);
+                localBytes -= taken;
+                needed = bytes - taken;
+            }
+            while (needed > 0) {
+                try {
+                    refreshKey();
+                    rateLimiter.acquire(batchKib);
+                } catch (RedisException e) {
+                    log.warn("领取带宽配额失败，退化为单机限速: {}", e.getMessage());
+                    keyRefreshed = false;
+                    fallback.acquire(needed);
+                    return;
+                }
+                long fetched = batchKib * KIB;
+                if (fetched > needed) {
+                    // 多领的配额留给其他流使用
+                    synchronized (this) {
+                        localBytes += fetched - needed;
+                    }
+                    return;
+                }
+                needed -= fetched;
+            }
+        }
+
+        private void refreshKey() {
+            long now = System.nanoTime();
+            if (keyRefreshed && now - keyRefreshedNanos < keyTtl.toNanos() / 2) {
+                return;
+            }
+            rateLimiter.trySetRate(RateType.OVERALL, rateKib, 1, RateIntervalUnit.SECONDS);
+            rateLimiter.expire(keyTtl);
+            keyRefreshedNanos = now;
+            keyRefreshed = true;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package com.minio.service.impl;
+
+import com.minio.config.ReaperProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.entity.StatusCode;
+import com.minio.service.UploadReaperService;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import io.minio.messages.Bucket;
+import io.minio.messages.Upload;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.core.BoundZSetOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname UploadReaperServiceImpl
+ * @description 定时清理废弃的上传，临时桶按批次并发删除，并发数由 minio.reaper.parallelism 限制
+ * @since 2023/4/25 10:35
+ */
+@Slf4j
+@Service
+public class UploadReaperServiceImpl implements UploadReaperService {
+
+    /**
+     * 清理任务的锁，集群内同一时间只有一个节点执行清理
+     */
+    private static final String REAPER_LOCK_KEY = "com:minio:reaper:lock";
+
+    /**
+     * 临时桶的桶名就是文件的md5
+     */
+    private static final Pattern TEMP_BUCKET_NAME = Pattern.compile("[0-9a-f]{32}");
+
+    @Autowired
+    private MinioTemplate minioTemplate;
+
+    @Resource(name = "jsonRedisTemplate")
+    private RedisTemplate<String, Serializable> redisTemplate;
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Autowired
+    private OssTracer ossTracer;
+
+    @Autowired
+    private ReaperProperties reaperProperties;
+
+    /**
+     * 删除临时桶的线程池
+     */
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        executor = ossTracer.wrap(Executors.newFixedThreadPool(reaperProperties.getParallelism()));
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    @Scheduled(initialDelayString = "${minio.reaper.initial-delay:PT5M}", fixedDelayString = "${minio.reaper.interval:PT1H}")
+    public void scheduledReap() {
+        if (!reaperProperties.isEnabled()) {
+            return;
+        }
+        try {
+            reap();
+        } catch (Exception e) {
+            log.error("清理废弃的上传失败", e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> reap() {
+        Map<String, Object> retMap = new HashMap<>();
+        RLock reaperLock = redissonClient.getLock(REAPER_LOCK_KEY);
+        if (!reaperLock.tryLock()) {
+            log.info("其他节点正在清理废弃的上传，本次跳过");
+            retMap.put("status", StatusCode.SUCCESS.getCode());
+            retMap.put("skipped", true);
+            return retMap;
+        }
+        try (OssSpan span = ossTracer.startSpan("reaper.reap")) {
+            long cutoff = System.currentTimeMillis() - reaperProperties.getSessionTtl().toMillis();
+
+            Set<String> staleBuckets = findStaleBuckets(cutoff);
+            span.setAttribute("reaper.buckets", staleBuckets.size());
+            int removedBuckets = removeTempBuckets(staleBuckets, cutoff);
+
+            int abortedUploads = abortIncompleteUploads(cutoff);
+            span.setAttribute("reaper.uploads", abortedUploads);
+
+            log.info("清理废弃的上传完成，临时桶: {}/{}, 未完成的分片上传: {}", removedBuckets, staleBuckets.size(), abortedUploads);
+            retMap.put("status", StatusCode.SUCCESS.getCode());
+            retMap.put("buckets", removedBuckets);
+            retMap.put("uploads", abortedUploads);
+            return retMap;
+        } finally {
+            reaperLock.unlock();
+        }
+    }
+
+    /**
+     * 查找需要删除的临时桶：会话超过TTL没有活动的，以及没有活动记录、创建时间超过TTL，
+     * 但是有上传会话或分片索引、或者带有临时桶标签的（Redis 中的活动记录丢失时遗留的）。
+     * 名字是32位十六进制但不是本应用创建的桶不会被删除
+     *
+     * @param cutoff 最后活动时间早于这个时间戳的视为废弃
+     * @return 临时桶名，最多 batchSize 个
+     */
+    private Set<String> findStaleBuckets(long cutoff) {
+        int batchSize = reaperProperties.getBatchSize();
+        BoundZSetOperations<String, Serializable> activity = redisTemplate.boundZSetOps(MinioServiceImpl.UPLOAD_ACTIVITY_KEY);
+        Set<String> staleBuckets = new LinkedHashSet<>();
+        Set<Serializable> staleSessions = redisTemplate.opsForZSet()
+                .rangeByScore(MinioServiceImpl.UPLOAD_ACTIVITY_KEY, 0, cutoff, 0, batchSize);
+        if (staleSessions != null) {
+            for (Serializable md5 : staleSessions) {
+                staleBuckets.add((String) md5);
+            }
+        }
+        for (Bucket bucket : minioTemplate.listBuckets()) {
+            if (staleBuckets.size() >= batchSize) {
+                break;
+            }
+            String bucketName = bucket.name();
+            if (TEMP_BUCKET_NAME.matcher(bucketName).matches()
+                    && bucket.creationDate().toInstant().toEpochMilli() < cutoff
+                    && activity.score(bucketName) == null
+                    && isUploadBucket(bucketName)) {
+                staleBuckets.add(bucketName);
+            }
+        }
+        return staleBuckets;
+    }
+
+    /**
+     * 是否是上传会话的临时桶
+     *
+     * @param bucketName 桶名
+     * @return 有上传会话、分片索引或者临时桶标签时返回true
+     */
+    private boolean isUploadBucket(String bucketName) {
+        if (Boolean.TRUE.equals(redisTemplate.hasKey(MinioServiceImpl.UPLOAD_SESSION_KEY_PREFIX + bucketName))
+                || Boolean.TRUE.equals(redisTemplate.hasKey(MinioServiceImpl.CHUNK_INDEX_KEY_PREFIX + bucketName))) {
+            return true;
+        }
+        try {
+            return minioTemplate.getBucketTags(bucketName).containsKey(MinioServiceImpl.UPLOAD_BUCKET_TAG);
+        } catch (Exception e) {
+            log.warn("查询桶 {} 的标签失败，跳过", bucketName, e);
+            return false;
+        }
+    }
+
+    /**
+     * 并发删除临时桶以及对应的分片索引和上传会话
+     *
+     * @param bucketNames 临时桶名
+     * @param cutoff      最后活动时间早于这个时间戳的视为废弃
+     * @return 删除成功的数量
+     */
+    private int removeTempBuckets(Set<String> bucketNames, long cutoff) {
+        AtomicInteger removed = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(bucketNames.size());
+        for (String md5 : bucketNames) {
+            futures.add(executor.submit(() -> {
+                if (removeTempBucket(md5, cutoff)) {
+                    removed.incrementAndGet();
+                }
+            }));
+        }
+        awaitAll(futures);
+        return removed.get();
+    }
+
+    /**
+     * 删除一个临时桶，正在合并或者在查找之后又有新分片上传的会话不删除
+     *
+     * @param md5    文件的md5，即临时桶名
+     * @param cutoff 最后活动时间早于这个时间戳的视为废弃
+     * @return 是否删除
+     */
+    private boolean removeTempBucket(String md5, long cutoff) {
+        RLock mergeLock = redissonClient.getLock(MinioServiceImpl.MERGE_LOCK_KEY_PREFIX + md5);
+        if (!mergeLock.tryLock()) {
+            log.info("临时桶 {} 正在合并，跳过", md5);
+            return false;
+        }
+        try {
+            BoundZSetOperations<String, Serializable> activity = redisTemplate.boundZSetOps(MinioServiceImpl.UPLOAD_ACTIVITY_KEY);
+            Double lastActivity = activity.score(md5);
+            if (lastActivity != null && lastActivity >= cutoff) {
+                return false;
+            }
+            if (minioTemplate.bucketExists(md5)) {
+                minioTemplate.removeBucket(md5, true);
+            }
+            redisTemplate.delete(Arrays.asList(MinioServiceImpl.CHUNK_INDEX_KEY_PREFIX + md5,
+                    MinioServiceImpl.UPLOAD_SESSION_KEY_PREFIX + md5,
+                    MinioServiceImpl.MERGE_FENCE_KEY_PREFIX + md5));
+            activity.remove(md5);
+            log.info("删除废弃的临时桶 {}", md5);
+            return true;
+        } catch (Exception e) {
+            log.warn("删除临时桶 {} 失败", md5, e);
+            return false;
+        } finally {
+            mergeLock.unlock();
+        }
+    }
+
+    /**
+     * 终止默认桶中发起时间超过TTL的分片上传（大文件直接上传时 minio-java 使用的分片上传）
+     *
+     * @param cutoff 发起时间早于这个时间戳的视为废弃
+     * @return 终止的数量
+     */
+    private int abortIncompleteUploads(long cutoff) {
+        String bucketName = minioTemplate.getDefaultBucketName();
+        AtomicInteger aborted = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>();
+        for (Upload upload : minioTemplate.listIncompleteUploads(bucketName, null)) {
+            if (upload.initiated() == null || upload.initiated().toInstant().toEpochMilli() >= cutoff) {
+                continue;
+            }
+            futures.add(executor.submit(() -> {
+                try {
+                    minioTemplate.abortIncompleteUpload(bucketName, upload.objectName(), upload.uploadId());
+                    aborted.incrementAndGet();
+                } catch (Exception e) {
+                    log.warn("终止分片上传失败, object: {}, uploadId: {}", upload.objectName(), upload.uploadId(), e);
+                }
+            }));
+        }
+        awaitAll(futures);
+        return aborted.get();
+    }
+
+    private void awaitAll(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                log.warn("清理任务执行失败", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.minio.util;
+
+import java.util.Collection;
+
+/**
+ * @author lyf
+ * @description: 判断接口是否允许访问一个桶。/object、/archive、/file/ingest 使用应用自己的凭证访问 MinIO，
+ * 不受桶策略的限制，只允许访问配置的桶，避免读取或者写入上传用的临时桶等其他桶
+ * @version: v1.0
+ * @since 2023-05-05 10:00
+ */
+public final class BucketAccessUtil {
+
+    private BucketAccessUtil() {
+    }
+
+    /**
+     * 是否允许访问
+     *
+     * @param bucketName        请求的桶
+     * @param allowedBuckets    允许访问的桶，为空时只允许默认桶
+     * @param defaultBucketName 默认桶
+     * @return 是否允许
+     */
+    public static boolean isAllowed(String bucketName, Collection<String> allowedBuckets, String defaultBucketName) {
+        if (bucketName == null) {
+            return false;
+        }
+        if (allowedBuckets == null || allowedBuckets.isEmpty()) {
+            return bucketName.equals(defaultBucketName);
+        }
+        return allowedBuckets.contains(bucketName);
+    }
+}
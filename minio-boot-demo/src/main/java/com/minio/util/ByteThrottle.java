@@ -0,0 +1,21 @@
+package com.minio.util;
+
+import java.io.InterruptedIOException;
+
+/**
+ * @author lyf
+ * @description: 字节流限速，读写数据之前先申请对应数量的字节配额
+ * @version: v1.0
+ * @since 2023-04-23 09:30
+ */
+@FunctionalInterface
+public interface ByteThrottle {
+
+    /**
+     * 申请配额，配额不足时阻塞
+     *
+     * @param bytes 字节数
+     * @throws InterruptedIOException 等待配额时线程被中断
+     */
+    void acquire(long bytes) throws InterruptedIOException;
+}
@@ -0,0 +1,92 @@
+package com.minio.util;
+
+/**
+ * @author lyf
+ * @description: 根据文件大小和客户端的上传速度计算分片大小
+ * <p>
+ * 分片太小时每个分片的固定开销（multipart解析、桶检查、一次PUT请求）占比过高，
+ * 分片太大时失败重传的代价又太高，这里让每个分片的上传时间落在 {@link #TARGET_CHUNK_SECONDS} 左右，
+ * 同时满足 S3 分片的限制：除最后一片外每片不小于 5MiB，分片数不超过 10000
+ * @version: v1.0
+ * @since 2023-04-21 10:20
+ */
+public final class ChunkSizeUtil {
+
+    /**
+     * S3 合并时除最后一片外，每片的最小值
+     */
+    public static final long MIN_CHUNK_SIZE = 5L * 1024 * 1024;
+
+    /**
+     * S3 合并时最多的分片数
+     */
+    public static final int MAX_CHUNK_COUNT = 10000;
+
+    /**
+     * 没有测量过上传速度时使用的分片大小
+     */
+    public static final long DEFAULT_CHUNK_SIZE = 8L * 1024 * 1024;
+
+    /**
+     * 期望每个分片上传耗时的秒数
+     */
+    public static final int TARGET_CHUNK_SECONDS = 4;
+
+    /**
+     * 分片大小按 1MiB 对齐
+     */
+    private static final long ALIGNMENT = 1024 * 1024;
+
+    private ChunkSizeUtil() {
+    }
+
+    /**
+     * 计算建议的分片大小
+     *
+     * @param fileSize        文件大小
+     * @param bytesPerSecond  客户端的上传速度，小于等于0表示未知
+     * @param maxChunkSize    分片大小上限，受 spring.servlet.multipart.max-file-size 的限制
+     * @return 分片大小
+     */
+    public static long suggestChunkSize(long fileSize, long bytesPerSecond, long maxChunkSize) {
+        if (fileSize <= 0) {
+            return MIN_CHUNK_SIZE;
+        }
+        // 分片数不能超过10000，每片不能小于5MiB
+        long floor = Math.max(MIN_CHUNK_SIZE, ceilDiv(fileSize, MAX_CHUNK_COUNT));
+        long preferred = bytesPerSecond > 0 ? bytesPerSecond * TARGET_CHUNK_SECONDS : DEFAULT_CHUNK_SIZE;
+        long chunkSize = Math.max(floor, Math.min(preferred, maxChunkSize));
+        chunkSize = ceilDiv(chunkSize, ALIGNMENT) * ALIGNMENT;
+        // 小文件只需要一片
+        return Math.min(chunkSize, Math.max(fileSize, 1));
+    }
+
+    /**
+     * 计算分片数
+     *
+     * @param fileSize  文件大小
+     * @param chunkSize 分片大小
+     * @return 分片数
+     */
+    public static int chunkCount(long fileSize, long chunkSize) {
+        return (int) Math.max(1, ceilDiv(fileSize, chunkSize));
+    }
+
+    /**
+     * 指数加权移动平均，平滑单次测量的抖动
+     *
+     * @param previous 之前的平均值，小于等于0表示没有历史数据
+     * @param sample   本次的测量值
+     * @return 新的平均值
+     */
+    public static long ewma(long previous, long sample) {
+        if (previous <= 0) {
+            return sample;
+        }
+        return (long) (previous * 0.7 + sample * 0.3);
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return (x + y - 1) / y;
+    }
+}
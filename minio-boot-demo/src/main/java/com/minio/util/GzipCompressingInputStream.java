@@ -0,0 +1,93 @@
+package com.minio.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * @author lyf
+ * @description: 读取时压缩的输入流，读到的是源数据的 gzip 格式，只缓冲一小块压缩后的数据，
+ * 用于把压缩的结果直接作为上传的输入流
+ * @version: v1.0
+ * @since 2023-04-29 15:30
+ */
+public class GzipCompressingInputStream extends InputStream {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream source;
+
+    private final ByteArrayOutputStream compressed = new ByteArrayOutputStream(BUFFER_SIZE);
+
+    private final GZIPOutputStream gzip;
+
+    private final byte[] readBuffer = new byte[BUFFER_SIZE];
+
+    private byte[] pending;
+
+    private int position;
+
+    private boolean finished;
+
+    public GzipCompressingInputStream(InputStream source, int level) throws IOException {
+        this.source = source;
+        this.gzip = new GZIPOutputStream(compressed, BUFFER_SIZE) {
+            {
+                def.setLevel(level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION
+                        ? Deflater.DEFAULT_COMPRESSION : level);
+            }
+        };
+        // 构造时已经写出了 gzip 的头部
+        this.pending = compressed.toByteArray();
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (position >= pending.length) {
+            if (finished) {
+                return -1;
+            }
+            fill();
+        }
+        int n = Math.min(len, pending.length - position);
+        System.arraycopy(pending, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    /**
+     * 读取一块源数据并压缩，压缩器可能暂时不输出数据，此时 pending 为空，调用方继续读取
+     */
+    private void fill() throws IOException {
+        compressed.reset();
+        int n = source.read(readBuffer);
+        if (n < 0) {
+            gzip.finish();
+            finished = true;
+        } else {
+            gzip.write(readBuffer, 0, n);
+        }
+        pending = compressed.toByteArray();
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            source.close();
+        } finally {
+            gzip.close();
+        }
+    }
+}
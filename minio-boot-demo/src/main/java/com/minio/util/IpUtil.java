@@ -0,0 +1,117 @@
+package com.minio.util;
+
+import org.springframework.util.ObjectUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Collection;
+
+/**
+ * @author lyf
+ * @description: 获取客户端的真实IP
+ * <p>
+ * X-Forwarded-For、X-Real-IP 可以由客户端任意伪造，只有请求直接来自受信任的代理时才使用它们，
+ * 否则换一个请求头就可以绕过按IP的限流
+ * @version: v1.0
+ * @since 2023-04-21 10:40
+ */
+public final class IpUtil {
+
+    private static final String UNKNOWN = "unknown";
+
+    private IpUtil() {
+    }
+
+    /**
+     * 获取客户端IP。请求来自受信任的代理时，从右往左取 X-Forwarded-For 中第一个不是受信任代理的地址，
+     * 没有 X-Forwarded-For 时取 X-Real-IP；其他请求直接使用连接的对端地址
+     *
+     * @param request        request
+     * @param trustedProxies 受信任的代理，IP 或者 CIDR，例如 10.0.0.0/8
+     * @return 客户端IP
+     */
+    public static String getClientIp(HttpServletRequest request, Collection<String> trustedProxies) {
+        String remoteAddr = request.getRemoteAddr();
+        if (!isTrusted(remoteAddr, trustedProxies)) {
+            return remoteAddr;
+        }
+        String forwardedFor = request.getHeader("X-Forwarded-For");
+        if (!ObjectUtils.isEmpty(forwardedFor) && !UNKNOWN.equalsIgnoreCase(forwardedFor)) {
+            String[] hops = forwardedFor.split(",");
+            for (int i = hops.length - 1; i >= 0; i--) {
+                String hop = hops[i].trim();
+                if (hop.isEmpty() || UNKNOWN.equalsIgnoreCase(hop)) {
+                    continue;
+                }
+                if (i == 0 || !isTrusted(hop, trustedProxies)) {
+                    return hop;
+                }
+            }
+        }
+        String realIp = request.getHeader("X-Real-IP");
+        if (!ObjectUtils.isEmpty(realIp) && !UNKNOWN.equalsIgnoreCase(realIp)) {
+            return realIp.trim();
+        }
+        return remoteAddr;
+    }
+
+    /**
+     * 地址是否属于受信任的代理
+     *
+     * @param address        IP
+     * @param trustedProxies IP 或者 CIDR
+     * @return 是否受信任
+     */
+    public static boolean isTrusted(String address, Collection<String> trustedProxies) {
+        if (ObjectUtils.isEmpty(address) || trustedProxies == null || trustedProxies.isEmpty()) {
+            return false;
+        }
+        byte[] ip = parse(address);
+        if (ip == null) {
+            return false;
+        }
+        for (String proxy : trustedProxies) {
+            int slash = proxy.indexOf('/');
+            byte[] network = parse(slash < 0 ? proxy.trim() : proxy.substring(0, slash).trim());
+            if (network == null || network.length != ip.length) {
+                continue;
+            }
+            int prefix = slash < 0 ? network.length * 8 : Integer.parseInt(proxy.substring(slash + 1).trim());
+            if (matches(ip, network, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean matches(byte[] ip, byte[] network, int prefix) {
+        int fullBytes = prefix / 8;
+        for (int i = 0; i < fullBytes; i++) {
+            if (ip[i] != network[i]) {
+                return false;
+            }
+        }
+        int remainingBits = prefix % 8;
+        if (remainingBits == 0) {
+            return true;
+        }
+        int mask = 0xFF << (8 - remainingBits);
+        return (ip[fullBytes] & mask) == (network[fullBytes] & mask);
+    }
+
+    /**
+     * 只解析字面量的 IP，不做 DNS 查询
+     */
+    private static byte[] parse(String address) {
+        boolean literal = address.indexOf(':') >= 0 || address.chars().allMatch(c -> c == '.' || Character.isDigit(c));
+        if (!literal || address.isEmpty()) {
+            return null;
+        }
+        try {
+            return InetAddress.getByName(address).getAddress();
+        } catch (UnknownHostException e) {
+            return null;
+        }
+    }
+}
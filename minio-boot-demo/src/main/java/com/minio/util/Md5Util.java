@@ -98,7 +98,7 @@ public final class Md5Util {
      * @param bytes bytes
      * @return 全小写的md5值
      */
-    private static String encodeHex(byte[] bytes) {
+    public static String encodeHex(byte[] bytes) {
         char[] chars = new char[32];
         for (int i = 0; i < chars.length; i = i + 2) {
             byte b = bytes[i / 2];
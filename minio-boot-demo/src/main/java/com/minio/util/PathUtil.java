@@ -0,0 +1,39 @@
+package com.minio.util;
+
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.PathMatcher;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.UriUtils;
+
+import javax.servlet.http.HttpServletRequest;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author lyf
+ * @description: 从请求路径中取出多级的对象名，例如 files/2023-04-30/uuid_name.mp4
+ * @version: v1.0
+ * @since 2023-05-04 11:00
+ */
+public final class PathUtil {
+
+    private static final PathMatcher PATH_MATCHER = new AntPathMatcher();
+
+    private PathUtil() {
+    }
+
+    /**
+     * 取出映射中 ** 匹配的部分，例如映射为 /object/{bucketName}/**，请求为 /object/b/files/a.mp4 时返回 files/a.mp4
+     *
+     * @param request request
+     * @return 解码之后的路径，没有时为空字符串
+     */
+    public static String extractWildcardPath(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        if (pattern == null) {
+            return "";
+        }
+        // 用原始的请求路径匹配再解码，对象名中的 %2F、空格、中文等与匹配策略（AntPathMatcher / PathPatternParser）无关
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return UriUtils.decode(PATH_MATCHER.extractPathWithinPattern(pattern.toString(), path), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,46 @@
+package com.minio.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * @author lyf
+ * @description: 限速的输入流，每次读取之后按实际读到的字节数申请配额
+ * @version: v1.0
+ * @since 2023-04-23 09:30
+ */
+public class ThrottledInputStream extends FilterInputStream {
+
+    private final List<ByteThrottle> throttles;
+
+    public ThrottledInputStream(InputStream in, List<ByteThrottle> throttles) {
+        super(in);
+        this.throttles = throttles;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            acquire(1);
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n > 0) {
+            acquire(n);
+        }
+        return n;
+    }
+
+    private void acquire(long bytes) throws IOException {
+        for (ByteThrottle throttle : throttles) {
+            throttle.acquire(bytes);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.minio.util;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * @author lyf
+ * @description: 限速的输出流，写出之前先申请配额
+ * @version: v1.0
+ * @since 2023-04-23 09:30
+ */
+public class ThrottledOutputStream extends FilterOutputStream {
+
+    private final List<ByteThrottle> throttles;
+
+    public ThrottledOutputStream(OutputStream out, List<ByteThrottle> throttles) {
+        super(out);
+        this.throttles = throttles;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        acquire(1);
+        out.write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        acquire(len);
+        // FilterOutputStream 默认逐字节写出，这里直接整块写出
+        out.write(b, off, len);
+    }
+
+    private void acquire(long bytes) throws IOException {
+        for (ByteThrottle throttle : throttles) {
+            throttle.acquire(bytes);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.minio.util;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @description: 单机的令牌桶，令牌按固定速率生成，桶满之后不再增加，允许最多 capacity 字节的突发
+ * @version: v1.0
+ * @since 2023-04-23 09:30
+ */
+public class TokenBucket implements ByteThrottle {
+
+    /**
+     * 每秒生成的令牌数（字节）
+     */
+    private final long bytesPerSecond;
+
+    /**
+     * 桶的容量，即允许的最大突发字节数
+     */
+    private final long capacity;
+
+    /**
+     * 当前可用的令牌数，可以为负数，表示已经预支的令牌
+     */
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    public TokenBucket(long bytesPerSecond, long capacity) {
+        if (bytesPerSecond <= 0 || capacity <= 0) {
+            throw new IllegalArgumentException("bytesPerSecond和capacity必须大于0");
+        }
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 申请令牌，令牌不足时先预支，再睡眠到令牌补足为止，这样大块的申请也不会饿死
+     *
+     * @param bytes 字节数
+     * @throws InterruptedIOException 睡眠时线程被中断
+     */
+    @Override
+    public void acquire(long bytes) throws InterruptedIOException {
+        long waitNanos;
+        synchronized (this) {
+            refill();
+            tokens -= bytes;
+            waitNanos = tokens >= 0 ? 0 : (long) (-tokens * TimeUnit.SECONDS.toNanos(1) / bytesPerSecond);
+        }
+        if (waitNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(waitNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待令牌时被中断");
+            }
+        }
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * bytesPerSecond / (double) TimeUnit.SECONDS.toNanos(1));
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,57 @@
+package com.minio.media;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImageTransformerTest {
+
+    @Test
+    void resizeAndCrop() throws Exception {
+        // 800x400，左半红色，右半蓝色
+        BufferedImage image = new BufferedImage(800, 400, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(Color.RED);
+        graphics.fillRect(0, 0, 400, 400);
+        graphics.setColor(Color.BLUE);
+        graphics.fillRect(400, 0, 400, 400);
+        graphics.dispose();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", outputStream);
+        byte[] source = outputStream.toByteArray();
+
+        BufferedImage contain = decode(ImageTransformer.transform(new ByteArrayInputStream(source), 200, 200,
+                ImageTransformer.Fit.CONTAIN, "jpg", 85, Long.MAX_VALUE));
+        assertEquals(200, contain.getWidth());
+        assertEquals(100, contain.getHeight());
+
+        BufferedImage cover = decode(ImageTransformer.transform(new ByteArrayInputStream(source), 100, 100,
+                ImageTransformer.Fit.COVER, "png", 85, Long.MAX_VALUE));
+        assertEquals(100, cover.getWidth());
+        assertEquals(100, cover.getHeight());
+        // 居中裁剪，左边红色右边蓝色
+        assertEquals(Color.RED.getRGB(), cover.getRGB(10, 50));
+        assertEquals(Color.BLUE.getRGB(), cover.getRGB(90, 50));
+
+        BufferedImage height = decode(ImageTransformer.transform(new ByteArrayInputStream(source), 0, 50,
+                ImageTransformer.Fit.CONTAIN, "png", 85, Long.MAX_VALUE));
+        assertEquals(100, height.getWidth());
+
+        assertThrows(IOException.class, () -> ImageTransformer.transform(new ByteArrayInputStream(source), 100, 100,
+                ImageTransformer.Fit.CONTAIN, "png", 85, 1000));
+        assertThrows(IOException.class, () -> ImageTransformer.transform(new ByteArrayInputStream(new byte[16]),
+                100, 100, ImageTransformer.Fit.CONTAIN, "png", 85, Long.MAX_VALUE));
+    }
+
+    private static BufferedImage decode(byte[] data) throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(data));
+    }
+}
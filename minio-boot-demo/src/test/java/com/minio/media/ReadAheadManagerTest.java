@@ -0,0 +1,110 @@
+package com.minio.media;
+
+import com.minio.config.ReadAheadProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.trace.OssTracer;
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReadAheadManagerTest {
+
+    private static final int BLOCK = 1024;
+
+    private final byte[] data = new byte[BLOCK * 10 + 100];
+
+    /**
+     * 每个数据块从 MinIO 读取的次数，key 为数据块序号
+     */
+    private final Map<Long, AtomicInteger> fetches = new ConcurrentHashMap<>();
+
+    private ReadAheadManager manager;
+
+    @BeforeEach
+    void setUp() {
+        new Random(1).nextBytes(data);
+        MinioTemplate minioTemplate = mock(MinioTemplate.class);
+        when(minioTemplate.getObject(eq("bucket"), eq("video.mp4"), anyLong(), anyLong())).thenAnswer(invocation -> {
+            long offset = invocation.getArgument(2);
+            long length = invocation.getArgument(3);
+            fetches.computeIfAbsent(offset / BLOCK, k -> new AtomicInteger()).incrementAndGet();
+            return new ByteArrayInputStream(data, (int) offset, (int) length);
+        });
+        ReadAheadProperties properties = new ReadAheadProperties();
+        properties.setBlockSize(DataSize.ofBytes(BLOCK));
+        properties.setBlocks(4);
+        properties.setThreads(2);
+        manager = new ReadAheadManager();
+        PlaybackReader playbackReader = new PlaybackReader();
+        ReflectionTestUtils.setField(playbackReader, "minioTemplate", minioTemplate);
+        ReflectionTestUtils.setField(manager, "playbackReader", playbackReader);
+        ReflectionTestUtils.setField(manager, "readAheadProperties", properties);
+        ReflectionTestUtils.setField(manager, "ossTracer", OssTracer.NOOP);
+        manager.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        manager.destroy();
+    }
+
+    @Test
+    void prefetchesPastBoundedSequentialRequests() throws Exception {
+        // 播放器每次请求一个数据块
+        for (int i = 0; i < 10; i++) {
+            assertArrayEquals(Arrays.copyOfRange(data, i * BLOCK, (i + 1) * BLOCK), read(i * BLOCK, BLOCK));
+            if (i == 1) {
+                // 第二个请求确认是顺序播放，后面的数据块已经在后台读取
+                awaitFetched(5);
+            }
+        }
+        assertArrayEquals(Arrays.copyOfRange(data, 10 * BLOCK, data.length), read(10 * BLOCK, 100));
+        // 每个数据块只从 MinIO 读取一次，预读不超过文件末尾
+        assertEquals(11, fetches.size());
+        fetches.forEach((index, count) -> assertEquals(1, count.get(), "数据块 " + index));
+    }
+
+    @Test
+    void seekDropsPrefetchedBlocks() throws Exception {
+        read(0, BLOCK);
+        read(BLOCK, BLOCK);
+        awaitFetched(5);
+
+        // 拖动进度条到后面，之前预读的数据块被丢弃
+        assertArrayEquals(Arrays.copyOfRange(data, 8 * BLOCK, 9 * BLOCK), read(8 * BLOCK, BLOCK));
+        assertArrayEquals(Arrays.copyOfRange(data, 2 * BLOCK, 3 * BLOCK), read(2 * BLOCK, BLOCK));
+        assertEquals(2, fetches.get(2L).get());
+        assertEquals(1, fetches.get(8L).get());
+    }
+
+    private byte[] read(long offset, long length) throws Exception {
+        try (InputStream inputStream = manager.open("bucket", "video.mp4", "viewer", data.length, offset, length)) {
+            return IOUtils.toByteArray(inputStream);
+        }
+    }
+
+    private void awaitFetched(long lastIndex) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!fetches.containsKey(lastIndex) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(fetches.containsKey(lastIndex), "数据块 " + lastIndex + " 没有预读");
+    }
+}
@@ -0,0 +1,154 @@
+package com.minio.media.mp4;
+
+import com.minio.media.H264KeyframeDecoder;
+import org.jcodec.api.awt.AWTSequenceEncoder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Mp4ParserTest {
+
+    /**
+     * 25 帧/秒，4秒，前2秒红色，后2秒蓝色，每秒一个关键帧
+     */
+    private static byte[] video;
+
+    @BeforeAll
+    static void encode(@TempDir Path dir) throws Exception {
+        File file = dir.resolve("test.mp4").toFile();
+        AWTSequenceEncoder encoder = AWTSequenceEncoder.create25Fps(file);
+        for (int i = 0; i < 100; i++) {
+            BufferedImage image = new BufferedImage(320, 240, BufferedImage.TYPE_3BYTE_BGR);
+            Graphics2D graphics = image.createGraphics();
+            graphics.setColor(i < 50 ? Color.RED : Color.BLUE);
+            graphics.fillRect(0, 0, image.getWidth(), image.getHeight());
+            graphics.dispose();
+            encoder.encodeImage(image);
+        }
+        encoder.finish();
+        video = Files.readAllBytes(file.toPath());
+    }
+
+    static RangeReader reader(byte[] bytes) {
+        return (offset, length) -> Arrays.copyOfRange(bytes, (int) offset, (int) offset + length);
+    }
+
+    @Test
+    void parseSampleTables() throws Exception {
+        Mp4Movie movie = Mp4Parser.parse(reader(video), video.length);
+
+        assertEquals(4.0, movie.getDurationSeconds(), 0.01);
+        Mp4Track track = movie.getVideoTrack();
+        assertNotNull(track);
+        assertEquals("avc1", track.getSampleEntryType());
+        assertEquals(320, track.getWidth());
+        assertEquals(100, track.getSampleCount());
+        assertArrayEquals(new int[]{0, 25, 50, 75}, track.getSyncSamples());
+        assertEquals(50, track.syncSampleAtOrBefore(2.5));
+        // 样本位置都在 mdat 中
+        Mp4Box mdat = movie.getBox("mdat");
+        for (int i = 0; i < track.getSampleCount(); i++) {
+            assertTrue(track.getSampleOffset(i) >= mdat.getPayloadOffset());
+            assertTrue(track.getSampleOffset(i) + track.getSampleSize(i) <= mdat.getOffset() + mdat.getSize());
+        }
+    }
+
+    @Test
+    void decodeKeyframe() throws Exception {
+        Mp4Track track = Mp4Parser.parse(reader(video), video.length).getVideoTrack();
+        H264KeyframeDecoder decoder = new H264KeyframeDecoder(track, reader(video));
+
+        Color first = new Color(decoder.decode(0).getRGB(160, 120));
+        Color last = new Color(decoder.decode(75).getRGB(160, 120));
+        assertTrue(first.getRed() > 200 && first.getBlue() < 50);
+        assertTrue(last.getBlue() > 200 && last.getRed() < 50);
+    }
+
+    @Test
+    void faststart() throws Exception {
+        Mp4Movie movie = Mp4Parser.parse(reader(video), video.length);
+        assertFalse(movie.isFaststart());
+        Mp4Track track = movie.getVideoTrack();
+        boolean originalCo64 = track.getTrak().find("mdia/minf/stbl/co64") != null;
+
+        for (boolean co64 : new boolean[]{false, true}) {
+            Mp4Faststart.Layout layout = Mp4Faststart.plan(movie, co64);
+            byte[] bytes = assemble(layout);
+            assertEquals(layout.getSize(), bytes.length);
+
+            Mp4Movie rewritten = Mp4Parser.parse(reader(bytes), bytes.length);
+            assertTrue(rewritten.isFaststart());
+            assertNull(Mp4Faststart.plan(rewritten));
+            Mp4Track rewrittenTrack = rewritten.getVideoTrack();
+            assertEquals(co64 || originalCo64, rewrittenTrack.getTrak().find("mdia/minf/stbl/co64") != null);
+            // 每个样本的内容都不变
+            for (int i = 0; i < track.getSampleCount(); i++) {
+                int from = (int) track.getSampleOffset(i);
+                int to = (int) rewrittenTrack.getSampleOffset(i);
+                int size = track.getSampleSize(i);
+                assertArrayEquals(Arrays.copyOfRange(video, from, from + size), Arrays.copyOfRange(bytes, to, to + size));
+            }
+        }
+    }
+
+    @Test
+    void hlsSegments() throws Exception {
+        Mp4Movie movie = Mp4Parser.parse(reader(video), video.length);
+        Mp4Track track = movie.getVideoTrack();
+        Fmp4Segmenter segmenter = Fmp4Segmenter.create(movie, 1.5);
+
+        // 每秒一个关键帧，目标 1.5 秒时每 2 秒切分一次
+        assertEquals(2, segmenter.getSegments().size());
+        assertEquals(50, segmenter.getSegments().get(1).getFirstSample());
+        assertEquals(2.0, segmenter.getSegments().get(1).getDurationSeconds(), 0.01);
+
+        byte[] init = segmenter.initSegment();
+        Mp4Movie initMovie = Mp4Parser.parse(reader(init), init.length);
+        assertTrue(initMovie.isFragmented());
+        assertEquals("avc1", initMovie.getVideoTrack().getSampleEntryType());
+        assertEquals(0, initMovie.getVideoTrack().getSampleCount());
+
+        byte[] segment = segmenter.mediaSegment(segmenter.getSegments().get(1), reader(video));
+        ByteBuffer buffer = ByteBuffer.wrap(segment);
+        int moofSize = buffer.getInt(0);
+        assertEquals("moof", Mp4Parser.fourcc(buffer, 4));
+        assertEquals("mdat", Mp4Parser.fourcc(buffer, moofSize + 4));
+        // mdat 中是原文件中第 50 到 99 个样本
+        int position = moofSize + 8;
+        for (int i = 50; i < 100; i++) {
+            int from = (int) track.getSampleOffset(i);
+            int size = track.getSampleSize(i);
+            assertArrayEquals(Arrays.copyOfRange(video, from, from + size),
+                    Arrays.copyOfRange(segment, position, position + size));
+            position += size;
+        }
+        assertEquals(segment.length, position);
+    }
+
+    private static byte[] assemble(Mp4Faststart.Layout layout) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        for (Mp4Faststart.Segment segment : layout.getSegments()) {
+            ByteBuffer data = segment.getData();
+            if (data != null) {
+                byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+                outputStream.write(bytes, 0, bytes.length);
+            } else {
+                outputStream.write(video, (int) segment.getOffset(), (int) segment.getLength());
+            }
+        }
+        return outputStream.toByteArray();
+    }
+}
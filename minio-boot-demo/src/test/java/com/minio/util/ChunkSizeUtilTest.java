@@ -0,0 +1,39 @@
+package com.minio.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkSizeUtilTest {
+
+    private static final long MIB = 1024 * 1024;
+
+    @Test
+    void followsThroughputWithinLimits() {
+        // 没有测量过速度时用默认值
+        assertEquals(ChunkSizeUtil.DEFAULT_CHUNK_SIZE, ChunkSizeUtil.suggestChunkSize(1024 * MIB, 0, 100 * MIB));
+        // 快的客户端受上限限制，慢的客户端不低于 5MiB
+        assertEquals(20 * MIB, ChunkSizeUtil.suggestChunkSize(1024 * MIB, 10 * MIB, 20 * MIB));
+        assertEquals(ChunkSizeUtil.MIN_CHUNK_SIZE, ChunkSizeUtil.suggestChunkSize(1024 * MIB, 100 * 1024, 100 * MIB));
+        // 按 1MiB 对齐
+        assertEquals(12 * MIB, ChunkSizeUtil.suggestChunkSize(1024 * MIB, 3 * MIB - 1, 100 * MIB));
+        // 小文件只需要一片
+        assertEquals(MIB, ChunkSizeUtil.suggestChunkSize(MIB, 10 * MIB, 100 * MIB));
+        assertEquals(1, ChunkSizeUtil.chunkCount(MIB, MIB));
+    }
+
+    @Test
+    void largeFilesStayWithinPartCount() {
+        long fileSize = 100L * 1024 * MIB;
+        long chunkSize = ChunkSizeUtil.suggestChunkSize(fileSize, 100 * 1024, 8 * MIB);
+        assertEquals(0, chunkSize % MIB);
+        assertTrue(ChunkSizeUtil.chunkCount(fileSize, chunkSize) <= ChunkSizeUtil.MAX_CHUNK_COUNT);
+        assertTrue(ChunkSizeUtil.chunkCount(fileSize, chunkSize - MIB) > ChunkSizeUtil.MAX_CHUNK_COUNT);
+    }
+
+    @Test
+    void smoothsThroughputSamples() {
+        assertEquals(1000, ChunkSizeUtil.ewma(0, 1000));
+        assertEquals(1300, ChunkSizeUtil.ewma(1000, 2000));
+    }
+}
@@ -0,0 +1,51 @@
+package com.minio.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IpUtilTest {
+
+    private static final List<String> PROXIES = Arrays.asList("10.0.0.0/8", "192.168.1.5");
+
+    @Test
+    void ignoresForwardedHeadersFromUntrustedPeers() {
+        MockHttpServletRequest request = request("203.0.113.7", "1.2.3.4");
+        assertEquals("203.0.113.7", IpUtil.getClientIp(request, PROXIES));
+        assertEquals("203.0.113.7", IpUtil.getClientIp(request, Collections.emptyList()));
+    }
+
+    @Test
+    void skipsTrustedHopsFromTheRight() {
+        // 客户端伪造的第一个地址不会被使用
+        MockHttpServletRequest request = request("10.1.2.3", "6.6.6.6, 198.51.100.9, 192.168.1.5");
+        assertEquals("198.51.100.9", IpUtil.getClientIp(request, PROXIES));
+
+        request = request("10.1.2.3", null);
+        request.addHeader("X-Real-IP", "198.51.100.10");
+        assertEquals("198.51.100.10", IpUtil.getClientIp(request, PROXIES));
+    }
+
+    @Test
+    void matchesCidr() {
+        assertTrue(IpUtil.isTrusted("10.255.0.1", PROXIES));
+        assertFalse(IpUtil.isTrusted("11.0.0.1", PROXIES));
+        assertTrue(IpUtil.isTrusted("172.20.1.1", Collections.singletonList("172.16.0.0/12")));
+        assertFalse(IpUtil.isTrusted("172.32.0.1", Collections.singletonList("172.16.0.0/12")));
+        assertFalse(IpUtil.isTrusted("evil.example.com", PROXIES));
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr, String forwardedFor) {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        return request;
+    }
+}
@@ -0,0 +1,45 @@
+package com.minio.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+
+    @Test
+    void allowsBurstThenPacesAtRate() throws Exception {
+        TokenBucket bucket = new TokenBucket(100_000, 50_000);
+
+        long start = System.nanoTime();
+        bucket.acquire(50_000);
+        assertTrue(elapsedMillis(start) < 50, "桶满时不需要等待");
+
+        // 桶已经空了，再申请 20000 字节需要等 200ms
+        start = System.nanoTime();
+        bucket.acquire(20_000);
+        long waited = elapsedMillis(start);
+        assertTrue(waited >= 150 && waited < 1000, "等待了 " + waited + "ms");
+    }
+
+    @Test
+    void largeRequestIsNotStarved() throws Exception {
+        TokenBucket bucket = new TokenBucket(1_000_000, 1000);
+        long start = System.nanoTime();
+        // 超过容量的申请先预支，睡眠到补足为止
+        bucket.acquire(200_000);
+        long waited = elapsedMillis(start);
+        assertTrue(waited >= 150 && waited < 1000, "等待了 " + waited + "ms");
+    }
+
+    @Test
+    void rejectsInvalidRate() {
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(0, 1));
+        assertThrows(IllegalArgumentException.class, () -> new TokenBucket(1, 0));
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+}
@@ -2,6 +2,7 @@ package com.minio.auto.config;
 
 import com.minio.config.OSSProperties;
 import com.minio.core.MinioTemplate;
+import com.minio.trace.OssTracer;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -29,4 +30,15 @@ public class MinioClientAutoConfiguration {
     public MinioTemplate minioTemplate() {
         return new MinioTemplate();
     }
+
+    /**
+     * 未开启链路追踪时使用的空实现
+     *
+     * @return OssTracer
+     */
+    @ConditionalOnMissingBean(OssTracer.class)
+    @Bean(name = "ossTracer")
+    public OssTracer ossTracer() {
+        return OssTracer.NOOP;
+    }
 }
@@ -0,0 +1,55 @@
+package com.minio.auto.config;
+
+import com.minio.config.OSSProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.crypto.EncryptedObjectStore;
+import com.minio.crypto.KeyProvider;
+import com.minio.crypto.StaticKeyProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname MinioEncryptionAutoConfiguration
+ * @description 客户端加密的自动配置类，开启 oss.minio.encryption.enabled 后生效
+ * @since 2023/5/3 11:30
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "oss.minio.encryption", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(OSSProperties.class)
+@AutoConfigureAfter(MinioClientAutoConfiguration.class)
+public class MinioEncryptionAutoConfiguration {
+
+    /**
+     * 没有提供其他 KeyProvider（例如 KMS）时使用配置文件中的主密钥
+     *
+     * @param ossProperties ossProperties
+     * @return KeyProvider
+     */
+    @ConditionalOnMissingBean(KeyProvider.class)
+    @Bean(name = "keyProvider")
+    public KeyProvider keyProvider(OSSProperties ossProperties) {
+        OSSProperties.Encryption encryption = ossProperties.getEncryption();
+        return new StaticKeyProvider(encryption.getKeys(), encryption.getActiveKeyId());
+    }
+
+    /**
+     * 客户端加密
+     *
+     * @param minioTemplate minioTemplate
+     * @param keyProvider   keyProvider
+     * @param ossProperties ossProperties
+     * @return EncryptedObjectStore
+     */
+    @ConditionalOnMissingBean(EncryptedObjectStore.class)
+    @Bean(name = "encryptedObjectStore")
+    public EncryptedObjectStore encryptedObjectStore(MinioTemplate minioTemplate, KeyProvider keyProvider,
+                                                     OSSProperties ossProperties) {
+        return new EncryptedObjectStore(minioTemplate, keyProvider, ossProperties.getEncryption());
+    }
+}
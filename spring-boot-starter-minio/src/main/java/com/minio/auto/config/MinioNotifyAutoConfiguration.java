@@ -0,0 +1,82 @@
+package com.minio.auto.config;
+
+import com.minio.config.OSSProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.notify.MinioNotificationSource;
+import com.minio.notify.ObjectEventDispatcher;
+import com.minio.notify.ObjectEventListener;
+import com.minio.notify.ObjectEventSource;
+import com.minio.notify.ObjectIndexEventListener;
+import com.minio.trace.OssTracer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname MinioNotifyAutoConfiguration
+ * @description 桶通知的自动配置类，开启 oss.minio.notify.enabled 后生效
+ * @since 2023/5/2 17:00
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "oss.minio.notify", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(OSSProperties.class)
+@AutoConfigureAfter(MinioClientAutoConfiguration.class)
+public class MinioNotifyAutoConfiguration {
+
+    /**
+     * 没有提供其他事件来源时监听 MinIO 的桶通知
+     *
+     * @param minioTemplate minioTemplate
+     * @param ossProperties ossProperties
+     * @return ObjectEventSource
+     */
+    @ConditionalOnMissingBean(ObjectEventSource.class)
+    @Bean(name = "objectEventSource")
+    public ObjectEventSource objectEventSource(MinioTemplate minioTemplate, OSSProperties ossProperties) {
+        OSSProperties.Notify notify = ossProperties.getNotify();
+        List<String> buckets = notify.getBuckets().isEmpty()
+                ? Collections.singletonList(ossProperties.getBucketName()) : notify.getBuckets();
+        return new MinioNotificationSource(minioTemplate, buckets, notify.getPrefix(), notify.getSuffix(),
+                notify.getReconnectDelay().toMillis());
+    }
+
+    /**
+     * 用事件更新对象索引
+     *
+     * @param minioTemplate minioTemplate
+     * @return ObjectIndexEventListener
+     */
+    @Bean(name = "objectIndexEventListener")
+    public ObjectIndexEventListener objectIndexEventListener(MinioTemplate minioTemplate) {
+        return new ObjectIndexEventListener(minioTemplate);
+    }
+
+    /**
+     * 把事件分批交给所有监听器
+     *
+     * @param objectEventSource 事件来源
+     * @param listeners         所有监听器，按 @Order 排序
+     * @param ossProperties     ossProperties
+     * @param ossTracer         ossTracer
+     * @return ObjectEventDispatcher
+     */
+    @ConditionalOnMissingBean(ObjectEventDispatcher.class)
+    @Bean(name = "objectEventDispatcher")
+    public ObjectEventDispatcher objectEventDispatcher(ObjectEventSource objectEventSource,
+                                                       ObjectProvider<ObjectEventListener> listeners,
+                                                       OSSProperties ossProperties, OssTracer ossTracer) {
+        OSSProperties.Notify notify = ossProperties.getNotify();
+        return new ObjectEventDispatcher(objectEventSource, listeners.orderedStream().collect(Collectors.toList()),
+                ossTracer, notify.getBatchSize(), notify.getBatchWindow().toMillis(), notify.getQueueCapacity());
+    }
+}
@@ -0,0 +1,58 @@
+package com.minio.auto.config;
+
+import com.minio.config.OSSProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.pack.InMemoryPackIndex;
+import com.minio.pack.PackIndex;
+import com.minio.pack.PackStore;
+import com.minio.trace.OssTracer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname MinioPackAutoConfiguration
+ * @description 小对象打包存储的自动配置类，开启 oss.minio.pack.enabled 后生效
+ * @since 2023/5/1 11:00
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "oss.minio.pack", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(OSSProperties.class)
+@AutoConfigureAfter(MinioClientAutoConfiguration.class)
+public class MinioPackAutoConfiguration {
+
+    /**
+     * 没有提供持久化的索引时使用内存中的索引，重启后 pack 中的对象将无法访问
+     *
+     * @return PackIndex
+     */
+    @ConditionalOnMissingBean(PackIndex.class)
+    @Bean(name = "packIndex")
+    public PackIndex packIndex() {
+        log.warn("没有配置 PackIndex，使用内存中的索引，重启后 pack 中的对象将无法访问");
+        return new InMemoryPackIndex();
+    }
+
+    /**
+     * 小对象打包存储
+     *
+     * @param minioTemplate minioTemplate
+     * @param packIndex     packIndex
+     * @param ossProperties ossProperties
+     * @param ossTracer     ossTracer
+     * @return PackStore
+     */
+    @ConditionalOnMissingBean(PackStore.class)
+    @Bean(name = "packStore")
+    public PackStore packStore(MinioTemplate minioTemplate, PackIndex packIndex, OSSProperties ossProperties,
+                               OssTracer ossTracer) {
+        return new PackStore(minioTemplate, packIndex, ossProperties.getPack(), ossTracer);
+    }
+}
@@ -0,0 +1,67 @@
+package com.minio.auto.config;
+
+import com.minio.config.OSSProperties;
+import com.minio.replica.MinioReplicaBackend;
+import com.minio.replica.ReplicaBackend;
+import com.minio.replica.ReplicatedObjectStore;
+import com.minio.trace.OssTracer;
+import io.minio.MinioClient;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.AutoConfigureAfter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.ObjectUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname MinioReplicationAutoConfiguration
+ * @description 多部署复制的自动配置类，开启 oss.minio.replication.enabled 后生效
+ * @since 2023/5/3 15:30
+ */
+@Slf4j
+@Configuration
+@ConditionalOnProperty(prefix = "oss.minio.replication", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(OSSProperties.class)
+@AutoConfigureAfter(MinioClientAutoConfiguration.class)
+public class MinioReplicationAutoConfiguration {
+
+    /**
+     * 多部署复制，容器中有 ReplicaBackend（例如测试中的 InMemoryReplicaBackend）时使用它们，
+     * 否则按配置文件中的 replicas 创建
+     *
+     * @param backends      容器中的副本
+     * @param ossProperties ossProperties
+     * @param ossTracer     ossTracer
+     * @return ReplicatedObjectStore
+     */
+    @ConditionalOnMissingBean(ReplicatedObjectStore.class)
+    @Bean(name = "replicatedObjectStore")
+    public ReplicatedObjectStore replicatedObjectStore(ObjectProvider<ReplicaBackend> backends,
+                                                       OSSProperties ossProperties, OssTracer ossTracer) {
+        OSSProperties.Replication replication = ossProperties.getReplication();
+        List<ReplicaBackend> replicas = backends.orderedStream().collect(Collectors.toList());
+        if (replicas.isEmpty()) {
+            replicas = new ArrayList<>();
+            for (OSSProperties.Replication.Replica replica : replication.getReplicas()) {
+                String name = ObjectUtils.isEmpty(replica.getName()) ? replica.getEndpoint() : replica.getName();
+                replicas.add(new MinioReplicaBackend(name, MinioClient.builder()
+                        .endpoint(replica.getEndpoint())
+                        .credentials(replica.getAccessKey(), replica.getSecretKey())
+                        .build()));
+            }
+        }
+        if (replicas.size() < 2) {
+            log.warn("只配置了 {} 个副本，部署故障时对象不可用", replicas.size());
+        }
+        return new ReplicatedObjectStore(replicas, replication, ossTracer);
+    }
+}
@@ -0,0 +1,86 @@
+package com.minio.auto.config;
+
+import com.minio.config.OSSProperties;
+import com.minio.trace.OpenTelemetryOssTracer;
+import com.minio.trace.OssTracer;
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.resources.Resource;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SdkTracerProviderBuilder;
+import io.opentelemetry.sdk.trace.export.BatchSpanProcessor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.AutoConfigureBefore;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ObjectUtils;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname MinioTracingAutoConfiguration
+ * @description 链路追踪自动配置类，开启 oss.minio.trace.enabled 且引入 OpenTelemetry 后生效
+ * @since 2023/4/20 10:45
+ */
+@Slf4j
+@Configuration
+@ConditionalOnClass(OpenTelemetry.class)
+@ConditionalOnProperty(prefix = "oss.minio.trace", name = "enabled", havingValue = "true")
+@EnableConfigurationProperties(OSSProperties.class)
+@AutoConfigureBefore(MinioClientAutoConfiguration.class)
+public class MinioTracingAutoConfiguration {
+
+    private static final String OTLP_EXPORTER_CLASS = "io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter";
+
+    /**
+     * 基于 OpenTelemetry 的 OssTracer
+     *
+     * @param openTelemetry openTelemetry
+     * @return OssTracer
+     */
+    @ConditionalOnMissingBean(OssTracer.class)
+    @Bean(name = "ossTracer")
+    public OssTracer ossTracer(OpenTelemetry openTelemetry) {
+        return new OpenTelemetryOssTracer(openTelemetry);
+    }
+
+    /**
+     * 引入了 OpenTelemetry SDK 时才会生效，单独放在内部类中，避免只引入 API 时加载 SDK 的类
+     */
+    @Configuration
+    @ConditionalOnClass(name = "io.opentelemetry.sdk.OpenTelemetrySdk")
+    static class OpenTelemetrySdkConfiguration {
+
+        /**
+         * 容器中没有 OpenTelemetry 实例时，创建一个 SDK 实例；
+         * 配置了 otlpEndpoint 时通过 OTLP 上报，否则只在进程内生成 span
+         *
+         * @param ossProperties 配置
+         * @return OpenTelemetry
+         */
+        @ConditionalOnMissingBean(OpenTelemetry.class)
+        @Bean(destroyMethod = "close")
+        public OpenTelemetrySdk openTelemetry(OSSProperties ossProperties) {
+            OSSProperties.Trace trace = ossProperties.getTrace();
+            SdkTracerProviderBuilder builder = SdkTracerProvider.builder()
+                    .setResource(Resource.getDefault().merge(Resource.create(
+                            Attributes.builder().put("service.name", trace.getServiceName()).build())));
+            if (!ObjectUtils.isEmpty(trace.getOtlpEndpoint())) {
+                if (!ClassUtils.isPresent(OTLP_EXPORTER_CLASS, getClass().getClassLoader())) {
+                    throw new IllegalStateException("配置了 oss.minio.trace.otlp-endpoint，但没有引入 opentelemetry-exporter-otlp");
+                }
+                log.info("链路追踪上报地址：{}", trace.getOtlpEndpoint());
+                builder.addSpanProcessor(BatchSpanProcessor.builder(
+                        OtlpGrpcSpanExporter.builder().setEndpoint(trace.getOtlpEndpoint()).build()).build());
+            }
+            return OpenTelemetrySdk.builder().setTracerProvider(builder.build()).build();
+        }
+    }
+}
@@ -4,6 +4,13 @@ import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * @author lyf
@@ -36,4 +43,363 @@ public class OSSProperties {
      * bucketName是你设置的桶的名称
      */
     private String bucketName;
+
+    /**
+     * 链路追踪配置
+     */
+    private Trace trace = new Trace();
+
+    /**
+     * 桶是否存在的本地缓存配置
+     */
+    private BucketCache bucketCache = new BucketCache();
+
+    /**
+     * 分层合并的配置
+     */
+    private Compose compose = new Compose();
+
+    /**
+     * 合并并发的相同读取请求
+     */
+    private Coalesce coalesce = new Coalesce();
+
+    /**
+     * 小对象打包存储
+     */
+    private Pack pack = new Pack();
+
+    /**
+     * 本地对象元数据索引配置
+     */
+    private Index index = new Index();
+
+    /**
+     * 桶通知配置
+     */
+    private Notify notify = new Notify();
+
+    /**
+     * 客户端加密配置
+     */
+    private Encryption encryption = new Encryption();
+
+    /**
+     * 多个 MinIO 部署之间的复制写入配置
+     */
+    private Replication replication = new Replication();
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Trace {
+        /**
+         * 是否开启链路追踪，需要引入 OpenTelemetry 的依赖
+         */
+        private boolean enabled = false;
+
+        /**
+         * 上报到 OTLP collector 的地址，例如 http://localhost:4317，为空时不上报，
+         * 只交给容器中已有的 OpenTelemetry 实例（例如测试中的 InMemorySpanExporter）
+         */
+        private String otlpEndpoint;
+
+        /**
+         * 上报时使用的服务名
+         */
+        private String serviceName = "minio-application";
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class BucketCache {
+        /**
+         * 桶存在的结果的缓存时间
+         */
+        private Duration positiveTtl = Duration.ofMinutes(10);
+
+        /**
+         * 桶不存在的结果的缓存时间
+         */
+        private Duration negativeTtl = Duration.ofSeconds(5);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Compose {
+        /**
+         * 同时进行的拼接/合并请求数
+         */
+        private int parallelism = 4;
+
+        /**
+         * 小于 5MiB 的分片下载拼接成中间对象时，每个中间对象的目标大小
+         */
+        private DataSize concatSize = DataSize.ofMegabytes(32);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Coalesce {
+        /**
+         * 是否合并并发的 statObject 和范围读取请求
+         */
+        private boolean enabled = true;
+
+        /**
+         * 范围读取不超过这个大小时才合并，数据读入内存后分发给所有等待者，更大的范围直接流式读取
+         */
+        private DataSize maxRangeSize = DataSize.ofMegabytes(8);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Pack {
+        /**
+         * 是否开启小对象打包，开启后容器中会有 PackStore
+         */
+        private boolean enabled = false;
+
+        /**
+         * pack 对象名的前缀
+         */
+        private String prefix = ".packs/";
+
+        /**
+         * 不超过这个大小的对象写入 pack，更大的对象直接作为普通对象上传
+         */
+        private DataSize maxEntrySize = DataSize.ofMegabytes(1);
+
+        /**
+         * pack 达到这个大小时立即上传
+         */
+        private DataSize packSize = DataSize.ofMegabytes(64);
+
+        /**
+         * 第一个对象写入后最多等待多久上传 pack，写入方在 pack 上传完成后才返回
+         */
+        private Duration linger = Duration.ofMillis(50);
+
+        /**
+         * 上传 pack 和压缩的线程数
+         */
+        private int threads = 2;
+
+        /**
+         * 压缩的执行间隔
+         */
+        private Duration compactInterval = Duration.ofHours(1);
+
+        /**
+         * 无效字节占比达到这个比例的 pack 会被压缩
+         */
+        private double compactThreshold = 0.5;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Index {
+        /**
+         * 是否开启本地对象索引。索引只能看到本应用的写入，多实例部署或者有其他客户端写入时，
+         * 需要通过桶通知同步，或者定期重建
+         */
+        private boolean enabled = false;
+
+        /**
+         * 索引的快照和日志所在的目录，为空时只保存在内存中，重启后需要重建
+         */
+        private String directory = "./data/object-index";
+
+        /**
+         * 日志达到这个记录数时写一次快照
+         */
+        private long compactThreshold = 100000;
+
+        /**
+         * 是否用索引代替 listObjects 列举合并的分片、删除的目录。需要同时开启桶通知并监听这个桶的全部对象，
+         * 并且本次启动后重建过索引，否则仍然访问 MinIO
+         */
+        private boolean serveListings = false;
+
+        /**
+         * 启动时是否在后台重建所有不完整的桶
+         */
+        private boolean rebuildOnStartup = true;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Notify {
+        /**
+         * 是否监听桶通知，开启后对象在应用之外被修改或者删除时，对象索引和业务缓存会收到事件
+         */
+        private boolean enabled = false;
+
+        /**
+         * 监听的桶，为空时只监听默认桶
+         */
+        private List<String> buckets = new ArrayList<>();
+
+        /**
+         * 只监听这个前缀下的对象，为空时监听所有对象
+         */
+        private String prefix = "";
+
+        /**
+         * 只监听这个后缀的对象，为空时监听所有对象
+         */
+        private String suffix = "";
+
+        /**
+         * 一批的最大事件数
+         */
+        private int batchSize = 1000;
+
+        /**
+         * 凑满一批的最长等待时间
+         */
+        private Duration batchWindow = Duration.ofMillis(200);
+
+        /**
+         * 等待处理的事件队列长度，队列满时暂停接收
+         */
+        private int queueCapacity = 10000;
+
+        /**
+         * 连接断开后的重连间隔
+         */
+        private Duration reconnectDelay = Duration.ofSeconds(5);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Encryption {
+        /**
+         * 是否开启客户端加密，开启后容器中会有 EncryptedObjectStore，只有通过它上传的对象是加密的
+         */
+        private boolean enabled = false;
+
+        /**
+         * 主密钥，id -> Base64 编码的 128/192/256 位 AES 密钥
+         */
+        private Map<String, String> keys = new HashMap<>();
+
+        /**
+         * 新对象使用的主密钥的id
+         */
+        private String activeKeyId = "default";
+
+        /**
+         * 加密的段大小，范围读取最多多下载两段，段越小额外下载越少、认证标签的开销越大。只影响新对象
+         */
+        private DataSize segmentSize = DataSize.ofKilobytes(64);
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Replication {
+        /**
+         * 是否开启多部署复制，开启后容器中会有 ReplicatedObjectStore，只有通过它写入的对象有多个副本
+         */
+        private boolean enabled = false;
+
+        /**
+         * 副本所在的 MinIO 部署，每个对象在每个部署上各写一份
+         */
+        private List<Replica> replicas = new ArrayList<>();
+
+        /**
+         * 至少写入成功多少个副本才返回成功，小于等于 0 时为多数派（n / 2 + 1）。
+         * 失败的副本在后台修复
+         */
+        private int writeQuorum = 0;
+
+        /**
+         * 读取时最快的副本超过这个时间还没有响应，就向下一个副本再发一次请求，先返回的结果生效
+         */
+        private Duration hedgeDelay = Duration.ofMillis(50);
+
+        /**
+         * 一次读取等待所有副本的最长时间
+         */
+        private Duration readTimeout = Duration.ofSeconds(30);
+
+        /**
+         * 连续失败达到这个次数的副本被标记为不健康，读取时排在最后
+         */
+        private int failureThreshold = 3;
+
+        /**
+         * 不健康的副本经过这个时间之后重新参与排序
+         */
+        private Duration failureCooldown = Duration.ofSeconds(10);
+
+        /**
+         * 写入时从输入流读取、分发给各副本的块大小
+         */
+        private DataSize blockSize = DataSize.ofMegabytes(1);
+
+        /**
+         * 每个副本最多缓冲的块数，最慢的副本缓冲满时暂停读取输入流
+         */
+        private int queueDepth = 4;
+
+        /**
+         * 写入时一个副本超过这个时间没有取走数据块，或者输入流读完之后超过这个时间还没有完成上传，
+         * 就放弃这个副本，其余副本仍然满足写入法定数时写入成功，放弃的副本在后台修复
+         */
+        private Duration writeStallTimeout = Duration.ofSeconds(30);
+
+        /**
+         * 写入和删除副本的线程数，每次写入占用每个副本一个线程，不少于副本数
+         */
+        private int writeThreads = 16;
+
+        /**
+         * 读取副本的线程数，包括对冲的请求，不少于副本数
+         */
+        private int readThreads = 16;
+
+        /**
+         * 修复失败副本的间隔
+         */
+        private Duration repairInterval = Duration.ofSeconds(10);
+
+        /**
+         * 一个副本的修复最多尝试的次数
+         */
+        private int repairAttempts = 10;
+
+        /**
+         * 修复队列的日志文件，进程重启后继续修复，为空时只保存在内存中
+         */
+        private String repairJournal = "./data/replica-repairs.journal";
+
+        @Data
+        @NoArgsConstructor
+        @AllArgsConstructor
+        public static class Replica {
+            /**
+             * 副本的名称，为空时使用 endpoint
+             */
+            private String name;
+
+            /**
+             * 对象存储服务的URL
+             */
+            private String endpoint;
+
+            private String accessKey;
+
+            private String secretKey;
+        }
+    }
 }
@@ -0,0 +1,157 @@
+package com.minio.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname BucketRegistry
+ * @description 桶是否存在的本地缓存，代替 synchronized 的 makeBucket
+ * <p>
+ * 每个桶对应一个 future，同一个桶的并发查询/创建只会有一个请求真正访问 MinIO，其余请求等待它的结果；
+ * 不同的桶之间没有任何锁。存在的结果缓存 positiveTtl，不存在的结果缓存 negativeTtl
+ * @since 2023/4/24 9:40
+ */
+public class BucketRegistry {
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private final long positiveTtlNanos;
+
+    private final long negativeTtlNanos;
+
+    public BucketRegistry(long positiveTtlNanos, long negativeTtlNanos) {
+        this.positiveTtlNanos = positiveTtlNanos;
+        this.negativeTtlNanos = negativeTtlNanos;
+    }
+
+    /**
+     * 查询桶是否存在，缓存未命中时调用 loader 访问 MinIO
+     *
+     * @param bucketName 桶名
+     * @param loader     查询桶是否存在
+     * @return 是否存在
+     * @throws Exception loader 抛出的异常
+     */
+    public boolean exists(String bucketName, BucketCall<Boolean> loader) throws Exception {
+        while (true) {
+            Entry current = entries.get(bucketName);
+            if (current != null && current.isFresh()) {
+                return join(current.future);
+            }
+            Entry loading = new Entry();
+            if (install(bucketName, current, loading)) {
+                return complete(bucketName, loading, loader);
+            }
+        }
+    }
+
+    /**
+     * 确保桶存在，不存在时调用 creator 创建，同一个桶只会被创建一次
+     *
+     * @param bucketName 桶名
+     * @param creator    创建桶，需要自行处理桶已经被其他节点创建的情况
+     * @throws Exception creator 抛出的异常
+     */
+    public void ensure(String bucketName, BucketCall<Boolean> creator) throws Exception {
+        while (true) {
+            Entry current = entries.get(bucketName);
+            if (current != null && current.isFresh()) {
+                if (!current.future.isDone()) {
+                    // 正在查询或创建，等待其结果后重新判断
+                    joinQuietly(current.future);
+                    continue;
+                }
+                if (Boolean.TRUE.equals(joinQuietly(current.future))) {
+                    return;
+                }
+            }
+            Entry creating = new Entry();
+            if (install(bucketName, current, creating)) {
+                complete(bucketName, creating, creator);
+                return;
+            }
+        }
+    }
+
+    /**
+     * 桶被删除或者出现 NoSuchBucket 时清除缓存
+     *
+     * @param bucketName 桶名
+     */
+    public void evict(String bucketName) {
+        entries.remove(bucketName);
+    }
+
+    private boolean install(String bucketName, Entry current, Entry replacement) {
+        return current == null ? entries.putIfAbsent(bucketName, replacement) == null
+                : entries.replace(bucketName, current, replacement);
+    }
+
+    private boolean complete(String bucketName, Entry entry, BucketCall<Boolean> call) throws Exception {
+        try {
+            boolean result = call.call();
+            entry.completedNanos = System.nanoTime();
+            entry.future.complete(result);
+            return result;
+        } catch (Exception e) {
+            entries.remove(bucketName, entry);
+            entry.future.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private static boolean join(CompletableFuture<Boolean> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static Boolean joinQuietly(CompletableFuture<Boolean> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            // 失败的条目已经被移除，调用方会重新尝试
+            return null;
+        }
+    }
+
+    /**
+     * 对桶的一次 MinIO 调用
+     *
+     * @param <T> 返回值类型
+     */
+    @FunctionalInterface
+    public interface BucketCall<T> {
+        T call() throws Exception;
+    }
+
+    private class Entry {
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        private volatile long completedNanos;
+
+        /**
+         * 未完成的条目总是有效的，完成的条目按结果使用不同的过期时间
+         */
+        boolean isFresh() {
+            if (!future.isDone()) {
+                return true;
+            }
+            if (future.isCompletedExceptionally()) {
+                return false;
+            }
+            long ttl = Boolean.TRUE.equals(future.getNow(false)) ? positiveTtlNanos : negativeTtlNanos;
+            return System.nanoTime() - completedNanos < ttl;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.minio.core;
+
+import io.minio.ComposeSource;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ComposeEngine
+ * @description 分层合并对象。S3 的一次 compose 最多 10000 个分片，并且除了最后一个之外每个源对象都不能小于 5MiB，
+ * 这里先把连续的小分片下载拼接成不小于 5MiB 的中间对象，然后每 10000 个分片并行合并成一个中间对象，
+ * 逐层合并直到剩下的分片可以一次合并到目标对象，合并轮数为 O(log n)
+ * @since 2023/4/26 09:40
+ */
+@Slf4j
+class ComposeEngine {
+
+    /**
+     * 除最后一个源对象之外，每个源对象的最小大小
+     */
+    static final long MIN_PART_SIZE = 5L * 1024 * 1024;
+
+    /**
+     * 一个分片的最大大小，超过的源对象会被 minio-java 拆成多个分片
+     */
+    static final long MAX_PART_SIZE = 5L * 1024 * 1024 * 1024;
+
+    /**
+     * 一个对象的最大大小
+     */
+    static final long MAX_OBJECT_SIZE = 5L * 1024 * 1024 * 1024 * 1024;
+
+    /**
+     * 一次 compose 最多的分片数
+     */
+    static final int MAX_PARTS = 10000;
+
+    private final MinioTemplate minioTemplate;
+
+    private final ExecutorService executor;
+
+    /**
+     * 拼接小分片时每个中间对象的目标大小
+     */
+    private final long concatSize;
+
+    /**
+     * 一次 compose 最多的分片数，测试时可以调小
+     */
+    private final int maxParts;
+
+    ComposeEngine(MinioTemplate minioTemplate, ExecutorService executor, long concatSize, int maxParts) {
+        this.minioTemplate = minioTemplate;
+        this.executor = executor;
+        this.concatSize = Math.max(concatSize, MIN_PART_SIZE);
+        this.maxParts = maxParts;
+    }
+
+    /**
+     * 按顺序合并源对象
+     *
+     * @param parts      已经排好序的源对象
+     * @param workBucket 存放中间对象的桶
+     * @param bucketName 目标桶
+     * @param objectName 目标对象名
+     * @throws Exception MinIO 调用抛出的异常
+     */
+    void compose(List<Part> parts, String workBucket, String bucketName, String objectName) throws Exception {
+        String workPrefix = ".compose/" + UUID.randomUUID() + "/";
+        List<String> workObjects = new ArrayList<>();
+        try {
+            List<Part> level = concatSmallParts(parts, workBucket, workPrefix, workObjects);
+            int round = 0;
+            while (countParts(level) > maxParts) {
+                level = composeLevel(level, workBucket, workPrefix + round + "-", workObjects);
+                round++;
+            }
+            log.info("合并 {} 个源对象到 {}/{}，中间对象 {} 个，分层 {} 轮", parts.size(), bucketName, objectName,
+                    workObjects.size(), round);
+            List<ComposeSource> sources = new ArrayList<>(level.size());
+            for (Part part : level) {
+                sources.add(part.getSource());
+            }
+            minioTemplate.composeOnce(sources, bucketName, objectName);
+        } finally {
+            if (!workObjects.isEmpty()) {
+                try {
+                    minioTemplate.removeObjects(workBucket, workObjects);
+                } catch (Exception e) {
+                    log.warn("删除合并的中间对象失败，bucket: {}, prefix: {}", workBucket, workPrefix, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 把连续的小于 5MiB 的源对象下载拼接成中间对象，拼接后除最后一个之外每个源对象都不小于 5MiB。
+     * 一段小分片后面紧跟的大分片如果不足以让这一段达到 5MiB，也会被一起拼接
+     */
+    private List<Part> concatSmallParts(List<Part> parts, String workBucket, String workPrefix,
+                                        List<String> workObjects) throws Exception {
+        List<Future<Part>> futures = new ArrayList<>();
+        int i = 0;
+        while (i < parts.size()) {
+            Part part = parts.get(i);
+            if (part.getSize() >= MIN_PART_SIZE || i == parts.size() - 1) {
+                futures.add(CompletableFuture.completedFuture(part));
+                i++;
+                continue;
+            }
+            List<Part> run = new ArrayList<>();
+            long total = 0;
+            while (i < parts.size() && total < concatSize) {
+                Part next = parts.get(i);
+                if (next.getSize() >= MIN_PART_SIZE && total >= MIN_PART_SIZE) {
+                    break;
+                }
+                run.add(next);
+                total += next.getSize();
+                i++;
+            }
+            String name = workPrefix + "concat-" + futures.size();
+            workObjects.add(name);
+            long size = total;
+            futures.add(executor.submit(() -> {
+                minioTemplate.concatObjects(run, workBucket, name, size);
+                return new Part(ComposeSource.builder().bucket(workBucket).object(name).build(), size);
+            }));
+        }
+        return collect(futures);
+    }
+
+    /**
+     * 把一层源对象按 maxParts 分组，每组并行合并成一个中间对象
+     */
+    private List<Part> composeLevel(List<Part> level, String workBucket, String namePrefix,
+                                    List<String> workObjects) throws Exception {
+        List<Future<Part>> futures = new ArrayList<>();
+        int from = 0;
+        while (from < level.size()) {
+            int to = from;
+            int groupParts = 0;
+            long groupSize = 0;
+            while (to < level.size()) {
+                Part next = level.get(to);
+                if (to > from && (groupParts + partCount(next) > maxParts || groupSize + next.getSize() > MAX_OBJECT_SIZE)) {
+                    break;
+                }
+                groupParts += partCount(next);
+                groupSize += next.getSize();
+                to++;
+            }
+            List<ComposeSource> sources = new ArrayList<>(to - from);
+            for (Part part : level.subList(from, to)) {
+                sources.add(part.getSource());
+            }
+            String name = namePrefix + futures.size();
+            workObjects.add(name);
+            long size = groupSize;
+            futures.add(executor.submit(() -> {
+                minioTemplate.composeOnce(sources, workBucket, name);
+                return new Part(ComposeSource.builder().bucket(workBucket).object(name).build(), size);
+            }));
+            from = to;
+        }
+        return collect(futures);
+    }
+
+    private static int countParts(List<Part> parts) {
+        int count = 0;
+        for (Part part : parts) {
+            count += partCount(part);
+        }
+        return count;
+    }
+
+    /**
+     * 一个源对象占用的分片数，大于 5GiB 的源对象会被拆成多个分片
+     */
+    private static int partCount(Part part) {
+        return (int) Math.max(1, (part.getSize() + MAX_PART_SIZE - 1) / MAX_PART_SIZE);
+    }
+
+    private static List<Part> collect(List<Future<Part>> futures) throws Exception {
+        List<Part> parts = new ArrayList<>(futures.size());
+        try {
+            for (Future<Part> future : futures) {
+                parts.add(future.get());
+            }
+        } catch (ExecutionException e) {
+            for (Future<Part> future : futures) {
+                future.cancel(true);
+            }
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+        return parts;
+    }
+
+    /**
+     * 一个源对象及其大小
+     */
+    static class Part {
+        private final ComposeSource source;
+        private final long size;
+
+        Part(ComposeSource source, long size) {
+            this.source = source;
+            this.size = size;
+        }
+
+        ComposeSource getSource() {
+            return source;
+        }
+
+        long getSize() {
+            return size;
+        }
+    }
+}
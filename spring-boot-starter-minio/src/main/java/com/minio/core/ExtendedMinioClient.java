@@ -0,0 +1,47 @@
+package com.minio.core;
+
+import io.minio.ListMultipartUploadsResponse;
+import io.minio.MinioClient;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ExtendedMinioClient
+ * @description 公开 MinioClient 中 protected 的分片上传相关接口，用于清理未完成的分片上传
+ * @since 2023/4/25 10:10
+ */
+public class ExtendedMinioClient extends MinioClient {
+
+    public ExtendedMinioClient(MinioClient client) {
+        super(client);
+    }
+
+    /**
+     * 查询桶中未完成的分片上传
+     *
+     * @param bucketName     桶名
+     * @param prefix         对象名前缀，可以为空
+     * @param keyMarker      分页标记，可以为空
+     * @param uploadIdMarker 分页标记，可以为空
+     * @param maxUploads     每页数量
+     * @return 未完成的分片上传
+     * @throws Exception MinIO 调用抛出的异常
+     */
+    public ListMultipartUploadsResponse listIncompleteUploads(String bucketName, String prefix, String keyMarker,
+                                                              String uploadIdMarker, Integer maxUploads) throws Exception {
+        return listMultipartUploads(bucketName, null, null, null, keyMarker, maxUploads, prefix,
+                uploadIdMarker, null, null);
+    }
+
+    /**
+     * 终止一个未完成的分片上传，释放已上传的分片
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @param uploadId   分片上传的id
+     * @throws Exception MinIO 调用抛出的异常
+     */
+    public void abortIncompleteUpload(String bucketName, String objectName, String uploadId) throws Exception {
+        abortMultipartUpload(bucketName, null, objectName, uploadId, null, null);
+    }
+}
@@ -1,25 +1,48 @@
 package com.minio.core;
 
 import cn.hutool.core.date.DateUtil;
+import cn.hutool.core.io.IoUtil;
 import cn.hutool.core.util.StrUtil;
 import com.minio.config.OSSProperties;
 import com.minio.entity.OssFile;
 import com.minio.http.MediaType;
+import com.minio.index.ObjectIndex;
+import com.minio.index.ObjectMeta;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
 import io.minio.*;
+import io.minio.errors.ErrorResponseException;
+import io.minio.http.HttpUtils;
 import io.minio.http.Method;
-import io.minio.messages.Bucket;
-import io.minio.messages.Item;
+import io.minio.messages.*;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -35,7 +58,71 @@ public class MinioTemplate {
     /**
      * MinIO 客户端
      */
-    private MinioClient minioClient;
+    private ExtendedMinioClient minioClient;
+
+    /**
+     * MinioClient 和流式上传共用的 http 客户端
+     */
+    private OkHttpClient httpClient;
+
+    /**
+     * 桶是否存在的本地缓存
+     */
+    private BucketRegistry bucketRegistry;
+
+    /**
+     * 分层合并使用的线程池
+     */
+    private ExecutorService composeExecutor;
+
+    /**
+     * 分层合并
+     */
+    private ComposeEngine composeEngine;
+
+    /**
+     * 本地对象索引，未开启时为空
+     */
+    private ObjectIndex objectIndex;
+
+    /**
+     * 本次启动后重建过索引的桶
+     */
+    private final Set<String> syncedBuckets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 合并并发的 statObject 请求，key 为 桶名/对象名
+     */
+    private final SingleFlight<String, StatObjectResponse> statFlight = new SingleFlight<>();
+
+    /**
+     * 合并并发的相同范围读取请求，key 为 [桶名, 对象名, offset, length]
+     */
+    private final SingleFlight<List<Object>, byte[]> rangeFlight = new SingleFlight<>();
+
+    /**
+     * http 客户端的默认超时时间，与 MinioClient 的默认值保持一致
+     */
+    private static final long DEFAULT_HTTP_TIMEOUT = TimeUnit.MINUTES.toMillis(5);
+
+    /**
+     * 流式上传使用的预签名URL的有效期
+     */
+    private static final int STREAMING_URL_EXPIRY_MINUTES = 30;
+
+    private static final String NO_SUCH_BUCKET = "NoSuchBucket";
+
+    private static final String BUCKET_ALREADY_OWNED_BY_YOU = "BucketAlreadyOwnedByYou";
+
+    /**
+     * 一次批量删除请求最多包含的对象数，S3 的上限是1000
+     */
+    private static final int REMOVE_OBJECTS_BATCH_SIZE = 1000;
+
+    /**
+     * 查询未完成的分片上传时每页的数量
+     */
+    private static final int LIST_UPLOADS_PAGE_SIZE = 1000;
 
 
     /**
@@ -44,6 +131,12 @@ public class MinioTemplate {
     @Autowired
     private OSSProperties ossProperties;
 
+    /**
+     * 链路追踪，未开启时为空实现
+     */
+    @Autowired
+    private OssTracer ossTracer;
+
 
     /**
      * 初始化操作
@@ -52,10 +145,24 @@ public class MinioTemplate {
      */
     @PostConstruct
     public void init() {
-        minioClient = MinioClient.builder()
+        OSSProperties.BucketCache bucketCache = ossProperties.getBucketCache();
+        bucketRegistry = new BucketRegistry(bucketCache.getPositiveTtl().toNanos(), bucketCache.getNegativeTtl().toNanos());
+        httpClient = HttpUtils.newDefaultHttpClient(DEFAULT_HTTP_TIMEOUT, DEFAULT_HTTP_TIMEOUT, DEFAULT_HTTP_TIMEOUT);
+        minioClient = new ExtendedMinioClient(MinioClient.builder()
                 .endpoint(ossProperties.getEndpoint())
                 .credentials(ossProperties.getAccessKey(), ossProperties.getSecretKey())
-                .build();
+                .httpClient(httpClient)
+                .build());
+
+        OSSProperties.Compose compose = ossProperties.getCompose();
+        composeExecutor = ossTracer.wrap(Executors.newFixedThreadPool(compose.getParallelism()));
+        composeEngine = new ComposeEngine(this, composeExecutor, compose.getConcatSize().toBytes(), ComposeEngine.MAX_PARTS);
+
+        OSSProperties.Index index = ossProperties.getIndex();
+        if (index.isEnabled()) {
+            File directory = ObjectUtils.isEmpty(index.getDirectory()) ? null : new File(index.getDirectory());
+            objectIndex = new ObjectIndex(directory, index.getCompactThreshold());
+        }
 
         String defaultBucketName = ossProperties.getBucketName();
         if (bucketExists(defaultBucketName)) {
@@ -64,6 +171,29 @@ public class MinioTemplate {
             log.info("创建默认存储桶：{}", defaultBucketName);
             makeBucket(ossProperties.getBucketName());
         }
+
+        if (objectIndex != null && index.isRebuildOnStartup()) {
+            composeExecutor.execute(() -> {
+                for (Bucket bucket : listBuckets()) {
+                    if (objectIndex.isReady(bucket.name())) {
+                        continue;
+                    }
+                    try {
+                        rebuildIndex(bucket.name());
+                    } catch (Exception e) {
+                        log.warn("重建对象索引失败：{}", bucket.name(), e);
+                    }
+                }
+            });
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws IOException {
+        composeExecutor.shutdownNow();
+        if (objectIndex != null) {
+            objectIndex.close();
+        }
     }
 
     /**
@@ -82,30 +212,61 @@ public class MinioTemplate {
      */
     @SneakyThrows
     public List<Bucket> listBuckets() {
-        return minioClient.listBuckets();
+        return traced("listBuckets", null, null, span -> minioClient.listBuckets());
     }
 
     /**
-     * 桶是否存在
+     * 桶是否存在，结果会在本地缓存一段时间
      *
      * @param bucketName 桶名
      * @return 是否存在
      */
     @SneakyThrows
     public boolean bucketExists(String bucketName) {
-        return minioClient.bucketExists(BucketExistsArgs.builder().bucket(bucketName).build());
+        return bucketRegistry.exists(bucketName, () -> bucketExistsRemote(bucketName));
     }
 
     /**
-     * 创建存储桶
+     * 创建存储桶，同一个桶的并发创建只会访问一次 MinIO，不同的桶之间互不阻塞
      *
      * @param bucketName 桶名
      */
     @SneakyThrows
-    public synchronized void makeBucket(String bucketName) {
-        if (!bucketExists(bucketName)) {
-            minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
-        }
+    public void makeBucket(String bucketName) {
+        bucketRegistry.ensure(bucketName, () -> {
+            if (bucketExistsRemote(bucketName)) {
+                return true;
+            }
+            try {
+                traced("makeBucket", bucketName, null, span -> {
+                    minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
+                    return null;
+                });
+            } catch (ErrorResponseException e) {
+                // 其他节点已经创建了这个桶
+                if (!BUCKET_ALREADY_OWNED_BY_YOU.equals(e.errorResponse().code())) {
+                    throw e;
+                }
+                return true;
+            }
+            // 新建的桶是空的，索引从一开始就是完整的
+            if (objectIndex != null) {
+                objectIndex.markReady(bucketName);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * 访问 MinIO 查询桶是否存在，不经过缓存
+     *
+     * @param bucketName 桶名
+     * @return 是否存在
+     * @throws Exception MinIO 调用抛出的异常
+     */
+    private boolean bucketExistsRemote(String bucketName) throws Exception {
+        return traced("bucketExists", bucketName, null,
+                span -> minioClient.bucketExists(BucketExistsArgs.builder().bucket(bucketName).build()));
     }
 
     /**
@@ -116,10 +277,13 @@ public class MinioTemplate {
      */
     @SneakyThrows
     public void setBucketPolicy(String bucketName, String config) {
-        minioClient.setBucketPolicy(SetBucketPolicyArgs.builder()
-                .config(config)
-                .bucket(bucketName)
-                .build());
+        traced("setBucketPolicy", bucketName, null, span -> {
+            minioClient.setBucketPolicy(SetBucketPolicyArgs.builder()
+                    .config(config)
+                    .bucket(bucketName)
+                    .build());
+            return null;
+        });
     }
 
     /**
@@ -130,7 +294,6 @@ public class MinioTemplate {
     @SneakyThrows
     public void removeBucket(String bucketName) {
         removeBucket(bucketName, false);
-        minioClient.removeBucket(RemoveBucketArgs.builder().bucket(bucketName).build());
     }
 
     /**
@@ -145,7 +308,17 @@ public class MinioTemplate {
         if (bucketNotNull) {
             deleteBucketAllObject(bucketName);
         }
-        minioClient.removeBucket(RemoveBucketArgs.builder().bucket(bucketName).build());
+        try {
+            traced("removeBucket", bucketName, null, span -> {
+                minioClient.removeBucket(RemoveBucketArgs.builder().bucket(bucketName).build());
+                return null;
+            });
+        } finally {
+            bucketRegistry.evict(bucketName);
+        }
+        if (objectIndex != null) {
+            objectIndex.removeBucket(bucketName);
+        }
     }
 
     /**
@@ -156,19 +329,38 @@ public class MinioTemplate {
      * @param bucketName       桶名
      * @return ObjectWriteResponse
      */
-    @SneakyThrows
     public OssFile putObject(InputStream inputStream, String bucketName, String originalFileName) {
+        return putObject(inputStream, bucketName, originalFileName, null);
+    }
+
+    /**
+     * 上传文件，大小取 inputStream.available()，适用于内存中的流
+     *
+     * @param inputStream      流
+     * @param bucketName       桶名
+     * @param originalFileName 原始文件名
+     * @param contentType      对象的类型，为空时使用 application/octet-stream
+     * @return 上传后的文件信息
+     */
+    @SneakyThrows
+    public OssFile putObject(InputStream inputStream, String bucketName, String originalFileName, String contentType) {
         String uuidFileName = generateFileInMinioName(originalFileName);
         try {
-            if (ObjectUtils.isEmpty(bucketName)) {
-                bucketName = ossProperties.getBucketName();
-            }
-            minioClient.putObject(
-                    PutObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(uuidFileName)
-                            .stream(inputStream, inputStream.available(), -1)
-                            .build());
+            String targetBucketName = ObjectUtils.isEmpty(bucketName) ? ossProperties.getBucketName() : bucketName;
+            String objectContentType = ObjectUtils.isEmpty(contentType) ? MediaType.APPLICATION_OCTET_STREAM_VALUE : contentType;
+            traced("putObject", targetBucketName, uuidFileName, span -> {
+                long size = inputStream.available();
+                span.setAttribute("minio.object.size", size);
+                ObjectWriteResponse response = minioClient.putObject(
+                        PutObjectArgs.builder()
+                                .bucket(targetBucketName)
+                                .object(uuidFileName)
+                                .stream(inputStream, size, -1)
+                                .contentType(objectContentType)
+                                .build());
+                indexPut(targetBucketName, uuidFileName, size, response.etag(), objectContentType);
+                return response;
+            });
             return new OssFile(uuidFileName, originalFileName);
         } finally {
             if (inputStream != null) {
@@ -177,13 +369,35 @@ public class MinioTemplate {
         }
     }
 
+    /**
+     * 服务端拷贝对象，超过 5GiB 时 minio-java 会自动使用分片拷贝
+     *
+     * @param sourceBucketName 源桶名
+     * @param sourceObjectName 源对象名
+     * @param bucketName       目标桶名
+     * @param objectName       目标对象名
+     */
+    @SneakyThrows
+    public void copyObject(String sourceBucketName, String sourceObjectName, String bucketName, String objectName) {
+        traced("copyObject", bucketName, objectName, span -> minioClient.copyObject(CopyObjectArgs.builder()
+                .bucket(bucketName)
+                .object(objectName)
+                .source(CopySource.builder()
+                        .bucket(sourceBucketName)
+                        .object(sourceObjectName)
+                        .build())
+                .build()));
+        indexRefresh(bucketName, objectName);
+    }
+
     @SneakyThrows
     public void uploadObject(String bucketName, String objectName, String filePath) {
-        minioClient.uploadObject(UploadObjectArgs.builder()
+        traced("uploadObject", bucketName, objectName, span -> minioClient.uploadObject(UploadObjectArgs.builder()
                 .bucket(bucketName)
                 .object(objectName)
                 .filename(filePath)
-                .build());
+                .build()));
+        indexRefresh(bucketName, objectName);
     }
 
     /**
@@ -195,18 +409,55 @@ public class MinioTemplate {
     public void deleteBucketAllObject(String bucketName) {
         List<String> list = listObjectNames(bucketName);
         if (!list.isEmpty()) {
-            for (String objectName : list) {
-                deleteObject(bucketName, objectName);
+            removeObjects(bucketName, list);
+        }
+    }
+
+    /**
+     * 批量删除对象，每1000个对象发送一次删除请求
+     *
+     * @param bucketName  桶名
+     * @param objectNames 对象名
+     */
+    @SneakyThrows
+    public void removeObjects(String bucketName, List<String> objectNames) {
+        for (int from = 0; from < objectNames.size(); from += REMOVE_OBJECTS_BATCH_SIZE) {
+            List<DeleteObject> batch = objectNames.subList(from, Math.min(from + REMOVE_OBJECTS_BATCH_SIZE, objectNames.size()))
+                    .stream()
+                    .map(DeleteObject::new)
+                    .collect(Collectors.toList());
+            traced("removeObjects", bucketName, null, span -> {
+                span.setAttribute("minio.objects.count", batch.size());
+                // removeObjects 是惰性的，必须遍历结果才会真正发送请求
+                for (Result<DeleteError> result : minioClient.removeObjects(RemoveObjectsArgs.builder()
+                        .bucket(bucketName)
+                        .objects(batch)
+                        .build())) {
+                    DeleteError error = result.get();
+                    log.warn("删除对象失败，bucket: {}, object: {}, message: {}", bucketName, error.objectName(), error.message());
+                }
+                return null;
+            });
+            if (objectIndex != null) {
+                for (String objectName : objectNames.subList(from, Math.min(from + REMOVE_OBJECTS_BATCH_SIZE, objectNames.size()))) {
+                    objectIndex.remove(bucketName, objectName);
+                }
             }
         }
     }
 
     @SneakyThrows
     public void deleteFolder(String bucketName, String folder) {
-        Iterable<Result<Item>> results = listObjects(bucketName, folder, true);
-        // 先删除子目录，最后再删除父目录
-        for (Result<Item> result : results) {
-            deleteObject(bucketName, result.get().objectName());
+        if (indexServes(bucketName)) {
+            for (ObjectMeta meta : objectIndex.list(bucketName, folder, null, Integer.MAX_VALUE)) {
+                deleteObject(bucketName, meta.getKey());
+            }
+        } else {
+            Iterable<Result<Item>> results = listObjects(bucketName, folder, true);
+            // 先删除子目录，最后再删除父目录
+            for (Result<Item> result : results) {
+                deleteObject(bucketName, result.get().objectName());
+            }
         }
         deleteObject(bucketName, folder);
     }
@@ -220,7 +471,11 @@ public class MinioTemplate {
     @SneakyThrows
     public List<String> listObjectNames(String bucketName) {
         List<String> objectNameList = new ArrayList<>();
-        if (bucketExists(bucketName)) {
+        if (bucketExists(bucketName) && indexServes(bucketName)) {
+            for (ObjectMeta meta : objectIndex.list(bucketName, null, null, Integer.MAX_VALUE)) {
+                objectNameList.add(meta.getKey());
+            }
+        } else if (bucketExists(bucketName)) {
             Iterable<Result<Item>> results = listObjects(bucketName, true);
             for (Result<Item> result : results) {
                 String objectName = result.get().objectName();
@@ -231,6 +486,49 @@ public class MinioTemplate {
     }
 
 
+    /**
+     * 查询桶中第一层的对象名，不包括目录以及目录下的对象，例如合并失败时遗留的 .compose/ 中间对象。
+     * 与 {@link #composeObject(String, String, String)} 选取分片的规则一致
+     *
+     * @param bucketName 桶名
+     * @return objectNames
+     */
+    @SneakyThrows
+    public List<String> listTopLevelObjectNames(String bucketName) {
+        List<String> objectNameList = new ArrayList<>();
+        if (bucketExists(bucketName) && indexServes(bucketName)) {
+            for (ObjectMeta meta : objectIndex.list(bucketName, null, null, Integer.MAX_VALUE)) {
+                if (meta.getKey().indexOf('/') < 0) {
+                    objectNameList.add(meta.getKey());
+                }
+            }
+        } else if (bucketExists(bucketName)) {
+            for (Result<Item> result : listObjects(bucketName, false)) {
+                Item item = result.get();
+                if (!item.isDir()) {
+                    objectNameList.add(item.objectName());
+                }
+            }
+        }
+        return objectNameList;
+    }
+
+    /**
+     * 查询前缀下所有的对象名，递归列举子目录
+     *
+     * @param bucketName 桶名
+     * @param prefix     前缀
+     * @return objectNames
+     */
+    @SneakyThrows
+    public List<String> listObjectNames(String bucketName, String prefix) {
+        List<String> objectNameList = new ArrayList<>();
+        for (Result<Item> result : listObjects(bucketName, prefix, true)) {
+            objectNameList.add(result.get().objectName());
+        }
+        return objectNameList;
+    }
+
     /**
      * 删除一个对象
      *
@@ -239,10 +537,16 @@ public class MinioTemplate {
      */
     @SneakyThrows
     public void deleteObject(String bucketName, String objectName) {
-        minioClient.removeObject(RemoveObjectArgs.builder()
-                .bucket(bucketName)
-                .object(objectName)
-                .build());
+        traced("removeObject", bucketName, objectName, span -> {
+            minioClient.removeObject(RemoveObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(objectName)
+                    .build());
+            return null;
+        });
+        if (objectIndex != null) {
+            objectIndex.remove(bucketName, objectName);
+        }
     }
 
     /**
@@ -256,12 +560,18 @@ public class MinioTemplate {
     @SneakyThrows
     public OssFile putChunkObject(InputStream inputStream, String bucketName, String objectName) {
         try {
-            minioClient.putObject(
-                    PutObjectArgs.builder()
-                            .bucket(bucketName)
-                            .object(objectName)
-                            .stream(inputStream, inputStream.available(), -1)
-                            .build());
+            traced("putChunkObject", bucketName, objectName, span -> {
+                long size = inputStream.available();
+                span.setAttribute("minio.object.size", size);
+                ObjectWriteResponse response = minioClient.putObject(
+                        PutObjectArgs.builder()
+                                .bucket(bucketName)
+                                .object(objectName)
+                                .stream(inputStream, size, -1)
+                                .build());
+                indexPut(bucketName, objectName, size, response.etag(), MediaType.APPLICATION_OCTET_STREAM_VALUE);
+                return response;
+            });
             return new OssFile(objectName, objectName);
         } finally {
             if (inputStream != null) {
@@ -270,6 +580,126 @@ public class MinioTemplate {
         }
     }
 
+    /**
+     * 流式上传对象，数据边读边发送到 MinIO，不会在内存或磁盘中暂存整个对象
+     * <p>
+     * MinioClient 的 putObject 需要先把整个分片读入内存计算签名，这里改为使用预签名的 PUT URL，
+     * 请求体直接从输入流复制到 socket，只占用 okio 缓冲池中的几个缓冲区。
+     * 输入流的字节数必须与 size 一致，多于或少于 size 时上传失败
+     *
+     * @param inputStream 输入流，由调用方关闭
+     * @param size        对象大小
+     * @param bucketName  桶名
+     * @param objectName  对象名
+     * @param contentType 对象的类型，为空时使用 application/octet-stream
+     * @return 对象的ETag
+     */
+    @SneakyThrows
+    public String putObjectStreaming(InputStream inputStream, long size, String bucketName, String objectName,
+                                    String contentType) {
+        return traced("putObjectStreaming", bucketName, objectName, span -> {
+            span.setAttribute("minio.object.size", size);
+            String url = minioClient.getPresignedObjectUrl(GetPresignedObjectUrlArgs.builder()
+                    .method(Method.PUT)
+                    .bucket(bucketName)
+                    .object(objectName)
+                    .expiry(STREAMING_URL_EXPIRY_MINUTES, TimeUnit.MINUTES)
+                    .build());
+            okhttp3.MediaType mediaType = okhttp3.MediaType.parse(
+                    ObjectUtils.isEmpty(contentType) ? MediaType.APPLICATION_OCTET_STREAM_VALUE : contentType);
+            RequestBody requestBody = new RequestBody() {
+                @Override
+                public okhttp3.MediaType contentType() {
+                    return mediaType;
+                }
+
+                @Override
+                public long contentLength() {
+                    return size;
+                }
+
+                @Override
+                public void writeTo(BufferedSink sink) throws IOException {
+                    Source source = Okio.source(inputStream);
+                    sink.writeAll(source);
+                }
+            };
+            Request request = new Request.Builder().url(url).put(requestBody).build();
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (!response.isSuccessful()) {
+                    ResponseBody body = response.body();
+                    String error = body == null ? "" : body.string();
+                    if (error.contains("<Code>" + NO_SUCH_BUCKET + "</Code>")) {
+                        bucketRegistry.evict(bucketName);
+                    }
+                    throw new IOException("流式上传失败，状态码：" + response.code() + "，" + error);
+                }
+                String etag = response.header("ETag");
+                indexPut(bucketName, objectName, size, etag, mediaType == null ? null : mediaType.toString());
+                return etag;
+            }
+        });
+    }
+
+    /**
+     * 上传大小未知的流，例如边压缩边上传。MinioClient 按 partSize 把流切成分片上传，
+     * 同时只在内存中保留一个分片
+     *
+     * @param inputStream 输入流，由调用方关闭
+     * @param bucketName  桶名
+     * @param objectName  对象名
+     * @param contentType 对象的类型，为空时使用 application/octet-stream
+     * @param partSize    分片大小，不小于 5MiB
+     * @return 上传结果
+     */
+    @SneakyThrows
+    public ObjectWriteResponse putObjectUnknownSize(InputStream inputStream, String bucketName, String objectName,
+                                                    String contentType, long partSize) {
+        ObjectWriteResponse response = traced("putObject", bucketName, objectName, span -> minioClient.putObject(PutObjectArgs.builder()
+                .bucket(bucketName)
+                .object(objectName)
+                .stream(inputStream, -1, partSize)
+                .contentType(ObjectUtils.isEmpty(contentType) ? MediaType.APPLICATION_OCTET_STREAM_VALUE : contentType)
+                .build()));
+        // 大小在上传前未知，从 MinIO 查询
+        indexRefresh(bucketName, objectName);
+        return response;
+    }
+
+    /**
+     * 上传对象并设置用户元数据。大小已知时 MinioClient 按自动计算的分片大小上传，未知时按 5MiB 分片，
+     * 同时只在内存中保留一个分片
+     *
+     * @param inputStream  输入流，由调用方关闭
+     * @param size         对象大小，未知时为 -1
+     * @param bucketName   桶名
+     * @param objectName   对象名
+     * @param contentType  对象的类型，为空时使用 application/octet-stream
+     * @param userMetadata 用户元数据，key 不需要 x-amz-meta- 前缀
+     * @return 上传结果
+     */
+    @SneakyThrows
+    public ObjectWriteResponse putObject(InputStream inputStream, long size, String bucketName, String objectName,
+                                         String contentType, Map<String, String> userMetadata) {
+        String objectContentType = ObjectUtils.isEmpty(contentType) ? MediaType.APPLICATION_OCTET_STREAM_VALUE : contentType;
+        ObjectWriteResponse response = traced("putObject", bucketName, objectName, span -> {
+            span.setAttribute("minio.object.size", size);
+            return minioClient.putObject(PutObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(objectName)
+                    .stream(inputStream, size, size < 0 ? ObjectWriteArgs.MIN_MULTIPART_SIZE : -1)
+                    .contentType(objectContentType)
+                    .userMetadata(userMetadata)
+                    .build());
+        });
+        if (size < 0) {
+            indexRefresh(bucketName, objectName);
+        } else {
+            indexPut(bucketName, objectName, size, response.etag(), objectContentType);
+        }
+        return response;
+    }
+
     /**
      * 返回临时带签名、Get请求方式的访问URL
      *
@@ -279,12 +709,12 @@ public class MinioTemplate {
      */
     @SneakyThrows
     public String getPresignedObjectUrl(String bucketName, String filePath) {
-        return minioClient.getPresignedObjectUrl(
+        return traced("getPresignedObjectUrl", bucketName, filePath, span -> minioClient.getPresignedObjectUrl(
                 GetPresignedObjectUrlArgs.builder()
                         .method(Method.GET)
                         .bucket(bucketName)
                         .object(filePath)
-                        .build());
+                        .build()));
     }
 
     /**
@@ -297,14 +727,14 @@ public class MinioTemplate {
      */
     @SneakyThrows
     public String getPresignedObjectUrl(String bucketName, String filePath, Map<String, String> queryParams) {
-        return minioClient.getPresignedObjectUrl(
+        return traced("getPresignedObjectUrl", bucketName, filePath, span -> minioClient.getPresignedObjectUrl(
                 GetPresignedObjectUrlArgs.builder()
                         .method(Method.PUT)
                         .bucket(bucketName)
                         .object(filePath)
                         .expiry(1, TimeUnit.DAYS)
                         .extraQueryParams(queryParams)
-                        .build());
+                        .build()));
     }
 
 
@@ -316,28 +746,42 @@ public class MinioTemplate {
      */
     @SneakyThrows
     public InputStream getObject(String bucketName, String objectName) {
-        return minioClient.getObject(
-                GetObjectArgs.builder().bucket(bucketName).object(objectName).build());
+        return traced("getObject", bucketName, objectName, span -> minioClient.getObject(
+                GetObjectArgs.builder().bucket(bucketName).object(objectName).build()));
     }
 
 
     /**
      * GetObject接口用于获取某个文件（Object）。此操作需要对此Object具有读权限。
+     * 同一个对象的并发查询只访问一次 MinIO
      *
      * @param bucketName 桶名
      * @param objectName 文件路径
      */
     @SneakyThrows
     public StatObjectResponse getObjectInfo(String bucketName, String objectName) {
-        return minioClient.statObject(StatObjectArgs.builder()
-                .bucket(bucketName)
-                .object(objectName)
-                .build());
+        if (!ossProperties.getCoalesce().isEnabled()) {
+            return statObject(bucketName, objectName);
+        }
+        return statFlight.execute(bucketName + "/" + objectName, () -> statObject(bucketName, objectName));
+    }
+
+    private StatObjectResponse statObject(String bucketName, String objectName) throws Exception {
+        return traced("statObject", bucketName, objectName, span -> {
+            StatObjectResponse response = minioClient.statObject(StatObjectArgs.builder()
+                    .bucket(bucketName)
+                    .object(objectName)
+                    .build());
+            span.setAttribute("minio.object.size", response.size());
+            return response;
+        });
     }
 
 
     /**
      * GetObject接口用于获取某个文件（Object）。此操作需要对此Object具有读权限。
+     * 不超过 oss.minio.coalesce.max-range-size 的范围读取会合并并发的相同请求：只访问一次 MinIO，
+     * 读入内存的数据分发给所有等待者。视频预读按数据块对齐读取，热门视频的相同数据块只会读取一次
      *
      * @param bucketName 桶名
      * @param objectName 文件路径
@@ -346,8 +790,25 @@ public class MinioTemplate {
      */
     @SneakyThrows
     public InputStream getObject(String bucketName, String objectName, Long offset, Long length) {
-        return minioClient.getObject(
-                GetObjectArgs.builder().bucket(bucketName).object(objectName).offset(offset).length(length).build());
+        OSSProperties.Coalesce coalesce = ossProperties.getCoalesce();
+        if (!coalesce.isEnabled() || length == null || length > coalesce.getMaxRangeSize().toBytes()) {
+            return getObjectRange(bucketName, objectName, offset, length);
+        }
+        byte[] bytes = rangeFlight.execute(Arrays.asList(bucketName, objectName, offset, length), () -> {
+            try (InputStream inputStream = getObjectRange(bucketName, objectName, offset, length)) {
+                return IoUtil.readBytes(inputStream);
+            }
+        });
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private InputStream getObjectRange(String bucketName, String objectName, Long offset, Long length) throws Exception {
+        return traced("getObject", bucketName, objectName, span -> {
+            span.setAttribute("minio.range.offset", offset);
+            span.setAttribute("minio.range.length", length);
+            return minioClient.getObject(
+                    GetObjectArgs.builder().bucket(bucketName).object(objectName).offset(offset).length(length).build());
+        });
     }
 
 
@@ -360,8 +821,8 @@ public class MinioTemplate {
      */
     @SneakyThrows
     public Iterable<Result<Item>> listObjects(String bucketName, boolean recursive) {
-        return minioClient.listObjects(
-                ListObjectsArgs.builder().bucket(bucketName).recursive(recursive).build());
+        return traced("listObjects", bucketName, null, span -> minioClient.listObjects(
+                ListObjectsArgs.builder().bucket(bucketName).recursive(recursive).build()));
     }
 
     /**
@@ -374,11 +835,11 @@ public class MinioTemplate {
      */
     @SneakyThrows
     public Iterable<Result<Item>> listObjects(String bucketName, String prefix, boolean recursive) {
-        return minioClient.listObjects(ListObjectsArgs.builder()
+        return traced("listObjects", bucketName, prefix, span -> minioClient.listObjects(ListObjectsArgs.builder()
                 .bucket(bucketName)
                 .prefix(prefix)
                 .recursive(recursive)
-                .build());
+                .build()));
     }
 
     /**
@@ -398,7 +859,7 @@ public class MinioTemplate {
         policy.addStartsWithCondition("Content-Type", MediaType.ALL_VALUE);
         // 设置上传文件的大小 64kiB to 10MiB.
         //policy.addContentLengthRangeCondition(64 * 1024, 10 * 1024 * 1024);
-        return minioClient.getPresignedPostFormData(policy);
+        return traced("getPresignedPostFormData", bucketName, fileName, span -> minioClient.getPresignedPostFormData(policy));
     }
 
 
@@ -418,11 +879,7 @@ public class MinioTemplate {
     public OssFile composeObject(String bucketName, String fileName, List<ComposeSource> sourceObjectList) {
         String filenameExtension = StringUtils.getFilenameExtension(fileName);
         String objectName = UUID.randomUUID() + "." + filenameExtension;
-        minioClient.composeObject(ComposeObjectArgs.builder()
-                .bucket(bucketName)
-                .object(objectName)
-                .sources(sourceObjectList)
-                .build());
+        composeEngine.compose(statParts(sourceObjectList), bucketName, bucketName, objectName);
 
         String presignedObjectUrl = getPresignedObjectUrl(bucketName, fileName);
         return new OssFile(presignedObjectUrl, fileName);
@@ -439,17 +896,14 @@ public class MinioTemplate {
      */
     @SneakyThrows
     public OssFile composeObject(List<ComposeSource> sourceObjectList, String bucketName, String objectName) {
-        minioClient.composeObject(ComposeObjectArgs.builder()
-                .bucket(bucketName)
-                .object(objectName)
-                .sources(sourceObjectList)
-                .build());
+        composeEngine.compose(statParts(sourceObjectList), bucketName, bucketName, objectName);
         String presignedObjectUrl = getPresignedObjectUrl(bucketName, objectName);
         return new OssFile(presignedObjectUrl, objectName);
     }
 
     /**
      * 文件合并，将分块文件组成一个新的文件
+     * 分块文件的对象名为分片序号，中间对象也存放在分块文件所在的桶中
      *
      * @param originBucketName 分块文件所在的桶
      * @param targetBucketName 合并文件生成文件所在的桶
@@ -458,30 +912,42 @@ public class MinioTemplate {
      */
     @SneakyThrows
     public OssFile composeObject(String originBucketName, String targetBucketName, String objectName) {
-
-        Iterable<Result<Item>> results = listObjects(originBucketName, true);
-        List<String> objectNameList = new ArrayList<>();
-        for (Result<Item> result : results) {
-            Item item = result.get();
-            objectNameList.add(item.objectName());
+        // 只列出第一层，跳过上一次合并失败时遗留的中间对象目录
+        Map<String, Long> chunks = new HashMap<>();
+        if (indexServes(originBucketName)) {
+            for (ObjectMeta meta : objectIndex.list(originBucketName, null, null, Integer.MAX_VALUE)) {
+                if (meta.getKey().indexOf('/') < 0) {
+                    chunks.put(meta.getKey(), meta.getSize());
+                }
+            }
+        } else {
+            for (Result<Item> result : listObjects(originBucketName, false)) {
+                Item item = result.get();
+                if (!item.isDir()) {
+                    chunks.put(item.objectName(), item.size());
+                }
+            }
         }
 
 
-        if (ObjectUtils.isEmpty(objectNameList)) {
+        if (ObjectUtils.isEmpty(chunks)) {
             throw new IllegalArgumentException(originBucketName + "桶中没有文件，请检查");
         }
 
-        List<ComposeSource> composeSourceList = new ArrayList<>(objectNameList.size());
-        // 对文件名集合进行升序排序
-        objectNameList.sort((o1, o2) -> Integer.parseInt(o2) > Integer.parseInt(o1) ? -1 : 1);
-        for (String object : objectNameList) {
-            composeSourceList.add(ComposeSource.builder()
+        // 对文件名集合按分片序号升序排序
+        List<String> chunkNames = new ArrayList<>(chunks.keySet());
+        chunkNames.sort(Comparator.comparingLong(Long::parseLong));
+        List<ComposeEngine.Part> parts = new ArrayList<>(chunkNames.size());
+        for (String chunkName : chunkNames) {
+            parts.add(new ComposeEngine.Part(ComposeSource.builder()
                     .bucket(originBucketName)
-                    .object(object)
-                    .build());
+                    .object(chunkName)
+                    .build(), chunks.get(chunkName)));
         }
 
-        return composeObject(composeSourceList, targetBucketName, objectName);
+        composeEngine.compose(parts, originBucketName, targetBucketName, objectName);
+        String presignedObjectUrl = getPresignedObjectUrl(targetBucketName, objectName);
+        return new OssFile(presignedObjectUrl, objectName);
     }
 
     /**
@@ -495,32 +961,124 @@ public class MinioTemplate {
     @SneakyThrows
     public OssFile composeObjectByObjectFolder(String bucketName, String folder, String objectName) {
 
-        Iterable<Result<Item>> results = listObjects(bucketName, folder, true);
-        List<String> objectNameList = new ArrayList<>();
-        for (Result<Item> result : results) {
-            Item item = result.get();
-            objectNameList.add(item.objectName());
+        Map<String, Long> chunks = new HashMap<>();
+        if (indexServes(bucketName)) {
+            for (ObjectMeta meta : objectIndex.list(bucketName, folder, null, Integer.MAX_VALUE)) {
+                chunks.put(meta.getKey(), meta.getSize());
+            }
+        } else {
+            for (Result<Item> result : listObjects(bucketName, folder, true)) {
+                Item item = result.get();
+                chunks.put(item.objectName(), item.size());
+            }
         }
 
 
-        if (ObjectUtils.isEmpty(objectNameList)) {
+        if (ObjectUtils.isEmpty(chunks)) {
             throw new IllegalArgumentException(bucketName + "/" + folder + "文件夹中没有文件，请检查");
         }
 
-        List<ComposeSource> composeSourceList = new ArrayList<>(objectNameList.size());
-        objectNameList = objectNameList.stream().map(objectNameHandler -> objectNameHandler.replace(folder, "").replace("/", "")).collect(Collectors.toList());
-        // 对文件名集合进行升序排序
-        objectNameList.sort((o1, o2) -> Integer.parseInt(o2) > Integer.parseInt(o1) ? -1 : 1);
+        // 对文件名集合按分片序号升序排序
+        List<String> chunkNames = new ArrayList<>(chunks.keySet());
+        chunkNames.sort(Comparator.comparingLong(name -> Long.parseLong(name.replace(folder, "").replace("/", ""))));
+        List<ComposeEngine.Part> parts = new ArrayList<>(chunkNames.size());
+        for (String chunkName : chunkNames) {
+            parts.add(new ComposeEngine.Part(ComposeSource.builder()
+                    .bucket(bucketName)
+                    .object(chunkName)
+                    .build(), chunks.get(chunkName)));
+        }
+
+        composeEngine.compose(parts, bucketName, bucketName, objectName);
+        String presignedObjectUrl = getPresignedObjectUrl(bucketName, objectName);
+        return new OssFile(presignedObjectUrl, objectName);
+    }
 
-        objectNameList = objectNameList.stream().map(objectNameHandler -> folder + objectNameHandler).collect(Collectors.toList());
-        for (String object : objectNameList) {
-            composeSourceList.add(ComposeSource.builder()
+    /**
+     * 调用一次 MinIO 的 compose，源对象必须满足 S3 的限制：最多 10000 个分片，除最后一个之外不小于 5MiB
+     *
+     * @param sources    源对象
+     * @param bucketName 目标桶
+     * @param objectName 目标对象名
+     * @throws Exception MinIO 调用抛出的异常
+     */
+    void composeOnce(List<ComposeSource> sources, String bucketName, String objectName) throws Exception {
+        traced("composeObject", bucketName, objectName, span -> {
+            span.setAttribute("minio.compose.sources", sources.size());
+            return minioClient.composeObject(ComposeObjectArgs.builder()
                     .bucket(bucketName)
-                    .object(object)
+                    .object(objectName)
+                    .sources(sources)
                     .build());
+        });
+        indexRefresh(bucketName, objectName);
+    }
+
+    /**
+     * 按顺序下载源对象并拼接上传成一个新对象，用于处理 compose 不支持的小于 5MiB 的源对象
+     *
+     * @param parts      源对象
+     * @param bucketName 目标桶
+     * @param objectName 目标对象名
+     * @param size       源对象的总大小
+     * @throws Exception MinIO 调用抛出的异常
+     */
+    void concatObjects(List<ComposeEngine.Part> parts, String bucketName, String objectName, long size) throws Exception {
+        Iterator<ComposeEngine.Part> iterator = parts.iterator();
+        // 用到时才打开下一个源对象，SequenceInputStream 读完一个流后会关闭它
+        Enumeration<InputStream> streams = new Enumeration<InputStream>() {
+            @Override
+            public boolean hasMoreElements() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public InputStream nextElement() {
+                ComposeEngine.Part part = iterator.next();
+                ComposeSource source = part.getSource();
+                long offset = source.offset() == null ? 0 : source.offset();
+                return getObject(source.bucket(), source.object(), offset, part.getSize());
+            }
+        };
+        try (InputStream inputStream = new SequenceInputStream(streams)) {
+            traced("concatObjects", bucketName, objectName, span -> {
+                span.setAttribute("minio.compose.sources", parts.size());
+                span.setAttribute("minio.object.size", size);
+                ObjectWriteResponse response = minioClient.putObject(PutObjectArgs.builder()
+                        .bucket(bucketName)
+                        .object(objectName)
+                        .stream(inputStream, size, -1)
+                        .build());
+                indexPut(bucketName, objectName, size, response.etag(), MediaType.APPLICATION_OCTET_STREAM_VALUE);
+                return response;
+            });
         }
+    }
 
-        return composeObject(composeSourceList, bucketName, objectName);
+    /**
+     * 并行查询源对象的大小
+     *
+     * @param sources 源对象
+     * @return 源对象及其大小
+     * @throws Exception MinIO 调用抛出的异常
+     */
+    private List<ComposeEngine.Part> statParts(List<ComposeSource> sources) throws Exception {
+        List<Future<ComposeEngine.Part>> futures = new ArrayList<>(sources.size());
+        for (ComposeSource source : sources) {
+            futures.add(composeExecutor.submit(() -> {
+                if (source.length() != null) {
+                    return new ComposeEngine.Part(source, source.length());
+                }
+                long size = getObjectInfo(source.bucket(), source.object()).size();
+                long offset = source.offset() == null ? 0 : source.offset();
+                return new ComposeEngine.Part(source, size - offset);
+            }));
+        }
+        List<ComposeEngine.Part> parts = new ArrayList<>(sources.size());
+        for (Future<ComposeEngine.Part> future : futures) {
+            parts.add(future.get());
+        }
+        return parts;
     }
 
     /**
@@ -531,6 +1089,250 @@ public class MinioTemplate {
      */
     @SneakyThrows
     public String getBucketPolicy(String bucket) {
-        return minioClient.getBucketPolicy(GetBucketPolicyArgs.builder().bucket(bucket).build());
+        return traced("getBucketPolicy", bucket, null,
+                span -> minioClient.getBucketPolicy(GetBucketPolicyArgs.builder().bucket(bucket).build()));
+    }
+
+    /**
+     * 给桶设置生命周期规则：对象在创建 days 天后过期，未完成的分片上传在 days 天后终止。
+     * 作为应用清理任务之外的兜底，应用停机或者 Redis 数据丢失时，MinIO 自己也会回收这些数据
+     *
+     * @param bucketName 桶名
+     * @param days       过期天数
+     */
+    @SneakyThrows
+    public void setBucketExpiration(String bucketName, int days) {
+        LifecycleRule rule = new LifecycleRule(Status.ENABLED,
+                new AbortIncompleteMultipartUpload(days),
+                new Expiration((ZonedDateTime) null, days, null),
+                new RuleFilter(""),
+                "expire-after-" + days + "-days",
+                null, null, null);
+        traced("setBucketLifecycle", bucketName, null, span -> {
+            minioClient.setBucketLifecycle(SetBucketLifecycleArgs.builder()
+                    .bucket(bucketName)
+                    .config(new LifecycleConfiguration(Collections.singletonList(rule)))
+                    .build());
+            return null;
+        });
+    }
+
+    /**
+     * 设置桶的标签，覆盖已有的标签
+     *
+     * @param bucketName 桶名
+     * @param tags       标签
+     */
+    @SneakyThrows
+    public void setBucketTags(String bucketName, Map<String, String> tags) {
+        traced("setBucketTags", bucketName, null, span -> {
+            minioClient.setBucketTags(SetBucketTagsArgs.builder().bucket(bucketName).tags(tags).build());
+            return null;
+        });
+    }
+
+    /**
+     * 查询桶的标签
+     *
+     * @param bucketName 桶名
+     * @return 标签，没有标签时为空
+     */
+    @SneakyThrows
+    public Map<String, String> getBucketTags(String bucketName) {
+        return traced("getBucketTags", bucketName, null,
+                span -> minioClient.getBucketTags(GetBucketTagsArgs.builder().bucket(bucketName).build()).get());
+    }
+
+    /**
+     * 查询桶中所有未完成的分片上传
+     *
+     * @param bucketName 桶名
+     * @param prefix     对象名前缀，可以为空
+     * @return 未完成的分片上传
+     */
+    @SneakyThrows
+    public List<Upload> listIncompleteUploads(String bucketName, String prefix) {
+        return traced("listMultipartUploads", bucketName, prefix, span -> {
+            List<Upload> uploads = new ArrayList<>();
+            String keyMarker = null;
+            String uploadIdMarker = null;
+            while (true) {
+                ListMultipartUploadsResult result = minioClient.listIncompleteUploads(bucketName, prefix,
+                        keyMarker, uploadIdMarker, LIST_UPLOADS_PAGE_SIZE).result();
+                uploads.addAll(result.uploads());
+                if (!result.isTruncated()) {
+                    break;
+                }
+                keyMarker = result.nextKeyMarker();
+                uploadIdMarker = result.nextUploadIdMarker();
+            }
+            span.setAttribute("minio.uploads.count", uploads.size());
+            return uploads;
+        });
+    }
+
+    /**
+     * 终止一个未完成的分片上传
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @param uploadId   分片上传的id
+     */
+    @SneakyThrows
+    public void abortIncompleteUpload(String bucketName, String objectName, String uploadId) {
+        traced("abortMultipartUpload", bucketName, objectName, span -> {
+            minioClient.abortIncompleteUpload(bucketName, objectName, uploadId);
+            return null;
+        });
+    }
+
+    /**
+     * 监听桶的事件通知（MinIO 扩展 API），返回的迭代器在连接断开前一直阻塞等待新的事件，由调用方关闭
+     *
+     * @param bucketName 桶名
+     * @param prefix     对象名前缀，可以为空
+     * @param suffix     对象名后缀，可以为空
+     * @param events     事件类型，例如 s3:ObjectCreated:*
+     * @return 事件通知
+     */
+    @SneakyThrows
+    public CloseableIterator<Result<NotificationRecords>> listenBucketNotification(String bucketName, String prefix,
+                                                                                  String suffix, String[] events) {
+        return traced("listenBucketNotification", bucketName, prefix, span -> minioClient.listenBucketNotification(
+                ListenBucketNotificationArgs.builder()
+                        .bucket(bucketName)
+                        .prefix(prefix == null ? "" : prefix)
+                        .suffix(suffix == null ? "" : suffix)
+                        .events(events)
+                        .build()));
+    }
+
+    /**
+     * 获取本地对象索引，业务层可以用它做前缀、范围和按属性的查询
+     *
+     * @return ObjectIndex，未开启时为 null
+     */
+    public ObjectIndex getObjectIndex() {
+        return objectIndex;
+    }
+
+    /**
+     * 用 listObjects 的结果重建一个桶的索引，重建期间的写入不会丢失。列举结果中没有对象的类型
+     *
+     * @param bucketName 桶名
+     */
+    @SneakyThrows
+    public void rebuildIndex(String bucketName) {
+        if (objectIndex == null) {
+            return;
+        }
+        // 重建完成之前列举不使用索引
+        syncedBuckets.remove(bucketName);
+        objectIndex.beginRebuild(bucketName);
+        try {
+            List<ObjectMeta> objects = new ArrayList<>();
+            for (Result<Item> result : listObjects(bucketName, true)) {
+                Item item = result.get();
+                long lastModified = item.lastModified() == null ? 0 : item.lastModified().toInstant().toEpochMilli();
+                objects.add(ObjectMeta.of(item.objectName(), item.size(), item.etag(), null, lastModified));
+            }
+            objectIndex.finishRebuild(bucketName, objects);
+            syncedBuckets.add(bucketName);
+            log.info("重建对象索引：{}，共 {} 个对象", bucketName, objects.size());
+        } catch (Exception e) {
+            objectIndex.cancelRebuild(bucketName);
+            throw e;
+        }
+    }
+
+    /**
+     * 索引是否可以代替 listObjects 列举这个桶。索引只包含本节点看到的写入，
+     * 只有监听了这个桶的全部事件、并且本次启动后用 listObjects 重建过的完整的桶才可以，
+     * 启动时读取的快照可能已经过期
+     */
+    private boolean indexServes(String bucketName) {
+        if (objectIndex == null || !ossProperties.getIndex().isServeListings() || !syncedBuckets.contains(bucketName)
+                || !objectIndex.isReady(bucketName)) {
+            return false;
+        }
+        OSSProperties.Notify notify = ossProperties.getNotify();
+        if (!notify.isEnabled() || !ObjectUtils.isEmpty(notify.getPrefix()) || !ObjectUtils.isEmpty(notify.getSuffix())) {
+            return false;
+        }
+        return notify.getBuckets().isEmpty() ? bucketName.equals(ossProperties.getBucketName())
+                : notify.getBuckets().contains(bucketName);
+    }
+
+    private void indexPut(String bucketName, String objectName, long size, String etag, String contentType) {
+        if (objectIndex != null) {
+            objectIndex.put(bucketName, ObjectMeta.of(objectName, size, etag, contentType, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * 写入后的大小或者类型在本地未知时，查询 MinIO 后更新索引
+     */
+    private void indexRefresh(String bucketName, String objectName) {
+        if (objectIndex == null) {
+            return;
+        }
+        try {
+            StatObjectResponse stat = statObject(bucketName, objectName);
+            objectIndex.put(bucketName, ObjectMeta.of(objectName, stat.size(), stat.etag(), stat.contentType(),
+                    stat.lastModified().toInstant().toEpochMilli()));
+        } catch (Exception e) {
+            log.warn("更新对象索引失败，bucket: {}, object: {}", bucketName, objectName, e);
+        }
+    }
+
+    /**
+     * 获取链路追踪，业务层可以用它把自己的阶段和 MinIO 的调用串在同一条链路上
+     *
+     * @return OssTracer
+     */
+    public OssTracer getOssTracer() {
+        return ossTracer;
+    }
+
+    /**
+     * 在一个 span 中执行对 MinIO 的调用，span 名称为 minio.{operation}
+     *
+     * @param operation  操作名称
+     * @param bucketName 桶名，可以为空
+     * @param objectName 对象名，可以为空
+     * @param call       对 MinIO 的调用
+     * @param <T>        返回值类型
+     * @return 调用结果
+     * @throws Exception MinIO 调用抛出的异常
+     */
+    private <T> T traced(String operation, String bucketName, String objectName, MinioCall<T> call) throws Exception {
+        try (OssSpan span = ossTracer.startSpan("minio." + operation)) {
+            span.setAttribute("minio.bucket", bucketName);
+            span.setAttribute("minio.object", objectName);
+            try {
+                return call.call(span);
+            } catch (Exception e) {
+                span.recordException(e);
+                // 桶在应用之外被删除了，清除本地缓存，下次重新创建
+                if (bucketName != null && e instanceof ErrorResponseException
+                        && NO_SUCH_BUCKET.equals(((ErrorResponseException) e).errorResponse().code())) {
+                    bucketRegistry.evict(bucketName);
+                    if (objectIndex != null) {
+                        objectIndex.removeBucket(bucketName);
+                    }
+                }
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 对 MinIO 的一次调用
+     *
+     * @param <T> 返回值类型
+     */
+    @FunctionalInterface
+    private interface MinioCall<T> {
+        T call(OssSpan span) throws Exception;
     }
 }
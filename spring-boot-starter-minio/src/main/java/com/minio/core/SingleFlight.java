@@ -0,0 +1,83 @@
+package com.minio.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname SingleFlight
+ * @description 合并并发的相同请求：同一个 key 同时只有一个调用真正访问 MinIO，其余调用等待并共享它的结果。
+ * 调用完成后立即移除，不缓存结果，之后的请求会重新访问 MinIO
+ * @since 2023/4/29 9:30
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 执行调用，已经有相同 key 的调用正在执行时等待它的结果
+     *
+     * @param key  请求的标识
+     * @param call 访问 MinIO
+     * @return 调用结果，等待者与执行者得到的是同一个对象
+     * @throws Exception call 抛出的异常
+     */
+    public V execute(K key, Call<V> call) throws Exception {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = calls.putIfAbsent(key, future);
+        if (inFlight != null) {
+            return join(inFlight);
+        }
+        try {
+            V result = call.call();
+            future.complete(result);
+            return result;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            throw e;
+        } catch (Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            calls.remove(key, future);
+        }
+    }
+
+    /**
+     * 是否有相同 key 的调用正在执行
+     *
+     * @param key 请求的标识
+     * @return 是否正在执行
+     */
+    public boolean isInFlight(K key) {
+        return calls.containsKey(key);
+    }
+
+    private static <V> V join(CompletableFuture<V> future) throws Exception {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 被合并的调用
+     *
+     * @param <V> 返回值类型
+     */
+    @FunctionalInterface
+    public interface Call<V> {
+        V call() throws Exception;
+    }
+}
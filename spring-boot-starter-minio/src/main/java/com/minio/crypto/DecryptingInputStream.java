@@ -0,0 +1,105 @@
+package com.minio.crypto;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname DecryptingInputStream
+ * @description 解密连续的若干段密文，只输出请求的明文范围，只在内存中保留一段
+ * @since 2023/5/3 10:20
+ */
+class DecryptingInputStream extends InputStream {
+
+    private final InputStream source;
+
+    private final SegmentCipher cipher;
+
+    private final long plaintextSize;
+
+    private final long lastIndex;
+
+    private final byte[] ciphertext;
+
+    private final byte[] plaintext;
+
+    private long index;
+
+    private long skip;
+
+    private long remaining;
+
+    private int position;
+
+    private int limit;
+
+    /**
+     * @param source        从第 firstIndex 段开始的密文
+     * @param cipher        分段的 AES-GCM
+     * @param plaintextSize 明文的总大小
+     * @param firstIndex    第一段的序号
+     * @param skip          第一段中跳过的字节数
+     * @param length        输出的字节数
+     */
+    DecryptingInputStream(InputStream source, SegmentCipher cipher, long plaintextSize, long firstIndex, long skip,
+                          long length) {
+        int segmentSize = cipher.getSegmentSize();
+        this.source = source;
+        this.cipher = cipher;
+        this.plaintextSize = plaintextSize;
+        this.lastIndex = SegmentCipher.segmentCount(plaintextSize, segmentSize) - 1;
+        this.ciphertext = new byte[segmentSize + SegmentCipher.TAG_SIZE];
+        this.plaintext = new byte[segmentSize];
+        this.index = firstIndex;
+        this.skip = skip;
+        this.remaining = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining <= 0) {
+            return -1;
+        }
+        while (position == limit) {
+            nextSegment();
+        }
+        int n = (int) Math.min(Math.min(len, limit - position), remaining);
+        System.arraycopy(plaintext, position, b, off, n);
+        position += n;
+        remaining -= n;
+        return n;
+    }
+
+    private void nextSegment() throws IOException {
+        int segmentSize = cipher.getSegmentSize();
+        int length = (int) Math.min(segmentSize, plaintextSize - index * segmentSize) + SegmentCipher.TAG_SIZE;
+        int read = 0;
+        while (read < length) {
+            int n = source.read(ciphertext, read, length - read);
+            if (n < 0) {
+                throw new EOFException("密文在第 " + index + " 段被截断");
+            }
+            read += n;
+        }
+        limit = cipher.decrypt(ciphertext, length, index, index == lastIndex, plaintext);
+        index++;
+        position = (int) Math.min(skip, limit);
+        skip -= position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
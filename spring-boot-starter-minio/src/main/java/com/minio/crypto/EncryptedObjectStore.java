@@ -0,0 +1,219 @@
+package com.minio.crypto;
+
+import com.minio.config.OSSProperties;
+import com.minio.core.MinioTemplate;
+import io.minio.ObjectWriteResponse;
+import io.minio.StatObjectResponse;
+import lombok.SneakyThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname EncryptedObjectStore
+ * @description 客户端信封加密。每个对象生成一个随机的 256 位数据密钥，用主密钥加密后和段大小、nonce 前缀
+ * 一起保存在对象的用户元数据中；内容按段做 AES-GCM（JDK 的实现使用 AES-NI 等硬件指令）。
+ * 范围读取只下载覆盖这个范围的段，上传和下载都是边读边处理，内存中只有一段数据（上传时另有 MinioClient 的一个分片）。
+ * 元数据已经缓存时（例如视频播放），范围读取不需要额外的请求
+ * @since 2023/5/3 11:00
+ */
+public class EncryptedObjectStore {
+
+    static final String META_KEY = "oss-cse-key";
+
+    static final String META_KEY_ID = "oss-cse-key-id";
+
+    static final String META_NONCE = "oss-cse-nonce";
+
+    static final String META_SEGMENT = "oss-cse-segment";
+
+    private static final int DATA_KEY_SIZE = 32;
+
+    /**
+     * 解密后的数据密钥的缓存数量，避免每次范围读取都访问 KeyProvider
+     */
+    private static final int DATA_KEY_CACHE_SIZE = 1024;
+
+    private final MinioTemplate minioTemplate;
+
+    private final KeyProvider keyProvider;
+
+    private final int segmentSize;
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final Map<String, byte[]> dataKeys = new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > DATA_KEY_CACHE_SIZE;
+        }
+    };
+
+    public EncryptedObjectStore(MinioTemplate minioTemplate, KeyProvider keyProvider,
+                                OSSProperties.Encryption properties) {
+        this.minioTemplate = minioTemplate;
+        this.keyProvider = keyProvider;
+        this.segmentSize = (int) properties.getSegmentSize().toBytes();
+    }
+
+    /**
+     * 加密上传
+     *
+     * @param inputStream 明文，由调用方关闭
+     * @param size        明文大小，未知时为 -1
+     * @param bucketName  桶名
+     * @param objectName  对象名
+     * @param contentType 对象的类型
+     * @return 上传结果
+     */
+    public ObjectWriteResponse putObject(InputStream inputStream, long size, String bucketName, String objectName,
+                                         String contentType) {
+        byte[] dataKey = new byte[DATA_KEY_SIZE];
+        byte[] noncePrefix = new byte[SegmentCipher.NONCE_PREFIX_SIZE];
+        random.nextBytes(dataKey);
+        random.nextBytes(noncePrefix);
+        String keyId = keyProvider.activeKeyId();
+        Map<String, String> userMetadata = new HashMap<>();
+        userMetadata.put(META_KEY, Base64.getEncoder().encodeToString(keyProvider.wrap(keyId, dataKey)));
+        userMetadata.put(META_KEY_ID, keyId);
+        userMetadata.put(META_NONCE, Base64.getEncoder().encodeToString(noncePrefix));
+        userMetadata.put(META_SEGMENT, String.valueOf(segmentSize));
+
+        long ciphertextSize = size < 0 ? -1 : SegmentCipher.ciphertextSize(size, segmentSize);
+        InputStream encrypted = new EncryptingInputStream(inputStream, new SegmentCipher(dataKey, noncePrefix, segmentSize));
+        return minioTemplate.putObject(encrypted, ciphertextSize, bucketName, objectName, contentType, userMetadata);
+    }
+
+    /**
+     * 读取整个对象
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @return 明文
+     */
+    public InputStream getObject(String bucketName, String objectName) {
+        return getObject(bucketName, objectName, 0, -1);
+    }
+
+    /**
+     * 读取一个范围，先查询对象的元数据
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @param offset     明文中的起始位置
+     * @param length     长度，-1 表示到末尾
+     * @return 明文
+     */
+    public InputStream getObject(String bucketName, String objectName, long offset, long length) {
+        StatObjectResponse stat = minioTemplate.getObjectInfo(bucketName, objectName);
+        Map<String, String> userMetadata = stat.userMetadata();
+        long plaintextSize = plaintextSize(userMetadata, stat.size());
+        long actualLength = length < 0 ? plaintextSize - offset : Math.min(length, plaintextSize - offset);
+        return getObject(bucketName, objectName, userMetadata, plaintextSize, offset, actualLength);
+    }
+
+    /**
+     * 用已知的元数据读取一个范围，只下载覆盖这个范围的段
+     *
+     * @param bucketName    桶名
+     * @param objectName    对象名
+     * @param userMetadata  对象的用户元数据
+     * @param plaintextSize 明文大小，见 {@link #plaintextSize}
+     * @param offset        明文中的起始位置
+     * @param length        长度
+     * @return 明文
+     */
+    @SneakyThrows
+    public InputStream getObject(String bucketName, String objectName, Map<String, String> userMetadata,
+                                 long plaintextSize, long offset, long length) {
+        if (offset < 0 || length < 0 || offset + length > plaintextSize) {
+            throw new IllegalArgumentException("范围 " + offset + "+" + length + " 超出对象大小 " + plaintextSize);
+        }
+        if (length == 0) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        int objectSegmentSize = segmentSize(userMetadata);
+        SegmentCipher cipher = new SegmentCipher(dataKey(userMetadata),
+                Base64.getDecoder().decode(metadata(userMetadata, META_NONCE)), objectSegmentSize);
+        long firstIndex = offset / objectSegmentSize;
+        long lastIndex = (offset + length - 1) / objectSegmentSize;
+        long plaintextStart = firstIndex * objectSegmentSize;
+        long plaintextEnd = Math.min((lastIndex + 1) * objectSegmentSize, plaintextSize);
+        long segments = lastIndex - firstIndex + 1;
+        InputStream ciphertext = minioTemplate.getObject(bucketName, objectName,
+                firstIndex * (objectSegmentSize + SegmentCipher.TAG_SIZE),
+                plaintextEnd - plaintextStart + segments * SegmentCipher.TAG_SIZE);
+        return new DecryptingInputStream(ciphertext, cipher, plaintextSize, firstIndex, offset - plaintextStart, length);
+    }
+
+    /**
+     * 对象是否是加密上传的
+     *
+     * @param userMetadata 对象的用户元数据
+     * @return 是否加密
+     */
+    public static boolean isEncrypted(Map<String, String> userMetadata) {
+        return metadata(userMetadata, META_KEY) != null;
+    }
+
+    /**
+     * 从 MinIO 中的对象大小计算明文大小
+     *
+     * @param userMetadata 对象的用户元数据
+     * @param storedSize   MinIO 中的对象大小
+     * @return 明文大小
+     */
+    public static long plaintextSize(Map<String, String> userMetadata, long storedSize) {
+        return SegmentCipher.plaintextSize(storedSize, segmentSize(userMetadata));
+    }
+
+    private byte[] dataKey(Map<String, String> userMetadata) {
+        String wrapped = metadata(userMetadata, META_KEY);
+        if (wrapped == null) {
+            throw new IllegalArgumentException("对象不是加密上传的");
+        }
+        String keyId = metadata(userMetadata, META_KEY_ID);
+        String cacheKey = keyId + ":" + wrapped;
+        synchronized (dataKeys) {
+            byte[] dataKey = dataKeys.get(cacheKey);
+            if (dataKey != null) {
+                return dataKey;
+            }
+        }
+        byte[] dataKey = keyProvider.unwrap(keyId, Base64.getDecoder().decode(wrapped));
+        synchronized (dataKeys) {
+            dataKeys.put(cacheKey, dataKey);
+        }
+        return dataKey;
+    }
+
+    private static int segmentSize(Map<String, String> userMetadata) {
+        String segmentSize = metadata(userMetadata, META_SEGMENT);
+        if (segmentSize == null) {
+            throw new IllegalArgumentException("对象不是加密上传的");
+        }
+        return Integer.parseInt(segmentSize);
+    }
+
+    /**
+     * 用户元数据的 key 大小写取决于 MinIO 返回的响应头，忽略大小写查找
+     */
+    private static String metadata(Map<String, String> userMetadata, String name) {
+        if (userMetadata == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> entry : userMetadata.entrySet()) {
+            if (name.equalsIgnoreCase(entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
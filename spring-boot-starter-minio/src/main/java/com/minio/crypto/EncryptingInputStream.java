@@ -0,0 +1,87 @@
+package com.minio.crypto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname EncryptingInputStream
+ * @description 边读边加密的输入流，只在内存中保留一段明文和一段密文
+ * @since 2023/5/3 10:00
+ */
+class EncryptingInputStream extends InputStream {
+
+    private final PushbackInputStream source;
+
+    private final SegmentCipher cipher;
+
+    private final byte[] plaintext;
+
+    private final byte[] ciphertext;
+
+    private int position;
+
+    private int limit;
+
+    private long index;
+
+    private boolean finished;
+
+    EncryptingInputStream(InputStream source, SegmentCipher cipher) {
+        this.source = new PushbackInputStream(source, 1);
+        this.cipher = cipher;
+        this.plaintext = new byte[cipher.getSegmentSize()];
+        this.ciphertext = new byte[cipher.getSegmentSize() + SegmentCipher.TAG_SIZE];
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] one = new byte[1];
+        return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (position == limit && !nextSegment()) {
+            return -1;
+        }
+        int n = Math.min(len, limit - position);
+        System.arraycopy(ciphertext, position, b, off, n);
+        position += n;
+        return n;
+    }
+
+    private boolean nextSegment() throws IOException {
+        if (finished) {
+            return false;
+        }
+        int length = 0;
+        while (length < plaintext.length) {
+            int n = source.read(plaintext, length, plaintext.length - length);
+            if (n < 0) {
+                break;
+            }
+            length += n;
+        }
+        // 多读一个字节判断这是不是最后一段
+        int next = source.read();
+        boolean last = next < 0;
+        if (!last) {
+            source.unread(next);
+        }
+        limit = cipher.encrypt(plaintext, length, index++, last, ciphertext);
+        position = 0;
+        finished = last;
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+}
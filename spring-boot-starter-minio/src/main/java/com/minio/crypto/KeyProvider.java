@@ -0,0 +1,37 @@
+package com.minio.crypto;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname KeyProvider
+ * @description 主密钥的提供方，负责加密（包装）和解密每个对象的数据密钥。主密钥不离开提供方，
+ * 替换为 KMS 时只需要注册一个实现这个接口的 bean
+ * @since 2023/5/3 09:00
+ */
+public interface KeyProvider {
+
+    /**
+     * 新对象使用的主密钥
+     *
+     * @return 主密钥的id
+     */
+    String activeKeyId();
+
+    /**
+     * 用主密钥加密数据密钥
+     *
+     * @param keyId   主密钥的id
+     * @param dataKey 数据密钥
+     * @return 加密后的数据密钥
+     */
+    byte[] wrap(String keyId, byte[] dataKey);
+
+    /**
+     * 用主密钥解密数据密钥
+     *
+     * @param keyId      主密钥的id
+     * @param wrappedKey 加密后的数据密钥
+     * @return 数据密钥
+     */
+    byte[] unwrap(String keyId, byte[] wrappedKey);
+}
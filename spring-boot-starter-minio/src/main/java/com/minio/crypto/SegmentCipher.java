@@ -0,0 +1,105 @@
+package com.minio.crypto;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname SegmentCipher
+ * @description 分段的 AES-GCM。明文按 segmentSize 切成段，每段单独加密并带 16 字节的认证标签，
+ * nonce 由对象的随机前缀、段序号和是否为最后一段组成，段被调换、删除或者截断时认证失败。
+ * 一个实例只在一个线程中使用
+ * @since 2023/5/3 09:30
+ */
+final class SegmentCipher {
+
+    static final int TAG_SIZE = 16;
+
+    static final int NONCE_PREFIX_SIZE = 7;
+
+    private final SecretKeySpec key;
+
+    private final byte[] nonce = new byte[12];
+
+    private final int segmentSize;
+
+    private final Cipher cipher;
+
+    SegmentCipher(byte[] dataKey, byte[] noncePrefix, int segmentSize) {
+        this.key = new SecretKeySpec(dataKey, "AES");
+        System.arraycopy(noncePrefix, 0, nonce, 0, NONCE_PREFIX_SIZE);
+        this.segmentSize = segmentSize;
+        try {
+            this.cipher = Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * 加密一段，输出 length + 16 字节
+     */
+    int encrypt(byte[] in, int length, long index, boolean last, byte[] out) {
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, parameters(index, last));
+            return cipher.doFinal(in, 0, length, out, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 解密一段，输出 length - 16 字节
+     */
+    int decrypt(byte[] in, int length, long index, boolean last, byte[] out) throws IOException {
+        try {
+            cipher.init(Cipher.DECRYPT_MODE, key, parameters(index, last));
+            return cipher.doFinal(in, 0, length, out, 0);
+        } catch (AEADBadTagException e) {
+            throw new IOException("第 " + index + " 段认证失败，数据被篡改或者密钥不匹配", e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private GCMParameterSpec parameters(long index, boolean last) {
+        nonce[7] = (byte) (index >>> 24);
+        nonce[8] = (byte) (index >>> 16);
+        nonce[9] = (byte) (index >>> 8);
+        nonce[10] = (byte) index;
+        nonce[11] = (byte) (last ? 1 : 0);
+        return new GCMParameterSpec(TAG_SIZE * 8, nonce);
+    }
+
+    /**
+     * 段数，空对象也有一段（只有认证标签）
+     */
+    static long segmentCount(long plaintextSize, int segmentSize) {
+        return plaintextSize == 0 ? 1 : (plaintextSize + segmentSize - 1) / segmentSize;
+    }
+
+    static long ciphertextSize(long plaintextSize, int segmentSize) {
+        return plaintextSize + segmentCount(plaintextSize, segmentSize) * TAG_SIZE;
+    }
+
+    static long plaintextSize(long ciphertextSize, int segmentSize) {
+        long fullSegments = ciphertextSize / (segmentSize + TAG_SIZE);
+        long remainder = ciphertextSize % (segmentSize + TAG_SIZE);
+        if (remainder == 0 && fullSegments > 0) {
+            return fullSegments * segmentSize;
+        }
+        if (remainder < TAG_SIZE) {
+            throw new IllegalArgumentException("密文长度 " + ciphertextSize + " 与段大小 " + segmentSize + " 不匹配");
+        }
+        return fullSegments * segmentSize + remainder - TAG_SIZE;
+    }
+}
@@ -0,0 +1,93 @@
+package com.minio.crypto;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname StaticKeyProvider
+ * @description 主密钥来自配置文件的 KeyProvider，用 AES-GCM 包装数据密钥，主密钥的id作为附加数据参与认证。
+ * 轮换主密钥时新增一个id并切换 activeKeyId，旧的密钥保留用于解密已有的对象
+ * @since 2023/5/3 09:10
+ */
+public class StaticKeyProvider implements KeyProvider {
+
+    private static final int NONCE_SIZE = 12;
+
+    private static final int TAG_BITS = 128;
+
+    private final Map<String, SecretKeySpec> keys = new HashMap<>();
+
+    private final String activeKeyId;
+
+    private final SecureRandom random = new SecureRandom();
+
+    /**
+     * @param base64Keys  主密钥的id -> Base64 编码的 128/192/256 位密钥
+     * @param activeKeyId 新对象使用的主密钥
+     */
+    public StaticKeyProvider(Map<String, String> base64Keys, String activeKeyId) {
+        for (Map.Entry<String, String> entry : base64Keys.entrySet()) {
+            byte[] key = Base64.getDecoder().decode(entry.getValue());
+            if (key.length != 16 && key.length != 24 && key.length != 32) {
+                throw new IllegalArgumentException("主密钥 " + entry.getKey() + " 的长度必须是 16、24 或 32 字节");
+            }
+            keys.put(entry.getKey(), new SecretKeySpec(key, "AES"));
+        }
+        if (!keys.containsKey(activeKeyId)) {
+            throw new IllegalArgumentException("没有配置主密钥 " + activeKeyId);
+        }
+        this.activeKeyId = activeKeyId;
+    }
+
+    @Override
+    public String activeKeyId() {
+        return activeKeyId;
+    }
+
+    @Override
+    public byte[] wrap(String keyId, byte[] dataKey) {
+        byte[] nonce = new byte[NONCE_SIZE];
+        random.nextBytes(nonce);
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.ENCRYPT_MODE, key(keyId), new GCMParameterSpec(TAG_BITS, nonce));
+            cipher.updateAAD(keyId.getBytes(StandardCharsets.UTF_8));
+            byte[] sealed = cipher.doFinal(dataKey);
+            byte[] wrapped = Arrays.copyOf(nonce, NONCE_SIZE + sealed.length);
+            System.arraycopy(sealed, 0, wrapped, NONCE_SIZE, sealed.length);
+            return wrapped;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("加密数据密钥失败", e);
+        }
+    }
+
+    @Override
+    public byte[] unwrap(String keyId, byte[] wrappedKey) {
+        try {
+            Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, key(keyId), new GCMParameterSpec(TAG_BITS, wrappedKey, 0, NONCE_SIZE));
+            cipher.updateAAD(keyId.getBytes(StandardCharsets.UTF_8));
+            return cipher.doFinal(wrappedKey, NONCE_SIZE, wrappedKey.length - NONCE_SIZE);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("解密数据密钥失败，主密钥: " + keyId, e);
+        }
+    }
+
+    private SecretKeySpec key(String keyId) {
+        SecretKeySpec key = keys.get(keyId);
+        if (key == null) {
+            throw new IllegalStateException("没有配置主密钥 " + keyId);
+        }
+        return key;
+    }
+}
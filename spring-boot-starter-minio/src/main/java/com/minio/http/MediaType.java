@@ -12,4 +12,5 @@ import java.io.Serializable;
 public class MediaType implements Serializable {
     private static final long serialVersionUID = 560696828359220276L;
     public static final String ALL_VALUE = "*/*";
+    public static final String APPLICATION_OCTET_STREAM_VALUE = "application/octet-stream";
 }
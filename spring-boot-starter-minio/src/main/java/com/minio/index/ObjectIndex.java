@@ -0,0 +1,501 @@
+package com.minio.index;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectIndex
+ * @description 本地的对象元数据索引。每个桶一个按对象名排序的跳表，支持前缀、范围和按属性过滤的查询，
+ * 不需要访问 MinIO。修改先追加到磁盘上的日志再修改内存，日志超过阈值时在后台线程把全部数据写成快照，
+ * 启动时读取快照和日志恢复。只有完整重建过或者由本应用创建的桶是"完整"的，才可以用于搜索和代替 listObjects。
+ * 索引只包含本节点看到的写入，代替 listObjects 时还需要桶通知同步其他客户端的写入
+ * @since 2023/5/2 09:30
+ */
+@Slf4j
+public class ObjectIndex implements Closeable {
+
+    private static final byte OP_PUT = 1;
+
+    private static final byte OP_REMOVE = 2;
+
+    private static final byte OP_REMOVE_BUCKET = 3;
+
+    private static final byte OP_READY = 4;
+
+    private static final String SNAPSHOT_FILE = "index.snapshot";
+
+    private static final String JOURNAL_FILE = "index.journal";
+
+    /**
+     * 写快照期间的旧日志，快照写完之后删除
+     */
+    private static final String ROLLED_JOURNAL_FILE = "index.journal.old";
+
+    private final File directory;
+
+    private final long compactThreshold;
+
+    private final ConcurrentMap<String, ConcurrentSkipListMap<String, ObjectMeta>> buckets = new ConcurrentHashMap<>();
+
+    /**
+     * 完整的桶
+     */
+    private final Set<String> readyBuckets = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 正在重建的桶，重建期间的修改记录下来，重建完成后重放，避免被列举的旧结果覆盖
+     */
+    private final Map<String, List<Object[]>> rebuilding = new HashMap<>();
+
+    /**
+     * 写快照的后台线程，只保存在内存中时为空
+     */
+    private final ExecutorService compactor;
+
+    /**
+     * 同一时间只有一个线程写快照
+     */
+    private final Object snapshotLock = new Object();
+
+    private DataOutputStream journal;
+
+    private long journalRecords;
+
+    /**
+     * 已经提交了后台写快照的任务，还没有开始执行
+     */
+    private boolean compactScheduled;
+
+    /**
+     * 打开索引，目录中有快照和日志时恢复
+     *
+     * @param directory        索引目录，为 null 时只保存在内存中
+     * @param compactThreshold 日志记录数超过这个值时写快照
+     */
+    public ObjectIndex(File directory, long compactThreshold) {
+        this.directory = directory;
+        this.compactThreshold = compactThreshold;
+        if (directory == null) {
+            compactor = null;
+            return;
+        }
+        compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "object-index-compact");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            Files.createDirectories(directory.toPath());
+            replay(new File(directory, SNAPSHOT_FILE));
+            File rolledFile = new File(directory, ROLLED_JOURNAL_FILE);
+            replay(rolledFile);
+            File journalFile = new File(directory, JOURNAL_FILE);
+            journalRecords = replay(journalFile);
+            journal = openJournal(true);
+            // 把上次的日志合并进快照，同时丢掉可能不完整的最后一条记录，之后的记录不会追加在它后面
+            if (journalFile.length() > 0 || rolledFile.exists()) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开对象索引失败: " + directory, e);
+        }
+        log.info("对象索引已加载: {} 个桶，{} 个完整", buckets.size(), readyBuckets.size());
+    }
+
+    /**
+     * 桶是否完整，完整时索引中的对象就是桶中所有的对象
+     *
+     * @param bucketName 桶名
+     * @return 是否完整
+     */
+    public boolean isReady(String bucketName) {
+        return readyBuckets.contains(bucketName);
+    }
+
+    /**
+     * 把桶标记为完整，用于本应用新建的空桶
+     *
+     * @param bucketName 桶名
+     */
+    public synchronized void markReady(String bucketName) {
+        if (readyBuckets.add(bucketName)) {
+            buckets.computeIfAbsent(bucketName, b -> new ConcurrentSkipListMap<>());
+            append(OP_READY, bucketName, null, null);
+        }
+    }
+
+    public synchronized void put(String bucketName, ObjectMeta meta) {
+        record(bucketName, OP_PUT, meta);
+        buckets.computeIfAbsent(bucketName, b -> new ConcurrentSkipListMap<>()).put(meta.getKey(), meta);
+        append(OP_PUT, bucketName, meta.getKey(), meta);
+    }
+
+    public synchronized void remove(String bucketName, String key) {
+        record(bucketName, OP_REMOVE, key);
+        NavigableMap<String, ObjectMeta> bucket = buckets.get(bucketName);
+        if (bucket != null && bucket.remove(key) != null) {
+            append(OP_REMOVE, bucketName, key, null);
+        }
+    }
+
+    /**
+     * 桶被删除
+     *
+     * @param bucketName 桶名
+     */
+    public synchronized void removeBucket(String bucketName) {
+        buckets.remove(bucketName);
+        readyBuckets.remove(bucketName);
+        append(OP_REMOVE_BUCKET, bucketName, null, null);
+    }
+
+    /**
+     * 开始重建一个桶，之后的修改会在 {@link #finishRebuild} 时重放
+     *
+     * @param bucketName 桶名
+     */
+    public synchronized void beginRebuild(String bucketName) {
+        rebuilding.put(bucketName, new ArrayList<>());
+    }
+
+    /**
+     * 用完整的列举结果替换桶中的数据，并把桶标记为完整
+     *
+     * @param bucketName 桶名
+     * @param objects    列举得到的所有对象
+     */
+    public void finishRebuild(String bucketName, List<ObjectMeta> objects) {
+        ConcurrentSkipListMap<String, ObjectMeta> bucket = new ConcurrentSkipListMap<>();
+        for (ObjectMeta meta : objects) {
+            bucket.put(meta.getKey(), meta);
+        }
+        synchronized (this) {
+            List<Object[]> changes = rebuilding.remove(bucketName);
+            if (changes != null) {
+                for (Object[] change : changes) {
+                    if ((byte) change[0] == OP_PUT) {
+                        ObjectMeta meta = (ObjectMeta) change[1];
+                        bucket.put(meta.getKey(), meta);
+                    } else {
+                        bucket.remove((String) change[1]);
+                    }
+                }
+            }
+            buckets.put(bucketName, bucket);
+            readyBuckets.add(bucketName);
+        }
+        // 重建的结果直接写成快照，不逐条追加日志，返回时已经持久化
+        compact();
+    }
+
+    /**
+     * 放弃重建
+     *
+     * @param bucketName 桶名
+     */
+    public synchronized void cancelRebuild(String bucketName) {
+        rebuilding.remove(bucketName);
+    }
+
+    public ObjectMeta get(String bucketName, String key) {
+        NavigableMap<String, ObjectMeta> bucket = buckets.get(bucketName);
+        return bucket == null ? null : bucket.get(key);
+    }
+
+    /**
+     * 按对象名的字典序列举前缀下的对象
+     *
+     * @param bucketName 桶名
+     * @param prefix     前缀，为空时列举整个桶
+     * @param startAfter 从这个对象名之后开始，用于分页，可以为空
+     * @param limit      最多返回的数量
+     * @return 对象元数据
+     */
+    public List<ObjectMeta> list(String bucketName, String prefix, String startAfter, int limit) {
+        return search(bucketName, prefix, startAfter, meta -> true, limit);
+    }
+
+    /**
+     * 列举对象名在 [from, to) 范围内的对象
+     *
+     * @param bucketName 桶名
+     * @param from       起始对象名，包含
+     * @param to         结束对象名，不包含，为空时到桶的末尾
+     * @param limit      最多返回的数量
+     * @return 对象元数据
+     */
+    public List<ObjectMeta> range(String bucketName, String from, String to, int limit) {
+        List<ObjectMeta> result = new ArrayList<>();
+        ConcurrentSkipListMap<String, ObjectMeta> bucket = buckets.get(bucketName);
+        if (bucket == null) {
+            return result;
+        }
+        NavigableMap<String, ObjectMeta> view = to == null ? bucket.tailMap(from, true) : bucket.subMap(from, true, to, false);
+        for (ObjectMeta meta : view.values()) {
+            if (result.size() >= limit) {
+                break;
+            }
+            result.add(meta);
+        }
+        return result;
+    }
+
+    /**
+     * 在前缀下按属性过滤
+     *
+     * @param bucketName 桶名
+     * @param prefix     前缀，为空时查询整个桶
+     * @param startAfter 从这个对象名之后开始，用于分页，可以为空
+     * @param filter     过滤条件
+     * @param limit      最多返回的数量
+     * @return 对象元数据
+     */
+    public List<ObjectMeta> search(String bucketName, String prefix, String startAfter, Predicate<ObjectMeta> filter,
+                                   int limit) {
+        List<ObjectMeta> result = new ArrayList<>();
+        ConcurrentSkipListMap<String, ObjectMeta> bucket = buckets.get(bucketName);
+        if (bucket == null) {
+            return result;
+        }
+        String start = prefix == null ? "" : prefix;
+        boolean inclusive = true;
+        if (startAfter != null && startAfter.compareTo(start) >= 0) {
+            start = startAfter;
+            inclusive = false;
+        }
+        for (ObjectMeta meta : bucket.tailMap(start, inclusive).values()) {
+            if (prefix != null && !meta.getKey().startsWith(prefix) || result.size() >= limit) {
+                break;
+            }
+            if (filter.test(meta)) {
+                result.add(meta);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (compactor != null) {
+            // 等待正在写的快照完成，没写完时重启后会重放旧日志
+            compactor.shutdown();
+            try {
+                compactor.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (this) {
+            if (journal != null) {
+                journal.close();
+                journal = null;
+            }
+        }
+    }
+
+    private void record(String bucketName, byte op, Object value) {
+        List<Object[]> changes = rebuilding.get(bucketName);
+        if (changes != null) {
+            changes.add(new Object[]{op, value});
+        }
+    }
+
+    private void append(byte op, String bucketName, String key, ObjectMeta meta) {
+        if (journal == null) {
+            return;
+        }
+        try {
+            write(journal, op, bucketName, key, meta);
+            journal.flush();
+        } catch (IOException e) {
+            // 日志写失败只影响重启后的恢复，不影响当前的查询
+            log.warn("写对象索引日志失败", e);
+        }
+        if (++journalRecords >= compactThreshold && !compactScheduled) {
+            compactScheduled = true;
+            try {
+                compactor.execute(this::compact);
+            } catch (RejectedExecutionException e) {
+                // 已经关闭，下次启动时再合并
+                compactScheduled = false;
+            }
+        }
+    }
+
+    /**
+     * 把全部数据写成快照。在锁内把当前日志换成新文件，锁外写快照，期间的修改追加到新日志；
+     * 快照写完之后才删除旧日志，中途退出时启动会依次重放快照、旧日志和新日志。
+     * 每条记录都是对象或者桶的最终状态，快照中已经包含的修改再重放一次结果不变
+     */
+    private void compact() {
+        if (directory == null) {
+            return;
+        }
+        synchronized (snapshotLock) {
+            File rolled = new File(directory, ROLLED_JOURNAL_FILE);
+            try {
+                synchronized (this) {
+                    compactScheduled = false;
+                    if (journal == null) {
+                        return;
+                    }
+                    rollJournal(rolled);
+                }
+                writeSnapshot();
+                Files.deleteIfExists(rolled.toPath());
+            } catch (IOException e) {
+                log.warn("写对象索引快照失败", e);
+            }
+        }
+    }
+
+    /**
+     * 把当前日志移到旧日志，打开新的空日志。上次写快照失败时旧日志还在，把当前日志追加在它后面
+     */
+    private void rollJournal(File rolled) throws IOException {
+        journal.close();
+        File current = new File(directory, JOURNAL_FILE);
+        boolean moved = false;
+        try {
+            if (rolled.exists()) {
+                try (FileOutputStream out = new FileOutputStream(rolled, true)) {
+                    Files.copy(current.toPath(), out);
+                }
+            } else {
+                Files.move(current.toPath(), rolled.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }
+            moved = true;
+        } finally {
+            journal = openJournal(!moved);
+            if (moved) {
+                journalRecords = 0;
+            }
+        }
+    }
+
+    private void writeSnapshot() throws IOException {
+        File snapshot = new File(directory, SNAPSHOT_FILE);
+        File temp = new File(directory, SNAPSHOT_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            for (Map.Entry<String, ConcurrentSkipListMap<String, ObjectMeta>> bucket : buckets.entrySet()) {
+                if (readyBuckets.contains(bucket.getKey())) {
+                    write(out, OP_READY, bucket.getKey(), null, null);
+                }
+                for (ObjectMeta meta : bucket.getValue().values()) {
+                    write(out, OP_PUT, bucket.getKey(), meta.getKey(), meta);
+                }
+            }
+        }
+        Files.move(temp.toPath(), snapshot.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private DataOutputStream openJournal(boolean append) throws IOException {
+        return new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, JOURNAL_FILE), append)));
+    }
+
+    /**
+     * 重放快照或者日志，返回记录数。最后一条记录不完整（写到一半时进程退出）时忽略它
+     */
+    private long replay(File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        long records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                String bucketName = in.readUTF();
+                switch (op) {
+                    case OP_PUT:
+                        ObjectMeta meta = new ObjectMeta(in.readUTF(), in.readLong(), readNullable(in),
+                                readNullable(in), readNullable(in), in.readLong());
+                        buckets.computeIfAbsent(bucketName, b -> new ConcurrentSkipListMap<>()).put(meta.getKey(), meta);
+                        break;
+                    case OP_REMOVE:
+                        String key = in.readUTF();
+                        NavigableMap<String, ObjectMeta> bucket = buckets.get(bucketName);
+                        if (bucket != null) {
+                            bucket.remove(key);
+                        }
+                        break;
+                    case OP_REMOVE_BUCKET:
+                        buckets.remove(bucketName);
+                        readyBuckets.remove(bucketName);
+                        break;
+                    case OP_READY:
+                        buckets.computeIfAbsent(bucketName, b -> new ConcurrentSkipListMap<>());
+                        readyBuckets.add(bucketName);
+                        break;
+                    default:
+                        throw new IOException("对象索引文件已损坏: " + file);
+                }
+                records++;
+            }
+        } catch (EOFException e) {
+            log.warn("对象索引文件 {} 的最后一条记录不完整，已忽略", file);
+        }
+        return records;
+    }
+
+    private static void write(DataOutputStream out, byte op, String bucketName, String key, ObjectMeta meta)
+            throws IOException {
+        out.writeByte(op);
+        out.writeUTF(bucketName);
+        if (op == OP_PUT) {
+            out.writeUTF(key);
+            out.writeLong(meta.getSize());
+            writeNullable(out, meta.getEtag());
+            writeNullable(out, meta.getContentType());
+            writeNullable(out, meta.getMd5());
+            out.writeLong(meta.getLastModified());
+        } else if (op == OP_REMOVE) {
+            out.writeUTF(key);
+        }
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,69 @@
+package com.minio.index;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectMeta
+ * @description 索引中保存的对象元数据
+ * @since 2023/5/2 09:10
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ObjectMeta implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 对象名
+     */
+    private String key;
+
+    /**
+     * 大小
+     */
+    private long size;
+
+    /**
+     * ETag，不带引号
+     */
+    private String etag;
+
+    /**
+     * 对象的类型，从列举结果重建时为空
+     */
+    private String contentType;
+
+    /**
+     * 内容的 md5，分片上传的对象 ETag 不是 md5，此时为空
+     */
+    private String md5;
+
+    /**
+     * 上传时间，毫秒
+     */
+    private long lastModified;
+
+    /**
+     * 从 MinIO 返回的信息创建元数据，去掉 ETag 两边的引号，ETag 是 md5 时同时作为 md5
+     *
+     * @param key          对象名
+     * @param size         大小
+     * @param etag         ETag，可以为空
+     * @param contentType  对象的类型，可以为空
+     * @param lastModified 上传时间，毫秒
+     * @return ObjectMeta
+     */
+    public static ObjectMeta of(String key, long size, String etag, String contentType, long lastModified) {
+        String tag = etag == null ? null : etag.replace("\"", "");
+        // 分片上传的 ETag 形如 md5-分片数，不是内容的 md5
+        String md5 = tag != null && tag.length() == 32 && tag.indexOf('-') < 0 ? tag : null;
+        return new ObjectMeta(key, size, tag, contentType, md5, lastModified);
+    }
+}
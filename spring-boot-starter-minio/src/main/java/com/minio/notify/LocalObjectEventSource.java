@@ -0,0 +1,37 @@
+package com.minio.notify;
+
+import java.util.function.Consumer;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname LocalObjectEventSource
+ * @description 由应用自己发布事件的来源，用于测试，或者没有桶通知的单机部署
+ * @since 2023/5/2 15:30
+ */
+public class LocalObjectEventSource implements ObjectEventSource {
+
+    private volatile Consumer<ObjectEvent> sink;
+
+    @Override
+    public void start(Consumer<ObjectEvent> sink) {
+        this.sink = sink;
+    }
+
+    @Override
+    public void stop() {
+        sink = null;
+    }
+
+    /**
+     * 发布一个事件，未开始或者已停止时丢弃
+     *
+     * @param event 事件
+     */
+    public void publish(ObjectEvent event) {
+        Consumer<ObjectEvent> current = sink;
+        if (current != null) {
+            current.accept(event);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.minio.notify;
+
+import com.minio.core.MinioTemplate;
+import io.minio.CloseableIterator;
+import io.minio.Result;
+import io.minio.messages.Event;
+import io.minio.messages.NotificationRecords;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname MinioNotificationSource
+ * @description 通过 MinIO 的 listenBucketNotification 接收对象的创建和删除事件，每个桶一个线程。
+ * 连接断开后间隔 reconnectDelay 重连。首次订阅和每次重连成功后都发出 RESYNC 事件，
+ * 因为订阅之前（例如本节点停机期间）和断开期间的事件已经丢失
+ * @since 2023/5/2 15:40
+ */
+@Slf4j
+public class MinioNotificationSource implements ObjectEventSource {
+
+    private static final String[] EVENTS = {"s3:ObjectCreated:*", "s3:ObjectRemoved:*"};
+
+    private final MinioTemplate minioTemplate;
+
+    private final List<String> bucketNames;
+
+    private final String prefix;
+
+    private final String suffix;
+
+    private final long reconnectDelayMillis;
+
+    private final List<Thread> threads = new ArrayList<>();
+
+    /**
+     * 当前打开的连接，停止时关闭它们让监听线程退出阻塞
+     */
+    private final List<CloseableIterator<Result<NotificationRecords>>> connections = new CopyOnWriteArrayList<>();
+
+    private volatile boolean running;
+
+    public MinioNotificationSource(MinioTemplate minioTemplate, List<String> bucketNames, String prefix, String suffix,
+                                   long reconnectDelayMillis) {
+        this.minioTemplate = minioTemplate;
+        this.bucketNames = bucketNames;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.reconnectDelayMillis = reconnectDelayMillis;
+    }
+
+    @Override
+    public synchronized void start(Consumer<ObjectEvent> sink) {
+        running = true;
+        for (String bucketName : bucketNames) {
+            Thread thread = new Thread(() -> listen(bucketName, sink), "minio-notify-" + bucketName);
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        running = false;
+        for (CloseableIterator<Result<NotificationRecords>> connection : connections) {
+            closeQuietly(connection);
+        }
+        for (Thread thread : threads) {
+            thread.interrupt();
+        }
+        threads.clear();
+    }
+
+    private void listen(String bucketName, Consumer<ObjectEvent> sink) {
+        boolean connectedBefore = false;
+        while (running) {
+            CloseableIterator<Result<NotificationRecords>> connection = null;
+            try {
+                connection = minioTemplate.listenBucketNotification(bucketName, prefix, suffix, EVENTS);
+                connections.add(connection);
+                // 订阅之前（包括本节点停机期间）的修改不会收到事件，首次订阅和重连之后都需要重新同步
+                log.info(connectedBefore ? "桶 {} 的事件通知已重连" : "桶 {} 的事件通知已订阅", bucketName);
+                sink.accept(ObjectEvent.resync(bucketName));
+                connectedBefore = true;
+                while (running && connection.hasNext()) {
+                    for (Event event : connection.next().get().events()) {
+                        ObjectEvent objectEvent = convert(bucketName, event);
+                        if (objectEvent != null) {
+                            sink.accept(objectEvent);
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                if (running) {
+                    log.warn("桶 {} 的事件通知连接断开，{} 毫秒后重连: {}", bucketName, reconnectDelayMillis, e.toString());
+                }
+            } finally {
+                if (connection != null) {
+                    connections.remove(connection);
+                    closeQuietly(connection);
+                }
+            }
+            if (!running) {
+                return;
+            }
+            try {
+                Thread.sleep(reconnectDelayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static ObjectEvent convert(String bucketName, Event event) throws UnsupportedEncodingException {
+        if (event.eventType() == null || event.objectName() == null) {
+            return null;
+        }
+        // 通知中的对象名是 URL 编码的
+        String objectName = URLDecoder.decode(event.objectName(), "UTF-8");
+        String bucket = event.bucketName() == null ? bucketName : event.bucketName();
+        long eventTime = event.eventTime() == null ? System.currentTimeMillis() : event.eventTime().toInstant().toEpochMilli();
+        String type = event.eventType().name();
+        if (type.startsWith("OBJECT_CREATED")) {
+            Map<String, String> userMetadata = event.userMetadata();
+            String contentType = userMetadata == null ? null : userMetadata.get("content-type");
+            return new ObjectEvent(ObjectEvent.Type.CREATED, bucket, objectName, event.objectSize(), event.etag(),
+                    contentType, eventTime);
+        }
+        if (type.startsWith("OBJECT_REMOVED")) {
+            return new ObjectEvent(ObjectEvent.Type.REMOVED, bucket, objectName, 0, null, null, eventTime);
+        }
+        return null;
+    }
+
+    private static void closeQuietly(CloseableIterator<Result<NotificationRecords>> connection) {
+        try {
+            connection.close();
+        } catch (Exception e) {
+            log.debug("关闭事件通知连接失败", e);
+        }
+    }
+}
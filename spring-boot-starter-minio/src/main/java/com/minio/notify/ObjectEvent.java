@@ -0,0 +1,80 @@
+package com.minio.notify;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectEvent
+ * @description 对象的变更事件
+ * @since 2023/5/2 15:00
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ObjectEvent {
+
+    /**
+     * 事件类型
+     */
+    private Type type;
+
+    /**
+     * 桶名
+     */
+    private String bucketName;
+
+    /**
+     * 对象名，RESYNC 事件为空
+     */
+    private String objectName;
+
+    /**
+     * 对象大小，只有 CREATED 事件有
+     */
+    private long size;
+
+    /**
+     * ETag，只有 CREATED 事件有
+     */
+    private String etag;
+
+    /**
+     * 对象的类型，可能为空
+     */
+    private String contentType;
+
+    /**
+     * 事件时间，毫秒
+     */
+    private long eventTime;
+
+    public static ObjectEvent created(String bucketName, String objectName, long size, String etag, String contentType) {
+        return new ObjectEvent(Type.CREATED, bucketName, objectName, size, etag, contentType, System.currentTimeMillis());
+    }
+
+    public static ObjectEvent removed(String bucketName, String objectName) {
+        return new ObjectEvent(Type.REMOVED, bucketName, objectName, 0, null, null, System.currentTimeMillis());
+    }
+
+    public static ObjectEvent resync(String bucketName) {
+        return new ObjectEvent(Type.RESYNC, bucketName, null, 0, null, null, System.currentTimeMillis());
+    }
+
+    public enum Type {
+        /**
+         * 对象被创建或者覆盖
+         */
+        CREATED,
+        /**
+         * 对象被删除
+         */
+        REMOVED,
+        /**
+         * 事件可能有遗漏（例如通知连接断开过），这个桶的缓存需要整体失效或者重建
+         */
+        RESYNC
+    }
+}
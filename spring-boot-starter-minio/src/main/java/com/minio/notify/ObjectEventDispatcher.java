@@ -0,0 +1,151 @@
+package com.minio.notify;
+
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectEventDispatcher
+ * @description 把事件来源的事件分批交给监听器。事件先进入有界队列，一个线程取出第一个事件后最多再等待
+ * batchWindow 凑满一批，同一个对象在一批中只保留最后一个事件，然后按顺序调用所有监听器。
+ * RESYNC 事件会把一批事件分成前后两段，保证它与普通事件之间的先后顺序不变
+ * @since 2023/5/2 16:00
+ */
+@Slf4j
+public class ObjectEventDispatcher {
+
+    private final ObjectEventSource source;
+
+    private final List<ObjectEventListener> listeners;
+
+    private final OssTracer ossTracer;
+
+    private final int batchSize;
+
+    private final long batchWindowNanos;
+
+    private final BlockingQueue<ObjectEvent> queue;
+
+    private Thread thread;
+
+    private volatile boolean running;
+
+    /**
+     * @param source         事件来源
+     * @param listeners      按调用顺序排列的监听器
+     * @param ossTracer      链路追踪
+     * @param batchSize      一批的最大事件数
+     * @param batchWindow    凑满一批的最长等待时间，毫秒
+     * @param queueCapacity  队列长度，队列满时事件来源阻塞
+     */
+    public ObjectEventDispatcher(ObjectEventSource source, List<ObjectEventListener> listeners, OssTracer ossTracer,
+                                 int batchSize, long batchWindow, int queueCapacity) {
+        this.source = source;
+        this.listeners = listeners;
+        this.ossTracer = ossTracer;
+        this.batchSize = Math.max(1, batchSize);
+        this.batchWindowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindow);
+        this.queue = new LinkedBlockingQueue<>(Math.max(1, queueCapacity));
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        thread = new Thread(this::run, "minio-notify-dispatcher");
+        thread.setDaemon(true);
+        thread.start();
+        source.start(this::enqueue);
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        source.stop();
+        running = false;
+        thread.interrupt();
+        thread.join(TimeUnit.SECONDS.toMillis(10));
+    }
+
+    private void enqueue(ObjectEvent event) {
+        try {
+            queue.put(event);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        List<ObjectEvent> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + batchWindowNanos;
+                while (batch.size() < batchSize) {
+                    long remaining = deadline - System.nanoTime();
+                    ObjectEvent event = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+                    if (event == null) {
+                        break;
+                    }
+                    batch.add(event);
+                }
+            } catch (InterruptedException e) {
+                // 停止时把已经取出的事件处理完
+                running = false;
+            }
+            dispatch(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * 去重并按顺序交给监听器，RESYNC 之前的事件先处理
+     */
+    void dispatch(List<ObjectEvent> batch) {
+        Map<String, ObjectEvent> pending = new LinkedHashMap<>();
+        for (ObjectEvent event : batch) {
+            if (event.getType() == ObjectEvent.Type.RESYNC) {
+                deliver(pending);
+                pending.clear();
+                for (ObjectEventListener listener : listeners) {
+                    try {
+                        listener.onResync(event.getBucketName());
+                    } catch (Exception e) {
+                        log.warn("{} 处理桶 {} 的 RESYNC 事件失败", listener.getClass().getSimpleName(), event.getBucketName(), e);
+                    }
+                }
+            } else {
+                String key = event.getBucketName() + "/" + event.getObjectName();
+                // 先删除再放入，顺序按最后一次出现的位置
+                pending.remove(key);
+                pending.put(key, event);
+            }
+        }
+        deliver(pending);
+    }
+
+    private void deliver(Map<String, ObjectEvent> pending) {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<ObjectEvent> events = new ArrayList<>(pending.values());
+        for (ObjectEventListener listener : listeners) {
+            try (OssSpan span = ossTracer.startSpan("notify." + listener.getClass().getSimpleName())) {
+                span.setAttribute("notify.events", events.size());
+                listener.onEvents(events);
+            } catch (Exception e) {
+                log.warn("{} 处理 {} 个事件失败", listener.getClass().getSimpleName(), events.size(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.minio.notify;
+
+import java.util.List;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectEventListener
+ * @description 对象变更事件的监听器，在 Spring 容器中注册即可。所有监听器在同一个线程中按 @Order 的顺序调用，
+ * 靠前的监听器（例如对象索引）处理完一批事件之后，后面的监听器才会收到这批事件
+ * @since 2023/5/2 15:10
+ */
+public interface ObjectEventListener {
+
+    /**
+     * 处理一批事件，同一个对象在一批中只保留最后一个事件，事件按发生的顺序排列
+     *
+     * @param events 事件，不包含 RESYNC
+     */
+    void onEvents(List<ObjectEvent> events);
+
+    /**
+     * 桶的事件可能有遗漏，缓存需要整体失效或者重建
+     *
+     * @param bucketName 桶名
+     */
+    default void onResync(String bucketName) {
+    }
+}
@@ -0,0 +1,25 @@
+package com.minio.notify;
+
+import java.util.function.Consumer;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectEventSource
+ * @description 对象变更事件的来源，默认是 MinIO 的桶通知，也可以替换为消息队列
+ * @since 2023/5/2 15:20
+ */
+public interface ObjectEventSource {
+
+    /**
+     * 开始接收事件，事件交给 sink 处理，sink 在队列满时阻塞
+     *
+     * @param sink 事件的接收方
+     */
+    void start(Consumer<ObjectEvent> sink);
+
+    /**
+     * 停止接收事件
+     */
+    void stop();
+}
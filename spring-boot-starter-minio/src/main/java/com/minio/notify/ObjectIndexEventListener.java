@@ -0,0 +1,63 @@
+package com.minio.notify;
+
+import com.minio.core.MinioTemplate;
+import com.minio.index.ObjectIndex;
+import com.minio.index.ObjectMeta;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.Ordered;
+
+import java.util.List;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ObjectIndexEventListener
+ * @description 用事件更新本地对象索引，排在所有监听器的最前面，后面的监听器可以直接查询最新的索引。
+ * 本应用自己的写入已经更新过索引，ETag 相同的创建事件会跳过
+ * @since 2023/5/2 16:30
+ */
+@Slf4j
+public class ObjectIndexEventListener implements ObjectEventListener, Ordered {
+
+    private final MinioTemplate minioTemplate;
+
+    public ObjectIndexEventListener(MinioTemplate minioTemplate) {
+        this.minioTemplate = minioTemplate;
+    }
+
+    @Override
+    public void onEvents(List<ObjectEvent> events) {
+        ObjectIndex objectIndex = minioTemplate.getObjectIndex();
+        if (objectIndex == null) {
+            return;
+        }
+        for (ObjectEvent event : events) {
+            if (event.getType() == ObjectEvent.Type.REMOVED) {
+                objectIndex.remove(event.getBucketName(), event.getObjectName());
+                continue;
+            }
+            ObjectMeta meta = ObjectMeta.of(event.getObjectName(), event.getSize(), event.getEtag(),
+                    event.getContentType(), event.getEventTime());
+            ObjectMeta current = objectIndex.get(event.getBucketName(), event.getObjectName());
+            if (current != null && current.getEtag() != null && current.getEtag().equals(meta.getEtag())) {
+                continue;
+            }
+            if (meta.getContentType() == null && current != null) {
+                meta.setContentType(current.getContentType());
+            }
+            objectIndex.put(event.getBucketName(), meta);
+        }
+    }
+
+    @Override
+    public void onResync(String bucketName) {
+        if (minioTemplate.getObjectIndex() != null) {
+            minioTemplate.rebuildIndex(bucketName);
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return Ordered.HIGHEST_PRECEDENCE;
+    }
+}
@@ -0,0 +1,175 @@
+package com.minio.pack;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname InMemoryPackIndex
+ * @description 保存在本地内存中的索引，用于单机测试，重启后丢失
+ * @since 2023/5/1 09:40
+ */
+public class InMemoryPackIndex implements PackIndex {
+
+    /**
+     * 桶名 -> 逻辑对象名 -> 位置
+     */
+    private final Map<String, TreeMap<String, PackEntry>> entries = new HashMap<>();
+
+    /**
+     * 桶名 -> pack 名 -> 统计信息
+     */
+    private final Map<String, Map<String, PackInfo>> packs = new HashMap<>();
+
+    /**
+     * 桶名 -> pack 名 -> 仍然有效的逻辑对象名
+     */
+    private final Map<String, Map<String, Set<String>>> members = new HashMap<>();
+
+    @Override
+    public synchronized Set<String> buckets() {
+        return new HashSet<>(packs.keySet());
+    }
+
+    @Override
+    public synchronized PackEntry get(String bucketName, String key) {
+        TreeMap<String, PackEntry> bucket = entries.get(bucketName);
+        return bucket == null ? null : bucket.get(key);
+    }
+
+    @Override
+    public synchronized List<String> keys(String bucketName, String prefix, int limit) {
+        List<String> keys = new ArrayList<>();
+        TreeMap<String, PackEntry> bucket = entries.get(bucketName);
+        if (bucket == null) {
+            return keys;
+        }
+        for (String key : bucket.tailMap(prefix, true).keySet()) {
+            if (!key.startsWith(prefix) || keys.size() >= limit) {
+                break;
+            }
+            keys.add(key);
+        }
+        return keys;
+    }
+
+    @Override
+    public synchronized void addPack(String bucketName, String pack, long size, Map<String, PackEntry> newEntries) {
+        long live = 0;
+        TreeMap<String, PackEntry> bucket = entries.computeIfAbsent(bucketName, b -> new TreeMap<>());
+        Map<String, PackInfo> bucketPacks = packs.computeIfAbsent(bucketName, b -> new HashMap<>());
+        bucketPacks.put(pack, new PackInfo(pack, size, 0));
+        for (Map.Entry<String, PackEntry> entry : newEntries.entrySet()) {
+            markDead(bucketName, entry.getKey(), bucket.put(entry.getKey(), entry.getValue()));
+            live += entry.getValue().getLength();
+        }
+        members(bucketName, pack).addAll(newEntries.keySet());
+        bucketPacks.get(pack).setDeadBytes(size - live);
+    }
+
+    @Override
+    public synchronized PackEntry remove(String bucketName, String key) {
+        TreeMap<String, PackEntry> bucket = entries.get(bucketName);
+        PackEntry previous = bucket == null ? null : bucket.remove(key);
+        markDead(bucketName, key, previous);
+        return previous;
+    }
+
+    @Override
+    public synchronized int movePack(String bucketName, String oldPack, Map<String, PackEntry> moved) {
+        TreeMap<String, PackEntry> bucket = entries.get(bucketName);
+        if (bucket == null) {
+            return 0;
+        }
+        int count = 0;
+        for (Map.Entry<String, PackEntry> entry : moved.entrySet()) {
+            PackEntry current = bucket.get(entry.getKey());
+            if (current != null && oldPack.equals(current.getPack())) {
+                bucket.put(entry.getKey(), entry.getValue());
+                members(bucketName, oldPack).remove(entry.getKey());
+                members(bucketName, entry.getValue().getPack()).add(entry.getKey());
+                PackInfo info = packs.get(bucketName).get(entry.getValue().getPack());
+                if (info != null) {
+                    info.setDeadBytes(info.getDeadBytes() - entry.getValue().getLength());
+                }
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized List<PackInfo> packs(String bucketName) {
+        List<PackInfo> result = new ArrayList<>();
+        Map<String, PackInfo> bucketPacks = packs.get(bucketName);
+        if (bucketPacks != null) {
+            for (PackInfo info : bucketPacks.values()) {
+                result.add(new PackInfo(info.getName(), info.getSize(), info.getDeadBytes()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Map<String, PackEntry> entries(String bucketName, String pack) {
+        Map<String, PackEntry> result = new LinkedHashMap<>();
+        TreeMap<String, PackEntry> bucket = entries.get(bucketName);
+        Map<String, Set<String>> bucketMembers = members.get(bucketName);
+        Set<String> keys = bucketMembers == null ? null : bucketMembers.get(pack);
+        if (bucket == null || keys == null) {
+            return result;
+        }
+        for (String key : keys) {
+            result.put(key, bucket.get(key));
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized void removePack(String bucketName, String pack) {
+        Map<String, PackInfo> bucketPacks = packs.get(bucketName);
+        if (bucketPacks != null) {
+            bucketPacks.remove(pack);
+        }
+        Map<String, Set<String>> bucketMembers = members.get(bucketName);
+        if (bucketMembers != null) {
+            bucketMembers.remove(pack);
+        }
+    }
+
+    @Override
+    public synchronized void clear(String bucketName) {
+        entries.remove(bucketName);
+        packs.remove(bucketName);
+        members.remove(bucketName);
+    }
+
+    private Set<String> members(String bucketName, String pack) {
+        return members.computeIfAbsent(bucketName, b -> new HashMap<>()).computeIfAbsent(pack, p -> new HashSet<>());
+    }
+
+    /**
+     * 被覆盖或者删除的对象所占的字节计入原来 pack 的无效字节
+     */
+    private void markDead(String bucketName, String key, PackEntry previous) {
+        if (previous == null) {
+            return;
+        }
+        Map<String, Set<String>> bucketMembers = members.get(bucketName);
+        Set<String> keys = bucketMembers == null ? null : bucketMembers.get(previous.getPack());
+        if (keys != null) {
+            keys.remove(key);
+        }
+        PackInfo info = packs.get(bucketName).get(previous.getPack());
+        if (info != null) {
+            info.setDeadBytes(info.getDeadBytes() + previous.getLength());
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.minio.pack;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname PackEntry
+ * @description 一个小对象在 pack 中的位置
+ * @since 2023/5/1 09:10
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PackEntry implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * pack 的对象名
+     */
+    private String pack;
+
+    /**
+     * 在 pack 中的起始位置
+     */
+    private long offset;
+
+    /**
+     * 字节数
+     */
+    private long length;
+
+    /**
+     * 对象的类型
+     */
+    private String contentType;
+
+    /**
+     * 写入时间
+     */
+    private long createdAt;
+}
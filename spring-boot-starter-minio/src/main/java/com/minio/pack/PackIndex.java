@@ -0,0 +1,106 @@
+package com.minio.pack;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname PackIndex
+ * @description 小对象的索引：逻辑对象名到 (pack, offset, length) 的映射，以及每个 pack 中无效字节的统计。
+ * 修改索引的方法需要是原子的，多个实例共用一个索引时由实现负责加锁；
+ * 默认的 {@link InMemoryPackIndex} 只保存在本地内存中，重启后丢失，生产环境需要提供持久化的实现
+ * @since 2023/5/1 09:20
+ */
+public interface PackIndex {
+
+    /**
+     * 有 pack 的桶
+     *
+     * @return 桶名
+     */
+    Set<String> buckets();
+
+    /**
+     * 查询对象的位置
+     *
+     * @param bucketName 桶名
+     * @param key        逻辑对象名
+     * @return 位置，不存在时为 null
+     */
+    PackEntry get(String bucketName, String key);
+
+    /**
+     * 按字典序列举对象名
+     *
+     * @param bucketName 桶名
+     * @param prefix     前缀
+     * @param limit      最多返回的数量
+     * @return 对象名
+     */
+    List<String> keys(String bucketName, String prefix, int limit);
+
+    /**
+     * 记录一个新上传的 pack 和其中的对象。同名的旧对象被覆盖，所占的字节计入旧 pack 的无效字节；
+     * 新 pack 中没有被 entries 引用的字节计入新 pack 的无效字节
+     *
+     * @param bucketName 桶名
+     * @param pack       pack 的对象名
+     * @param size       pack 的大小
+     * @param entries    pack 中的对象
+     */
+    void addPack(String bucketName, String pack, long size, Map<String, PackEntry> entries);
+
+    /**
+     * 删除对象，所占的字节计入所在 pack 的无效字节
+     *
+     * @param bucketName 桶名
+     * @param key        逻辑对象名
+     * @return 删除前的位置，不存在时为 null
+     */
+    PackEntry remove(String bucketName, String key);
+
+    /**
+     * 压缩时把对象从旧 pack 迁移到新 pack。只迁移仍然指向旧 pack 的对象，
+     * 迁移期间被删除或者覆盖的对象在新 pack 中保持为无效字节
+     *
+     * @param bucketName 桶名
+     * @param oldPack    旧 pack
+     * @param moved      对象在新 pack 中的位置，key 为逻辑对象名
+     * @return 迁移成功的数量
+     */
+    int movePack(String bucketName, String oldPack, Map<String, PackEntry> moved);
+
+    /**
+     * 查询桶中所有的 pack
+     *
+     * @param bucketName 桶名
+     * @return pack 的统计信息
+     */
+    List<PackInfo> packs(String bucketName);
+
+    /**
+     * 查询 pack 中仍然有效的对象
+     *
+     * @param bucketName 桶名
+     * @param pack       pack 的对象名
+     * @return key 为逻辑对象名
+     */
+    Map<String, PackEntry> entries(String bucketName, String pack);
+
+    /**
+     * 删除 pack 的记录，调用前其中的对象必须都已经迁移或者删除
+     *
+     * @param bucketName 桶名
+     * @param pack       pack 的对象名
+     */
+    void removePack(String bucketName, String pack);
+
+    /**
+     * 删除桶的全部索引，按 pack 目录重建之前调用
+     *
+     * @param bucketName 桶名
+     */
+    void clear(String bucketName);
+}
@@ -0,0 +1,37 @@
+package com.minio.pack;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname PackInfo
+ * @description 一个 pack 的大小以及其中已经删除或者被覆盖的字节数，压缩时据此挑选 pack
+ * @since 2023/5/1 09:15
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PackInfo implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * pack 的对象名
+     */
+    private String name;
+
+    /**
+     * pack 的大小
+     */
+    private long size;
+
+    /**
+     * 不再被索引引用的字节数
+     */
+    private long deadBytes;
+}
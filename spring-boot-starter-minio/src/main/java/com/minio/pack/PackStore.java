@@ -0,0 +1,597 @@
+package com.minio.pack;
+
+import cn.hutool.core.io.IoUtil;
+import com.minio.config.OSSProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import io.minio.Result;
+import io.minio.messages.Item;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname PackStore
+ * @description 小对象打包存储。同一个桶中并发写入的小对象追加到同一个内存中的 pack，pack 达到大小上限或者
+ * 第一个对象写入后等待 linger 时间就作为一个普通对象上传，上传完成并写入索引后所有写入方才返回（分组提交）。
+ * 读取时按索引中的 (pack, offset, length) 做范围读取。删除和覆盖只修改索引，删除记录作为墓碑写入下一个 pack 的目录，
+ * 压缩时把无效字节过多或者太小的 pack 中仍然有效的对象重写到新的 pack，旧 pack 延迟一段时间后删除，
+ * 避免正在读取旧位置的请求失败。每个 pack 都有一个 {@link PackToc} 目录，索引丢失时通过 {@link #rebuildIndex} 重建
+ * @since 2023/5/1 10:00
+ */
+@Slf4j
+public class PackStore {
+
+    /**
+     * 压缩之后旧 pack 的保留时间
+     */
+    private static final long DELETE_GRACE_SECONDS = 60;
+
+    private static final String PACK_CONTENT_TYPE = "application/octet-stream";
+
+    private final MinioTemplate minioTemplate;
+
+    private final PackIndex packIndex;
+
+    private final OSSProperties.Pack properties;
+
+    private final OssTracer ossTracer;
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    /**
+     * 每个桶正在写入的 pack
+     */
+    private final Map<String, OpenPack> openPacks = new HashMap<>();
+
+    /**
+     * 每个桶最后一个 pack 的提交结果，后面的 pack 等它提交之后再写入索引，保证同名对象按写入顺序覆盖
+     */
+    private final Map<String, CompletableFuture<Void>> lastCommits = new HashMap<>();
+
+    public PackStore(MinioTemplate minioTemplate, PackIndex packIndex, OSSProperties.Pack properties,
+                     OssTracer ossTracer) {
+        this.minioTemplate = minioTemplate;
+        this.packIndex = packIndex;
+        this.properties = properties;
+        this.ossTracer = ossTracer;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ScheduledThreadPoolExecutor(Math.max(1, properties.getThreads()), runnable -> {
+            Thread thread = new Thread(runnable, "pack-store-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+
+    @PostConstruct
+    public void init() {
+        long interval = properties.getCompactInterval().toMillis();
+        if (interval > 0) {
+            executor.scheduleWithFixedDelay(this::compactAll, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 上传正在写入的 pack，等待上传完成
+     */
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        List<OpenPack> open;
+        synchronized (openPacks) {
+            open = new ArrayList<>(openPacks.values());
+            openPacks.clear();
+        }
+        for (OpenPack pack : open) {
+            pack.timer.cancel(false);
+            executor.execute(() -> flush(pack));
+        }
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 写入对象，pack 上传并写入索引之后返回
+     *
+     * @param bucketName  桶名
+     * @param key         逻辑对象名
+     * @param data        内容
+     * @param contentType 对象的类型
+     */
+    @SneakyThrows
+    public void putObject(String bucketName, String key, byte[] data, String contentType) {
+        if (data.length > properties.getMaxEntrySize().toBytes()) {
+            putDirect(new ByteArrayInputStream(data), data.length, bucketName, key, contentType);
+            return;
+        }
+        OpenPack pack;
+        synchronized (openPacks) {
+            pack = openPack(bucketName);
+            pack.tombstones.remove(key);
+            pack.entries.put(key, new PackEntry(pack.name, pack.data.size(), data.length, contentType,
+                    System.currentTimeMillis()));
+            pack.data.write(data, 0, data.length);
+            if (pack.data.size() >= properties.getPackSize().toBytes()) {
+                openPacks.remove(bucketName);
+                pack.timer.cancel(false);
+                OpenPack full = pack;
+                executor.execute(() -> flush(full));
+            }
+        }
+        awaitCommit(pack);
+    }
+
+    /**
+     * 写入对象，不超过 maxEntrySize 时读入内存写入 pack，否则直接作为普通对象上传
+     *
+     * @param inputStream 输入流，由调用方关闭
+     * @param size        对象大小
+     * @param bucketName  桶名
+     * @param key         逻辑对象名
+     * @param contentType 对象的类型
+     */
+    public void putObject(InputStream inputStream, long size, String bucketName, String key, String contentType) {
+        if (size > properties.getMaxEntrySize().toBytes()) {
+            putDirect(inputStream, size, bucketName, key, contentType);
+        } else {
+            putObject(bucketName, key, IoUtil.readBytes(inputStream, (int) size), contentType);
+        }
+    }
+
+    /**
+     * 查询对象在 pack 中的位置
+     *
+     * @param bucketName 桶名
+     * @param key        逻辑对象名
+     * @return 位置，不在 pack 中时为 null
+     */
+    public PackEntry statObject(String bucketName, String key) {
+        return packIndex.get(bucketName, key);
+    }
+
+    /**
+     * 读取对象，不在 pack 中时按普通对象读取
+     *
+     * @param bucketName 桶名
+     * @param key        逻辑对象名
+     * @return 输入流
+     */
+    public InputStream getObject(String bucketName, String key) {
+        PackEntry entry = packIndex.get(bucketName, key);
+        if (entry == null) {
+            return minioTemplate.getObject(bucketName, key);
+        }
+        return minioTemplate.getObject(bucketName, entry.getPack(), entry.getOffset(), entry.getLength());
+    }
+
+    /**
+     * 删除对象，在 pack 中时写入墓碑并修改索引，空间在压缩时回收
+     *
+     * @param bucketName 桶名
+     * @param key        逻辑对象名
+     */
+    public void removeObject(String bucketName, String key) {
+        if (!tombstone(bucketName, key)) {
+            minioTemplate.deleteObject(bucketName, key);
+        }
+    }
+
+    /**
+     * 按字典序列举 pack 中的对象，不需要访问 MinIO
+     *
+     * @param bucketName 桶名
+     * @param prefix     前缀
+     * @param limit      最多返回的数量
+     * @return 逻辑对象名
+     */
+    public List<String> listObjects(String bucketName, String prefix, int limit) {
+        return packIndex.keys(bucketName, prefix == null ? "" : prefix, limit);
+    }
+
+    /**
+     * 按 pack 目录重建一个桶的索引，同名对象取时间最新的记录，最新的记录是墓碑时对象已经删除。
+     * 重建期间这个桶不能有写入和压缩
+     *
+     * @param bucketName 桶名
+     * @return 重建后索引中的对象数量
+     */
+    @SneakyThrows
+    public int rebuildIndex(String bucketName) {
+        try (OssSpan span = ossTracer.startSpan("pack.rebuild")) {
+            span.setAttribute("minio.bucket", bucketName);
+            Map<String, PackToc> tocs = new LinkedHashMap<>();
+            for (Result<Item> result : minioTemplate.listObjects(bucketName, properties.getPrefix(), true)) {
+                String name = result.get().objectName();
+                if (name.endsWith(PackToc.SUFFIX)) {
+                    String pack = name.substring(0, name.length() - PackToc.SUFFIX.length());
+                    try (InputStream in = minioTemplate.getObject(bucketName, name)) {
+                        tocs.put(pack, PackToc.read(pack, in));
+                    }
+                }
+            }
+
+            // 逻辑对象名 -> 最新的记录
+            Map<String, Latest> latest = new HashMap<>();
+            for (PackToc toc : tocs.values()) {
+                toc.entries.forEach((key, entry) -> keepLatest(latest, key, new Latest(toc, entry.getCreatedAt(), false)));
+                toc.tombstones.forEach((key, deletedAt) -> keepLatest(latest, key, new Latest(toc, deletedAt, true)));
+            }
+
+            packIndex.clear(bucketName);
+            int count = 0;
+            List<Map.Entry<String, PackToc>> ordered = new ArrayList<>(tocs.entrySet());
+            ordered.sort(Comparator.comparingLong(entry -> entry.getValue().createdAt));
+            for (Map.Entry<String, PackToc> entry : ordered) {
+                PackToc toc = entry.getValue();
+                Map<String, PackEntry> live = new LinkedHashMap<>();
+                toc.entries.forEach((key, packEntry) -> {
+                    Latest record = latest.get(key);
+                    if (record.toc == toc && !record.deleted) {
+                        live.put(key, packEntry);
+                    }
+                });
+                packIndex.addPack(bucketName, entry.getKey(), toc.size, live);
+                count += live.size();
+            }
+            span.setAttribute("pack.packs", tocs.size()).setAttribute("pack.entries", count);
+            log.info("按 {} 个 pack 目录重建了桶 {} 的索引，{} 个对象", tocs.size(), bucketName, count);
+            return count;
+        }
+    }
+
+    /**
+     * 压缩所有桶
+     */
+    public void compactAll() {
+        for (String bucketName : packIndex.buckets()) {
+            try {
+                compact(bucketName);
+            } catch (Exception e) {
+                log.warn("压缩桶 {} 中的 pack 失败", bucketName, e);
+            }
+        }
+    }
+
+    /**
+     * 压缩一个桶：无效字节占比达到阈值或者有效字节不到 packSize 1/4 的 pack，
+     * 按顺序把其中有效的对象重写到新的 pack，每个新 pack 不超过 packSize
+     *
+     * @param bucketName 桶名
+     * @return 被重写的旧 pack 数量
+     */
+    @SneakyThrows
+    public int compact(String bucketName) {
+        long packSize = properties.getPackSize().toBytes();
+        List<PackInfo> candidates = new ArrayList<>();
+        for (PackInfo info : packIndex.packs(bucketName)) {
+            long live = info.getSize() - info.getDeadBytes();
+            if (info.getDeadBytes() >= info.getSize() * properties.getCompactThreshold() || live < packSize / 4) {
+                candidates.add(info);
+            }
+        }
+        // pack 名中带有日期，按名字排序可以让写入时间相近的对象留在一起
+        candidates.sort(Comparator.comparing(PackInfo::getName));
+
+        int rewritten = 0;
+        List<PackInfo> group = new ArrayList<>();
+        long groupLive = 0;
+        for (PackInfo info : candidates) {
+            long live = info.getSize() - info.getDeadBytes();
+            if (!group.isEmpty() && groupLive + live > packSize) {
+                rewritten += rewrite(bucketName, group);
+                group.clear();
+                groupLive = 0;
+            }
+            group.add(info);
+            groupLive += live;
+        }
+        rewritten += rewrite(bucketName, group);
+        return rewritten;
+    }
+
+    /**
+     * 把一组旧 pack 中有效的对象写入一个新的 pack
+     */
+    private int rewrite(String bucketName, List<PackInfo> group) throws IOException {
+        // 只有一个没有无效字节的 pack 时重写没有意义
+        if (group.isEmpty() || (group.size() == 1 && group.get(0).getDeadBytes() == 0)) {
+            return 0;
+        }
+        try (OssSpan span = ossTracer.startSpan("pack.compact")) {
+            span.setAttribute("minio.bucket", bucketName).setAttribute("pack.sources", group.size());
+            String newPack = newPackName();
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            Map<String, Map<String, PackEntry>> movedByPack = new LinkedHashMap<>();
+            Map<String, PackEntry> tocEntries = new LinkedHashMap<>();
+            Map<String, Long> tombstones = new LinkedHashMap<>();
+            for (PackInfo info : group) {
+                // 旧目录中的墓碑可能还要遮住更早的 pack 中的同名对象，对象重新写入之前一直保留
+                readToc(bucketName, info.getName()).tombstones.forEach((key, deletedAt) -> {
+                    if (packIndex.get(bucketName, key) == null) {
+                        tombstones.merge(key, deletedAt, Math::max);
+                    }
+                });
+                List<Map.Entry<String, PackEntry>> live = new ArrayList<>(packIndex.entries(bucketName, info.getName()).entrySet());
+                if (live.isEmpty()) {
+                    continue;
+                }
+                live.sort(Comparator.comparingLong(entry -> entry.getValue().getOffset()));
+                Map<String, PackEntry> moved = new LinkedHashMap<>();
+                try (DataInputStream in = new DataInputStream(minioTemplate.getObject(bucketName, info.getName()))) {
+                    long position = 0;
+                    for (Map.Entry<String, PackEntry> entry : live) {
+                        PackEntry old = entry.getValue();
+                        skipFully(in, old.getOffset() - position);
+                        byte[] bytes = new byte[(int) old.getLength()];
+                        in.readFully(bytes);
+                        position = old.getOffset() + old.getLength();
+                        moved.put(entry.getKey(), new PackEntry(newPack, data.size(), old.getLength(),
+                                old.getContentType(), old.getCreatedAt()));
+                        data.write(bytes);
+                    }
+                }
+                movedByPack.put(info.getName(), moved);
+                tocEntries.putAll(moved);
+            }
+
+            int movedCount = 0;
+            if (data.size() > 0 || !tombstones.isEmpty()) {
+                byte[] bytes = data.toByteArray();
+                upload(bucketName, newPack, bytes, new PackToc(System.currentTimeMillis(), bytes.length, tocEntries,
+                        tombstones));
+                // 先全部记为无效字节，迁移成功的对象再减掉
+                packIndex.addPack(bucketName, newPack, bytes.length, Collections.emptyMap());
+                for (Map.Entry<String, Map<String, PackEntry>> entry : movedByPack.entrySet()) {
+                    movedCount += packIndex.movePack(bucketName, entry.getKey(), entry.getValue());
+                }
+            }
+            for (PackInfo info : group) {
+                packIndex.removePack(bucketName, info.getName());
+                executor.schedule(() -> {
+                    // 先删目录，目录存在时 pack 一定存在
+                    minioTemplate.deleteObject(bucketName, PackToc.tocName(info.getName()));
+                    minioTemplate.deleteObject(bucketName, info.getName());
+                }, DELETE_GRACE_SECONDS, TimeUnit.SECONDS);
+            }
+            span.setAttribute("pack.moved", movedCount).setAttribute("pack.size", data.size());
+            log.info("桶 {} 中的 {} 个 pack 压缩为 {}，迁移了 {} 个对象，{} 字节", bucketName, group.size(),
+                    data.size() > 0 ? newPack : "空", movedCount, data.size());
+            return group.size();
+        }
+    }
+
+    /**
+     * 大对象直接上传，同名的小对象写入墓碑并从索引中删除
+     */
+    private void putDirect(InputStream inputStream, long size, String bucketName, String key, String contentType) {
+        minioTemplate.putObjectStreaming(inputStream, size, bucketName, key, contentType);
+        tombstone(bucketName, key);
+    }
+
+    /**
+     * 对象在索引或者正在写入的 pack 中时，把墓碑写入正在写入的 pack，等待提交
+     *
+     * @return 对象不在 pack 中时为 false
+     */
+    @SneakyThrows
+    private boolean tombstone(String bucketName, String key) {
+        PackEntry indexed = packIndex.get(bucketName, key);
+        OpenPack pack;
+        synchronized (openPacks) {
+            OpenPack open = openPacks.get(bucketName);
+            PackEntry pending = open == null ? null : open.entries.get(key);
+            if (indexed == null && pending == null) {
+                return false;
+            }
+            // 删除时间要晚于被删除的记录，重建时才能遮住它
+            long deletedAt = System.currentTimeMillis();
+            for (PackEntry entry : new PackEntry[]{indexed, pending}) {
+                if (entry != null) {
+                    deletedAt = Math.max(deletedAt, entry.getCreatedAt() + 1);
+                }
+            }
+            pack = openPack(bucketName);
+            pack.entries.remove(key);
+            pack.tombstones.put(key, deletedAt);
+        }
+        awaitCommit(pack);
+        return true;
+    }
+
+    /**
+     * 桶正在写入的 pack，没有时新建一个，linger 时间后上传。调用方持有 openPacks 的锁
+     */
+    private OpenPack openPack(String bucketName) {
+        OpenPack pack = openPacks.get(bucketName);
+        if (pack == null) {
+            pack = new OpenPack(bucketName, newPackName(),
+                    lastCommits.getOrDefault(bucketName, CompletableFuture.completedFuture(null)));
+            lastCommits.put(bucketName, pack.committed);
+            openPacks.put(bucketName, pack);
+            OpenPack lingering = pack;
+            pack.timer = executor.schedule(() -> seal(lingering), properties.getLinger().toMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+        return pack;
+    }
+
+    private static void awaitCommit(OpenPack pack) throws Throwable {
+        try {
+            pack.committed.get();
+        } catch (ExecutionException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * linger 时间到了，上传还没有写满的 pack
+     */
+    private void seal(OpenPack pack) {
+        synchronized (openPacks) {
+            if (openPacks.get(pack.bucketName) != pack) {
+                // 已经写满上传了
+                return;
+            }
+            openPacks.remove(pack.bucketName);
+        }
+        flush(pack);
+    }
+
+    private void flush(OpenPack pack) {
+        try (OssSpan span = ossTracer.startSpan("pack.flush")) {
+            byte[] bytes = pack.data.toByteArray();
+            span.setAttribute("minio.bucket", pack.bucketName)
+                    .setAttribute("minio.object", pack.name)
+                    .setAttribute("pack.entries", pack.entries.size());
+            upload(pack.bucketName, pack.name, bytes, new PackToc(System.currentTimeMillis(), bytes.length,
+                    pack.entries, pack.tombstones));
+            try {
+                pack.previous.get();
+            } catch (ExecutionException ignored) {
+                // 前一个 pack 失败不影响这一个
+            }
+            packIndex.addPack(pack.bucketName, pack.name, bytes.length, pack.entries);
+            for (String key : pack.tombstones.keySet()) {
+                packIndex.remove(pack.bucketName, key);
+            }
+            pack.committed.complete(null);
+        } catch (Throwable e) {
+            log.warn("上传 pack {}/{} 失败", pack.bucketName, pack.name, e);
+            pack.committed.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 先上传 pack 再上传目录，目录存在时 pack 一定存在
+     */
+    private void upload(String bucketName, String pack, byte[] bytes, PackToc toc) throws IOException {
+        minioTemplate.putObjectStreaming(new ByteArrayInputStream(bytes), bytes.length, bucketName, pack,
+                PACK_CONTENT_TYPE);
+        byte[] tocBytes = toc.toBytes();
+        minioTemplate.putObjectStreaming(new ByteArrayInputStream(tocBytes), tocBytes.length, bucketName,
+                PackToc.tocName(pack), PACK_CONTENT_TYPE);
+    }
+
+    /**
+     * 读取 pack 的目录，没有目录时返回空目录
+     */
+    private PackToc readToc(String bucketName, String pack) throws IOException {
+        InputStream in;
+        try {
+            in = minioTemplate.getObject(bucketName, PackToc.tocName(pack));
+        } catch (Exception e) {
+            log.debug("pack {}/{} 没有目录", bucketName, pack, e);
+            return new PackToc(0, 0, Collections.emptyMap(), Collections.emptyMap());
+        }
+        try (InputStream toc = in) {
+            return PackToc.read(pack, toc);
+        }
+    }
+
+    /**
+     * 同名对象的记录按 (时间, 目录写入时间) 比较，保留最新的
+     */
+    private static void keepLatest(Map<String, Latest> latest, String key, Latest record) {
+        Latest current = latest.get(key);
+        if (current == null || record.time > current.time
+                || (record.time == current.time && record.toc.createdAt >= current.toc.createdAt)) {
+            latest.put(key, record);
+        }
+    }
+
+    private String newPackName() {
+        return properties.getPrefix() + new SimpleDateFormat("yyyy/MM/dd/").format(new Date()) + UUID.randomUUID() + ".pack";
+    }
+
+    private static void skipFully(InputStream in, long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException();
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+
+    /**
+     * 重建索引时同名对象最新的记录
+     */
+    private static final class Latest {
+
+        private final PackToc toc;
+
+        private final long time;
+
+        private final boolean deleted;
+
+        Latest(PackToc toc, long time, boolean deleted) {
+            this.toc = toc;
+            this.time = time;
+            this.deleted = deleted;
+        }
+    }
+
+    /**
+     * 正在内存中写入的 pack
+     */
+    private static final class OpenPack {
+
+        private final String bucketName;
+
+        private final String name;
+
+        private final ByteArrayOutputStream data = new ByteArrayOutputStream();
+
+        /**
+         * 同名对象只保留最后一次写入，前面写入的字节成为无效字节
+         */
+        private final Map<String, PackEntry> entries = new LinkedHashMap<>();
+
+        /**
+         * 逻辑对象名 -> 删除时间，和 entries 中的对象名不重复
+         */
+        private final Map<String, Long> tombstones = new LinkedHashMap<>();
+
+        private final CompletableFuture<Void> previous;
+
+        private final CompletableFuture<Void> committed = new CompletableFuture<>();
+
+        private ScheduledFuture<?> timer;
+
+        OpenPack(String bucketName, String name, CompletableFuture<Void> previous) {
+            this.bucketName = bucketName;
+            this.name = name;
+            this.previous = previous;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.minio.pack;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname PackToc
+ * @description pack 的目录，作为 {pack}.toc 和 pack 一起上传，索引丢失时按目录重建。
+ * 目录中记录 pack 里每个对象的位置，以及写入这个 pack 期间被删除或者改为直接上传的对象（墓碑），
+ * 重建时同名对象取时间最新的记录，时间相同时取目录写入时间较晚的
+ * @since 2023/5/1 10:30
+ */
+final class PackToc {
+
+    static final String SUFFIX = ".toc";
+
+    private static final int VERSION = 1;
+
+    /**
+     * 目录写入的时间
+     */
+    final long createdAt;
+
+    /**
+     * pack 的大小
+     */
+    final long size;
+
+    /**
+     * 逻辑对象名 -> 位置
+     */
+    final Map<String, PackEntry> entries;
+
+    /**
+     * 逻辑对象名 -> 删除时间
+     */
+    final Map<String, Long> tombstones;
+
+    PackToc(long createdAt, long size, Map<String, PackEntry> entries, Map<String, Long> tombstones) {
+        this.createdAt = createdAt;
+        this.size = size;
+        this.entries = entries;
+        this.tombstones = tombstones;
+    }
+
+    static String tocName(String pack) {
+        return pack + SUFFIX;
+    }
+
+    byte[] toBytes() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(VERSION);
+        out.writeLong(createdAt);
+        out.writeLong(size);
+        out.writeInt(entries.size());
+        for (Map.Entry<String, PackEntry> entry : entries.entrySet()) {
+            PackEntry value = entry.getValue();
+            out.writeUTF(entry.getKey());
+            out.writeLong(value.getOffset());
+            out.writeLong(value.getLength());
+            out.writeUTF(value.getContentType() == null ? "" : value.getContentType());
+            out.writeLong(value.getCreatedAt());
+        }
+        out.writeInt(tombstones.size());
+        for (Map.Entry<String, Long> tombstone : tombstones.entrySet()) {
+            out.writeUTF(tombstone.getKey());
+            out.writeLong(tombstone.getValue());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static PackToc read(String pack, InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("不支持的 pack 目录版本 " + version + "：" + pack);
+        }
+        long createdAt = in.readLong();
+        long size = in.readLong();
+        int entryCount = in.readInt();
+        Map<String, PackEntry> entries = new LinkedHashMap<>();
+        for (int i = 0; i < entryCount; i++) {
+            String key = in.readUTF();
+            long offset = in.readLong();
+            long length = in.readLong();
+            String contentType = in.readUTF();
+            entries.put(key, new PackEntry(pack, offset, length, contentType.isEmpty() ? null : contentType,
+                    in.readLong()));
+        }
+        int tombstoneCount = in.readInt();
+        Map<String, Long> tombstones = new LinkedHashMap<>();
+        for (int i = 0; i < tombstoneCount; i++) {
+            tombstones.put(in.readUTF(), in.readLong());
+        }
+        return new PackToc(createdAt, size, entries, tombstones);
+    }
+}
@@ -0,0 +1,124 @@
+package com.minio.replica;
+
+import cn.hutool.core.io.IoUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname InMemoryReplicaBackend
+ * @description 保存在内存中的副本，用于测试和本地开发，可以模拟延迟和不可用
+ * @since 2023/5/3 14:20
+ */
+public class InMemoryReplicaBackend implements ReplicaBackend {
+
+    private final String name;
+
+    private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+    private final Map<String, ReplicaObjectInfo> infos = new ConcurrentHashMap<>();
+
+    private volatile long delayMillis;
+
+    private volatile boolean available = true;
+
+    public InMemoryReplicaBackend(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 每次调用前等待的时间
+     *
+     * @param delayMillis 毫秒
+     */
+    public void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * 不可用时所有调用都抛出 IOException
+     *
+     * @param available 是否可用
+     */
+    public void setAvailable(boolean available) {
+        this.available = available;
+    }
+
+    public boolean contains(String bucketName, String objectName) {
+        return objects.containsKey(bucketName + "/" + objectName);
+    }
+
+    @Override
+    public void putObject(String bucketName, String objectName, InputStream inputStream, long size, String contentType,
+                          Map<String, String> userMetadata) throws Exception {
+        simulate();
+        byte[] data = IoUtil.readBytes(inputStream, false);
+        if (size >= 0 && data.length != size) {
+            throw new IOException("数据长度 " + data.length + " 与 " + size + " 不一致");
+        }
+        simulate();
+        infos.put(bucketName + "/" + objectName, new ReplicaObjectInfo(data.length, contentType,
+                userMetadata == null ? Collections.emptyMap() : new HashMap<>(userMetadata)));
+        objects.put(bucketName + "/" + objectName, data);
+    }
+
+    @Override
+    public InputStream getObject(String bucketName, String objectName, long offset, long length) throws Exception {
+        byte[] data = get(bucketName, objectName);
+        int end = length < 0 ? data.length : (int) Math.min(data.length, offset + length);
+        return new ByteArrayInputStream(Arrays.copyOfRange(data, (int) offset, end));
+    }
+
+    @Override
+    public ReplicaObjectInfo statObject(String bucketName, String objectName) throws Exception {
+        get(bucketName, objectName);
+        return infos.get(bucketName + "/" + objectName);
+    }
+
+    @Override
+    public void removeObject(String bucketName, String objectName) throws Exception {
+        simulate();
+        objects.remove(bucketName + "/" + objectName);
+        infos.remove(bucketName + "/" + objectName);
+    }
+
+    /**
+     * 对象不存在时抛出的 FileNotFoundException 不计为副本的失败
+     */
+    @Override
+    public boolean isReplicaFailure(Exception e) {
+        return !(e instanceof FileNotFoundException);
+    }
+
+    private byte[] get(String bucketName, String objectName) throws Exception {
+        simulate();
+        byte[] data = objects.get(bucketName + "/" + objectName);
+        if (data == null) {
+            throw new FileNotFoundException(name + " 中没有 " + bucketName + "/" + objectName);
+        }
+        return data;
+    }
+
+    private void simulate() throws Exception {
+        if (delayMillis > 0) {
+            Thread.sleep(delayMillis);
+        }
+        if (!available) {
+            throw new IOException(name + " 不可用");
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.minio.replica;
+
+import com.minio.http.MediaType;
+import io.minio.BucketExistsArgs;
+import io.minio.GetObjectArgs;
+import io.minio.MakeBucketArgs;
+import io.minio.MinioClient;
+import io.minio.ObjectWriteArgs;
+import io.minio.PutObjectArgs;
+import io.minio.RemoveObjectArgs;
+import io.minio.StatObjectArgs;
+import io.minio.StatObjectResponse;
+import io.minio.errors.ErrorResponseException;
+import okhttp3.Response;
+import org.springframework.util.ObjectUtils;
+
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname MinioReplicaBackend
+ * @description 通过 MinioClient 访问的一个 MinIO 部署
+ * @since 2023/5/3 14:10
+ */
+public class MinioReplicaBackend implements ReplicaBackend {
+
+    private static final String BUCKET_ALREADY_OWNED_BY_YOU = "BucketAlreadyOwnedByYou";
+
+    private final String name;
+
+    private final MinioClient minioClient;
+
+    /**
+     * 已经确认存在的桶
+     */
+    private final Set<String> buckets = ConcurrentHashMap.newKeySet();
+
+    public MinioReplicaBackend(String name, MinioClient minioClient) {
+        this.name = name;
+        this.minioClient = minioClient;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void putObject(String bucketName, String objectName, InputStream inputStream, long size, String contentType,
+                          Map<String, String> userMetadata) throws Exception {
+        ensureBucket(bucketName);
+        minioClient.putObject(PutObjectArgs.builder()
+                .bucket(bucketName)
+                .object(objectName)
+                .stream(inputStream, size, size < 0 ? ObjectWriteArgs.MIN_MULTIPART_SIZE : -1)
+                .contentType(ObjectUtils.isEmpty(contentType) ? MediaType.APPLICATION_OCTET_STREAM_VALUE : contentType)
+                .userMetadata(userMetadata == null ? Collections.emptyMap() : userMetadata)
+                .build());
+    }
+
+    @Override
+    public InputStream getObject(String bucketName, String objectName, long offset, long length) throws Exception {
+        GetObjectArgs.Builder builder = GetObjectArgs.builder().bucket(bucketName).object(objectName).offset(offset);
+        if (length >= 0) {
+            builder.length(length);
+        }
+        return minioClient.getObject(builder.build());
+    }
+
+    @Override
+    public ReplicaObjectInfo statObject(String bucketName, String objectName) throws Exception {
+        StatObjectResponse stat = minioClient.statObject(StatObjectArgs.builder()
+                .bucket(bucketName)
+                .object(objectName)
+                .build());
+        return new ReplicaObjectInfo(stat.size(), stat.contentType(), stat.userMetadata());
+    }
+
+    @Override
+    public void removeObject(String bucketName, String objectName) throws Exception {
+        minioClient.removeObject(RemoveObjectArgs.builder().bucket(bucketName).object(objectName).build());
+    }
+
+    /**
+     * MinIO 返回了 4xx 错误响应（例如 NoSuchKey）时部署本身是正常的
+     */
+    @Override
+    public boolean isReplicaFailure(Exception e) {
+        if (e instanceof ErrorResponseException) {
+            Response response = ((ErrorResponseException) e).response();
+            return response == null || response.code() >= 500;
+        }
+        return true;
+    }
+
+    private void ensureBucket(String bucketName) throws Exception {
+        if (buckets.contains(bucketName)) {
+            return;
+        }
+        if (!minioClient.bucketExists(BucketExistsArgs.builder().bucket(bucketName).build())) {
+            try {
+                minioClient.makeBucket(MakeBucketArgs.builder().bucket(bucketName).build());
+            } catch (ErrorResponseException e) {
+                if (!BUCKET_ALREADY_OWNED_BY_YOU.equals(e.errorResponse().code())) {
+                    throw e;
+                }
+            }
+        }
+        buckets.add(bucketName);
+    }
+}
@@ -0,0 +1,205 @@
+package com.minio.replica;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname RepairJournal
+ * @description 等待修复的副本的日志，进程重启后继续修复。每次加入和完成修复各追加一条记录，
+ * 记录数超过等待修复数的两倍时只保留等待中的记录重写日志
+ * @since 2023/5/3 14:25
+ */
+@Slf4j
+final class RepairJournal implements Closeable {
+
+    private static final byte OP_ADD = 1;
+
+    private static final byte OP_DONE = 2;
+
+    /**
+     * 记录数少于这个值时不重写
+     */
+    private static final long MIN_COMPACT_RECORDS = 1000;
+
+    private final File file;
+
+    /**
+     * 等待修复的记录，按加入的顺序
+     */
+    private final Map<Long, Entry> pending = new LinkedHashMap<>();
+
+    private DataOutputStream out;
+
+    private long records;
+
+    private long maxId;
+
+    RepairJournal(File file) throws IOException {
+        this.file = file;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("无法创建目录 " + parent);
+        }
+        replay();
+        compact();
+    }
+
+    /**
+     * 重放日志之后仍在等待修复的记录
+     */
+    synchronized List<Entry> pending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    synchronized long maxId() {
+        return maxId;
+    }
+
+    synchronized void add(Entry entry) {
+        pending.put(entry.id, entry);
+        maxId = Math.max(maxId, entry.id);
+        append(OP_ADD, entry);
+    }
+
+    synchronized void done(long id) {
+        Entry entry = pending.remove(id);
+        if (entry != null) {
+            append(OP_DONE, entry);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (out != null) {
+            out.close();
+            out = null;
+        }
+    }
+
+    private void append(byte op, Entry entry) {
+        if (out == null) {
+            return;
+        }
+        try {
+            write(out, op, entry);
+            out.flush();
+        } catch (IOException e) {
+            // 日志写失败只影响重启后的修复
+            log.warn("写副本修复日志失败", e);
+        }
+        if (++records >= Math.max(MIN_COMPACT_RECORDS, pending.size() * 2L)) {
+            compact();
+        }
+    }
+
+    /**
+     * 只保留等待中的记录重写日志
+     */
+    private void compact() {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            try (DataOutputStream tempOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                for (Entry entry : pending.values()) {
+                    write(tempOut, OP_ADD, entry);
+                }
+            }
+            if (out != null) {
+                out.close();
+            }
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+            records = pending.size();
+        } catch (IOException e) {
+            log.warn("重写副本修复日志失败", e);
+        }
+    }
+
+    /**
+     * 最后一条记录不完整（写到一半时进程退出）时忽略它
+     */
+    private void replay() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                long id = in.readLong();
+                Entry entry = new Entry(id, in.readUTF(), in.readUTF(), in.readUTF(), in.readBoolean());
+                if (op == OP_ADD) {
+                    pending.put(id, entry);
+                } else if (op == OP_DONE) {
+                    pending.remove(id);
+                } else {
+                    throw new IOException("副本修复日志已损坏: " + file);
+                }
+                maxId = Math.max(maxId, id);
+            }
+        } catch (EOFException e) {
+            log.warn("副本修复日志 {} 的最后一条记录不完整，已忽略", file);
+        }
+    }
+
+    private static void write(DataOutputStream out, byte op, Entry entry) throws IOException {
+        out.writeByte(op);
+        out.writeLong(entry.id);
+        out.writeUTF(entry.replica);
+        out.writeUTF(entry.bucketName);
+        out.writeUTF(entry.objectName);
+        out.writeBoolean(entry.delete);
+    }
+
+    /**
+     * 一条修复记录
+     */
+    static final class Entry {
+
+        final long id;
+
+        /**
+         * 需要修复的副本的名称
+         */
+        final String replica;
+
+        final String bucketName;
+
+        final String objectName;
+
+        /**
+         * true 表示需要删除，false 表示需要从其他副本复制
+         */
+        final boolean delete;
+
+        Entry(long id, String replica, String bucketName, String objectName, boolean delete) {
+            this.id = id;
+            this.replica = replica;
+            this.bucketName = bucketName;
+            this.objectName = objectName;
+            this.delete = delete;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.minio.replica;
+
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ReplicaBackend
+ * @description 一个 MinIO 部署（副本）上的对象操作
+ * @since 2023/5/3 14:00
+ */
+public interface ReplicaBackend {
+
+    /**
+     * 副本的名称，用于日志和监控
+     *
+     * @return 名称
+     */
+    String getName();
+
+    /**
+     * 上传对象，桶不存在时创建
+     *
+     * @param bucketName   桶名
+     * @param objectName   对象名
+     * @param inputStream  输入流
+     * @param size         大小，未知时为 -1
+     * @param contentType  对象的类型，可以为空
+     * @param userMetadata 自定义元数据，key 不带 x-amz-meta- 前缀，可以为空
+     * @throws Exception 上传失败
+     */
+    void putObject(String bucketName, String objectName, InputStream inputStream, long size, String contentType,
+                   Map<String, String> userMetadata) throws Exception;
+
+    /**
+     * 读取对象的一个范围
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @param offset     起始位置
+     * @param length     长度，-1 表示到末尾
+     * @return 输入流
+     * @throws Exception 读取失败，对象不存在时也抛出异常
+     */
+    InputStream getObject(String bucketName, String objectName, long offset, long length) throws Exception;
+
+    /**
+     * 查询对象的大小、类型和自定义元数据
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @return 对象信息
+     * @throws Exception 查询失败，对象不存在时也抛出异常
+     */
+    ReplicaObjectInfo statObject(String bucketName, String objectName) throws Exception;
+
+    /**
+     * 删除对象，对象不存在时不抛出异常
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @throws Exception 删除失败
+     */
+    void removeObject(String bucketName, String objectName) throws Exception;
+
+    /**
+     * 异常是否说明副本本身不可用（网络错误、服务端 5xx），只有这些异常计入副本的健康状况，
+     * 对象不存在等请求本身的错误不计入
+     *
+     * @param e 调用副本时抛出的异常
+     * @return 是否计为副本的失败
+     */
+    default boolean isReplicaFailure(Exception e) {
+        return true;
+    }
+}
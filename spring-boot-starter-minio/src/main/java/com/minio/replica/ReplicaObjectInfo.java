@@ -0,0 +1,35 @@
+package com.minio.replica;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ReplicaObjectInfo
+ * @description 副本上一个对象的大小、类型和自定义元数据，修复时原样复制到其他副本
+ * @since 2023/5/3 14:05
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicaObjectInfo {
+
+    /**
+     * 大小
+     */
+    private long size;
+
+    /**
+     * 对象的类型
+     */
+    private String contentType;
+
+    /**
+     * 自定义元数据，key 不带 x-amz-meta- 前缀，例如加密对象的密钥信息
+     */
+    private Map<String, String> userMetadata;
+}
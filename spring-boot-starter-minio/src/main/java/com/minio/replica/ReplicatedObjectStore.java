@@ -0,0 +1,811 @@
+package com.minio.replica;
+
+import com.minio.config.OSSProperties;
+import com.minio.trace.OssSpan;
+import com.minio.trace.OssTracer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.ObjectUtils;
+
+import javax.annotation.PreDestroy;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname ReplicatedObjectStore
+ * @description 把对象同步写入多个 MinIO 部署，一个部署故障时上传和读取仍然可用。
+ * 写入时输入流只读一次，按块分发给所有副本，达到写入法定数即成功，失败的副本在后台从健康副本复制修复。
+ * 停顿超过 writeStallTimeout 的副本被放弃，不会拖住输入流的读取和其他副本；
+ * 读取时按健康状况和延迟选择最快的副本，超过 hedgeDelay 没有响应就对冲请求下一个副本。
+ * 写入、读取和修复使用各自的线程池，大量上传时读取不需要排队；只有网络错误和 5xx 计为副本的失败。
+ * 配置了 repairJournal 时修复队列写入日志，重启后继续修复；修复时连同类型和自定义元数据一起复制
+ * @since 2023/5/3 14:30
+ */
+@Slf4j
+public class ReplicatedObjectStore {
+
+    /**
+     * 输入流结束
+     */
+    private static final byte[] EOF = new byte[0];
+
+    /**
+     * 读取输入流失败，副本的上传需要中止
+     */
+    private static final byte[] ABORT = new byte[0];
+
+    /**
+     * 延迟的平滑系数
+     */
+    private static final double LATENCY_ALPHA = 0.2;
+
+    private final List<Replica> replicas;
+
+    private final OSSProperties.Replication properties;
+
+    private final OssTracer ossTracer;
+
+    private final int writeQuorum;
+
+    /**
+     * 写入和删除副本的线程池，每次写入占用每个副本一个线程
+     */
+    private final ExecutorService writeExecutor;
+
+    /**
+     * 读取副本的线程池，对冲的请求也在这里执行
+     */
+    private final ExecutorService readExecutor;
+
+    /**
+     * 定时修复的线程，修复逐个进行
+     */
+    private final ScheduledThreadPoolExecutor repairExecutor;
+
+    /**
+     * 等待修复的副本
+     */
+    private final Queue<Repair> repairs = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 修复队列的日志，没有配置时为 null
+     */
+    private final RepairJournal journal;
+
+    private final AtomicLong repairIds = new AtomicLong();
+
+    public ReplicatedObjectStore(List<? extends ReplicaBackend> backends, OSSProperties.Replication properties,
+                                 OssTracer ossTracer) {
+        if (backends.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个副本");
+        }
+        this.replicas = backends.stream().map(Replica::new).collect(Collectors.toList());
+        this.properties = properties;
+        this.ossTracer = ossTracer;
+        int n = backends.size();
+        this.writeQuorum = properties.getWriteQuorum() <= 0 ? n / 2 + 1 : Math.min(properties.getWriteQuorum(), n);
+        this.writeExecutor = Executors.newFixedThreadPool(Math.max(n, properties.getWriteThreads()),
+                threadFactory("replica-write-"));
+        this.readExecutor = Executors.newFixedThreadPool(Math.max(n, properties.getReadThreads()),
+                threadFactory("replica-read-"));
+        this.repairExecutor = new ScheduledThreadPoolExecutor(1, threadFactory("replica-repair-"));
+        this.repairExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.journal = openJournal(properties.getRepairJournal());
+        long interval = properties.getRepairInterval().toMillis();
+        if (interval > 0) {
+            repairExecutor.scheduleWithFixedDelay(this::repair, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        for (ExecutorService executor : Arrays.asList(writeExecutor, readExecutor, repairExecutor)) {
+            executor.shutdownNow();
+        }
+        for (ExecutorService executor : Arrays.asList(writeExecutor, readExecutor, repairExecutor)) {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        }
+        if (!repairs.isEmpty()) {
+            log.warn("还有 {} 个副本没有修复{}", repairs.size(), journal == null ? "" : "，重启后继续");
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                log.warn("关闭副本修复日志失败", e);
+            }
+        }
+    }
+
+    /**
+     * 写入所有副本，至少 writeQuorum 个副本成功后返回，否则删除已写入的副本并抛出异常
+     *
+     * @param inputStream 输入流，只读取一次
+     * @param size        大小，未知时为 -1
+     * @param bucketName  桶名
+     * @param objectName  对象名
+     * @param contentType 对象的类型
+     * @return 写入成功的副本数
+     * @throws IOException 成功的副本数不足
+     */
+    public int putObject(InputStream inputStream, long size, String bucketName, String objectName,
+                         String contentType) throws IOException {
+        return putObject(inputStream, size, bucketName, objectName, contentType, Collections.emptyMap());
+    }
+
+    /**
+     * 写入所有副本，同时写入自定义元数据，例如加密对象的密钥信息
+     *
+     * @param inputStream  输入流，只读取一次
+     * @param size         大小，未知时为 -1
+     * @param bucketName   桶名
+     * @param objectName   对象名
+     * @param contentType  对象的类型
+     * @param userMetadata 自定义元数据，key 不带 x-amz-meta- 前缀
+     * @return 写入成功的副本数
+     * @throws IOException 成功的副本数不足
+     */
+    public int putObject(InputStream inputStream, long size, String bucketName, String objectName,
+                         String contentType, Map<String, String> userMetadata) throws IOException {
+        try (OssSpan span = ossTracer.startSpan("oss.replica.putObject")) {
+            span.setAttribute("oss.bucket", bucketName).setAttribute("oss.object", objectName)
+                    .setAttribute("oss.size", size);
+            try {
+                int written = fanOut(inputStream, size, bucketName, objectName, contentType, userMetadata);
+                span.setAttribute("oss.replica.written", written);
+                return written;
+            } catch (IOException | RuntimeException e) {
+                span.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 读取对象的一个范围，由最快的健康副本提供
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @param offset     起始位置
+     * @param length     长度，-1 表示到末尾
+     * @return 输入流
+     * @throws IOException 所有副本都读取失败
+     */
+    public InputStream getObject(String bucketName, String objectName, long offset, long length) throws IOException {
+        try (OssSpan span = ossTracer.startSpan("oss.replica.getObject")) {
+            span.setAttribute("oss.bucket", bucketName).setAttribute("oss.object", objectName)
+                    .setAttribute("oss.offset", offset).setAttribute("oss.length", length);
+            try {
+                return hedged(backend -> backend.getObject(bucketName, objectName, offset, length),
+                        ReplicatedObjectStore::closeQuietly);
+            } catch (IOException | RuntimeException e) {
+                span.recordException(e);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 读取整个对象
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @return 输入流
+     * @throws IOException 所有副本都读取失败
+     */
+    public InputStream getObject(String bucketName, String objectName) throws IOException {
+        return getObject(bucketName, objectName, 0, -1);
+    }
+
+    /**
+     * 查询对象的大小，由最快的健康副本提供
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     * @return 大小
+     * @throws IOException 所有副本都查询失败，或者对象不存在
+     */
+    public long statObject(String bucketName, String objectName) throws IOException {
+        return hedged(backend -> backend.statObject(bucketName, objectName).getSize(), size -> {
+        });
+    }
+
+    /**
+     * 从所有副本删除对象，失败的副本在后台重试
+     *
+     * @param bucketName 桶名
+     * @param objectName 对象名
+     */
+    public void removeObject(String bucketName, String objectName) {
+        List<Future<?>> futures = new ArrayList<>();
+        for (Replica replica : replicas) {
+            futures.add(writeExecutor.submit(ossTracer.wrap(() -> {
+                try {
+                    replica.backend.removeObject(bucketName, objectName);
+                    replica.success();
+                } catch (Exception e) {
+                    replica.failure(e);
+                    log.warn("从副本 {} 删除 {}/{} 失败，稍后重试", replica.getName(), bucketName, objectName, e);
+                    enqueueRepair(replica, bucketName, objectName, true);
+                }
+            })));
+        }
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // 任务内部已经处理
+            }
+        }
+    }
+
+    /**
+     * 按读取时的顺序返回副本的名称，健康且延迟低的在前面
+     *
+     * @return 副本名称
+     */
+    public List<String> rankedReplicas() {
+        return rank().stream().map(Replica::getName).collect(Collectors.toList());
+    }
+
+    /**
+     * 等待修复的副本数
+     *
+     * @return 数量
+     */
+    public int pendingRepairs() {
+        return repairs.size();
+    }
+
+    /**
+     * 修复当前排队的副本，失败的重新排队，超过尝试次数的放弃。
+     * 目标副本不健康时跳过，等它恢复之后再尝试，不计入尝试次数
+     */
+    public void repair() {
+        long now = System.currentTimeMillis();
+        for (int i = repairs.size(); i > 0; i--) {
+            Repair repair = repairs.poll();
+            if (repair == null) {
+                return;
+            }
+            if (!repair.target.healthy(now)) {
+                repairs.add(repair);
+                continue;
+            }
+            try {
+                if (repair.delete) {
+                    repair.target.backend.removeObject(repair.bucketName, repair.objectName);
+                } else {
+                    copyTo(repair);
+                }
+                repair.target.success();
+                journalDone(repair);
+                log.info("副本 {} 上的 {}/{} 已修复", repair.target.getName(), repair.bucketName, repair.objectName);
+            } catch (Exception e) {
+                repair.target.failure(e);
+                if (++repair.attempts < properties.getRepairAttempts()) {
+                    repairs.add(repair);
+                } else {
+                    journalDone(repair);
+                    log.error("副本 {} 上的 {}/{} 修复 {} 次仍然失败，放弃修复", repair.target.getName(),
+                            repair.bucketName, repair.objectName, repair.attempts, e);
+                }
+            }
+        }
+    }
+
+    private void copyTo(Repair repair) throws Exception {
+        Exception last = null;
+        for (Replica source : rank()) {
+            if (source == repair.target) {
+                continue;
+            }
+            ReplicaObjectInfo info;
+            try {
+                info = source.backend.statObject(repair.bucketName, repair.objectName);
+            } catch (Exception e) {
+                last = e;
+                continue;
+            }
+            try (InputStream in = source.backend.getObject(repair.bucketName, repair.objectName, 0, -1)) {
+                repair.target.backend.putObject(repair.bucketName, repair.objectName, in, info.getSize(),
+                        info.getContentType(), info.getUserMetadata());
+            }
+            return;
+        }
+        throw last == null ? new IOException("没有可用的源副本") : last;
+    }
+
+    private int fanOut(InputStream inputStream, long size, String bucketName, String objectName,
+                       String contentType, Map<String, String> userMetadata) throws IOException {
+        List<Sink> sinks = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            Sink sink = new Sink(replica, properties.getQueueDepth());
+            sink.future = CompletableFuture.runAsync(ossTracer.wrap(() -> {
+                try {
+                    replica.backend.putObject(bucketName, objectName, sink, size, contentType, userMetadata);
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }), writeExecutor);
+            sinks.add(sink);
+        }
+        int blockSize = (int) Math.max(1, properties.getBlockSize().toBytes());
+        long stallTimeout = Math.max(1, properties.getWriteStallTimeout().toMillis());
+        try {
+            while (true) {
+                byte[] block = readBlock(inputStream, blockSize);
+                for (Sink sink : sinks) {
+                    sink.offer(block, stallTimeout);
+                }
+                long alive = sinks.stream().filter(sink -> !sink.future.isCompletedExceptionally()).count();
+                if (alive < writeQuorum) {
+                    throw new IOException("写入 " + bucketName + "/" + objectName + " 时只剩 " + alive
+                            + " 个副本可用，少于写入法定数 " + writeQuorum);
+                }
+                if (block == EOF) {
+                    break;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            sinks.forEach(Sink::abort);
+            awaitQuietly(sinks, stallTimeout);
+            removeWritten(sinks, bucketName, objectName);
+            throw e;
+        }
+
+        List<Sink> written = new ArrayList<>();
+        Throwable lastError = null;
+        // 输入流已经读完，每个副本还有 stallTimeout 的时间上传缓冲中的数据
+        long deadline = System.currentTimeMillis() + stallTimeout;
+        for (Sink sink : sinks) {
+            try {
+                sink.future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                sink.replica.success();
+                written.add(sink);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待副本写入时被中断");
+            } catch (TimeoutException e) {
+                sink.abandon();
+                lastError = e;
+                log.warn("写入副本 {} 的 {}/{} 超过 {}ms 没有完成，放弃这个副本", sink.replica.getName(), bucketName,
+                        objectName, stallTimeout);
+            } catch (ExecutionException e) {
+                lastError = e.getCause();
+                // 放弃的副本已经记过失败
+                if (!sink.abandoned) {
+                    sink.replica.failure();
+                    log.warn("写入副本 {} 的 {}/{} 失败", sink.replica.getName(), bucketName, objectName, lastError);
+                }
+            }
+        }
+        if (written.size() < writeQuorum) {
+            removeWritten(sinks, bucketName, objectName);
+            throw new IOException("写入 " + bucketName + "/" + objectName + " 只有 " + written.size()
+                    + " 个副本成功，少于写入法定数 " + writeQuorum, lastError);
+        }
+        for (Sink sink : sinks) {
+            if (!written.contains(sink)) {
+                enqueueRepair(sink.replica, bucketName, objectName, false);
+            }
+        }
+        return written.size();
+    }
+
+    private void removeWritten(List<Sink> sinks, String bucketName, String objectName) {
+        for (Sink sink : sinks) {
+            if (sink.abandoned) {
+                // 放弃的上传可能稍后才完成，在后台删除
+                enqueueRepair(sink.replica, bucketName, objectName, true);
+                continue;
+            }
+            if (sink.future.isCompletedExceptionally()) {
+                continue;
+            }
+            try {
+                sink.replica.backend.removeObject(bucketName, objectName);
+            } catch (Exception e) {
+                log.warn("删除副本 {} 上写入不完整的 {}/{} 失败", sink.replica.getName(), bucketName, objectName, e);
+                enqueueRepair(sink.replica, bucketName, objectName, true);
+            }
+        }
+    }
+
+    private void enqueueRepair(Replica target, String bucketName, String objectName, boolean delete) {
+        Repair repair = new Repair(repairIds.incrementAndGet(), target, bucketName, objectName, delete);
+        if (journal != null) {
+            journal.add(new RepairJournal.Entry(repair.id, target.getName(), bucketName, objectName, delete));
+        }
+        repairs.add(repair);
+    }
+
+    private void journalDone(Repair repair) {
+        if (journal != null) {
+            journal.done(repair.id);
+        }
+    }
+
+    /**
+     * 打开修复日志，把上次没有完成的修复放回队列。配置中已经没有的副本的记录丢弃
+     */
+    private RepairJournal openJournal(String path) {
+        if (ObjectUtils.isEmpty(path)) {
+            return null;
+        }
+        RepairJournal opened;
+        try {
+            opened = new RepairJournal(new File(path));
+        } catch (IOException e) {
+            log.warn("打开副本修复日志 {} 失败，修复队列只保存在内存中", path, e);
+            return null;
+        }
+        repairIds.set(opened.maxId());
+        Map<String, Replica> byName = new HashMap<>();
+        replicas.forEach(replica -> byName.put(replica.getName(), replica));
+        for (RepairJournal.Entry entry : opened.pending()) {
+            Replica target = byName.get(entry.replica);
+            if (target == null) {
+                log.warn("副本 {} 已经不在配置中，放弃修复 {}/{}", entry.replica, entry.bucketName, entry.objectName);
+                opened.done(entry.id);
+                continue;
+            }
+            repairs.add(new Repair(entry.id, target, entry.bucketName, entry.objectName, entry.delete));
+        }
+        if (!repairs.isEmpty()) {
+            log.info("从修复日志恢复了 {} 个等待修复的副本", repairs.size());
+        }
+        return opened;
+    }
+
+    private static void awaitQuietly(List<Sink> sinks, long timeoutMillis) {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        for (Sink sink : sinks) {
+            try {
+                sink.future.get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (TimeoutException e) {
+                sink.abandon();
+            } catch (ExecutionException e) {
+                // 已经中止
+            }
+        }
+    }
+
+    private static byte[] readBlock(InputStream inputStream, int blockSize) throws IOException {
+        byte[] block = new byte[blockSize];
+        int filled = 0;
+        while (filled < blockSize) {
+            int n = inputStream.read(block, filled, blockSize - filled);
+            if (n < 0) {
+                break;
+            }
+            filled += n;
+        }
+        if (filled == 0) {
+            return EOF;
+        }
+        return filled == blockSize ? block : Arrays.copyOf(block, filled);
+    }
+
+    /**
+     * 按健康状况和延迟依次向副本发出请求，第一个成功的结果返回，其余的结果交给 discard 释放。
+     * 正在等待的副本超过 hedgeDelay 没有响应，或者失败时，立即请求下一个副本
+     */
+    private <T> T hedged(ReplicaCall<T> call, Consumer<T> discard) throws IOException {
+        List<Replica> ranked = rank();
+        CompletableFuture<T> winner = new CompletableFuture<>();
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        Runnable[] launch = new Runnable[1];
+        launch[0] = () -> {
+            int i = next.getAndIncrement();
+            if (i >= ranked.size() || winner.isDone()) {
+                return;
+            }
+            Replica replica = ranked.get(i);
+            readExecutor.execute(ossTracer.wrap(() -> {
+                long start = System.nanoTime();
+                try {
+                    T result = call.apply(replica.backend);
+                    replica.latency(System.nanoTime() - start);
+                    if (!winner.complete(result)) {
+                        discard.accept(result);
+                    }
+                } catch (Exception e) {
+                    // 对象不存在等错误不影响副本的健康状况，仍然继续请求下一个副本
+                    replica.failure(e);
+                    log.debug("副本 {} 读取失败", replica.getName(), e);
+                    if (failed.incrementAndGet() == ranked.size()) {
+                        winner.completeExceptionally(e);
+                    } else {
+                        launch[0].run();
+                    }
+                }
+            }));
+        };
+        launch[0].run();
+        long hedgeDelay = Math.max(1, properties.getHedgeDelay().toMillis());
+        long deadline = System.currentTimeMillis() + properties.getReadTimeout().toMillis();
+        try {
+            while (true) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                boolean more = next.get() < ranked.size();
+                try {
+                    return winner.get(more ? Math.min(hedgeDelay, remaining) : remaining, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    if (more) {
+                        launch[0].run();
+                    }
+                }
+            }
+        } catch (TimeoutException e) {
+            winner.cancel(false);
+            throw new IOException("等待副本响应超时");
+        } catch (InterruptedException e) {
+            winner.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待副本响应时被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("所有副本都读取失败", cause);
+        }
+    }
+
+    private List<Replica> rank() {
+        long now = System.currentTimeMillis();
+        List<Replica> ranked = new ArrayList<>(replicas);
+        ranked.sort(Comparator.comparing((Replica replica) -> !replica.healthy(now))
+                .thenComparingDouble(replica -> replica.latencyNanos));
+        return ranked;
+    }
+
+    private static ThreadFactory threadFactory(String prefix) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static void closeQuietly(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    @FunctionalInterface
+    private interface ReplicaCall<T> {
+        T apply(ReplicaBackend backend) throws Exception;
+    }
+
+    /**
+     * 副本以及它的健康状况
+     */
+    private class Replica {
+        private final ReplicaBackend backend;
+
+        /**
+         * 平滑后的响应时间，初始为 0，没有请求过的副本先被尝试
+         */
+        private volatile double latencyNanos;
+
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+        private volatile long lastFailureAt;
+
+        private Replica(ReplicaBackend backend) {
+            this.backend = backend;
+        }
+
+        private String getName() {
+            return backend.getName();
+        }
+
+        private boolean healthy(long now) {
+            return consecutiveFailures.get() < properties.getFailureThreshold()
+                    || now - lastFailureAt >= properties.getFailureCooldown().toMillis();
+        }
+
+        private void latency(long nanos) {
+            latencyNanos = latencyNanos == 0 ? nanos : latencyNanos + LATENCY_ALPHA * (nanos - latencyNanos);
+            success();
+        }
+
+        private void success() {
+            consecutiveFailures.set(0);
+        }
+
+        private void failure() {
+            consecutiveFailures.incrementAndGet();
+            lastFailureAt = System.currentTimeMillis();
+        }
+
+        /**
+         * 只有副本本身不可用时才计为失败
+         */
+        private void failure(Exception e) {
+            if (backend.isReplicaFailure(e)) {
+                failure();
+            }
+        }
+    }
+
+    /**
+     * 一个副本的输入流，数据块由写入线程放入
+     */
+    private class Sink extends InputStream {
+        private final Replica replica;
+
+        private final BlockingQueue<byte[]> queue;
+
+        private CompletableFuture<Void> future;
+
+        /**
+         * 写入停顿超时被放弃，上传线程读取时立即失败
+         */
+        private volatile boolean abandoned;
+
+        private byte[] current;
+
+        private int position;
+
+        private Sink(Replica replica, int queueDepth) {
+            this.replica = replica;
+            this.queue = new ArrayBlockingQueue<>(Math.max(1, queueDepth));
+        }
+
+        /**
+         * 放入一个数据块，副本的上传已经结束（失败）时丢弃，超过 stallTimeout 没有放入时放弃这个副本
+         */
+        private void offer(byte[] block, long stallTimeout) {
+            long deadline = System.currentTimeMillis() + stallTimeout;
+            try {
+                while (!future.isDone()) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        abandon();
+                        log.warn("副本 {} 超过 {}ms 没有取走数据，放弃这个副本", replica.getName(), stallTimeout);
+                        return;
+                    }
+                    if (queue.offer(block, Math.min(100, remaining), TimeUnit.MILLISECONDS)) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                abandon();
+            }
+        }
+
+        /**
+         * 输入流读取失败，通知上传线程中止。只有写入线程放入数据块，清空之后一定放得进去
+         */
+        private void abort() {
+            if (!future.isDone()) {
+                queue.clear();
+                queue.offer(ABORT);
+            }
+        }
+
+        /**
+         * 放弃这个副本：结果记为失败，正在等待数据块的上传线程被唤醒后失败。
+         * 阻塞在网络写入上的线程要等客户端自己的超时
+         */
+        private void abandon() {
+            abandoned = true;
+            replica.failure();
+            future.completeExceptionally(new IOException("副本 " + replica.getName() + " 写入停顿，已放弃"));
+            queue.clear();
+            queue.offer(ABORT);
+        }
+
+        private boolean fill() throws IOException {
+            if (current == EOF) {
+                return false;
+            }
+            if (current != null && position < current.length) {
+                return true;
+            }
+            try {
+                current = queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            position = 0;
+            if (current == ABORT) {
+                throw new IOException((abandoned ? "写入停顿，放弃副本 " : "读取输入流失败，中止写入副本 ")
+                        + replica.getName());
+            }
+            return current != EOF;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? current[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(current, position, b, off, n);
+            position += n;
+            return n;
+        }
+    }
+
+    private static class Repair {
+        private final long id;
+
+        private final Replica target;
+
+        private final String bucketName;
+
+        private final String objectName;
+
+        /**
+         * true 表示需要删除，false 表示需要从其他副本复制
+         */
+        private final boolean delete;
+
+        private int attempts;
+
+        private Repair(long id, Replica target, String bucketName, String objectName, boolean delete) {
+            this.id = id;
+            this.target = target;
+            this.bucketName = bucketName;
+            this.objectName = objectName;
+            this.delete = delete;
+        }
+    }
+}
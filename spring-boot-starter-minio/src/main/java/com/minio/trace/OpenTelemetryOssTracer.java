@@ -0,0 +1,91 @@
+package com.minio.trace;
+
+import io.opentelemetry.api.OpenTelemetry;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.context.Scope;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname OpenTelemetryOssTracer
+ * @description 基于 OpenTelemetry 的链路追踪实现
+ * @since 2023/4/20 10:30
+ */
+public class OpenTelemetryOssTracer implements OssTracer {
+
+    /**
+     * instrumentation 名称
+     */
+    public static final String INSTRUMENTATION_NAME = "spring-boot-starter-minio";
+
+    private final Tracer tracer;
+
+    public OpenTelemetryOssTracer(OpenTelemetry openTelemetry) {
+        this.tracer = openTelemetry.getTracer(INSTRUMENTATION_NAME);
+    }
+
+    @Override
+    public OssSpan startSpan(String name) {
+        Span span = tracer.spanBuilder(name).startSpan();
+        return new OpenTelemetryOssSpan(span, span.makeCurrent());
+    }
+
+    @Override
+    public Runnable wrap(Runnable runnable) {
+        return Context.current().wrap(runnable);
+    }
+
+    @Override
+    public <T> Callable<T> wrap(Callable<T> callable) {
+        return Context.current().wrap(callable);
+    }
+
+    @Override
+    public ExecutorService wrap(ExecutorService executorService) {
+        return Context.taskWrapping(executorService);
+    }
+
+    private static class OpenTelemetryOssSpan implements OssSpan {
+        private final Span span;
+
+        private final Scope scope;
+
+        OpenTelemetryOssSpan(Span span, Scope scope) {
+            this.span = span;
+            this.scope = scope;
+        }
+
+        @Override
+        public OssSpan setAttribute(String key, String value) {
+            if (value != null) {
+                span.setAttribute(key, value);
+            }
+            return this;
+        }
+
+        @Override
+        public OssSpan setAttribute(String key, long value) {
+            span.setAttribute(key, value);
+            return this;
+        }
+
+        @Override
+        public void recordException(Throwable throwable) {
+            span.recordException(throwable);
+            span.setStatus(StatusCode.ERROR, String.valueOf(throwable.getMessage()));
+        }
+
+        @Override
+        public void close() {
+            // scope 必须先于 span 结束关闭，恢复父上下文
+            scope.close();
+            span.end();
+        }
+    }
+}
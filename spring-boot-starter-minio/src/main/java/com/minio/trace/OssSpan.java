@@ -0,0 +1,65 @@
+package com.minio.trace;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname OssSpan
+ * @description 一次被追踪的操作，使用 try-with-resources 保证 span 被关闭
+ * @since 2023/4/20 10:12
+ */
+public interface OssSpan extends AutoCloseable {
+
+    /**
+     * 不做任何事情的 span，未开启链路追踪时使用
+     */
+    OssSpan NOOP = new OssSpan() {
+        @Override
+        public OssSpan setAttribute(String key, String value) {
+            return this;
+        }
+
+        @Override
+        public OssSpan setAttribute(String key, long value) {
+            return this;
+        }
+
+        @Override
+        public void recordException(Throwable throwable) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    /**
+     * 设置字符串类型的属性
+     *
+     * @param key   属性名
+     * @param value 属性值，为空时忽略
+     * @return this
+     */
+    OssSpan setAttribute(String key, String value);
+
+    /**
+     * 设置数值类型的属性，例如对象大小、读取的字节范围
+     *
+     * @param key   属性名
+     * @param value 属性值
+     * @return this
+     */
+    OssSpan setAttribute(String key, long value);
+
+    /**
+     * 记录异常，并将 span 标记为失败
+     *
+     * @param throwable 异常
+     */
+    void recordException(Throwable throwable);
+
+    /**
+     * 结束 span
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,73 @@
+package com.minio.trace;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * @author lyf
+ * @version 1.0
+ * @classname OssTracer
+ * @description 链路追踪的抽象，MinioTemplate 和业务层都只依赖这个接口，
+ * 没有引入 OpenTelemetry 或未开启 oss.minio.trace.enabled 时使用 {@link #NOOP}
+ * @since 2023/4/20 10:12
+ */
+public interface OssTracer {
+
+    /**
+     * 不做任何事情的实现
+     */
+    OssTracer NOOP = new OssTracer() {
+        @Override
+        public OssSpan startSpan(String name) {
+            return OssSpan.NOOP;
+        }
+
+        @Override
+        public Runnable wrap(Runnable runnable) {
+            return runnable;
+        }
+
+        @Override
+        public <T> Callable<T> wrap(Callable<T> callable) {
+            return callable;
+        }
+
+        @Override
+        public ExecutorService wrap(ExecutorService executorService) {
+            return executorService;
+        }
+    };
+
+    /**
+     * 开启一个新的 span，并将其设为当前线程的上下文，之后开启的 span 都是它的子 span
+     *
+     * @param name span 名称
+     * @return span
+     */
+    OssSpan startSpan(String name);
+
+    /**
+     * 将当前线程的追踪上下文传递到异步任务中
+     *
+     * @param runnable 异步任务
+     * @return 携带上下文的任务
+     */
+    Runnable wrap(Runnable runnable);
+
+    /**
+     * 将当前线程的追踪上下文传递到异步任务中
+     *
+     * @param callable 异步任务
+     * @param <T>      返回值类型
+     * @return 携带上下文的任务
+     */
+    <T> Callable<T> wrap(Callable<T> callable);
+
+    /**
+     * 包装线程池，提交的任务都会携带提交时的追踪上下文
+     *
+     * @param executorService 线程池
+     * @return 包装后的线程池
+     */
+    ExecutorService wrap(ExecutorService executorService);
+}
@@ -0,0 +1,84 @@
+package com.minio.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BucketRegistryTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentEnsureCreatesOnce() throws Exception {
+        BucketRegistry registry = new BucketRegistry(TimeUnit.MINUTES.toNanos(1), TimeUnit.SECONDS.toNanos(1));
+        AtomicInteger creations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> {
+                registry.ensure("bucket", () -> {
+                    creations.incrementAndGet();
+                    release.await();
+                    return true;
+                });
+                return null;
+            }));
+        }
+        Thread.sleep(100);
+        release.countDown();
+        for (Future<?> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(1, creations.get());
+        // 存在的结果被缓存
+        assertTrue(registry.exists("bucket", () -> {
+            throw new AssertionError("不应该再访问 MinIO");
+        }));
+    }
+
+    @Test
+    void negativeResultExpiresAndEvictReloads() throws Exception {
+        BucketRegistry registry = new BucketRegistry(TimeUnit.MINUTES.toNanos(1), TimeUnit.MILLISECONDS.toNanos(50));
+        AtomicInteger loads = new AtomicInteger();
+        assertFalse(registry.exists("bucket", () -> loads.incrementAndGet() < 0));
+        assertFalse(registry.exists("bucket", () -> loads.incrementAndGet() < 0));
+        assertEquals(1, loads.get());
+
+        Thread.sleep(100);
+        assertTrue(registry.exists("bucket", () -> loads.incrementAndGet() > 0));
+        assertEquals(2, loads.get());
+
+        registry.evict("bucket");
+        assertTrue(registry.exists("bucket", () -> loads.incrementAndGet() > 0));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void failuresAreNotCached() throws Exception {
+        BucketRegistry registry = new BucketRegistry(TimeUnit.MINUTES.toNanos(1), TimeUnit.MINUTES.toNanos(1));
+        assertThrows(IOException.class, () -> registry.ensure("bucket", () -> {
+            throw new IOException("连接失败");
+        }));
+        AtomicInteger creations = new AtomicInteger();
+        registry.ensure("bucket", () -> creations.incrementAndGet() > 0);
+        registry.ensure("bucket", () -> creations.incrementAndGet() > 0);
+        assertEquals(1, creations.get());
+    }
+}
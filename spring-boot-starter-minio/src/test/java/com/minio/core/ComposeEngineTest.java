@@ -0,0 +1,131 @@
+package com.minio.core;
+
+import io.minio.ComposeSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ComposeEngineTest {
+
+    private static final long MIB = 1024 * 1024;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    private final FakeMinioTemplate minioTemplate = new FakeMinioTemplate();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void smallChunksAreConcatenatedBeforeCompose() throws Exception {
+        List<ComposeEngine.Part> parts = chunks(23, MIB);
+
+        new ComposeEngine(minioTemplate, executor, 8 * MIB, ComposeEngine.MAX_PARTS)
+                .compose(parts, "tmp", "target", "file");
+
+        assertEquals(expectedContent(23), minioTemplate.objects.get("target/file"));
+        // 8 + 8 + 7 个分片拼接成 3 个中间对象
+        assertEquals(3, minioTemplate.removed.size());
+    }
+
+    @Test
+    void manySourcesAreComposedInLevels() throws Exception {
+        List<ComposeEngine.Part> parts = chunks(100, 6 * MIB);
+
+        new ComposeEngine(minioTemplate, executor, 8 * MIB, 4)
+                .compose(parts, "tmp", "target", "file");
+
+        assertEquals(expectedContent(100), minioTemplate.objects.get("target/file"));
+        // 100 -> 25 -> 7 -> 2 -> 1
+        assertEquals(25 + 7 + 2, minioTemplate.removed.size());
+    }
+
+    @Test
+    void composeRespectsPartLimits() throws Exception {
+        List<ComposeEngine.Part> parts = chunks(50, 2 * MIB);
+        List<List<ComposeSource>> calls = Collections.synchronizedList(new ArrayList<>());
+        FakeMinioTemplate recording = new FakeMinioTemplate() {
+            @Override
+            void composeOnce(List<ComposeSource> sources, String bucketName, String objectName) {
+                calls.add(sources);
+                super.composeOnce(sources, bucketName, objectName);
+            }
+        };
+
+        new ComposeEngine(recording, executor, 6 * MIB, 3).compose(parts, "tmp", "target", "file");
+
+        assertEquals(expectedContent(50), recording.objects.get("target/file"));
+        for (List<ComposeSource> sources : calls) {
+            assertTrue(sources.size() <= 3);
+        }
+    }
+
+    private static List<ComposeEngine.Part> chunks(int count, long size) {
+        List<ComposeEngine.Part> parts = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            // 最后一片比其他分片小
+            long partSize = i == count ? size / 2 : size;
+            parts.add(new ComposeEngine.Part(ComposeSource.builder().bucket("tmp").object(String.valueOf(i)).build(), partSize));
+        }
+        return parts;
+    }
+
+    private static List<String> expectedContent(int count) {
+        List<String> content = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            content.add("tmp/" + i);
+        }
+        return content;
+    }
+
+    /**
+     * 用源对象名的列表代替对象内容
+     */
+    private static class FakeMinioTemplate extends MinioTemplate {
+
+        private final Map<String, List<String>> objects = new ConcurrentHashMap<>();
+
+        private final List<String> removed = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        void composeOnce(List<ComposeSource> sources, String bucketName, String objectName) {
+            List<String> content = new ArrayList<>();
+            for (ComposeSource source : sources) {
+                content.addAll(content(source));
+            }
+            objects.put(bucketName + "/" + objectName, content);
+        }
+
+        @Override
+        void concatObjects(List<ComposeEngine.Part> parts, String bucketName, String objectName, long size) {
+            List<String> content = new ArrayList<>();
+            for (ComposeEngine.Part part : parts) {
+                content.addAll(content(part.getSource()));
+            }
+            objects.put(bucketName + "/" + objectName, content);
+        }
+
+        @Override
+        public void removeObjects(String bucketName, List<String> objectNames) {
+            removed.addAll(objectNames);
+        }
+
+        private List<String> content(ComposeSource source) {
+            String key = source.bucket() + "/" + source.object();
+            List<String> content = objects.get(key);
+            return content == null ? Collections.singletonList(key) : content;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.minio.core;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(8);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallsShareOneExecution() throws Exception {
+        SingleFlight<String, byte[]> flight = new SingleFlight<>();
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        byte[] data = {1, 2, 3};
+
+        List<Future<byte[]>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> flight.execute("bucket/object", () -> {
+                executions.incrementAndGet();
+                release.await();
+                return data;
+            })));
+        }
+        // 等所有调用都进入等待之后再返回结果
+        while (!flight.isInFlight("bucket/object")) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(100);
+        release.countDown();
+        for (Future<byte[]> future : futures) {
+            assertSame(data, future.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, executions.get());
+        assertFalse(flight.isInFlight("bucket/object"));
+
+        // 完成之后不缓存结果
+        flight.execute("bucket/object", () -> {
+            executions.incrementAndGet();
+            return data;
+        });
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void failureIsSharedAndNotRemembered() throws Exception {
+        SingleFlight<String, String> flight = new SingleFlight<>();
+        CountDownLatch release = new CountDownLatch(1);
+        Future<String> first = executor.submit(() -> flight.execute("key", () -> {
+            release.await();
+            throw new IOException("boom");
+        }));
+        while (!flight.isInFlight("key")) {
+            Thread.sleep(1);
+        }
+        Future<String> second = executor.submit(() -> flight.execute("key", () -> "unused"));
+        Thread.sleep(100);
+        release.countDown();
+
+        ExecutionException e1 = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertTrue(e1.getCause() instanceof IOException);
+        ExecutionException e2 = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertTrue(e2.getCause() instanceof IOException);
+        assertEquals("ok", flight.execute("key", () -> "ok"));
+    }
+}
@@ -0,0 +1,141 @@
+package com.minio.crypto;
+
+import cn.hutool.core.io.IoUtil;
+import com.minio.config.OSSProperties;
+import com.minio.core.MinioTemplate;
+import io.minio.ObjectWriteResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EncryptedObjectStoreTest {
+
+    private static final int SEGMENT_SIZE = 1024;
+
+    private final FakeMinioTemplate minioTemplate = new FakeMinioTemplate();
+
+    private final EncryptedObjectStore store = new EncryptedObjectStore(minioTemplate,
+            new StaticKeyProvider(Collections.singletonMap("k1", Base64.getEncoder().encodeToString(new byte[32])), "k1"),
+            new OSSProperties.Encryption(true, null, "k1", DataSize.ofBytes(SEGMENT_SIZE)));
+
+    @Test
+    void roundTripsAndReadsRanges() throws Exception {
+        Random random = new Random(1);
+        for (int size : new int[]{0, 1, SEGMENT_SIZE - 1, SEGMENT_SIZE, 3 * SEGMENT_SIZE + 5}) {
+            byte[] data = new byte[size];
+            random.nextBytes(data);
+            // 大小已知和未知两种上传方式的密文长度一致
+            store.putObject(new ByteArrayInputStream(data), size, "b", "known", null);
+            store.putObject(new ByteArrayInputStream(data), -1, "b", "unknown", null);
+            assertEquals(SegmentCipher.ciphertextSize(size, SEGMENT_SIZE), minioTemplate.objects.get("b/known").length);
+            assertEquals(minioTemplate.objects.get("b/known").length, minioTemplate.objects.get("b/unknown").length);
+            assertFalse(size > 16 && Arrays.equals(data, Arrays.copyOf(minioTemplate.objects.get("b/known"), size)));
+
+            Map<String, String> metadata = minioTemplate.metadata.get("b/known");
+            assertTrue(EncryptedObjectStore.isEncrypted(metadata));
+            long plaintextSize = EncryptedObjectStore.plaintextSize(metadata, minioTemplate.objects.get("b/known").length);
+            assertEquals(size, plaintextSize);
+            assertArrayEquals(data, read("known", metadata, size, 0, size));
+
+            for (int i = 0; i < 20 && size > 0; i++) {
+                int offset = random.nextInt(size);
+                int length = random.nextInt(size - offset + 1);
+                byte[] expected = Arrays.copyOfRange(data, offset, offset + length);
+                assertArrayEquals(expected, read("known", metadata, size, offset, length), size + ":" + offset + "+" + length);
+            }
+        }
+    }
+
+    @Test
+    void fetchesOnlyCoveringSegments() throws Exception {
+        byte[] data = new byte[10 * SEGMENT_SIZE];
+        store.putObject(new ByteArrayInputStream(data), data.length, "b", "o", "video/mp4");
+        Map<String, String> metadata = minioTemplate.metadata.get("b/o");
+        minioTemplate.ranges.clear();
+
+        // 跨越第 2、3 段的范围
+        read("o", metadata, data.length, 2 * SEGMENT_SIZE + 10, SEGMENT_SIZE);
+        int stride = SEGMENT_SIZE + SegmentCipher.TAG_SIZE;
+        assertEquals(Collections.singletonList(Arrays.asList(2L * stride, 2L * stride)), minioTemplate.ranges);
+    }
+
+    @Test
+    void detectsTamperingAndReordering() {
+        byte[] data = new byte[3 * SEGMENT_SIZE];
+        store.putObject(new ByteArrayInputStream(data), data.length, "b", "o", null);
+        Map<String, String> metadata = minioTemplate.metadata.get("b/o");
+        byte[] ciphertext = minioTemplate.objects.get("b/o");
+        int stride = SEGMENT_SIZE + SegmentCipher.TAG_SIZE;
+
+        byte[] flipped = ciphertext.clone();
+        flipped[stride + 5] ^= 1;
+        minioTemplate.objects.put("b/o", flipped);
+        assertThrows(IOException.class, () -> read("o", metadata, data.length, SEGMENT_SIZE, 10));
+
+        // 把第 0 段放到第 1 段的位置
+        byte[] swapped = ciphertext.clone();
+        System.arraycopy(ciphertext, 0, swapped, stride, stride);
+        minioTemplate.objects.put("b/o", swapped);
+        assertThrows(IOException.class, () -> read("o", metadata, data.length, SEGMENT_SIZE, 10));
+
+        // 截掉最后一段之后，倒数第二段不是最后一段，认证失败
+        minioTemplate.objects.put("b/o", Arrays.copyOf(ciphertext, 2 * stride));
+        assertThrows(IOException.class, () -> read("o", metadata, 2 * SEGMENT_SIZE, SEGMENT_SIZE, 10));
+    }
+
+    private byte[] read(String objectName, Map<String, String> metadata, long plaintextSize, long offset, long length)
+            throws IOException {
+        try (InputStream inputStream = store.getObject("b", objectName, metadata, plaintextSize, offset, length)) {
+            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            byte[] buffer = new byte[100];
+            int n;
+            while ((n = inputStream.read(buffer)) >= 0) {
+                outputStream.write(buffer, 0, n);
+            }
+            return outputStream.toByteArray();
+        }
+    }
+
+    private static class FakeMinioTemplate extends MinioTemplate {
+
+        private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+        private final Map<String, Map<String, String>> metadata = new ConcurrentHashMap<>();
+
+        private final List<List<Long>> ranges = new ArrayList<>();
+
+        @Override
+        public ObjectWriteResponse putObject(InputStream inputStream, long size, String bucketName, String objectName,
+                                             String contentType, Map<String, String> userMetadata) {
+            byte[] bytes = IoUtil.readBytes(inputStream, false);
+            if (size >= 0) {
+                assertEquals(size, bytes.length);
+            }
+            objects.put(bucketName + "/" + objectName, bytes);
+            metadata.put(bucketName + "/" + objectName, userMetadata);
+            return null;
+        }
+
+        @Override
+        public InputStream getObject(String bucketName, String objectName, Long offset, Long length) {
+            ranges.add(Arrays.asList(offset, length));
+            byte[] bytes = objects.get(bucketName + "/" + objectName);
+            int end = (int) Math.min(bytes.length, offset + length);
+            return new ByteArrayInputStream(Arrays.copyOfRange(bytes, offset.intValue(), end));
+        }
+    }
+}
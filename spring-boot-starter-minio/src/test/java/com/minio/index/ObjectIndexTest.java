@@ -0,0 +1,94 @@
+package com.minio.index;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectIndexTest {
+
+    @TempDir
+    File directory;
+
+    @Test
+    void prefixRangeAndAttributeQueries() throws Exception {
+        try (ObjectIndex index = new ObjectIndex(null, 100)) {
+            for (String key : Arrays.asList("a/1", "a/2", "a/3", "b/1", "c")) {
+                index.put("bucket", meta(key, key.length(), key.startsWith("a") ? "video/mp4" : "image/png"));
+            }
+            assertEquals(Arrays.asList("a/1", "a/2", "a/3"), keys(index.list("bucket", "a/", null, 10)));
+            assertEquals(Arrays.asList("a/2", "a/3"), keys(index.list("bucket", "a/", "a/1", 10)));
+            assertEquals(Arrays.asList("a/1", "a/2"), keys(index.list("bucket", "a/", null, 2)));
+            assertEquals(Arrays.asList("a/3", "b/1"), keys(index.range("bucket", "a/3", "c", 10)));
+            assertEquals(Arrays.asList("b/1", "c"),
+                    keys(index.search("bucket", null, null, m -> "image/png".equals(m.getContentType()), 10)));
+            assertTrue(index.list("other", null, null, 10).isEmpty());
+        }
+    }
+
+    @Test
+    void recoversFromSnapshotAndJournal() throws Exception {
+        try (ObjectIndex index = new ObjectIndex(directory, 3)) {
+            index.markReady("bucket");
+            index.put("bucket", meta("x", 1, null));
+            // 第三条记录触发快照
+            index.put("bucket", meta("y", 2, null));
+            index.put("bucket", meta("z", 3, "text/plain"));
+            index.remove("bucket", "x");
+            index.put("gone", meta("k", 1, null));
+            index.removeBucket("gone");
+        }
+        try (ObjectIndex index = new ObjectIndex(directory, 3)) {
+            assertTrue(index.isReady("bucket"));
+            assertEquals(Arrays.asList("y", "z"), keys(index.list("bucket", null, null, 10)));
+            assertEquals("text/plain", index.get("bucket", "z").getContentType());
+            assertNull(index.get("gone", "k"));
+        }
+    }
+
+    @Test
+    void ignoresTruncatedJournalRecord() throws Exception {
+        try (ObjectIndex index = new ObjectIndex(directory, 100)) {
+            index.put("bucket", meta("x", 1, null));
+            index.put("bucket", meta("y", 2, null));
+        }
+        File journal = new File(directory, "index.journal");
+        try (RandomAccessFile file = new RandomAccessFile(journal, "rw")) {
+            file.setLength(file.length() - 5);
+        }
+        try (ObjectIndex index = new ObjectIndex(directory, 100)) {
+            assertEquals(Arrays.asList("x"), keys(index.list("bucket", null, null, 10)));
+            index.put("bucket", meta("z", 3, null));
+        }
+        try (ObjectIndex index = new ObjectIndex(directory, 100)) {
+            assertEquals(Arrays.asList("x", "z"), keys(index.list("bucket", null, null, 10)));
+        }
+    }
+
+    @Test
+    void writesDuringRebuildAreKept() throws Exception {
+        try (ObjectIndex index = new ObjectIndex(null, 100)) {
+            index.beginRebuild("bucket");
+            // 列举期间写入和删除的对象，列举结果中还是旧的状态
+            index.put("bucket", meta("new", 1, null));
+            index.remove("bucket", "old");
+            index.finishRebuild("bucket", Arrays.asList(meta("old", 1, null), meta("kept", 1, null)));
+            assertTrue(index.isReady("bucket"));
+            assertEquals(Arrays.asList("kept", "new"), keys(index.list("bucket", null, null, 10)));
+        }
+    }
+
+    private static ObjectMeta meta(String key, long size, String contentType) {
+        return new ObjectMeta(key, size, "etag", contentType, null, 0);
+    }
+
+    private static List<String> keys(List<ObjectMeta> metas) {
+        return metas.stream().map(ObjectMeta::getKey).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,70 @@
+package com.minio.notify;
+
+import com.minio.trace.OssTracer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ObjectEventDispatcherTest {
+
+    @Test
+    void batchesDeduplicatesAndCallsListenersInOrder() throws Exception {
+        List<String> calls = new CopyOnWriteArrayList<>();
+        CountDownLatch delivered = new CountDownLatch(1);
+        ObjectEventListener first = events -> calls.add("first:" + describe(events));
+        ObjectEventListener second = events -> {
+            calls.add("second:" + describe(events));
+            delivered.countDown();
+        };
+        LocalObjectEventSource source = new LocalObjectEventSource();
+        ObjectEventDispatcher dispatcher = new ObjectEventDispatcher(source, Arrays.asList(first, second),
+                OssTracer.NOOP, 100, 500, 100);
+        dispatcher.start();
+        try {
+            source.publish(ObjectEvent.created("bucket", "a", 1, "e1", null));
+            source.publish(ObjectEvent.created("bucket", "b", 1, "e2", null));
+            source.publish(ObjectEvent.removed("bucket", "a"));
+            assertTrue(delivered.await(5, TimeUnit.SECONDS));
+        } finally {
+            dispatcher.stop();
+        }
+        // a 只保留最后的删除事件，排在 b 之后；一批事件先交给 first 再交给 second
+        assertEquals(Arrays.asList("first:CREATED b,REMOVED a", "second:CREATED b,REMOVED a"), calls);
+    }
+
+    @Test
+    void resyncSplitsBatch() {
+        List<String> calls = new ArrayList<>();
+        ObjectEventListener listener = new ObjectEventListener() {
+            @Override
+            public void onEvents(List<ObjectEvent> events) {
+                calls.add(describe(events));
+            }
+
+            @Override
+            public void onResync(String bucketName) {
+                calls.add("RESYNC " + bucketName);
+            }
+        };
+        ObjectEventDispatcher dispatcher = new ObjectEventDispatcher(new LocalObjectEventSource(),
+                Collections.singletonList(listener), OssTracer.NOOP, 100, 0, 100);
+        dispatcher.dispatch(Arrays.asList(
+                ObjectEvent.created("bucket", "a", 1, "e1", null),
+                ObjectEvent.resync("bucket"),
+                ObjectEvent.removed("bucket", "a")));
+        assertEquals(Arrays.asList("CREATED a", "RESYNC bucket", "REMOVED a"), calls);
+    }
+
+    private static String describe(List<ObjectEvent> events) {
+        return events.stream().map(e -> e.getType() + " " + e.getObjectName()).collect(Collectors.joining(","));
+    }
+}
@@ -0,0 +1,178 @@
+package com.minio.pack;
+
+import cn.hutool.core.io.IoUtil;
+import com.minio.config.OSSProperties;
+import com.minio.core.MinioTemplate;
+import com.minio.trace.OssTracer;
+import io.minio.Result;
+import io.minio.messages.Item;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PackStoreTest {
+
+    private final FakeMinioTemplate minioTemplate = new FakeMinioTemplate();
+
+    private final InMemoryPackIndex packIndex = new InMemoryPackIndex();
+
+    private final ExecutorService writers = Executors.newFixedThreadPool(8);
+
+    private PackStore packStore;
+
+    @AfterEach
+    void tearDown() throws Exception {
+        writers.shutdownNow();
+        packStore.destroy();
+    }
+
+    @Test
+    void concurrentWritesShareOnePack() throws Exception {
+        packStore = newStore(DataSize.ofMegabytes(1), Duration.ofMillis(200));
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            String key = "avatar/" + i;
+            futures.add(writers.submit(() -> packStore.putObject("b", key, bytes(key), "text/plain")));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+
+        // 50 个小对象只产生了很少的 pack
+        assertTrue(minioTemplate.objects.keySet().stream().filter(name -> name.endsWith(".pack")).count() < 10);
+        for (int i = 0; i < 50; i++) {
+            assertEquals("avatar/" + i, read("b", "avatar/" + i));
+        }
+        assertEquals(Arrays.asList("avatar/0", "avatar/1", "avatar/10"), packStore.listObjects("b", "avatar/", 3));
+
+        // 超过 maxEntrySize 的对象直接上传
+        packStore.putObject("b", "big", new byte[2048], null);
+        assertTrue(minioTemplate.objects.containsKey("b/big"));
+        assertNull(packStore.statObject("b", "big"));
+    }
+
+    @Test
+    void compactionDropsDeletedEntries() throws Exception {
+        packStore = newStore(DataSize.ofBytes(100), Duration.ofMillis(1));
+        for (int i = 0; i < 20; i++) {
+            // 每个 9 字节，写满 100 字节的 pack 有 12 个对象
+            packStore.putObject("b", String.format("k%02d", i), bytes(String.format("value-%03d", i)), null);
+        }
+        for (int i = 0; i < 20; i += 2) {
+            packStore.removeObject("b", String.format("k%02d", i));
+        }
+        packStore.putObject("b", "k01", bytes("rewritten"), null);
+        List<String> before = new ArrayList<>(minioTemplate.objects.keySet());
+
+        assertTrue(packStore.compact("b") >= 2);
+
+        long liveBytes = 0;
+        for (PackInfo info : packIndex.packs("b")) {
+            assertFalse(before.contains("b/" + info.getName()));
+            assertEquals(0, info.getDeadBytes());
+            liveBytes += info.getSize();
+        }
+        // 剩下 k01（已覆盖）、k03 ... k19
+        assertEquals(9 * 9 + "rewritten".length(), liveBytes);
+        assertEquals("rewritten", read("b", "k01"));
+        assertEquals("value-019", read("b", "k19"));
+        assertNull(packStore.statObject("b", "k00"));
+    }
+
+    @Test
+    void rebuildIndexFromTocs() throws Exception {
+        packStore = newStore(DataSize.ofBytes(100), Duration.ofMillis(1));
+        for (int i = 0; i < 20; i++) {
+            packStore.putObject("b", String.format("k%02d", i), bytes(String.format("value-%03d", i)), null);
+        }
+        for (int i = 0; i < 20; i += 2) {
+            packStore.removeObject("b", String.format("k%02d", i));
+        }
+        packStore.putObject("b", "k01", bytes("rewritten"), "text/plain");
+        packStore.putObject("b", "k03", new byte[2048], null);
+        packStore.compact("b");
+
+        // 索引丢失后按目录重建，删除和直接上传的对象不会复活
+        packIndex.clear("b");
+        assertEquals(9, packStore.rebuildIndex("b"));
+        assertEquals("rewritten", read("b", "k01"));
+        assertEquals("text/plain", packStore.statObject("b", "k01").getContentType());
+        assertEquals("value-019", read("b", "k19"));
+        assertNull(packStore.statObject("b", "k00"));
+        assertNull(packStore.statObject("b", "k03"));
+        assertEquals(Arrays.asList("k01", "k05", "k07"), packStore.listObjects("b", "k", 3));
+    }
+
+    private PackStore newStore(DataSize packSize, Duration linger) {
+        OSSProperties.Pack properties = new OSSProperties.Pack();
+        properties.setMaxEntrySize(DataSize.ofBytes(1024));
+        properties.setPackSize(packSize);
+        properties.setLinger(linger);
+        properties.setCompactInterval(Duration.ZERO);
+        return new PackStore(minioTemplate, packIndex, properties, OssTracer.NOOP);
+    }
+
+    private String read(String bucketName, String key) {
+        return new String(IoUtil.readBytes(packStore.getObject(bucketName, key)), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static class FakeMinioTemplate extends MinioTemplate {
+
+        private final Map<String, byte[]> objects = new ConcurrentHashMap<>();
+
+        @Override
+        public String putObjectStreaming(InputStream inputStream, long size, String bucketName, String objectName,
+                                         String contentType) {
+            objects.put(bucketName + "/" + objectName, IoUtil.readBytes(inputStream));
+            return "etag";
+        }
+
+        @Override
+        public InputStream getObject(String bucketName, String objectName) {
+            return new ByteArrayInputStream(objects.get(bucketName + "/" + objectName));
+        }
+
+        @Override
+        public InputStream getObject(String bucketName, String objectName, Long offset, Long length) {
+            return new ByteArrayInputStream(objects.get(bucketName + "/" + objectName), offset.intValue(),
+                    length.intValue());
+        }
+
+        @Override
+        public Iterable<Result<Item>> listObjects(String bucketName, String prefix, boolean recursive) {
+            List<Result<Item>> results = new ArrayList<>();
+            for (String name : new TreeSet<>(objects.keySet())) {
+                if (name.startsWith(bucketName + "/" + prefix)) {
+                    results.add(new Result<>(new Item(name.substring(bucketName.length() + 1)) {
+                    }));
+                }
+            }
+            return results;
+        }
+
+        @Override
+        public void deleteObject(String bucketName, String objectName) {
+            objects.remove(bucketName + "/" + objectName);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.minio.replica;
+
+import com.minio.config.OSSProperties;
+import com.minio.trace.OssTracer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplicatedObjectStoreTest {
+
+    private InMemoryReplicaBackend a;
+
+    private InMemoryReplicaBackend b;
+
+    private InMemoryReplicaBackend c;
+
+    private ReplicatedObjectStore store;
+
+    private OSSProperties.Replication properties;
+
+    @TempDir
+    File tempDir;
+
+    @BeforeEach
+    void setUp() {
+        a = new InMemoryReplicaBackend("a");
+        b = new InMemoryReplicaBackend("b");
+        c = new InMemoryReplicaBackend("c");
+        properties = new OSSProperties.Replication();
+        properties.setBlockSize(DataSize.ofBytes(1000));
+        properties.setQueueDepth(2);
+        properties.setHedgeDelay(Duration.ofMillis(20));
+        properties.setWriteStallTimeout(Duration.ofMillis(200));
+        properties.setRepairInterval(Duration.ZERO);
+        properties.setRepairJournal(new File(tempDir, "repairs.journal").getPath());
+        store = new ReplicatedObjectStore(Arrays.asList(a, b, c), properties, OssTracer.NOOP);
+    }
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        store.destroy();
+    }
+
+    @Test
+    void writesEveryReplicaFromOneStream() throws Exception {
+        byte[] data = randomBytes(10_500);
+        assertEquals(3, store.putObject(new ByteArrayInputStream(data), -1, "bucket", "obj", null));
+        for (InMemoryReplicaBackend backend : Arrays.asList(a, b, c)) {
+            assertArrayEquals(data, read(backend.getObject("bucket", "obj", 0, -1)));
+        }
+        assertArrayEquals(Arrays.copyOfRange(data, 100, 300), read(store.getObject("bucket", "obj", 100, 200)));
+        assertEquals(data.length, store.statObject("bucket", "obj"));
+    }
+
+    @Test
+    void repairsReplicaThatMissedWrite() throws Exception {
+        byte[] data = randomBytes(4096);
+        c.setAvailable(false);
+        assertEquals(2, store.putObject(new ByteArrayInputStream(data), data.length, "bucket", "obj", null));
+        assertEquals(1, store.pendingRepairs());
+        // 不可用的副本排在最后
+        assertEquals("c", store.rankedReplicas().get(2));
+
+        c.setAvailable(true);
+        store.repair();
+        assertEquals(0, store.pendingRepairs());
+        assertArrayEquals(data, read(c.getObject("bucket", "obj", 0, -1)));
+    }
+
+    @Test
+    void failedQuorumRemovesPartialCopies() {
+        b.setAvailable(false);
+        c.setAvailable(false);
+        assertThrows(IOException.class,
+                () -> store.putObject(new ByteArrayInputStream(randomBytes(100)), 100, "bucket", "obj", null));
+        assertFalse(a.contains("bucket", "obj"));
+        assertEquals(0, store.pendingRepairs());
+    }
+
+    @Test
+    void hedgesSlowReplicaAndSkipsMissingCopy() throws Exception {
+        byte[] data = randomBytes(2048);
+        store.putObject(new ByteArrayInputStream(data), data.length, "bucket", "obj", null);
+        // a 还没有这个对象（例如复制滞后），b 很慢，c 正常
+        a.removeObject("bucket", "obj");
+        b.setDelayMillis(2000);
+
+        long start = System.nanoTime();
+        assertArrayEquals(data, read(store.getObject("bucket", "obj")));
+        assertTrue(System.nanoTime() - start < 1_000_000_000L, "对冲请求应该在慢副本返回前完成");
+    }
+
+    @Test
+    void missingCopyDoesNotMarkReplicaUnhealthy() throws Exception {
+        byte[] data = randomBytes(1024);
+        store.putObject(new ByteArrayInputStream(data), data.length, "bucket", "obj", null);
+        a.removeObject("bucket", "obj");
+        for (int i = 0; i <= properties.getFailureThreshold(); i++) {
+            assertArrayEquals(data, read(store.getObject("bucket", "obj")));
+        }
+        // 对象不存在不是副本故障，a 仍然是健康的，没有请求成功过的副本排在最前面
+        assertEquals("a", store.rankedReplicas().get(0));
+    }
+
+    @Test
+    void abandonsStalledReplicaWhenQuorumHolds() throws Exception {
+        byte[] data = randomBytes(10_000);
+        // c 一直不读取数据，队列很快就满了
+        c.setDelayMillis(10_000);
+
+        long start = System.nanoTime();
+        assertEquals(2, store.putObject(new ByteArrayInputStream(data), data.length, "bucket", "obj", null));
+        assertTrue(System.nanoTime() - start < 2_000_000_000L, "停顿的副本不应该拖住写入");
+        assertEquals(1, store.pendingRepairs());
+        assertArrayEquals(data, read(a.getObject("bucket", "obj", 0, -1)));
+    }
+
+    @Test
+    void restoresRepairsAfterRestartAndKeepsMetadata() throws Exception {
+        byte[] data = randomBytes(3000);
+        Map<String, String> metadata = Collections.singletonMap("key-id", "default");
+        c.setAvailable(false);
+        store.putObject(new ByteArrayInputStream(data), data.length, "bucket", "obj", "video/mp4", metadata);
+        store.destroy();
+
+        store = new ReplicatedObjectStore(Arrays.asList(a, b, c), properties, OssTracer.NOOP);
+        assertEquals(1, store.pendingRepairs());
+        c.setAvailable(true);
+        store.repair();
+        assertEquals(0, store.pendingRepairs());
+        ReplicaObjectInfo info = c.statObject("bucket", "obj");
+        assertEquals("video/mp4", info.getContentType());
+        assertEquals(metadata, info.getUserMetadata());
+        assertArrayEquals(data, read(c.getObject("bucket", "obj", 0, -1)));
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        try (InputStream input = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int n;
+            while ((n = input.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+}
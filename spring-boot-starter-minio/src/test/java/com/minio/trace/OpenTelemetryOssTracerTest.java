@@ -0,0 +1,72 @@
+package com.minio.trace;
+
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.sdk.OpenTelemetrySdk;
+import io.opentelemetry.sdk.testing.exporter.InMemorySpanExporter;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OpenTelemetryOssTracerTest {
+
+    private InMemorySpanExporter exporter;
+
+    private OssTracer ossTracer;
+
+    @BeforeEach
+    void setUp() {
+        exporter = InMemorySpanExporter.create();
+        OpenTelemetrySdk sdk = OpenTelemetrySdk.builder()
+                .setTracerProvider(SdkTracerProvider.builder()
+                        .addSpanProcessor(SimpleSpanProcessor.create(exporter))
+                        .build())
+                .build();
+        ossTracer = new OpenTelemetryOssTracer(sdk);
+    }
+
+    @Test
+    void childSpanAndAttributes() {
+        try (OssSpan parent = ossTracer.startSpan("MinioService.merge")) {
+            try (OssSpan child = ossTracer.startSpan("minio.getObject")) {
+                child.setAttribute("minio.range.offset", 10L).setAttribute("minio.bucket", "demo");
+            }
+        }
+
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertEquals(2, spans.size());
+        SpanData child = spans.get(0);
+        SpanData parent = spans.get(1);
+        assertEquals("minio.getObject", child.getName());
+        assertEquals(parent.getSpanId(), child.getParentSpanId());
+        assertEquals("demo", child.getAttributes().asMap().values().stream()
+                .filter("demo"::equals).findFirst().orElse(null));
+    }
+
+    @Test
+    void contextPropagatesIntoExecutor() throws Exception {
+        ExecutorService executorService = ossTracer.wrap(Executors.newSingleThreadExecutor());
+        try (OssSpan parent = ossTracer.startSpan("merge.compose")) {
+            executorService.submit(() -> {
+                try (OssSpan child = ossTracer.startSpan("minio.composeObject")) {
+                    child.recordException(new IllegalStateException("boom"));
+                }
+            }).get(5, TimeUnit.SECONDS);
+        }
+        executorService.shutdown();
+
+        List<SpanData> spans = exporter.getFinishedSpanItems();
+        assertEquals(2, spans.size());
+        assertEquals(spans.get(1).getTraceId(), spans.get(0).getTraceId());
+        assertEquals(spans.get(1).getSpanId(), spans.get(0).getParentSpanId());
+        assertEquals(StatusCode.ERROR, spans.get(0).getStatus().getStatusCode());
+    }
+}